@@ -26,6 +26,7 @@ package org.bitrepository.alarm;
 
 import org.bitrepository.alarm.handling.AlarmHandler;
 import org.bitrepository.alarm.handling.AlarmMediator;
+import org.bitrepository.alarm.handling.AsynchronousAlarmHandler;
 import org.bitrepository.alarm.store.AlarmStore;
 import org.bitrepository.bitrepositoryelements.Alarm;
 import org.bitrepository.bitrepositoryelements.AlarmCode;
@@ -73,10 +74,15 @@ public class BasicAlarmService implements AlarmService {
         alarmMediator = new AlarmMediator(messageBus, settings.getAlarmDestination());
     }
 
+    /**
+     * Adds the handler for the alarms. The alarms are delivered to the handler by its own thread, so the handlers
+     * neither delay the message handling nor each other.
+     * @param handler The handler for the alarms.
+     */
     @Override
     public void addHandler(AlarmHandler handler) {
         log.info("Adding handler '" + handler.getClass().getName() + "' for alarms.");
-        alarmMediator.addHandler(handler);
+        alarmMediator.addHandler(new AsynchronousAlarmHandler(handler));
     }
     
     @Override
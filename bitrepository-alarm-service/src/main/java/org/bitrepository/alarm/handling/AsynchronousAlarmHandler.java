@@ -0,0 +1,184 @@
+/*
+ * #%L
+ * Bitrepository Alarm Service
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.alarm.handling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.bitrepository.bitrepositorymessages.AlarmMessage;
+import org.bitrepository.common.ArgumentValidator;
+import org.bitrepository.common.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decouples an alarm handler from the thread delivering the alarms. The alarms are queued and handed to the 
+ * handler by a dedicated thread, so a slow handler, e.g. a mailer waiting for the mail server, neither delays the
+ * message handling nor the other handlers.
+ * 
+ * The alarms queued while the handler is busy are delivered together, as a single batch if the handler is a 
+ * {@link BatchAlarmHandler}. When the queue is full, the delivery of further alarms waits for the handler to catch 
+ * up, so no alarms are lost. The queued alarms are delivered before the handler is closed.
+ */
+public class AsynchronousAlarmHandler implements AlarmHandler {
+    /** The default maximum number of alarms queued for the handler.*/
+    public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+    /** The maximum number of alarms delivered to the handler at a time.*/
+    public static final int MAX_BATCH_SIZE = 1000;
+    /** The number of milliseconds the handling thread waits for alarms, before checking whether it is closed.*/
+    private static final long POLL_INTERVAL = 100L;
+    /** The maximum number of milliseconds to wait for the queued alarms to be handled when closing.*/
+    private static final long CLOSE_TIMEOUT = 30000L;
+    
+    /** The logger.*/
+    private Logger log = LoggerFactory.getLogger(this.getClass());
+    /** The handler to deliver the alarms to.*/
+    private final AlarmHandler handler;
+    /** The alarms waiting to be handled.*/
+    private final BlockingQueue<AlarmMessage> queue;
+    /** The thread delivering the alarms to the handler.*/
+    private final Thread handlingThread;
+    /** Whether the handler has been closed.*/
+    private volatile boolean closed = false;
+    
+    /**
+     * Constructor, with the default queue capacity.
+     * @param handler The handler to deliver the alarms to.
+     */
+    public AsynchronousAlarmHandler(AlarmHandler handler) {
+        this(handler, DEFAULT_QUEUE_CAPACITY);
+    }
+    
+    /**
+     * Constructor. Starts the thread delivering the alarms to the handler.
+     * @param handler The handler to deliver the alarms to.
+     * @param queueCapacity The maximum number of alarms queued for the handler.
+     */
+    public AsynchronousAlarmHandler(AlarmHandler handler, int queueCapacity) {
+        ArgumentValidator.checkNotNull(handler, "AlarmHandler handler");
+        ArgumentValidator.checkPositive(queueCapacity, "int queueCapacity");
+        this.handler = handler;
+        this.queue = new LinkedBlockingQueue<AlarmMessage>(queueCapacity);
+        this.handlingThread = new DefaultThreadFactory(handler.getClass().getSimpleName(), Thread.NORM_PRIORITY)
+                .newThread(new AlarmDeliverer());
+        handlingThread.start();
+    }
+    
+    /**
+     * @return The handler the alarms are delivered to.
+     */
+    public AlarmHandler getHandler() {
+        return handler;
+    }
+    
+    /**
+     * @return The number of alarms waiting to be handled.
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+    
+    @Override
+    public void handleAlarm(AlarmMessage msg) {
+        if(closed) {
+            log.warn("Cannot handle the alarm, as the alarm handler '{}' is closed: {}", 
+                    handler.getClass().getName(), msg);
+            return;
+        }
+        if(!queue.offer(msg)) {
+            log.warn("The queue of alarms for '{}' is full. Waiting for the handler to catch up.", 
+                    handler.getClass().getName());
+            try {
+                queue.put(msg);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while queueing the alarm: " + msg, e);
+            }
+        }
+    }
+    
+    /**
+     * Delivers the queued alarms and closes the handler.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            handlingThread.join(CLOSE_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if(handlingThread.isAlive()) {
+            log.warn("Closing the alarm handler '{}' with {} alarms not handled.", handler.getClass().getName(), 
+                    queue.size());
+            handlingThread.interrupt();
+        }
+        handler.close();
+    }
+    
+    /**
+     * Delivers a batch of alarms to the handler. Failures are logged, so they do not stop the delivery of the 
+     * following alarms.
+     * @param batch The alarms to deliver.
+     */
+    private void deliver(List<AlarmMessage> batch) {
+        try {
+            if(handler instanceof BatchAlarmHandler) {
+                ((BatchAlarmHandler) handler).handleAlarms(batch);
+            } else {
+                for(AlarmMessage msg : batch) {
+                    handler.handleAlarm(msg);
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("The alarm handler '" + handler.getClass().getName() + "' failed to handle " + batch.size() 
+                    + " alarms.", e);
+        }
+    }
+    
+    /**
+     * Delivers the queued alarms to the handler until closed and the queue is empty.
+     */
+    private class AlarmDeliverer implements Runnable {
+        @Override
+        public void run() {
+            List<AlarmMessage> batch = new ArrayList<AlarmMessage>();
+            try {
+                while(!closed || !queue.isEmpty()) {
+                    AlarmMessage msg = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                    if(msg == null) {
+                        continue;
+                    }
+                    batch.add(msg);
+                    queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                    deliver(batch);
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                log.debug("Interrupted while waiting for alarms for '{}'.", handler.getClass().getName());
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * #%L
+ * Bitrepository Alarm Service
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.alarm.handling;
+
+import java.util.List;
+
+import org.bitrepository.bitrepositorymessages.AlarmMessage;
+
+/**
+ * Interface for alarm handlers, which can handle several alarms at once more efficiently than one at a time.
+ * Used by the {@link AsynchronousAlarmHandler} for delivering the alarms queued for the handler.
+ */
+public interface BatchAlarmHandler extends AlarmHandler {
+    
+    /**
+     * Handle a batch of alarm messages in the order they were received.
+     * @param messages The messages to handle.
+     */
+    void handleAlarms(List<AlarmMessage> messages);
+}
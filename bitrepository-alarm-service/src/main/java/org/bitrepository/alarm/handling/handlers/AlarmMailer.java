@@ -25,8 +25,15 @@
 package org.bitrepository.alarm.handling.handlers;
 
 import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Timer;
+import java.util.TimerTask;
 
 import javax.mail.Message;
 import javax.mail.MessagingException;
@@ -36,7 +43,7 @@ import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
 
 import org.bitrepository.alarm.AlarmException;
-import org.bitrepository.alarm.handling.AlarmHandler;
+import org.bitrepository.alarm.handling.BatchAlarmHandler;
 //import org.bitrepository.alarm_service.alarmconfiguration.AlarmConfiguration;
 //import org.bitrepository.alarm_service.alarmconfiguration.AlarmConfiguration.MailingConfiguration;
 import org.bitrepository.bitrepositorymessages.AlarmMessage;
@@ -46,9 +53,17 @@ import org.slf4j.LoggerFactory;
 
 /**
  * A quite simple AlarmHandler, which sends an mail with the Alarm.
- * TODO have a setting for how often, a mail should be send.
+ * 
+ * Identical alarms, e.g. alarms with the same alarm raiser, alarm code and collection, can be aggregated over the
+ * interval given by the MailAggregationInterval setting. The first of the identical alarms is mailed right away, 
+ * while the following alarms received within the interval are summarized in a single mail when the interval has 
+ * passed. Without the setting every alarm is mailed right away.
  */
-public class AlarmMailer implements AlarmHandler {
+public class AlarmMailer implements BatchAlarmHandler {
+    /** The default interval in milliseconds for aggregating identical alarms. No aggregation.*/
+    public static final long DEFAULT_AGGREGATION_INTERVAL = 0L;
+    /** The number of times during an aggregation interval to check for aggregated alarms to mail.*/
+    private static final long AGGREGATION_CHECKS_PER_INTERVAL = 10L;
     
     /** The logger to log the Alarms.*/
     private Logger log = LoggerFactory.getLogger(this.getClass());
@@ -59,6 +74,12 @@ public class AlarmMailer implements AlarmHandler {
     private final String messageSender;
     /** The mail server.*/
     private final String mailServer;
+    /** The interval in milliseconds for aggregating identical alarms.*/
+    private final long aggregationInterval;
+    /** The identical alarms aggregated since the latest mail, mapped by their aggregation key.*/
+    private final Map<String, AggregatedAlarms> aggregatedAlarms = new HashMap<String, AggregatedAlarms>();
+    /** The timer for mailing the aggregated alarms, when their interval has passed.*/
+    private final Timer aggregationTimer;
     
     /** The key for the MAIL_FROM_PROPERTY.*/
     private static final String MAIL_FROM_PROPERTY_KEY = "mail.from";
@@ -76,14 +97,115 @@ public class AlarmMailer implements AlarmHandler {
         this.messageReceiver = config.getMailReceiver();
         this.messageSender = config.getMailSender();
         this.mailServer = config.getMailServer();
+        this.aggregationInterval = (config.getMailAggregationInterval() != null 
+                ? config.getMailAggregationInterval() : DEFAULT_AGGREGATION_INTERVAL);
+        if(aggregationInterval > 0) {
+            long checkInterval = Math.max(1L, aggregationInterval / AGGREGATION_CHECKS_PER_INTERVAL);
+            aggregationTimer = new Timer(this.getClass().getSimpleName(), true);
+            aggregationTimer.schedule(new AggregationTask(), checkInterval, checkInterval);
+        } else {
+            aggregationTimer = null;
+        }
         log.debug("Instantiating the alarmhandler '" + this.getClass().getCanonicalName() + "'");
     }
     
     @Override
     public void handleAlarm(AlarmMessage msg) {
-        String subject = "Received alarm '" + msg.getAlarm() + "'";
-        log.info(subject + ":\n{}", msg.toString());
-        sendMail(subject, msg.toString());
+        List<AlarmMessage> messages = new ArrayList<AlarmMessage>(1);
+        messages.add(msg);
+        handleAlarms(messages);
+    }
+    
+    @Override
+    public void handleAlarms(List<AlarmMessage> messages) {
+        List<AlarmMessage> alarmsToMail = new ArrayList<AlarmMessage>();
+        List<AggregatedAlarms> aggregationsToMail = new ArrayList<AggregatedAlarms>();
+        synchronized(aggregatedAlarms) {
+            long now = System.currentTimeMillis();
+            for(AlarmMessage msg : messages) {
+                if(aggregationInterval <= 0) {
+                    alarmsToMail.add(msg);
+                    continue;
+                }
+                String key = getAggregationKey(msg);
+                AggregatedAlarms aggregation = aggregatedAlarms.get(key);
+                if(aggregation != null && now - aggregation.startTime < aggregationInterval) {
+                    aggregation.add(msg);
+                    continue;
+                }
+                if(aggregation != null && aggregation.count > 0) {
+                    aggregationsToMail.add(aggregation);
+                }
+                aggregatedAlarms.put(key, new AggregatedAlarms(now));
+                alarmsToMail.add(msg);
+            }
+        }
+        
+        for(AggregatedAlarms aggregation : aggregationsToMail) {
+            mailAggregatedAlarms(aggregation);
+        }
+        for(AlarmMessage msg : alarmsToMail) {
+            String subject = "Received alarm '" + msg.getAlarm() + "'";
+            log.info(subject + ":\n{}", msg.toString());
+            try {
+                sendMail(subject, msg.toString());
+            } catch (AlarmException e) {
+                log.error("Could not mail the alarm '" + msg.getAlarm() + "'.", e);
+            }
+        }
+    }
+    
+    /**
+     * Mails the aggregated alarms, whose interval has passed, or all of them if the handler is closing.
+     * @param all Whether to mail all the aggregated alarms regardless of their interval.
+     */
+    private void mailExpiredAggregations(boolean all) {
+        List<AggregatedAlarms> aggregationsToMail = new ArrayList<AggregatedAlarms>();
+        synchronized(aggregatedAlarms) {
+            long now = System.currentTimeMillis();
+            Iterator<AggregatedAlarms> iterator = aggregatedAlarms.values().iterator();
+            while(iterator.hasNext()) {
+                AggregatedAlarms aggregation = iterator.next();
+                if(all || now - aggregation.startTime >= aggregationInterval) {
+                    iterator.remove();
+                    if(aggregation.count > 0) {
+                        aggregationsToMail.add(aggregation);
+                    }
+                }
+            }
+        }
+        for(AggregatedAlarms aggregation : aggregationsToMail) {
+            mailAggregatedAlarms(aggregation);
+        }
+    }
+    
+    /**
+     * Sends a single mail summarizing the aggregated alarms.
+     * @param aggregation The aggregated alarms.
+     */
+    private void mailAggregatedAlarms(AggregatedAlarms aggregation) {
+        String subject = "Received " + aggregation.count + " further alarms like '" + aggregation.latest.getAlarm()
+                + "'";
+        String content = aggregation.count + " alarms identical to the latest alarm below were received between " 
+                + new Date(aggregation.startTime) + " and " + new Date(aggregation.latestTime) + ":\n" 
+                + aggregation.latest.toString();
+        log.info(subject + ":\n{}", content);
+        try {
+            sendMail(subject, content);
+        } catch (AlarmException e) {
+            log.error("Could not mail the aggregated alarms.", e);
+        }
+    }
+    
+    /**
+     * @param msg The alarm message.
+     * @return The key identifying the alarms, which are aggregated with the given alarm.
+     */
+    private String getAggregationKey(AlarmMessage msg) {
+        if(msg.getAlarm() == null) {
+            return "##" + msg.getCollectionID();
+        }
+        return msg.getAlarm().getAlarmRaiser() + "#" + msg.getAlarm().getAlarmCode() + "#" + msg.getCollectionID();
     }
     
     /**
@@ -94,7 +216,7 @@ public class AlarmMailer implements AlarmHandler {
      * @param subject The subject of the mail.
      * @param content The content of the mail.
      */
-    private void sendMail(String subject, String content) {
+    protected void sendMail(String subject, String content) {
         Properties props = makeMailProperties();
         Session session = Session.getDefaultInstance(props);
         Message msg = new MimeMessage(session);
@@ -191,5 +313,53 @@ public class AlarmMailer implements AlarmHandler {
     @Override
     public void close() {
         log.debug("Closing the alarmhandler '" + this.getClass().getCanonicalName() + "'");
+        if(aggregationTimer != null) {
+            aggregationTimer.cancel();
+        }
+        mailExpiredAggregations(true);
+    }
+    
+    /**
+     * The alarms aggregated with the first alarm, which was mailed at the start time.
+     */
+    private static class AggregatedAlarms {
+        /** The time the first of the alarms was received.*/
+        private final long startTime;
+        /** The number of alarms aggregated after the first alarm.*/
+        private int count = 0;
+        /** The latest of the aggregated alarms.*/
+        private AlarmMessage latest;
+        /** The time the latest of the aggregated alarms was received.*/
+        private long latestTime;
+        
+        /**
+         * @param startTime The time the first of the alarms was received.
+         */
+        AggregatedAlarms(long startTime) {
+            this.startTime = startTime;
+        }
+        
+        /**
+         * @param msg An alarm identical to the first alarm.
+         */
+        void add(AlarmMessage msg) {
+            count++;
+            latest = msg;
+            latestTime = System.currentTimeMillis();
+        }
+    }
+    
+    /**
+     * Mails the aggregated alarms, whose interval has passed.
+     */
+    private class AggregationTask extends TimerTask {
+        @Override
+        public void run() {
+            try {
+                mailExpiredAggregations(false);
+            } catch (RuntimeException e) {
+                log.error("Failed to mail the aggregated alarms.", e);
+            }
+        }
     }
 }
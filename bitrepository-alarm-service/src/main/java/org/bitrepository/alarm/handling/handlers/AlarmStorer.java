@@ -21,7 +21,10 @@
  */
 package org.bitrepository.alarm.handling.handlers;
 
-import org.bitrepository.alarm.handling.AlarmHandler;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bitrepository.alarm.handling.BatchAlarmHandler;
 import org.bitrepository.alarm.store.AlarmStore;
 import org.bitrepository.bitrepositoryelements.Alarm;
 import org.bitrepository.bitrepositorymessages.AlarmMessage;
@@ -30,8 +33,9 @@ import org.slf4j.LoggerFactory;
 
 /**
  * The alarm handler, which just stores all the alarms in the AlarmStore.
+ * A batch of alarms is stored in a single transaction.
  */
-public class AlarmStorer implements AlarmHandler {
+public class AlarmStorer implements BatchAlarmHandler {
     /** The logger.*/
     private Logger log = LoggerFactory.getLogger(this.getClass());
     /** The store for storing the alarms.*/
@@ -48,9 +52,27 @@ public class AlarmStorer implements AlarmHandler {
     @Override
     public void handleAlarm(AlarmMessage message) {
         log.debug("Adding alarm from message '{}'", message);
+        store.addAlarm(extractAlarm(message));
+    }
+    
+    @Override
+    public void handleAlarms(List<AlarmMessage> messages) {
+        log.debug("Adding {} alarms", messages.size());
+        List<Alarm> alarms = new ArrayList<Alarm>(messages.size());
+        for(AlarmMessage message : messages) {
+            alarms.add(extractAlarm(message));
+        }
+        store.addAlarms(alarms);
+    }
+    
+    /**
+     * @param message The alarm message.
+     * @return The alarm of the message, with the collection of the message.
+     */
+    private Alarm extractAlarm(AlarmMessage message) {
         Alarm alarm = message.getAlarm();
         alarm.setCollectionID(message.getCollectionID());
-        store.addAlarm(alarm);
+        return alarm;
     }
     
     @Override
@@ -21,8 +21,15 @@
  */
 package org.bitrepository.alarm.store;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.bitrepository.bitrepositoryelements.Alarm;
 import org.bitrepository.common.ArgumentValidator;
@@ -59,6 +66,8 @@ public class AlarmDatabaseIngestor {
     private Logger log = LoggerFactory.getLogger(getClass());
     /** The connector to the database, where the alarms should be ingested.*/
     private final DBConnector dbConnector;
+    /** The guids of the components, which are known to be in the component table.*/
+    private final Map<String, Long> componentGuids = new ConcurrentHashMap<String, Long>();
     
     /**
      * @param dbConnector The connector to the database, where the audit trails are to be ingested.
@@ -81,6 +90,96 @@ public class AlarmDatabaseIngestor {
         DatabaseUtils.executeStatement(dbConnector, sqlInsert, extractArgumentsFromEvent(alarm));
     }
 
+    /**
+     * Ingest the given alarms into the database as a single batch in one transaction.
+     * Unlike {@link #ingestAlarm(Alarm)} all the fields are inserted, with null for the missing ones.
+     * If the batch fails, the alarms are ingested one at a time, so only the alarms, which cannot be ingested, 
+     * are lost. These are logged.
+     * @param alarms The alarms to be ingested into the alarm database.
+     */
+    public void ingestAlarms(Collection<Alarm> alarms) {
+        ArgumentValidator.checkNotNull(alarms, "Collection<Alarm> alarms");
+        if(alarms.isEmpty()) {
+            return;
+        }
+        
+        String sqlInsert = "INSERT INTO " + ALARM_TABLE + " ( " + ALARM_COMPONENT_GUID + " , " + ALARM_CODE + " , "
+                + ALARM_TEXT + " , " + ALARM_DATE + " , " + ALARM_FILE_ID + " , " + ALARM_COLLECTION_ID + " )"
+                + " VALUES ( ?, ?, ?, ?, ?, ? )";
+        try (Connection conn = dbConnector.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(sqlInsert)) {
+                for(Alarm alarm : alarms) {
+                    addAlarmToBatch(ps, alarm);
+                }
+                ps.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException | RuntimeException e) {
+            log.warn("Could not ingest the batch of " + alarms.size() + " alarms. Ingesting them one at a time.", e);
+            ingestAlarmsOneByOne(alarms);
+            return;
+        }
+        log.debug("Ingested a batch of {} alarms.", alarms.size());
+    }
+    
+    /**
+     * Ingest the given alarms into the database one at a time, and logs the alarms, which could not be ingested.
+     * @param alarms The alarms to be ingested into the alarm database.
+     */
+    private void ingestAlarmsOneByOne(Collection<Alarm> alarms) {
+        for(Alarm alarm : alarms) {
+            try {
+                ingestAlarm(alarm);
+            } catch (RuntimeException e) {
+                log.error("Could not ingest the alarm, which is dropped: " + alarm, e);
+            }
+        }
+    }
+    
+    /**
+     * Adds the fields of the alarm to the batch of the insert statement.
+     * @param ps The insert statement.
+     * @param alarm The alarm to add.
+     * @throws SQLException If the fields could not be set.
+     */
+    private void addAlarmToBatch(PreparedStatement ps, Alarm alarm) throws SQLException {
+        if(alarm.getAlarmRaiser() != null) {
+            ps.setLong(1, retrieveComponentGuid(alarm.getAlarmRaiser()));
+        } else {
+            ps.setNull(1, Types.BIGINT);
+        }
+        setStringOrNull(ps, 2, alarm.getAlarmCode() == null ? null : alarm.getAlarmCode().toString());
+        setStringOrNull(ps, 3, alarm.getAlarmText());
+        if(alarm.getOrigDateTime() != null) {
+            ps.setLong(4, CalendarUtils.convertFromXMLGregorianCalendar(alarm.getOrigDateTime()).getTime());
+        } else {
+            ps.setNull(4, Types.BIGINT);
+        }
+        setStringOrNull(ps, 5, alarm.getFileID());
+        setStringOrNull(ps, 6, alarm.getCollectionID());
+        ps.addBatch();
+    }
+    
+    /**
+     * @param ps The statement.
+     * @param index The index of the parameter.
+     * @param value The value of the parameter. May be null.
+     * @throws SQLException If the parameter could not be set.
+     */
+    private void setStringOrNull(PreparedStatement ps, int index, String value) throws SQLException {
+        if(value != null) {
+            ps.setString(index, value);
+        } else {
+            ps.setNull(index, Types.VARCHAR);
+        }
+    }
+
     /**
      * @param alarm The alarm to ingest into the database.
      * @return Creates the set of elements to be ingested into the database.
@@ -190,12 +289,29 @@ public class AlarmDatabaseIngestor {
     
     /**
      * Retrieve the guid for a given component. If the component does not exist within the component table, 
-     * then it is created.
+     * then it is created. The guids are cached, as the components are never removed from the component table.
+     * 
+     * @param componentId The name of the alarm producing component.
+     * @return The guid of the component with the given name.
+     */
+    private long retrieveComponentGuid(String componentId) {
+        Long cachedGuid = componentGuids.get(componentId);
+        if(cachedGuid != null) {
+            return cachedGuid;
+        }
+        long guid = retrieveComponentGuidFromDatabase(componentId);
+        componentGuids.put(componentId, guid);
+        return guid;
+    }
+    
+    /**
+     * Retrieve the guid for a given component from the database. If the component does not exist within the 
+     * component table, then it is created.
      * 
      * @param componentId The name of the alarm producing component.
      * @return The guid of the component with the given name.
      */
-    private synchronized long retrieveComponentGuid(String componentId) {
+    private synchronized long retrieveComponentGuidFromDatabase(String componentId) {
         String sqlRetrieve = "SELECT " + COMPONENT_GUID + " FROM " + COMPONENT_TABLE 
                 + " WHERE " + COMPONENT_ID + " = ?";
         
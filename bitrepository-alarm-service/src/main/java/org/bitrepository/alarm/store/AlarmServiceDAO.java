@@ -21,6 +21,7 @@
  */
 package org.bitrepository.alarm.store;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -35,6 +36,8 @@ import org.bitrepository.service.database.DatabaseManager;
 public abstract class AlarmServiceDAO implements AlarmStore {
     /** The connector to the database.*/
     protected DBConnector dbConnector;
+    /** The ingestor for the alarms.*/
+    private final AlarmDatabaseIngestor ingestor;
     
     /** 
      * Constructor.
@@ -42,14 +45,19 @@ public abstract class AlarmServiceDAO implements AlarmStore {
      */
     public AlarmServiceDAO(DatabaseManager databaseManager) {
         dbConnector = databaseManager.getConnector();
+        ingestor = new AlarmDatabaseIngestor(dbConnector);
     }
     
     @Override
     public void addAlarm(Alarm alarm) {
-        AlarmDatabaseIngestor ingestor = new AlarmDatabaseIngestor(dbConnector);
         ingestor.ingestAlarm(alarm);
     }
     
+    @Override
+    public void addAlarms(Collection<Alarm> alarms) {
+        ingestor.ingestAlarms(alarms);
+    }
+    
     @Override
     public abstract List<Alarm> extractAlarms(String componentID, AlarmCode alarmCode, Date minDate, Date maxDate,
             String fileID, String collectionID, Integer count, boolean ascending); 
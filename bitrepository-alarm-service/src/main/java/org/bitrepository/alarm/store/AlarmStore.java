@@ -41,6 +41,12 @@ public interface AlarmStore extends LifeCycledService{
      */
     void addAlarm(Alarm alarm);
     
+    /**
+     * Add a batch of alarms to the store.
+     * @param alarms The alarms to be added to the store.
+     */
+    void addAlarms(Collection<Alarm> alarms);
+    
     /**
      * Extracts the alarms based on the given optional restictions.
      * @param componentID [OPTIONAL] The id of the component.
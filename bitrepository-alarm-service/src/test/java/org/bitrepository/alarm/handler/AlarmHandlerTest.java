@@ -21,10 +21,22 @@
  */
 package org.bitrepository.alarm.handler;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import org.bitrepository.alarm.handling.AlarmHandler;
 import org.bitrepository.alarm.handling.AlarmMediator;
+import org.bitrepository.alarm.handling.AsynchronousAlarmHandler;
+import org.bitrepository.alarm.handling.BatchAlarmHandler;
+import org.bitrepository.alarm.handling.handlers.AlarmMailer;
+import org.bitrepository.bitrepositoryelements.Alarm;
+import org.bitrepository.bitrepositoryelements.AlarmCode;
 import org.bitrepository.bitrepositorymessages.AlarmMessage;
 import org.bitrepository.bitrepositorymessages.Message;
+import org.bitrepository.settings.referencesettings.AlarmServiceSettings;
+import org.bitrepository.settings.referencesettings.MailingConfiguration;
 import org.bitrepository.protocol.IntegrationTest;
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -60,6 +72,135 @@ public class AlarmHandlerTest extends IntegrationTest {
         Assert.assertEquals(alarmHandler.getCallsForHandleAlarm(), 1);
     }
 
+    @Test(groups = {"regressiontest"})
+    public void asynchronousAlarmHandlerTest() throws Exception {
+        addDescription("Test that the asynchronous alarm handler delivers the alarms queued while the handler is busy "
+                + "as a batch, and delivers the remaining alarms before closing the handler.");
+        addStep("Setup a batch handler, which blocks on the first alarm.", "Should be ok.");
+        final CountDownLatch firstAlarmReceived = new CountDownLatch(1);
+        final CountDownLatch continueHandling = new CountDownLatch(1);
+        final List<Integer> batchSizes = new ArrayList<Integer>();
+        BatchAlarmHandler batchHandler = new BatchAlarmHandler() {
+            @Override
+            public void handleAlarms(List<AlarmMessage> messages) {
+                batchSizes.add(messages.size());
+                firstAlarmReceived.countDown();
+                try {
+                    continueHandling.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            @Override
+            public void handleAlarm(AlarmMessage msg) {
+                Assert.fail("Should deliver the alarms as batches.");
+            }
+            @Override
+            public void close() {}
+        };
+        AsynchronousAlarmHandler handler = new AsynchronousAlarmHandler(batchHandler);
+        
+        addStep("Deliver an alarm, and more alarms while the first is handled.", 
+                "The delivery should not wait for the handler.");
+        handler.handleAlarm(new AlarmMessage());
+        Assert.assertTrue(firstAlarmReceived.await(10, TimeUnit.SECONDS));
+        for(int i = 0; i < 5; i++) {
+            handler.handleAlarm(new AlarmMessage());
+        }
+        Assert.assertEquals(handler.getQueueSize(), 5);
+        
+        addStep("Let the handler continue and close it.", "The queued alarms should be delivered as one batch.");
+        continueHandling.countDown();
+        handler.close();
+        Assert.assertEquals(batchSizes.size(), 2);
+        Assert.assertEquals(batchSizes.get(0).intValue(), 1);
+        Assert.assertEquals(batchSizes.get(1).intValue(), 5);
+        Assert.assertEquals(handler.getQueueSize(), 0);
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void alarmMailerAggregationTest() throws Exception {
+        addDescription("Test that the alarm mailer only mails the first of identical alarms right away, and "
+                + "summarizes the rest in a single mail.");
+        addStep("Setup a mailer with a long aggregation interval", "Should be ok.");
+        MailingConfiguration config = new MailingConfiguration();
+        config.setMailReceiver("receiver@example.com");
+        config.setMailSender("sender@example.com");
+        config.setMailServer("localhost");
+        config.setMailAggregationInterval(3600000L);
+        AlarmServiceSettings settings = new AlarmServiceSettings();
+        settings.setMailingConfiguration(config);
+        final List<String> mailSubjects = new ArrayList<String>();
+        AlarmMailer mailer = new AlarmMailer(settings) {
+            @Override
+            protected void sendMail(String subject, String content) {
+                mailSubjects.add(subject);
+            }
+        };
+        
+        addStep("Deliver three identical alarms and an alarm from another component", 
+                "Only the first of the identical alarms and the other alarm should be mailed.");
+        List<AlarmMessage> alarms = new ArrayList<AlarmMessage>();
+        for(int i = 0; i < 3; i++) {
+            alarms.add(createAlarmMessage("component1"));
+        }
+        alarms.add(createAlarmMessage("component2"));
+        mailer.handleAlarms(alarms);
+        Assert.assertEquals(mailSubjects.size(), 2);
+        
+        addStep("Deliver another identical alarm", "Should not be mailed.");
+        mailer.handleAlarm(createAlarmMessage("component1"));
+        Assert.assertEquals(mailSubjects.size(), 2);
+        
+        addStep("Close the mailer", "The aggregated alarms should be summarized in a single mail.");
+        mailer.close();
+        Assert.assertEquals(mailSubjects.size(), 3);
+        Assert.assertTrue(mailSubjects.get(2).startsWith("Received 3 further alarms"), mailSubjects.get(2));
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void alarmMailerWithoutAggregationTest() throws Exception {
+        addDescription("Test that the alarm mailer mails every alarm right away, when no aggregation interval is "
+                + "given.");
+        addStep("Setup a mailer without an aggregation interval", "Should be ok.");
+        MailingConfiguration config = new MailingConfiguration();
+        config.setMailReceiver("receiver@example.com");
+        config.setMailSender("sender@example.com");
+        config.setMailServer("localhost");
+        AlarmServiceSettings settings = new AlarmServiceSettings();
+        settings.setMailingConfiguration(config);
+        final List<String> mailSubjects = new ArrayList<String>();
+        AlarmMailer mailer = new AlarmMailer(settings) {
+            @Override
+            protected void sendMail(String subject, String content) {
+                mailSubjects.add(subject);
+            }
+        };
+        
+        addStep("Deliver three identical alarms", "Every alarm should be mailed.");
+        List<AlarmMessage> alarms = new ArrayList<AlarmMessage>();
+        for(int i = 0; i < 3; i++) {
+            alarms.add(createAlarmMessage("component1"));
+        }
+        mailer.handleAlarms(alarms);
+        Assert.assertEquals(mailSubjects.size(), 3);
+        
+        addStep("Close the mailer", "No further mails should be sent.");
+        mailer.close();
+        Assert.assertEquals(mailSubjects.size(), 3);
+    }
+
+    private AlarmMessage createAlarmMessage(String alarmRaiser) {
+        Alarm alarm = new Alarm();
+        alarm.setAlarmRaiser(alarmRaiser);
+        alarm.setAlarmCode(AlarmCode.COMPONENT_FAILURE);
+        alarm.setAlarmText("Component failure");
+        AlarmMessage msg = new AlarmMessage();
+        msg.setAlarm(alarm);
+        msg.setCollectionID("collection");
+        return msg;
+    }
+
     protected class MockAlarmHandler implements AlarmHandler {
 
         private int callsForHandleAlarm = 0;
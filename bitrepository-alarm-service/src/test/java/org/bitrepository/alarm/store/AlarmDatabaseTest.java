@@ -213,6 +213,59 @@ public class AlarmDatabaseTest extends ExtendedTestCase {
         Assert.assertEquals(extractedAlarms.get(0), alarm);
     }
     
+    @Test(groups = {"regressiontest", "databasetest"})
+    public void alarmDatabaseBatchIngestionTest() throws Exception {
+        addDescription("Testing the ingestion of a batch of alarms into the database");
+        AlarmDAOFactory alarmDAOFactory = new AlarmDAOFactory();
+        AlarmServiceDAO database = alarmDAOFactory.getAlarmServiceDAOInstance(
+                settings.getReferenceSettings().getAlarmServiceSettings().getAlarmServiceDatabase());
+        
+        addStep("Insert the alarms as a single batch, twice", "All the alarms should be inserted.");
+        database.addAlarms(makeAlarms());
+        database.addAlarms(makeAlarms());
+        List<Alarm> extractedAlarms = database.extractAlarms(null, null, null, null, null, null, null, true);
+        Assert.assertEquals(extractedAlarms.size(), 4);
+        
+        addStep("Extract the alarms for component 1", "Should deliver the alarms without a file id.");
+        extractedAlarms = database.extractAlarms(component1, null, null, null, null, null, null, true);
+        Assert.assertEquals(extractedAlarms.size(), 2);
+        for(Alarm alarm : extractedAlarms) {
+            Assert.assertEquals(alarm.getAlarmCode(), AlarmCode.COMPONENT_FAILURE);
+            Assert.assertEquals(alarm.getCollectionID(), collection1);
+            Assert.assertNull(alarm.getFileID());
+        }
+        
+        addStep("Extract the alarms for the file id", "Should deliver the alarms for component 2.");
+        extractedAlarms = database.extractAlarms(null, null, null, null, fileID, collection2, null, true);
+        Assert.assertEquals(extractedAlarms.size(), 2);
+        Assert.assertEquals(extractedAlarms.get(0).getAlarmRaiser(), component2);
+    }
+
+    @Test(groups = {"regressiontest", "databasetest"})
+    public void alarmDatabaseBatchWithBadAlarmTest() throws Exception {
+        addDescription("Testing the ingestion of a batch of alarms, where one of the alarms cannot be ingested");
+        AlarmDAOFactory alarmDAOFactory = new AlarmDAOFactory();
+        AlarmServiceDAO database = alarmDAOFactory.getAlarmServiceDAOInstance(
+                settings.getReferenceSettings().getAlarmServiceSettings().getAlarmServiceDatabase());
+
+        addStep("Insert a batch with an alarm without the mandatory alarm text between two valid alarms",
+                "Only the bad alarm should be dropped.");
+        List<Alarm> alarms = makeAlarms();
+        Alarm badAlarm = new Alarm();
+        badAlarm.setAlarmCode(AlarmCode.COMPONENT_FAILURE);
+        badAlarm.setAlarmRaiser(component1);
+        badAlarm.setAlarmText(null);
+        badAlarm.setOrigDateTime(CalendarUtils.getNow());
+        alarms.add(1, badAlarm);
+        database.addAlarms(alarms);
+
+        List<Alarm> extractedAlarms = database.extractAlarms(null, null, null, null, null, null, null, true);
+        Assert.assertEquals(extractedAlarms.size(), 2);
+        Assert.assertEquals(extractedAlarms.get(0).getAlarmRaiser(), component1);
+        Assert.assertNotNull(extractedAlarms.get(0).getAlarmText());
+        Assert.assertEquals(extractedAlarms.get(1).getAlarmRaiser(), component2);
+    }
+
     @Test(groups = {"regressiontest", "databasetest"})
     public void alarmDatabaseCorrectTimestampTest() throws ParseException {
         addDescription("Testing the correct ingest and extraction of alarm dates");
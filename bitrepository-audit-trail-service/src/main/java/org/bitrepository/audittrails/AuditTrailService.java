@@ -96,13 +96,14 @@ public class AuditTrailService implements LifeCycledService {
      * @param action Restrict the results to only be about this type of action
      * @param fingerprint the fingerprint
      * @param operationID Restrict the results to only this operationID
+     * @param maxResults Restrict the number of results, or null for all results
      * @return an iterator to all AuditTrailEvents matching the criteria from the parameters
      */
     public AuditEventIterator queryAuditTrailEventsByIterator(Date fromDate, Date toDate, String fileID, 
             String collectionID, String reportingComponent, String actor, FileAction action, 
-            String fingerprint, String operationID) {
+            String fingerprint, String operationID, Long maxResults) {
         return store.getAuditTrailsByIterator(fileID, collectionID, reportingComponent, null, null, actor, action, 
-                fromDate, toDate, fingerprint, operationID);
+                fromDate, toDate, fingerprint, operationID, maxResults);
     }
 
     /**
@@ -21,11 +21,15 @@
  */
 package org.bitrepository.audittrails.collector;
 
-import java.math.BigInteger;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.bitrepository.access.getaudittrails.AuditTrailClient;
 import org.bitrepository.access.getaudittrails.AuditTrailQuery;
@@ -34,10 +38,12 @@ import org.bitrepository.access.getaudittrails.client.AuditTrailResult;
 import org.bitrepository.audittrails.store.AuditTrailStore;
 import org.bitrepository.bitrepositoryelements.Alarm;
 import org.bitrepository.bitrepositoryelements.AlarmCode;
+import org.bitrepository.bitrepositoryelements.AuditTrailEvent;
 import org.bitrepository.bitrepositoryelements.AuditTrailEvents;
 import org.bitrepository.client.eventhandler.EventHandler;
 import org.bitrepository.client.eventhandler.OperationEvent;
 import org.bitrepository.client.exceptions.NegativeResponseException;
+import org.bitrepository.common.DefaultThreadFactory;
 import org.bitrepository.common.utils.TimeUtils;
 import org.bitrepository.service.AlarmDispatcher;
 import org.slf4j.Logger;
@@ -46,6 +52,12 @@ import org.slf4j.LoggerFactory;
 /**
  * Will perform a single collection of audit trails, potential through multiple sequential getAuditTrail calls if the
  * set of new audit trails is large.
+ * <p/>
+ * Each contributor is collected from in its own loop, so a slow contributor does not delay the collection from the 
+ * others. The sequence number to continue from is only read from the store at the start of the collection, and 
+ * afterwards tracked from the received audit trails. The received pages are handed to a bounded queue, which is 
+ * ingested into the store by the thread performing the collection. Thereby the store is not accessed from the 
+ * threads delivering the messages, and the contributors are slowed down if the ingest cannot keep up.
  */
 public class IncrementalCollector {
     private Logger log = LoggerFactory.getLogger(getClass());
@@ -59,8 +71,10 @@ public class IncrementalCollector {
     private static final String NO_FILE_ID = null;
     /** When no delivery address is wanted for the collecting of audit trails.*/
     private static final String NO_DELIVERY_URL = null;
+    /** The maximum number of received pages waiting to be ingested into the store.*/
+    private static final int INGEST_QUEUE_SIZE = 10;
     private final String collectionID;
-    private long collectedAudits = 0;
+    private final AtomicLong collectedAudits = new AtomicLong();
 
     /**
      * @param collectionID the collection ID
@@ -93,69 +107,210 @@ public class IncrementalCollector {
      * @return long The number of collected audit trails
      */
     public long getNumberOfCollectedAudits() {
-        return collectedAudits;
+        return collectedAudits.get();
     }
     
     /**
      * Setup and initiates the collection of audit trails through the client.
      * Adds one to the sequence number to request only newer audit trails.
+     * Blocks until the audit trails from all the contributors have been collected and ingested into the store.
      * @param contributors the collection of IDs of contributor
      */
     public void performCollection(Collection<String> contributors) {
-        collectedAudits = 0;
+        collectedAudits.set(0);
         long start = System.currentTimeMillis(); 
                 
         log.debug("Starting collection of audittrails for collection '{}'", collectionID);
-        Collection<String> activeContributors = contributors;
-        while(!activeContributors.isEmpty()) {
-            activeContributors = collect(activeContributors);
+        if(!contributors.isEmpty()) {
+            BlockingQueue<CollectedPage> ingestQueue = new ArrayBlockingQueue<CollectedPage>(INGEST_QUEUE_SIZE);
+            Set<String> failedContributors = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            ExecutorService executor = Executors.newFixedThreadPool(contributors.size(), 
+                    new DefaultThreadFactory("AuditCollector-" + collectionID + "-", Thread.NORM_PRIORITY, true));
+            try {
+                for(String contributorID : contributors) {
+                    long seq = store.largestSequenceNumber(contributorID, collectionID);
+                    executor.execute(new ContributorCollector(contributorID, seq, ingestQueue, failedContributors));
+                }
+                ingest(ingestQueue, contributors.size(), failedContributors);
+            } finally {
+                executor.shutdownNow();
+            }
         }
         log.debug("Finished collecting audittrails for collection '{}', collected {} audit trails it took {}.", 
-                collectionID, collectedAudits, TimeUtils.millisecondsToHuman(System.currentTimeMillis() - start));
+                collectionID, collectedAudits.get(), 
+                TimeUtils.millisecondsToHuman(System.currentTimeMillis() - start));
+    }
+    
+    /**
+     * Ingests the collected pages into the store, until every contributor has finished.
+     * A contributor, whose audit trails cannot be ingested, is marked as failed, so it stops collecting.
+     * @param ingestQueue The queue with the collected pages.
+     * @param numberOfContributors The number of contributors being collected from.
+     * @param failedContributors The contributors, whose audit trails could not be ingested.
+     */
+    private void ingest(BlockingQueue<CollectedPage> ingestQueue, int numberOfContributors, 
+            Set<String> failedContributors) {
+        int finishedContributors = 0;
+        while(finishedContributors < numberOfContributors) {
+            CollectedPage page;
+            try {
+                page = ingestQueue.take();
+            } catch (InterruptedException e) {
+                log.warn("Interrupted while collecting audit trails for collection '{}'.", collectionID, e);
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if(page.events == null) {
+                finishedContributors++;
+                continue;
+            }
+            if(failedContributors.contains(page.contributorID)) {
+                continue;
+            }
+            try {
+                store.addAuditTrails(page.events, collectionID, page.contributorID);
+                collectedAudits.addAndGet(page.events.getAuditTrailEvent().size());
+            } catch (RuntimeException e) {
+                log.error("Failed to store the audit trails from '{}' for collection '{}'.", page.contributorID, 
+                        collectionID, e);
+                failedContributors.add(page.contributorID);
+                sendFailureAlarm("Failed to store the audit trails from '" + page.contributorID + "'. Error was: '" 
+                        + e.toString() + "'");
+            }
+        }
+    }
+    
+    /**
+     * @param alarmText The text for the alarm about the failed collection.
+     */
+    private void sendFailureAlarm(String alarmText) {
+        Alarm alarm = new Alarm();
+        alarm.setAlarmCode(AlarmCode.COMPONENT_FAILURE);
+        alarm.setAlarmText(alarmText);
+        alarm.setCollectionID(collectionID);
+        alarmDispatcher.error(alarm);
     }
     
     /**
-     * Collect a page of audit trails from the active contributors
-     * @param contributors The contributors to collect from
-     * @return Collection<String> the contributors that have more audits to collect 
+     * A page of audit trails collected from a contributor. A page without events marks, that the collection from 
+     * the contributor has finished.
      */
-    private Collection<String> collect(Collection<String> contributors) {
-        List<AuditTrailQuery> queries = new ArrayList<AuditTrailQuery>();
+    private static class CollectedPage {
+        private final String contributorID;
+        private final AuditTrailEvents events;
         
-        for(String contributorId : contributors) {
-            long seq = store.largestSequenceNumber(contributorId, collectionID);
-            queries.add(new AuditTrailQuery(contributorId, seq + 1, null, maxNumberOfResults));
+        CollectedPage(String contributorID, AuditTrailEvents events) {
+            this.contributorID = contributorID;
+            this.events = events;
         }
-
-        log.debug("Collecting of audittrails for '{}' with ContributorQueries: {}", collectionID, queries);
+    }
+    
+    /**
+     * Collects the pages of audit trails from a single contributor, until no more audit trails are reported.
+     */
+    private class ContributorCollector implements Runnable {
+        private final String contributorID;
+        private final BlockingQueue<CollectedPage> ingestQueue;
+        private final Set<String> failedContributors;
+        /** The largest sequence number collected from the contributor.*/
+        private long sequenceNumber;
         
-        AuditCollectorEventHandler handler = new AuditCollectorEventHandler();
-        try {
-            client.getAuditTrails(collectionID, queries.toArray(new AuditTrailQuery[queries.size()]), NO_FILE_ID,
-                    NO_DELIVERY_URL, handler, clientID);
-
-        } catch (NegativeResponseException e) {
-            log.error("Problem in collecting audittrails, collection will not be complete for collection '{}'",
-                    collectionID, e);
-            Alarm alarm = new Alarm();
-            alarm.setAlarmCode(AlarmCode.COMPONENT_FAILURE);
-            alarm.setAlarmText("Failed to collect audit trails. Error was: '" + e.toString() + "'");
-            alarm.setCollectionID(collectionID);
-            alarmDispatcher.error(alarm);
+        /**
+         * @param contributorID The id of the contributor to collect from.
+         * @param sequenceNumber The largest sequence number already in the store for the contributor.
+         * @param ingestQueue The queue for the collected pages.
+         * @param failedContributors The contributors, whose audit trails could not be ingested.
+         */
+        ContributorCollector(String contributorID, long sequenceNumber, BlockingQueue<CollectedPage> ingestQueue,
+                Set<String> failedContributors) {
+            this.contributorID = contributorID;
+            this.sequenceNumber = sequenceNumber;
+            this.ingestQueue = ingestQueue;
+            this.failedContributors = failedContributors;
+        }
+        
+        @Override
+        public void run() {
+            try {
+                boolean morePages = true;
+                while(morePages && !failedContributors.contains(contributorID)) {
+                    morePages = collectPage();
+                }
+            } catch (InterruptedException e) {
+                log.debug("Collection of audit trails from '{}' was interrupted.", contributorID);
+                return;
+            } catch (RuntimeException e) {
+                log.error("Failed to collect audit trails from '{}' for collection '{}'.", contributorID, 
+                        collectionID, e);
+                sendFailureAlarm("Failed to collect audit trails from '" + contributorID + "'. Error was: '" 
+                        + e.toString() + "'");
+            }
+            try {
+                ingestQueue.put(new CollectedPage(contributorID, null));
+            } catch (InterruptedException e) {
+                log.debug("Collection of audit trails from '{}' was interrupted.", contributorID);
+            }
+        }
+        
+        /**
+         * Collects the next page of audit trails from the contributor, and hands it to the ingest queue.
+         * @return Whether the contributor has more audit trails to collect.
+         * @throws InterruptedException If interrupted while waiting for room in the ingest queue.
+         */
+        private boolean collectPage() throws InterruptedException {
+            AuditTrailQuery[] queries = new AuditTrailQuery[] {
+                    new AuditTrailQuery(contributorID, sequenceNumber + 1, null, maxNumberOfResults)};
+            log.debug("Collecting of audittrails for '{}' with ContributorQueries: {}", collectionID, queries[0]);
+            
+            AuditCollectorEventHandler handler = new AuditCollectorEventHandler(contributorID);
+            try {
+                client.getAuditTrails(collectionID, queries, NO_FILE_ID, NO_DELIVERY_URL, handler, clientID);
+            } catch (NegativeResponseException e) {
+                log.error("Problem in collecting audittrails from '{}', collection will not be complete for "
+                        + "collection '{}'", contributorID, collectionID, e);
+                sendFailureAlarm("Failed to collect audit trails from '" + contributorID + "'. Error was: '" 
+                        + e.toString() + "'");
+                return false;
+            }
+            
+            AuditTrailEvents events = handler.getEvents();
+            if(events == null || events.getAuditTrailEvent().isEmpty()) {
+                return false;
+            }
+            for(AuditTrailEvent event : events.getAuditTrailEvent()) {
+                sequenceNumber = Math.max(sequenceNumber, event.getSequenceNumber().longValue());
+            }
+            ingestQueue.put(new CollectedPage(contributorID, events));
+            return handler.isPartialResult();
         }
-        return handler.getContributorsWithPartialResults();
     }
     
     /**
-     * Event handler for the audit trail collector. The results of an audit trail operation will be ingested into the
-     * audit trail store.
+     * Event handler for the collection of a page of audit trails from a single contributor. The received audit 
+     * trails are kept for the ingest into the audit trail store.
      */
     private class AuditCollectorEventHandler implements EventHandler {
-        List<String> contributorsWithPartialResults = new LinkedList<String>();
+        private final String contributorID;
         private final long startTime = System.currentTimeMillis();
-
-        Collection<String> getContributorsWithPartialResults() {
-            return contributorsWithPartialResults;
+        private volatile AuditTrailEvents events;
+        private volatile boolean partialResult = false;
+        
+        AuditCollectorEventHandler(String contributorID) {
+            this.contributorID = contributorID;
+        }
+        
+        /**
+         * @return The received audit trails, or null if no audit trails were received.
+         */
+        AuditTrailEvents getEvents() {
+            return events;
+        }
+        
+        /**
+         * @return Whether the contributor reported, that it has more audit trails.
+         */
+        boolean isPartialResult() {
+            return partialResult;
         }
         
         @Override
@@ -167,15 +322,18 @@ public class IncrementalCollector {
                             collectionID, auditResult.getCollectionID());
                     return;
                 }
-                if (auditResult.isPartialResult()) {
-                    contributorsWithPartialResults.add(auditResult.getContributorID());
+                if (!contributorID.equals(auditResult.getContributorID())) {
+                    log.warn("Received audit trails from unexpected contributor! Expected '{}', but got '{}'.", 
+                            contributorID, auditResult.getContributorID());
+                    return;
                 }
-                AuditTrailEvents events = auditResult.getAuditTrailEvents().getAuditTrailEvents();
-                if (events != null && events.getAuditTrailEvent() != null && !events.getAuditTrailEvent().isEmpty()) {
-                    store.addAuditTrails(events, collectionID, auditResult.getContributorID());
-                    collectedAudits += events.getAuditTrailEvent().size();
-                    log.debug("Collected and stored {} audit trail event(s) for '{}' from {} in {} (PartialResult={}).", 
-                            events.getAuditTrailEvent().size(), collectionID, auditResult.getContributorID(), 
+                partialResult = auditResult.isPartialResult();
+                AuditTrailEvents resultEvents = auditResult.getAuditTrailEvents().getAuditTrailEvents();
+                if (resultEvents != null && resultEvents.getAuditTrailEvent() != null 
+                        && !resultEvents.getAuditTrailEvent().isEmpty()) {
+                    events = resultEvents;
+                    log.debug("Collected {} audit trail event(s) for '{}' from {} in {} (PartialResult={}).", 
+                            resultEvents.getAuditTrailEvent().size(), collectionID, contributorID, 
                             TimeUtils.millisecondsToHuman(System.currentTimeMillis() - startTime), 
                             auditResult.isPartialResult());
                 }
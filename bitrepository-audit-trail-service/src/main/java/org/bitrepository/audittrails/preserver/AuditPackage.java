@@ -0,0 +1,59 @@
+/*
+ * #%L
+ * Bitrepository Audit Trail Service
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.audittrails.preserver;
+
+import java.io.File;
+
+/**
+ * A package of audit trails created by the {@link AuditPacker}, together with the checksum calculated while the 
+ * package was written.
+ */
+public class AuditPackage {
+    /** The compressed file with the audit trails.*/
+    private final File file;
+    /** The checksum of the compressed file in hexadecimal.*/
+    private final String checksum;
+    
+    /**
+     * Constructor.
+     * @param file The compressed file with the audit trails.
+     * @param checksum The checksum of the compressed file in hexadecimal.
+     */
+    public AuditPackage(File file, String checksum) {
+        this.file = file;
+        this.checksum = checksum;
+    }
+    
+    /**
+     * @return The compressed file with the audit trails.
+     */
+    public File getFile() {
+        return file;
+    }
+    
+    /**
+     * @return The checksum of the compressed file in hexadecimal.
+     */
+    public String getChecksum() {
+        return checksum;
+    }
+}
@@ -21,18 +21,26 @@
  */
 package org.bitrepository.audittrails.preserver;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.bitrepository.audittrails.store.AuditEventIterator;
 import org.bitrepository.audittrails.store.AuditTrailStore;
 import org.bitrepository.bitrepositoryelements.AuditTrailEvent;
+import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
+import org.bitrepository.common.utils.ChecksumOutputStream;
 import org.bitrepository.common.utils.FileUtils;
 import org.bitrepository.common.utils.SettingsUtils;
 import org.bitrepository.settings.referencesettings.AuditTrailPreservation;
@@ -57,9 +65,6 @@ public class AuditPacker {
     private final File directory;
     /** Map between the contributor id and the reached preservation sequence number. */
     private Map<String, Long> seqReached = new HashMap<String, Long>();
-        
-    /** Whether the output stream should be appended to the file.*/
-    private static final boolean APPEND = true;
     
     /**
      * Constructor.
@@ -97,42 +102,44 @@ public class AuditPacker {
     /**
      * Creates a new package with all the newest audit trails from all contributors, e.g. all the audit trails with a 
      * larger sequence number than the reached.
-     * Cleans up the temporary container afterwards.
-     * @return A compressed file with all the audit trails. 
+     * The audit trails are written directly to the compressed file, and the checksum of the compressed file is 
+     * calculated while it is written, so the audit trails are only extracted and written once. 
+     * @param csSpec The specification for the checksum of the compressed file.
+     * @return The package with the compressed file with all the audit trails, and its checksum. 
      */
-    public synchronized File createNewPackage() {
-        File container = new File(directory, collectionID + "-audit-trails-" + System.currentTimeMillis());
+    public synchronized AuditPackage createNewPackage(ChecksumSpecTYPE csSpec) {
+        String name = collectionID + "-audit-trails-" + System.currentTimeMillis();
+        File zippedFile = new File(directory, name + ".zip");
         try {
-            container.createNewFile();
-            packContributors(container);
-            return createCompressedFile(container);
+            ChecksumOutputStream checksumStream = new ChecksumOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(zippedFile)), csSpec);
+            try (ZipOutputStream zipStream = new ZipOutputStream(checksumStream)) {
+                zipStream.putNextEntry(new ZipEntry(new File(directory, name).getPath()));
+                packContributors(zipStream);
+                zipStream.closeEntry();
+            }
+            return new AuditPackage(zippedFile, checksumStream.getChecksum());
         } catch (IOException e) {
-            throw new IllegalStateException("Cannot package the newest audit trails.", e);
-        } finally {
-            // cleaning up.
-            if(container.exists()) {
-                FileUtils.delete(container);
+            if(zippedFile.exists()) {
+                FileUtils.delete(zippedFile);
             }
+            throw new IllegalStateException("Cannot package the newest audit trails.", e);
         }
     }
     
     /**
-     * Packs all newest audit trails from every contributor into the given file.
-     * @param container The file where the audit trails should be written.
-     * @throws IOException If writing to the file somehow fails.
+     * Packs all newest audit trails from every contributor into the given stream.
+     * @param out The stream where the audit trails should be written. It is not closed.
+     * @throws IOException If writing to the stream somehow fails.
      */
-    private void packContributors(File container) throws IOException {
-        PrintWriter writer = null;
-        try {
-            writer = new PrintWriter(new FileOutputStream(container, APPEND));
-            for(String contributor : contributors) {
-                packContributor(contributor, writer);
-            }
-        } finally {
-            if(writer != null) {
-                writer.flush();
-                writer.close();
-            }
+    private void packContributors(OutputStream out) throws IOException {
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        for(String contributor : contributors) {
+            packContributor(contributor, writer);
+        }
+        writer.flush();
+        if(writer.checkError()) {
+            throw new IOException("Failed to write the audit trails to the package.");
         }
     }
     
@@ -147,7 +154,7 @@ public class AuditPacker {
         long numPackedAudits = 0;
         log.debug("Starting to pack audittrails for contributor: " + contributorId + " for collection: " + collectionID);
         AuditEventIterator iterator = store.getAuditTrailsByIterator(null, collectionID, contributorId, nextSeqNumber,
-                null, null, null, null, null, null, null);
+                null, null, null, null, null, null, null, null);
         Long timeStart = System.currentTimeMillis();
         long logInterval = 1000;
 
@@ -169,19 +176,4 @@ public class AuditPacker {
             seqReached.put(contributorId, largestSeqNumber);
         }
     }
-    
-    /**
-     * Compresses the given file into a zip-file.
-     * It will have the same name as the file to compress, just with the extension '.zip', and it will
-     * be placed in the directory defined in settings.
-     * 
-     * @param fileToCompress The file to compress.
-     * @return The compressed file.
-     * @throws IOException If anything goes wrong.
-     */
-    private File createCompressedFile(File fileToCompress) throws IOException {
-        File zippedFile = new File(directory, fileToCompress.getName() + ".zip");
-        FileUtils.zipFile(fileToCompress, zippedFile);
-        return zippedFile;
-    }
 }
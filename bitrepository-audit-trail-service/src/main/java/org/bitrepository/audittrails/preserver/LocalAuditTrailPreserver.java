@@ -24,6 +24,7 @@ package org.bitrepository.audittrails.preserver;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.util.Date;
 import java.util.HashMap;
@@ -143,20 +144,22 @@ public class LocalAuditTrailPreserver implements AuditTrailPreserver {
      */
     private synchronized void performAuditTrailPreservation(String collectionID) {
         try {
-            File auditPackage = auditPackers.get(collectionID).createNewPackage();
-            URL url = uploadFile(auditPackage);
-            log.info("Uploaded the file '" + auditPackage + "' to '" + url.toExternalForm() + "'");
+            ChecksumSpecTYPE csSpec = ChecksumUtils.getDefault(settings);
+            AuditPackage auditPackage = auditPackers.get(collectionID).createNewPackage(csSpec);
+            File packageFile = auditPackage.getFile();
+            URL url = uploadFile(packageFile);
+            log.info("Uploaded the file '" + packageFile + "' to '" + url.toExternalForm() + "'");
             
-            ChecksumDataForFileTYPE checksumData = getValidationChecksumDataForFile(auditPackage);
+            ChecksumDataForFileTYPE checksumData = getValidationChecksumData(auditPackage.getChecksum(), csSpec);
             
             EventHandler eventHandler = new AuditPreservationEventHandler(
                     auditPackers.get(collectionID).getSequenceNumbersReached(), store, collectionID);
             client.putFile(preservationSettings.getAuditTrailPreservationCollection(), url,
-                    auditPackage.getName(), auditPackage.length(), checksumData, null, eventHandler,
+                    packageFile.getName(), packageFile.length(), checksumData, null, eventHandler,
                     "Preservation of audit trails from the AuditTrail service.");
 
             log.debug("Cleanup of the uploaded audit trail package.");
-            FileUtils.delete(auditPackage);
+            FileUtils.delete(packageFile);
         } catch (IOException e) {
             throw new CoordinationLayerException("Cannot perform the preservation of audit trails.", e);
         } catch (OperationFailedException e) {
@@ -165,12 +168,10 @@ public class LocalAuditTrailPreserver implements AuditTrailPreserver {
     }
     
     /**
-     * Helper method to make a checksum for the putfile call. 
+     * Helper method to make the validation checksum for the putfile call from the checksum calculated while the
+     * package was written. 
      */
-    private ChecksumDataForFileTYPE getValidationChecksumDataForFile(File file) {
-        ChecksumSpecTYPE csSpec = ChecksumUtils.getDefault(settings);
-        String checksum = ChecksumUtils.generateChecksum(file, csSpec);
-
+    private ChecksumDataForFileTYPE getValidationChecksumData(String checksum, ChecksumSpecTYPE csSpec) {
         ChecksumDataForFileTYPE res = new ChecksumDataForFileTYPE();
         res.setCalculationTimestamp(CalendarUtils.getNow());
         res.setChecksumSpec(csSpec);
@@ -187,7 +188,9 @@ public class LocalAuditTrailPreserver implements AuditTrailPreserver {
      */
     private URL uploadFile(File file) throws IOException {
         URL uploadedFileURL = exchange.getURL(file.getName());
-        exchange.putFile(new FileInputStream(file), uploadedFileURL);
+        try (InputStream in = new FileInputStream(file)) {
+            exchange.putFile(in, uploadedFileURL);
+        }
         return uploadedFileURL;
     }
     
@@ -118,8 +118,8 @@ public class AuditDatabaseExtractor {
      */
     public AuditEventIterator extractAuditEventsByIterator() {
         String sql = createSelectString() + " FROM " + AUDITTRAIL_TABLE + joinWithFileTable() + joinWithActorTable() 
-                + joinWithContributorTable() + createRestriction() 
-                + " ORDER BY " + AUDITTRAIL_TABLE + "." + AUDITTRAIL_OPERATION_DATE;
+                + joinWithContributorTable() + joinWithCollectionTable() + createRestriction() 
+                + " ORDER BY " + AUDITTRAIL_TABLE + "." + AUDITTRAIL_OPERATION_DATE + createLimit();
         try {
             log.debug("Creating prepared statement with sql '" + sql + "' and arguments '" 
                     + Arrays.asList(extractArgumentsFromModel()) + " for AuditEventIterator");
@@ -184,6 +184,31 @@ public class AuditDatabaseExtractor {
                 + CONTRIBUTOR_TABLE + "." + CONTRIBUTOR_KEY + " "; 
     }
     
+    /**
+     * Joining the File table with the Collection table, when the extraction is restricted to a collection.
+     * 
+     * @return The sql for joining the tables, or empty string if no collection restriction.
+     */
+    private String joinWithCollectionTable() {
+        if(model.getCollectionId() == null) {
+            return "";
+        }
+        return " JOIN " + COLLECTION_TABLE + " ON " + FILE_TABLE + "." + FILE_COLLECTION_KEY + " = " 
+                + COLLECTION_TABLE + "." + COLLECTION_KEY + " "; 
+    }
+    
+    /**
+     * Limits the extraction to the maximum number of results in the database, so only the needed part of the 
+     * ordered result is produced. Uses the SQL:2008 syntax supported by both Derby and PostgreSQL.
+     * @return The limit part of the SQL statement, or empty string if no limit.
+     */
+    private String createLimit() {
+        if(model.getMaxNumberOfResults() == null) {
+            return "";
+        }
+        return " FETCH FIRST ? ROWS ONLY";
+    }
+    
     /**
      * Create the restriction part of the SQL statement for extracting the requested data from the database.
      * @return The restriction, or empty string if no restrictions.
@@ -198,14 +223,12 @@ public class AuditDatabaseExtractor {
 
         if(model.getCollectionId() != null) {
             nextArgument(res);
-            res.append(FILE_TABLE + "." + FILE_COLLECTION_KEY + " = ( SELECT " + COLLECTION_KEY + " FROM " 
-                    + COLLECTION_TABLE + " WHERE " + COLLECTION_ID + " = ? )");
+            res.append(COLLECTION_TABLE + "." + COLLECTION_ID + " = ?");
         }
         
         if(model.getContributorId() != null) {
             nextArgument(res);
-            res.append(AUDITTRAIL_TABLE + "." + AUDITTRAIL_CONTRIBUTOR_KEY + " = ( SELECT " + CONTRIBUTOR_KEY 
-                    + " FROM " + CONTRIBUTOR_TABLE + " WHERE " + CONTRIBUTOR_ID + " = ? )");
+            res.append(CONTRIBUTOR_TABLE + "." + CONTRIBUTOR_ID + " = ?");
         }
         
         if(model.getMinSeqNumber() != null) {
@@ -220,8 +243,7 @@ public class AuditDatabaseExtractor {
         
         if(model.getActorName() != null) {
             nextArgument(res);
-            res.append(AUDITTRAIL_TABLE + "." + AUDITTRAIL_ACTOR_KEY + " = ( SELECT " + ACTOR_KEY + " FROM " 
-                    + ACTOR_TABLE + " WHERE " + ACTOR_NAME + " = ? )");
+            res.append(ACTOR_TABLE + "." + ACTOR_NAME + " = ?");
         }
         
         if(model.getOperation() != null) {
@@ -314,6 +336,10 @@ public class AuditDatabaseExtractor {
             res.add(model.getOperationID());
         }
         
+        if(model.getMaxNumberOfResults() != null) {
+            res.add(model.getMaxNumberOfResults());
+        }
+        
         return res.toArray();
     }
 }
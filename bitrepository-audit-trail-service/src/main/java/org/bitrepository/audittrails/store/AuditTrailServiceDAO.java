@@ -54,7 +54,7 @@ public class AuditTrailServiceDAO implements AuditTrailStore {
     @Override
     public AuditEventIterator getAuditTrailsByIterator(String fileID, String collectionID, String contributorId,
             Long minSeqNumber, Long maxSeqNumber, String actorName, FileAction operation, Date startDate, 
-            Date endDate, String fingerprint, String operationID) {
+            Date endDate, String fingerprint, String operationID, Long maxNumberOfResults) {
         ExtractModel model = new ExtractModel();
         model.setFileId(fileID);
         model.setCollectionId(collectionID);
@@ -67,6 +67,7 @@ public class AuditTrailServiceDAO implements AuditTrailStore {
         model.setEndDate(endDate);
         model.setFingerprint(fingerprint);
         model.setOperationID(operationID);
+        model.setMaxNumberOfResults(maxNumberOfResults);
 
         AuditDatabaseExtractor extractor = new AuditDatabaseExtractor(model, dbConnector);
         return extractor.extractAuditEventsByIterator();
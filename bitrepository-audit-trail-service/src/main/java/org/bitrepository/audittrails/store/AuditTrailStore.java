@@ -48,11 +48,13 @@ public interface AuditTrailStore {
      * @param endDate [OPTIONAL] The latest date for the audits for restricting the extraction.
      * @param fingerprint [OPTIONAL] The fingerprint of the certificate for the audits
      * @param operationID [OPTIONAL] The ID of the operation (conversationID) for the audits
+     * @param maxNumberOfResults [OPTIONAL] The maximum number of audit trails to extract. The oldest audit trails 
+     * are extracted first.
      * @return The requested audit trails from the store.
      */
     public AuditEventIterator getAuditTrailsByIterator(String fileID, String collectionID, String contributorId,
             Long minSeqNumber, Long maxSeqNumber, String actorName, FileAction operation, Date startDate, 
-            Date endDate, String fingerprint, String operationID);
+            Date endDate, String fingerprint, String operationID, Long maxNumberOfResults);
     
     /**
      * ingest audit trails into the store. 
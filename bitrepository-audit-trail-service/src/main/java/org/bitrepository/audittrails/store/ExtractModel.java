@@ -51,6 +51,8 @@ class ExtractModel {
     private String fingerprint;
     /** @see #getOperationID(). */
     private String operationID;
+    /** @see #getMaxNumberOfResults(). */
+    private Long maxNumberOfResults;
     
     /**
      * Constructor, with no arguments. All variables are set to null.
@@ -223,4 +225,19 @@ class ExtractModel {
     public void setOperationID(String operationID) {
         this.operationID = operationID;
     }
+
+    /**
+     * @return The maximum number of results to extract.
+     */
+    public Long getMaxNumberOfResults() {
+        return maxNumberOfResults;
+    }
+
+    /**
+     * @see #getMaxNumberOfResults();
+     * @param maxNumberOfResults The maximum number of results to extract.
+     */
+    public void setMaxNumberOfResults(Long maxNumberOfResults) {
+        this.maxNumberOfResults = maxNumberOfResults;
+    }
 }
@@ -90,7 +90,7 @@ public class RestAuditTrailService {
         final int maxAudits = maxResults;
         final AuditEventIterator it = service.queryAuditTrailEventsByIterator(from, to, contentOrNull(fileID),
                 collectionID, contentOrNull(reportingComponent), contentOrNull(actor), filterAction(action), 
-                contentOrNull(fingerprint), contentOrNull(operationID));
+                contentOrNull(fingerprint), contentOrNull(operationID), Long.valueOf(maxAudits));
         if(it != null) {     
             return new StreamingOutput() {
                 public void write(OutputStream output) throws IOException, WebApplicationException {
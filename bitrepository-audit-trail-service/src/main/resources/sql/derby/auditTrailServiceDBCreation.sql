@@ -36,13 +36,13 @@ create table tableversions (
     version int not null             -- version of table
 );
 
-insert into tableversions ( tablename, version ) values ( 'audittrail', 5);
+insert into tableversions ( tablename, version ) values ( 'audittrail', 6);
 insert into tableversions ( tablename, version ) values ( 'file', 2);
 insert into tableversions ( tablename, version ) values ( 'contributor', 2);
 insert into tableversions ( tablename, version ) values ( 'actor', 2);
 insert into tableversions ( tablename, version ) values ( 'collection', 1);
 insert into tableversions ( tablename, version ) values ( 'collection_progress', 1);
-insert into tableversions ( tablename, version ) values ( 'auditservicedb', 6);
+insert into tableversions ( tablename, version ) values ( 'auditservicedb', 7);
 
 --*************************************************************************--
 -- Name:     collection
@@ -189,3 +189,7 @@ CREATE INDEX dateindex ON audittrail (operation_date);
 CREATE INDEX auditindex ON audittrail (file_key, contributor_key);
 CREATE INDEX fingerprintindex ON audittrail (fingerprint);
 CREATE INDEX operationidindex ON audittrail (operationID);
+CREATE INDEX contributordateindex ON audittrail (contributor_key, operation_date);
+CREATE INDEX actordateindex ON audittrail (actor_key, operation_date);
+CREATE INDEX operationdateindex ON audittrail (operation, operation_date);
+CREATE INDEX contributorseqindex ON audittrail (contributor_key, sequence_number);
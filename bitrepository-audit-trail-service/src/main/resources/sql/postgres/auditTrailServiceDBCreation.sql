@@ -34,13 +34,13 @@ CREATE TABLE tableversions (
     version SMALLINT NOT NULL        -- version of table
 );
 
-INSERT INTO tableversions ( tablename, version ) VALUES ( 'audittrail', 5);
+INSERT INTO tableversions ( tablename, version ) VALUES ( 'audittrail', 6);
 INSERT INTO tableversions ( tablename, version ) VALUES ( 'file', 2);
 INSERT INTO tableversions ( tablename, version ) VALUES ( 'contributor', 2);
 INSERT INTO tableversions ( tablename, version ) VALUES ( 'actor', 2);
 INSERT INTO tableversions ( tablename, version ) VALUES ( 'collection', 1);
 INSERT INTO tableversions ( tablename, version ) VALUES ( 'collection_progress', 1);
-INSERT INTO tableversions ( tablename, version ) VALUES ( 'auditservicedb', 6);
+INSERT INTO tableversions ( tablename, version ) VALUES ( 'auditservicedb', 7);
 
 --*************************************************************************--
 -- Name:     collection
@@ -173,3 +173,7 @@ CREATE INDEX dateindex ON audittrail ( operation_date );
 CREATE INDEX auditindex ON audittrail (file_key, contributor_key);
 CREATE INDEX fingerprintindex ON audittrail ( fingerprint );
 CREATE INDEX operationidindex ON audittrail ( operationID );
+CREATE INDEX contributordateindex ON audittrail (contributor_key, operation_date);
+CREATE INDEX actordateindex ON audittrail (actor_key, operation_date);
+CREATE INDEX operationdateindex ON audittrail (operation, operation_date);
+CREATE INDEX contributorseqindex ON audittrail (contributor_key, sequence_number);
@@ -0,0 +1,31 @@
+---
+-- #%L
+-- Bitrepository Audit Trail Service
+-- %%
+-- Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+-- %%
+-- This program is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU Lesser General Public License as 
+-- published by the Free Software Foundation, either version 2.1 of the 
+-- License, or (at your option) any later version.
+-- 
+-- This program is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Lesser Public License for more details.
+-- 
+-- You should have received a copy of the GNU General Lesser Public 
+-- License along with this program.  If not, see
+-- <http://www.gnu.org/licenses/lgpl-2.1.html>.
+-- #L%
+---
+
+UPDATE tableversions SET version = 7 WHERE tablename = 'auditservicedb';
+UPDATE tableversions SET version = 6 WHERE tablename = 'audittrail';
+
+-- Indexes for the common restrictions combined with the ordering on the operation date, so queries with a 
+-- maximum number of results can stop after reading the first matching index entries.
+CREATE INDEX contributordateindex ON audittrail (contributor_key, operation_date);
+CREATE INDEX actordateindex ON audittrail (actor_key, operation_date);
+CREATE INDEX operationdateindex ON audittrail (operation, operation_date);
+CREATE INDEX contributorseqindex ON audittrail (contributor_key, sequence_number);
@@ -29,6 +29,7 @@ import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import java.math.BigInteger;
 import java.util.Date;
 import java.util.concurrent.ThreadFactory;
 
@@ -37,6 +38,7 @@ import org.bitrepository.access.getaudittrails.AuditTrailQuery;
 import org.bitrepository.access.getaudittrails.client.AuditTrailResult;
 import org.bitrepository.audittrails.collector.AuditTrailCollector;
 import org.bitrepository.audittrails.store.AuditTrailStore;
+import org.bitrepository.bitrepositoryelements.AuditTrailEvent;
 import org.bitrepository.bitrepositoryelements.AuditTrailEvents;
 import org.bitrepository.bitrepositoryelements.FileAction;
 import org.bitrepository.bitrepositoryelements.ResultingAuditTrails;
@@ -45,6 +47,7 @@ import org.bitrepository.client.eventhandler.EventHandler;
 import org.bitrepository.common.DefaultThreadFactory;
 import org.bitrepository.common.settings.Settings;
 import org.bitrepository.common.settings.TestSettingsProvider;
+import org.bitrepository.common.utils.SettingsUtils;
 import org.bitrepository.service.AlarmDispatcher;
 import org.bitrepository.service.contributor.ContributorMediator;
 import org.bitrepository.settings.repositorysettings.Collection;
@@ -80,6 +83,7 @@ public class AuditTrailServiceTest extends ExtendedTestCase {
         settings.getReferenceSettings().getAuditTrailServiceSettings().setCollectAuditInterval(800);
         settings.getReferenceSettings().getAuditTrailServiceSettings().setTimerTaskCheckInterval(100L);
         settings.getReferenceSettings().getAuditTrailServiceSettings().setGracePeriod(800L);
+        SettingsUtils.initialize(settings);
 
         AuditTrailStore store = mock(AuditTrailStore.class);
         AuditTrailClient client = mock(AuditTrailClient.class);
@@ -97,27 +101,44 @@ public class AuditTrailServiceTest extends ExtendedTestCase {
         Thread t = threadFactory.newThread(collectionRunner);
         t.start();
         
+        int numberOfContributors = SettingsUtils.getAuditContributorsForCollection(TEST_COLLECTION).size();
+        ArgumentCaptor<AuditTrailQuery[]> queryCaptor = ArgumentCaptor.forClass(AuditTrailQuery[].class);
         ArgumentCaptor<EventHandler> eventHandlerCaptor = ArgumentCaptor.forClass(EventHandler.class);
-        verify(client, timeout(3000).times(1)).getAuditTrails(eq(TEST_COLLECTION), any(AuditTrailQuery[].class),
-                isNull(String.class), isNull(String.class), eventHandlerCaptor.capture(), any(String.class));
+        verify(client, timeout(3000).times(numberOfContributors)).getAuditTrails(eq(TEST_COLLECTION), 
+                queryCaptor.capture(), isNull(String.class), isNull(String.class), eventHandlerCaptor.capture(), 
+                any(String.class));
         
-        AuditTrailResult event = new AuditTrailResult(DEFAULT_CONTRIBUTOR, TEST_COLLECTION, new ResultingAuditTrails(), false);
-        eventHandlerCaptor.getValue().handleEvent(event);
-        eventHandlerCaptor.getValue().handleEvent(new CompleteEvent(TEST_COLLECTION, null));
+        addStep("Deliver an audit trail from the default contributor, and none from the pillars", 
+                "The audit trail should be stored");
+        for(int i = 0; i < numberOfContributors; i++) {
+            String contributorID = queryCaptor.getAllValues().get(i)[0].getComponentID();
+            ResultingAuditTrails result = new ResultingAuditTrails();
+            if(contributorID.equals(DEFAULT_CONTRIBUTOR)) {
+                AuditTrailEvent auditTrail = new AuditTrailEvent();
+                auditTrail.setReportingComponent(DEFAULT_CONTRIBUTOR);
+                auditTrail.setSequenceNumber(BigInteger.ONE);
+                result.setAuditTrailEvents(new AuditTrailEvents());
+                result.getAuditTrailEvents().getAuditTrailEvent().add(auditTrail);
+            }
+            EventHandler eventHandler = eventHandlerCaptor.getAllValues().get(i);
+            eventHandler.handleEvent(new AuditTrailResult(contributorID, TEST_COLLECTION, result, false));
+            eventHandler.handleEvent(new CompleteEvent(TEST_COLLECTION, null));
+        }
+        verify(store, timeout(3000).times(1)).addAuditTrails(any(AuditTrailEvents.class), eq(TEST_COLLECTION), 
+                eq(DEFAULT_CONTRIBUTOR));
         
         addStep("Retrieve audit trails with and without an action", "Should work.");
-        
-        verify(store, times(1)).addAuditTrails(any(AuditTrailEvents.class), eq(TEST_COLLECTION), eq(DEFAULT_CONTRIBUTOR));
-        service.queryAuditTrailEventsByIterator(null, null, null, null, null, null, null, null, null);
+        service.queryAuditTrailEventsByIterator(null, null, null, null, null, null, null, null, null, null);
         verify(store, times(1)).getAuditTrailsByIterator(isNull(String.class), isNull(String.class), 
                 isNull(String.class), isNull(Long.class), isNull(Long.class), isNull(String.class), 
                 isNull(FileAction.class), isNull(Date.class), isNull(Date.class), isNull(String.class), 
-                isNull(String.class));
-        service.queryAuditTrailEventsByIterator(null, null, null, null, null, null, FileAction.FAILURE, null, null);
+                isNull(String.class), isNull(Long.class));
+        service.queryAuditTrailEventsByIterator(null, null, null, null, null, null, FileAction.FAILURE, null, null,
+                null);
         verify(store, times(1)).getAuditTrailsByIterator(isNull(String.class), isNull(String.class), 
                 isNull(String.class), isNull(Long.class), isNull(Long.class), isNull(String.class), 
                 eq(FileAction.FAILURE), isNull(Date.class), isNull(Date.class), isNull(String.class), 
-                isNull(String.class));
+                isNull(String.class), isNull(Long.class));
 
         
         addStep("Shutdown", "");
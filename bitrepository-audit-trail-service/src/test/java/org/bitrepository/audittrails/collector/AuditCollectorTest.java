@@ -28,6 +28,8 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 
+import java.util.List;
+
 import org.bitrepository.access.getaudittrails.AuditTrailClient;
 import org.bitrepository.access.getaudittrails.AuditTrailQuery;
 import org.bitrepository.access.getaudittrails.client.AuditTrailResult;
@@ -77,21 +79,38 @@ public class AuditCollectorTest extends ExtendedTestCase {
         AlarmDispatcher alarmDispatcher = mock(AlarmDispatcher.class);
         AuditTrailCollector collector = new AuditTrailCollector(settings, client, store, alarmDispatcher);
         
-        ArgumentCaptor<EventHandler> eventHandlerCaptor = ArgumentCaptor.forClass(EventHandler.class);
-        verify(client, timeout(3000).times(1)).getAuditTrails(eq(TEST_COLLECTION), any(AuditTrailQuery[].class),
-                isNull(String.class), isNull(String.class), eventHandlerCaptor.capture(), any(String.class));
-        EventHandler eventHandler = eventHandlerCaptor.getValue(); 
-        
-        Assert.assertNotNull(eventHandler, "Should have an event handler");
-        eventHandler.handleEvent(new AuditTrailResult(DEFAULT_CONTRIBUTOR, TEST_COLLECTION, new ResultingAuditTrails(), false));
-        eventHandler.handleEvent(new CompleteEvent(TEST_COLLECTION, null));
-        
-        verify(client, timeout(3000).times(2)).getAuditTrails(eq(TEST_COLLECTION), any(AuditTrailQuery[].class),
-                isNull(String.class), isNull(String.class), eventHandlerCaptor.capture(), any(String.class));
-        eventHandler = eventHandlerCaptor.getValue();
-        eventHandler.handleEvent(new AuditTrailResult(DEFAULT_CONTRIBUTOR, TEST_COLLECTION, new ResultingAuditTrails(), false));
-        eventHandler.handleEvent(new CompleteEvent(TEST_COLLECTION, null));
+        addStep("Await the first collection", "Each contributor is requested once");
+        int numberOfContributors = SettingsUtils.getAuditContributorsForCollection(TEST_COLLECTION).size();
+        answerCollection(client, 1, numberOfContributors);
+
+        addStep("Await the next collection", "Each contributor is requested again");
+        answerCollection(client, 2, numberOfContributors);
         
         collector.close();
     }
+
+    /**
+     * Awaits the requests of a collection, which are made to each contributor in parallel, and answers each of 
+     * them with an empty result from the requested contributor.
+     * @param client The mocked client.
+     * @param collectionNumber The number of the collection, counting from 1.
+     * @param numberOfContributors The number of contributors requested in each collection.
+     */
+    private void answerCollection(AuditTrailClient client, int collectionNumber, int numberOfContributors) {
+        ArgumentCaptor<AuditTrailQuery[]> queryCaptor = ArgumentCaptor.forClass(AuditTrailQuery[].class);
+        ArgumentCaptor<EventHandler> eventHandlerCaptor = ArgumentCaptor.forClass(EventHandler.class);
+        verify(client, timeout(3000).times(collectionNumber * numberOfContributors)).getAuditTrails(
+                eq(TEST_COLLECTION), queryCaptor.capture(), isNull(String.class), isNull(String.class), 
+                eventHandlerCaptor.capture(), any(String.class));
+        List<AuditTrailQuery[]> queries = queryCaptor.getAllValues();
+        List<EventHandler> eventHandlers = eventHandlerCaptor.getAllValues();
+        Assert.assertEquals(queries.size(), collectionNumber * numberOfContributors);
+        for(int i = queries.size() - numberOfContributors; i < queries.size(); i++) {
+            EventHandler eventHandler = eventHandlers.get(i);
+            Assert.assertNotNull(eventHandler, "Should have an event handler");
+            eventHandler.handleEvent(new AuditTrailResult(queries.get(i)[0].getComponentID(), TEST_COLLECTION, 
+                    new ResultingAuditTrails(), false));
+            eventHandler.handleEvent(new CompleteEvent(TEST_COLLECTION, null));
+        }
+    }
 }
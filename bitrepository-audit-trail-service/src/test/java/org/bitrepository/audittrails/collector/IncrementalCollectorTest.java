@@ -26,6 +26,7 @@ import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.verifyZeroInteractions;
@@ -35,6 +36,9 @@ import java.math.BigInteger;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.xml.datatype.XMLGregorianCalendar;
 
@@ -83,43 +87,37 @@ public class IncrementalCollectorTest extends ExtendedTestCase{
         AlarmDispatcher alarmDispatcher = mock(AlarmDispatcher.class);
         
         addStep("Start a collection with two contributors", "A call should be made to the store to find out which " +
-            "sequence number to continue from");
+            "sequence number to continue from, and a request should be made to each contributor");
         IncrementalCollector collector = new IncrementalCollector(TEST_COLLECTION, "Client1", client, store,
                 1, alarmDispatcher);
-        Collection<String> contributors = Arrays.asList("Contributor1", "Contributors2");
+        Collection<String> contributors = Arrays.asList(TEST_CONTRIBUTOR1, TEST_CONTRIBUTOR2);
         CollectionRunner collectionRunner = new CollectionRunner(collector, contributors);
         Thread t = threadFactory.newThread(collectionRunner);
         t.start();
         
-        ArgumentCaptor<EventHandler> eventHandlerCaptor = ArgumentCaptor.forClass(EventHandler.class);
-        verify(client, timeout(3000).times(1)).getAuditTrails(eq(TEST_COLLECTION), any(AuditTrailQuery[].class),
-                isNull(String.class), isNull(String.class), eventHandlerCaptor.capture(), any(String.class));
+        Map<String, EventHandler> eventHandlers = getEventHandlers(client, contributors.size());
         verify(store, timeout(3000).times(contributors.size()))
             .largestSequenceNumber(any(String.class), eq(TEST_COLLECTION));
 
         addStep("Send a audit trail result from contributor 1", "A AddAuditTrails call should be made to the store");
-        EventHandler eventHandler = eventHandlerCaptor.getValue();
-        eventHandler.handleEvent(new AuditTrailResult(TEST_CONTRIBUTOR1, TEST_COLLECTION, 
+        eventHandlers.get(TEST_CONTRIBUTOR1).handleEvent(new AuditTrailResult(TEST_CONTRIBUTOR1, TEST_COLLECTION, 
                 getResultingAuditTrailsWithSingleAudit(TEST_CONTRIBUTOR1, new BigInteger("1")), false));
+        eventHandlers.get(TEST_CONTRIBUTOR1).handleEvent(new CompleteEvent(TEST_COLLECTION, null));
+        verify(store, timeout(3000).times(1))
+            .addAuditTrails(any(AuditTrailEvents.class), eq(TEST_COLLECTION), eq(TEST_CONTRIBUTOR1));
         
         addStep("Send a audit trail result from contributor 2", "A AddAuditTrails call should be made to the " +
                 "store, and the collector should finish");
-        eventHandler.handleEvent(new AuditTrailResult(TEST_CONTRIBUTOR2, TEST_COLLECTION, 
+        eventHandlers.get(TEST_CONTRIBUTOR2).handleEvent(new AuditTrailResult(TEST_CONTRIBUTOR2, TEST_COLLECTION, 
                 getResultingAuditTrailsWithSingleAudit(TEST_CONTRIBUTOR2, new BigInteger("1")), false));
-        eventHandler.handleEvent(new CompleteEvent(TEST_COLLECTION, null));
-        
-        verify(store, timeout(3000).times(contributors.size()))
-        .largestSequenceNumber(any(String.class), eq(TEST_COLLECTION));
-        
-        Thread.sleep(100);
-        
-        verify(store, timeout(3000).times(1))
-            .addAuditTrails(any(AuditTrailEvents.class), eq(TEST_COLLECTION), eq(TEST_CONTRIBUTOR1));
+        eventHandlers.get(TEST_CONTRIBUTOR2).handleEvent(new CompleteEvent(TEST_COLLECTION, null));
         verify(store, timeout(3000).times(1))
             .addAuditTrails(any(AuditTrailEvents.class), eq(TEST_COLLECTION), eq(TEST_CONTRIBUTOR2));
         
+        Thread.sleep(100);
         Assert.assertTrue(collectionRunner.finished, "The collector should have finished after the complete event, as " +
             "no partialResults where received");
+        Assert.assertEquals(collector.getNumberOfCollectedAudits(), 2);
         verifyNoMoreInteractions(store);
         verifyNoMoreInteractions(client);
         verifyZeroInteractions(alarmDispatcher);
@@ -131,10 +129,7 @@ public class IncrementalCollectorTest extends ExtendedTestCase{
             "requests because of MaxNumberOfResults limits.");
         AuditTrailClient client = mock(AuditTrailClient.class);
         AuditTrailStore store = mock(AuditTrailStore.class);
-        
-        long callsToLargestSequenceNumber = 0L;
-        when(store.largestSequenceNumber(any(String.class), eq(TEST_COLLECTION)))
-            .thenReturn(callsToLargestSequenceNumber++);
+        when(store.largestSequenceNumber(any(String.class), eq(TEST_COLLECTION))).thenReturn(0L);
         
         AlarmDispatcher alarmDispatcher = mock(AlarmDispatcher.class);
 
@@ -149,19 +144,16 @@ public class IncrementalCollectorTest extends ExtendedTestCase{
      
         verify(store, timeout(3000).times(contributors.size()))
             .largestSequenceNumber(any(String.class), eq(TEST_COLLECTION));
-        
-        ArgumentCaptor<EventHandler> eventHandlerCaptor = ArgumentCaptor.forClass(EventHandler.class);
-        verify(client, timeout(3000).times(1)).getAuditTrails(eq(TEST_COLLECTION), any(AuditTrailQuery[].class),
-                isNull(String.class), isNull(String.class), eventHandlerCaptor.capture(), any(String.class));
-        EventHandler eventHandler = eventHandlerCaptor.getValue();
+        Map<String, EventHandler> eventHandlers = getEventHandlers(client, contributors.size());
         
         addStep("Send a audit trail result from contributor 1 and 2 with the PartialResults boolean set to true",
             "Two AddAuditTrails calls should be made, but the collector should not have finished");
-        eventHandler.handleEvent(new AuditTrailResult(TEST_CONTRIBUTOR1, TEST_COLLECTION, 
+        eventHandlers.get(TEST_CONTRIBUTOR1).handleEvent(new AuditTrailResult(TEST_CONTRIBUTOR1, TEST_COLLECTION, 
                 getResultingAuditTrailsWithSingleAudit(TEST_CONTRIBUTOR1, new BigInteger("1")), true));
-        eventHandler.handleEvent(new AuditTrailResult(TEST_CONTRIBUTOR2, TEST_COLLECTION, 
+        eventHandlers.get(TEST_CONTRIBUTOR1).handleEvent(new CompleteEvent(TEST_COLLECTION, null));
+        eventHandlers.get(TEST_CONTRIBUTOR2).handleEvent(new AuditTrailResult(TEST_CONTRIBUTOR2, TEST_COLLECTION, 
                 getResultingAuditTrailsWithSingleAudit(TEST_CONTRIBUTOR2, new BigInteger("1")), true));
-        eventHandler.handleEvent(new CompleteEvent(TEST_COLLECTION, null));
+        eventHandlers.get(TEST_CONTRIBUTOR2).handleEvent(new CompleteEvent(TEST_COLLECTION, null));
         
         verify(store, timeout(3000).times(1))
             .addAuditTrails(any(AuditTrailEvents.class), eq(TEST_COLLECTION), eq(TEST_CONTRIBUTOR1));
@@ -171,20 +163,26 @@ public class IncrementalCollectorTest extends ExtendedTestCase{
         Assert.assertTrue(!collectionRunner.finished, "The collector should not have finished after the complete " +
             "event, as partialResults where received");
 
+        addStep("Verify the next requests to the contributors", "The requests should continue from the received " +
+            "sequence number, without asking the store");
+        eventHandlers = getEventHandlers(client, contributors.size() * 2);
+        ArgumentCaptor<AuditTrailQuery[]> queryCaptor = ArgumentCaptor.forClass(AuditTrailQuery[].class);
+        verify(client, times(contributors.size() * 2)).getAuditTrails(eq(TEST_COLLECTION), queryCaptor.capture(),
+                isNull(String.class), isNull(String.class), any(EventHandler.class), any(String.class));
+        List<AuditTrailQuery[]> queries = queryCaptor.getAllValues();
+        for(AuditTrailQuery[] query : queries.subList(contributors.size(), queries.size())) {
+            Assert.assertEquals(query[0].getMinSequenceNumber(), Long.valueOf(2));
+        }
+        verify(store, times(contributors.size())).largestSequenceNumber(any(String.class), eq(TEST_COLLECTION));
+
         addStep("Send another audit trail result from the contributors, now with PartialResults set to false",
             "Two more AddAuditTrails calls should be made and the collector should finished");
-        
-        verify(store, timeout(3000).times(contributors.size() * 2))
-            .largestSequenceNumber(any(String.class), eq(TEST_COLLECTION));
-        
-        verify(client, timeout(3000).times(2)).getAuditTrails(eq(TEST_COLLECTION), any(AuditTrailQuery[].class),
-                isNull(String.class), isNull(String.class), eventHandlerCaptor.capture(), any(String.class));
-        eventHandler = eventHandlerCaptor.getValue();
-        eventHandler.handleEvent(new AuditTrailResult(TEST_CONTRIBUTOR1, TEST_COLLECTION, 
+        eventHandlers.get(TEST_CONTRIBUTOR1).handleEvent(new AuditTrailResult(TEST_CONTRIBUTOR1, TEST_COLLECTION, 
                 getResultingAuditTrailsWithSingleAudit(TEST_CONTRIBUTOR1, new BigInteger("2")), false));
-        eventHandler.handleEvent(new AuditTrailResult(TEST_CONTRIBUTOR2, TEST_COLLECTION, 
+        eventHandlers.get(TEST_CONTRIBUTOR1).handleEvent(new CompleteEvent(TEST_COLLECTION, null));
+        eventHandlers.get(TEST_CONTRIBUTOR2).handleEvent(new AuditTrailResult(TEST_CONTRIBUTOR2, TEST_COLLECTION, 
                 getResultingAuditTrailsWithSingleAudit(TEST_CONTRIBUTOR2, new BigInteger("2")), false));
-        eventHandler.handleEvent(new CompleteEvent(TEST_COLLECTION, null));
+        eventHandlers.get(TEST_CONTRIBUTOR2).handleEvent(new CompleteEvent(TEST_COLLECTION, null));
         
         verify(store, timeout(3000).times(2))
             .addAuditTrails(any(AuditTrailEvents.class), eq(TEST_COLLECTION), eq(TEST_CONTRIBUTOR1));
@@ -208,10 +206,7 @@ public class IncrementalCollectorTest extends ExtendedTestCase{
         addStep("", "");
         AuditTrailClient client = mock(AuditTrailClient.class);
         AuditTrailStore store = mock(AuditTrailStore.class);
-        
-        long callsToLargestSequenceNumber = 0L;
-        when(store.largestSequenceNumber(any(String.class), eq(TEST_COLLECTION)))
-            .thenReturn(callsToLargestSequenceNumber++);
+        when(store.largestSequenceNumber(any(String.class), eq(TEST_COLLECTION))).thenReturn(0L);
         
         AlarmDispatcher alarmDispatcher = mock(AlarmDispatcher.class);
 
@@ -225,49 +220,42 @@ public class IncrementalCollectorTest extends ExtendedTestCase{
         Thread t = threadFactory.newThread(collectionRunner);
         t.start();
 
-        ArgumentCaptor<EventHandler> eventHandlerCaptor = ArgumentCaptor.forClass(EventHandler.class);
-        verify(client, timeout(3000).times(1)).getAuditTrails(eq(TEST_COLLECTION), any(AuditTrailQuery[].class),
-                isNull(String.class), isNull(String.class), eventHandlerCaptor.capture(), any(String.class));
-        
+        Map<String, EventHandler> eventHandlers = getEventHandlers(client, contributors.size());
         verify(store, timeout(3000).times(contributors.size()))
             .largestSequenceNumber(any(String.class), eq(TEST_COLLECTION));
         
         addStep("Send a audit trail result from contributor 2 with the PartialResults boolean set to true " +
             "and a failed event from contributor 1",
-            "Only one AddAuditTrails calls should be made, and the collector should not have finished");
-        EventHandler eventHandler = eventHandlerCaptor.getValue();
-        eventHandler.handleEvent(new ContributorFailedEvent(TEST_CONTRIBUTOR1, TEST_COLLECTION, ResponseCode.REQUEST_NOT_SUPPORTED));
-        eventHandler.handleEvent(new AuditTrailResult(TEST_CONTRIBUTOR2, TEST_COLLECTION, 
+            "Only one AddAuditTrails calls should be made, an alarm should be sent and the collector should not " +
+            "have finished");
+        eventHandlers.get(TEST_CONTRIBUTOR1).handleEvent(
+                new ContributorFailedEvent(TEST_CONTRIBUTOR1, TEST_COLLECTION, ResponseCode.REQUEST_NOT_SUPPORTED));
+        eventHandlers.get(TEST_CONTRIBUTOR1).handleEvent(new OperationFailedEvent(TEST_COLLECTION, "", null));
+        eventHandlers.get(TEST_CONTRIBUTOR2).handleEvent(new AuditTrailResult(TEST_CONTRIBUTOR2, TEST_COLLECTION, 
                 getResultingAuditTrailsWithSingleAudit(TEST_CONTRIBUTOR2, new BigInteger("1")), true));
+        eventHandlers.get(TEST_CONTRIBUTOR2).handleEvent(new CompleteEvent(TEST_COLLECTION, null));
         
         verify(store, timeout(3000).times(1))
             .addAuditTrails(any(AuditTrailEvents.class), eq(TEST_COLLECTION), eq(TEST_CONTRIBUTOR2));
-        
-        eventHandler.handleEvent(new OperationFailedEvent(TEST_COLLECTION, "", null));
+        verify(alarmDispatcher, timeout(3000)).error(any(Alarm.class));
         Assert.assertFalse(collectionRunner.finished, "The collector should not have finished after the complete " +
             "event, as partialResults where received");
 
         addStep("Send another audit trail result from contributor 2 with PartialResults set to false",
             "One more AddAuditTrails calls should be made and the collector should finished");
-        verify(client, timeout(3000).times(2)).getAuditTrails(eq(TEST_COLLECTION), any(AuditTrailQuery[].class),
-                isNull(String.class), isNull(String.class), eventHandlerCaptor.capture(), any(String.class));
-        eventHandler = eventHandlerCaptor.getValue();
-        
-        verify(store, timeout(3000).times(contributors.size() + 1))
-            .largestSequenceNumber(any(String.class), eq(TEST_COLLECTION));
-        
-        eventHandler.handleEvent(new AuditTrailResult(TEST_CONTRIBUTOR2, TEST_COLLECTION, 
+        eventHandlers = getEventHandlers(client, contributors.size() + 1);
+        eventHandlers.get(TEST_CONTRIBUTOR2).handleEvent(new AuditTrailResult(TEST_CONTRIBUTOR2, TEST_COLLECTION, 
                 getResultingAuditTrailsWithSingleAudit(TEST_CONTRIBUTOR2, new BigInteger("2")), false));
-        
-        eventHandler.handleEvent(new CompleteEvent(TEST_COLLECTION, null));
+        eventHandlers.get(TEST_CONTRIBUTOR2).handleEvent(new CompleteEvent(TEST_COLLECTION, null));
         verify(store, timeout(3000).times(2))
             .addAuditTrails(any(AuditTrailEvents.class), eq(TEST_COLLECTION), eq(TEST_CONTRIBUTOR2));
-        verify(alarmDispatcher, timeout(3000)).error(any(Alarm.class));
         
         Thread.sleep(100);
         Assert.assertTrue(collectionRunner.finished);
+        verify(store, times(contributors.size())).largestSequenceNumber(any(String.class), eq(TEST_COLLECTION));
         verifyNoMoreInteractions(store);
         verifyNoMoreInteractions(client);
+        verifyNoMoreInteractions(alarmDispatcher);
     }
 
     @Test(groups = {"regressiontest"})
@@ -278,10 +266,7 @@ public class IncrementalCollectorTest extends ExtendedTestCase{
         addStep("", "");
         AuditTrailClient client = mock(AuditTrailClient.class);
         AuditTrailStore store = mock(AuditTrailStore.class);
-        
-        long callsToLargestSequenceNumber = 0L;
-        when(store.largestSequenceNumber(any(String.class), eq(TEST_COLLECTION)))
-            .thenReturn(callsToLargestSequenceNumber++);
+        when(store.largestSequenceNumber(any(String.class), eq(TEST_COLLECTION))).thenReturn(0L);
         
         AlarmDispatcher alarmDispatcher = mock(AlarmDispatcher.class);
 
@@ -294,17 +279,13 @@ public class IncrementalCollectorTest extends ExtendedTestCase{
         CollectionRunner collectionRunner = new CollectionRunner(collector, contributors);
         Thread t = threadFactory.newThread(collectionRunner);
         t.start();
-        Thread.sleep(100);
 
-        ArgumentCaptor<EventHandler> eventHandlerCaptor = ArgumentCaptor.forClass(EventHandler.class);
-        verify(client, timeout(3000).times(1)).getAuditTrails(eq(TEST_COLLECTION), any(AuditTrailQuery[].class),
-                isNull(String.class), isNull(String.class), eventHandlerCaptor.capture(), any(String.class));
+        Map<String, EventHandler> eventHandlers = getEventHandlers(client, contributors.size());
 
-        addStep("Send an auditTrail result from contributor 1 with a wrong collection id.",
+        addStep("Send an auditTrail result from contributor 2 with a wrong collection id.",
                 "It is not added to the audit store");
-        EventHandler eventHandler = eventHandlerCaptor.getValue();
-        eventHandler.handleEvent(new AuditTrailResult(TEST_CONTRIBUTOR2, FALSE_COLLECTION, new ResultingAuditTrails(), 
-                true));
+        eventHandlers.get(TEST_CONTRIBUTOR2).handleEvent(new AuditTrailResult(TEST_CONTRIBUTOR2, FALSE_COLLECTION, 
+                new ResultingAuditTrails(), true));
         
         verify(store, timeout(3000).times(contributors.size()))
             .largestSequenceNumber(any(String.class), eq(TEST_COLLECTION));
@@ -314,6 +295,29 @@ public class IncrementalCollectorTest extends ExtendedTestCase{
         verifyNoMoreInteractions(store);
     }
     
+    /**
+     * Waits for the given number of audit trail requests, and finds the event handler of the latest request to 
+     * each contributor.
+     * @param client The mocked client.
+     * @param numberOfRequests The number of requests to wait for.
+     * @return The event handlers for the latest requests, mapped by the contributor they were sent to.
+     */
+    private Map<String, EventHandler> getEventHandlers(AuditTrailClient client, int numberOfRequests) {
+        ArgumentCaptor<AuditTrailQuery[]> queryCaptor = ArgumentCaptor.forClass(AuditTrailQuery[].class);
+        ArgumentCaptor<EventHandler> eventHandlerCaptor = ArgumentCaptor.forClass(EventHandler.class);
+        verify(client, timeout(3000).times(numberOfRequests)).getAuditTrails(eq(TEST_COLLECTION), 
+                queryCaptor.capture(), isNull(String.class), isNull(String.class), eventHandlerCaptor.capture(), 
+                any(String.class));
+        Map<String, EventHandler> eventHandlers = new HashMap<String, EventHandler>();
+        List<AuditTrailQuery[]> queries = queryCaptor.getAllValues();
+        List<EventHandler> handlers = eventHandlerCaptor.getAllValues();
+        for(int i = 0; i < queries.size(); i++) {
+            Assert.assertEquals(queries.get(i).length, 1, "Each request should only be for a single contributor");
+            eventHandlers.put(queries.get(i)[0].getComponentID(), handlers.get(i));
+        }
+        return eventHandlers;
+    }
+    
     private ResultingAuditTrails getResultingAuditTrailsWithSingleAudit(String contributor, BigInteger seq) {
         ResultingAuditTrails rats = new ResultingAuditTrails();
         AuditTrailEvents ates = new AuditTrailEvents();
@@ -120,7 +120,7 @@ public class LocalAuditPreservationTest extends ExtendedTestCase {
             }
         }).when(store).getAuditTrailsByIterator(anyString(), anyString(), anyString(), any(Long.class), 
                 any(Long.class), anyString(), any(FileAction.class), any(Date.class), any(Date.class), 
-                anyString(), anyString());
+                anyString(), anyString(), any(Long.class));
         
         preserver.start();
         
@@ -134,7 +134,7 @@ public class LocalAuditPreservationTest extends ExtendedTestCase {
         // run the preserver/packer...
         verify(store, times(2)).getPreservationSequenceNumber(PILLARID, collectionID);
         verify(store).getAuditTrailsByIterator(null, null, PILLARID, 0L, 
-                null, null, null, null, null, null, null);
+                null, null, null, null, null, null, null, null);
         verify(iterator).getNextAuditTrailEvent();
         //Assert.assertEquals(store.getCallsToGetAuditTrails(), settings.getRepositorySettings().getGetAuditTrailSettings().getNonPillarContributorIDs().size());
         
@@ -175,7 +175,7 @@ public class LocalAuditPreservationTest extends ExtendedTestCase {
             }
         }).when(store).getAuditTrailsByIterator(anyString(), anyString(), anyString(), any(Long.class),
                 any(Long.class), anyString(), any(FileAction.class), any(Date.class), any(Date.class),
-                anyString(), anyString());
+                anyString(), anyString(), any(Long.class));
         
         when(fileExchange.getURL(anyString())).thenReturn(testUploadUrl);
                 
@@ -184,7 +184,7 @@ public class LocalAuditPreservationTest extends ExtendedTestCase {
         // run the preserver/packer...
         verify(store, times(2)).getPreservationSequenceNumber(PILLARID, collectionID);
         verify(store).getAuditTrailsByIterator(null, collectionID, PILLARID, 0L,
-                null, null, null, null, null, null, null);
+                null, null, null, null, null, null, null, null);
 
         assertEquals(client.getCallsToPutFile(), 1);
 
@@ -89,86 +89,86 @@ public class AuditDatabaseTest extends ExtendedTestCase {
         
         addStep("Extract the audit trails", "");
         List<AuditTrailEvent> res = getEventsFromIterator(database.getAuditTrailsByIterator(null, null, null, null, 
-                null, null, null, null, null, null, null));
+                null, null, null, null, null, null, null, null));
         Assert.assertEquals(res.size(), 2, res.toString());
         
         addStep("Test the extraction of FileID", "Should be able to extract the audit of each file individually.");
         res = getEventsFromIterator(database.getAuditTrailsByIterator(fileID, null, null, null, null, null, null,
-                null, null, null, null));
+                null, null, null, null, null));
         Assert.assertEquals(res.size(), 1, res.toString());
         Assert.assertEquals(res.get(0).getFileID(), fileID);
         
         res = getEventsFromIterator(database.getAuditTrailsByIterator(fileID2, null, null, null, null, null, null,
-                null, null, null, null));
+                null, null, null, null, null));
         Assert.assertEquals(res.size(), 1, res.toString());
         Assert.assertEquals(res.get(0).getFileID(), fileID2);
         
         addStep("Test the extraction of CollectionID", "Only results when the defined collection is used");
         res = getEventsFromIterator(database.getAuditTrailsByIterator(null, collectionID, null, null, null, null, null,
-                null, null, null, null));
+                null, null, null, null, null));
         Assert.assertEquals(res.size(), 2, res.toString());
         
         res = getEventsFromIterator(database.getAuditTrailsByIterator(null, 
                 "NOT-THE-CORRECT-COLLECTION-ID" + System.currentTimeMillis(), null, null, null, null, null, 
-                null, null, null, null));
+                null, null, null, null, null));
         Assert.assertEquals(res.size(), 0, res.toString());
         
         addStep("Perform extraction based on the component id.", "");
         res = getEventsFromIterator(database.getAuditTrailsByIterator(null, null, pillarID, null, null, null, null,
-                null, null, null, null));
+                null, null, null, null, null));
         Assert.assertEquals(res.size(), 2, res.toString());
         res = getEventsFromIterator(database.getAuditTrailsByIterator(null, null, "NO COMPONENT", null, null, null, null, 
-                null, null, null, null));
+                null, null, null, null, null));
         Assert.assertEquals(res.size(), 0, res.toString());
         
         addStep("Perform extraction based on the sequence number restriction", 
                 "Should be possible to have both lower and upper sequence number restrictions.");
         res = getEventsFromIterator(database.getAuditTrailsByIterator(null, null, null, 5L, null, null, null, null, 
-                null, null, null));
+                null, null, null, null));
         Assert.assertEquals(res.size(), 1, res.toString());
         Assert.assertEquals(res.get(0).getFileID(), fileID2);
         res = getEventsFromIterator(database.getAuditTrailsByIterator(null, null, null, null, 5L, null, null, null, 
-                null, null, null));
+                null, null, null, null));
         Assert.assertEquals(res.size(), 1, res.toString());
         Assert.assertEquals(res.get(0).getFileID(), fileID);
         
         addStep("Perform extraction based on actor id restriction.", 
                 "Should be possible to restrict on the id of the actor.");
         res = getEventsFromIterator(database.getAuditTrailsByIterator(null, null, null, null, null, actor1, null, 
-                null, null, null, null));
+                null, null, null, null, null));
         Assert.assertEquals(res.size(), 1, res.toString());
         Assert.assertEquals(res.get(0).getActorOnFile(), actor1);
         res = getEventsFromIterator(database.getAuditTrailsByIterator(null, null, null, null, null, actor2, null, 
-                null, null, null, null));
+                null, null, null, null, null));
         Assert.assertEquals(res.size(), 1, res.toString());
         Assert.assertEquals(res.get(0).getActorOnFile(), actor2);
         
         addStep("Perform extraction based on operation restriction.", 
                 "Should be possible to restrict on the FileAction operation.");
         res = getEventsFromIterator(database.getAuditTrailsByIterator(null, null, null, null, null, null, 
-                FileAction.INCONSISTENCY, null, null, null, null));
+                FileAction.INCONSISTENCY, null, null, null, null, null));
         Assert.assertEquals(res.size(), 1, res.toString());
         Assert.assertEquals(res.get(0).getActionOnFile(), FileAction.INCONSISTENCY);
         res = getEventsFromIterator(database.getAuditTrailsByIterator(null, null, null, null, null, null, 
-                FileAction.FAILURE, null, null, null, null));
+                FileAction.FAILURE, null, null, null, null, null));
         Assert.assertEquals(res.size(), 1, res.toString());
         Assert.assertEquals(res.get(0).getActionOnFile(), FileAction.FAILURE);
         
         addStep("Perform extraction based on date restriction.", 
                 "Should be possible to restrict on the date of the audit.");
         res = getEventsFromIterator(database.getAuditTrailsByIterator(null, null, null, null, null, null, null, 
-                restrictionDate, null, null, null));
+                restrictionDate, null, null, null, null));
         Assert.assertEquals(res.size(), 1, res.toString());
         Assert.assertEquals(res.get(0).getFileID(), fileID2);
         res = getEventsFromIterator(database.getAuditTrailsByIterator(null, null, null, null, null, null, null, 
-                null, restrictionDate, null, null));
+                null, restrictionDate, null, null, null));
         Assert.assertEquals(res.size(), 1, res.toString());
         Assert.assertEquals(res.get(0).getFileID(), fileID);
 
         addStep("Perform extraction based on fingerprint restriction.", 
                 "Should be possible to restrict on the fingerprint of the audit.");
         res = getEventsFromIterator(database.getAuditTrailsByIterator(null, null, null, null, null, null, null, 
-                null, null, fingerprint1, null));
+                null, null, fingerprint1, null, null));
         Assert.assertEquals(res.size(), 1, res.toString());
         Assert.assertEquals(res.get(0).getFileID(), fileID);
         Assert.assertEquals(res.get(0).getCertificateID(), fingerprint1);
@@ -176,11 +176,18 @@ public class AuditDatabaseTest extends ExtendedTestCase {
         addStep("Perform extraction based on operationID restriction.", 
                 "Should be possible to restrict on the operationID of the audit.");
                 res = getEventsFromIterator(database.getAuditTrailsByIterator(null, null, null, null, null, null, null, 
-                null, null, null, operationID2));
+                null, null, null, operationID2, null));
         Assert.assertEquals(res.size(), 1, res.toString());
         Assert.assertEquals(res.get(0).getFileID(), fileID2);
         Assert.assertEquals(res.get(0).getOperationID(), operationID2);
         
+        addStep("Perform extraction with a maximum number of results.", 
+                "Should only deliver the oldest audit trail.");
+        res = getEventsFromIterator(database.getAuditTrailsByIterator(null, null, null, null, null, null, null, 
+                null, null, null, null, 1L));
+        Assert.assertEquals(res.size(), 1, res.toString());
+        Assert.assertEquals(res.get(0).getFileID(), fileID);
+        
         database.close();
     }
 
@@ -236,13 +243,13 @@ public class AuditDatabaseTest extends ExtendedTestCase {
         database.addAuditTrails(events, collectionID, pillarID);
         
         List<AuditTrailEvent> res = getEventsFromIterator(database.getAuditTrailsByIterator("summertime", null, null, null, 
-                null, null, null, null, null, null, null));
+                null, null, null, null, null, null, null, null));
         Assert.assertEquals(res.size(), 1, res.toString());
         Assert.assertEquals(
                 CalendarUtils.convertFromXMLGregorianCalendar(res.get(0).getActionDateTime()), summertimeUnix);
         
         res = getEventsFromIterator(database.getAuditTrailsByIterator("wintertime", null, null, null, null, null, null, 
-                null, null, null, null));
+                null, null, null, null, null));
         Assert.assertEquals(res.size(), 1, res.toString());
         Assert.assertEquals(
                 CalendarUtils.convertFromXMLGregorianCalendar(res.get(0).getActionDateTime()), wintertimeUnix);
@@ -0,0 +1,124 @@
+/*
+ * #%L
+ * Bitrepository Benchmarks
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.benchmark;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+import org.bitrepository.common.settings.Settings;
+import org.bitrepository.protocol.security.BasicMessageAuthenticator;
+import org.bitrepository.protocol.security.BasicMessageSigner;
+import org.bitrepository.protocol.security.BasicOperationAuthorizor;
+import org.bitrepository.protocol.security.BasicSecurityManager;
+import org.bitrepository.protocol.security.PermissionStore;
+import org.bitrepository.protocol.security.SecurityModuleConstants;
+import org.bitrepository.protocol.security.SecurityTestConstants;
+import org.bitrepository.settings.repositorysettings.Certificate;
+import org.bitrepository.settings.repositorysettings.ComponentIDs;
+import org.bitrepository.settings.repositorysettings.Operation;
+import org.bitrepository.settings.repositorysettings.OperationPermission;
+import org.bitrepository.settings.repositorysettings.Permission;
+import org.bitrepository.settings.repositorysettings.PermissionSet;
+import org.bouncycastle.cms.SignerId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks the signing and the authentication of messages, which is performed for every message sent and
+ * received, when message authentication is required.
+ * Uses the test certificate and key of the security tests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BasicSecurityManagerBenchmark {
+    /** The name of the key file in the test resources.*/
+    private static final String KEY_FILE = "client100-certkey.pem";
+
+    private BasicSecurityManager securityManager;
+    private String message;
+    private String signature;
+
+    @Setup
+    public void setup() throws Exception {
+        Settings settings = BenchmarkEnvironment.loadSettings(getClass().getSimpleName());
+        settings.getRepositorySettings().getProtocolSettings().setRequireMessageAuthentication(true);
+        settings.getRepositorySettings().getProtocolSettings().setRequireOperationAuthorization(true);
+
+        PermissionStore permissionStore = new PermissionStore();
+        securityManager = new BasicSecurityManager(settings.getRepositorySettings(), extractKeyFile(),
+                new BasicMessageAuthenticator(permissionStore), new BasicMessageSigner(),
+                new BasicOperationAuthorizor(permissionStore), permissionStore,
+                SecurityTestConstants.getComponentID());
+        permissionStore.loadPermissions(getSigningCertPermission(), SecurityTestConstants.getComponentID());
+
+        message = SecurityTestConstants.getTestData();
+        signature = securityManager.signMessage(message);
+    }
+
+    @Benchmark
+    public String sign() throws Exception {
+        return securityManager.signMessage(message);
+    }
+
+    @Benchmark
+    public SignerId authenticate() throws Exception {
+        return securityManager.authenticateMessage(message, signature);
+    }
+
+    /**
+     * @return The path to a copy of the key file from the test resources, as the security manager needs a file.
+     */
+    private String extractKeyFile() throws Exception {
+        File keyFile = new File(BenchmarkEnvironment.BENCHMARK_DIR, KEY_FILE);
+        keyFile.getParentFile().mkdirs();
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(KEY_FILE)) {
+            Files.copy(in, keyFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return keyFile.getPath();
+    }
+
+    private PermissionSet getSigningCertPermission() throws Exception {
+        ComponentIDs allowedUsers = new ComponentIDs();
+        allowedUsers.getIDs().add(SecurityTestConstants.getAllowedCertificateUser());
+        Certificate signingCert = new Certificate();
+        signingCert.setCertificateData(SecurityTestConstants.getSigningCertificate()
+                .getBytes(SecurityModuleConstants.defaultEncodingType));
+        signingCert.setAllowedCertificateUsers(allowedUsers);
+        OperationPermission opPerm = new OperationPermission();
+        opPerm.setOperation(Operation.ALL);
+        Permission signingCertPerm = new Permission();
+        signingCertPerm.setCertificate(signingCert);
+        signingCertPerm.getOperationPermission().add(opPerm);
+        PermissionSet permissions = new PermissionSet();
+        permissions.getPermission().add(signingCertPerm);
+        return permissions;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * #%L
+ * Bitrepository Benchmarks
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.benchmark;
+
+import org.bitrepository.common.settings.Settings;
+import org.bitrepository.common.settings.TestSettingsProvider;
+import org.bitrepository.common.utils.SettingsUtils;
+import org.bitrepository.service.database.DerbyDatabaseDestroyer;
+import org.bitrepository.settings.referencesettings.DatabaseSpecifics;
+
+/**
+ * Prepares the settings and the embedded databases used by the benchmarks.
+ * The benchmarks use the development settings from the test resources, with the data placed below
+ * {@link #BENCHMARK_DIR}.
+ */
+final class BenchmarkEnvironment {
+    /** The directory for the databases and files created by the benchmarks.*/
+    static final String BENCHMARK_DIR = "target/benchmark/";
+
+    private BenchmarkEnvironment() {}
+
+    /**
+     * @param componentID The ID of the benchmarked component.
+     * @return The freshly loaded development settings, which are also used for SettingsUtils.
+     */
+    static Settings loadSettings(String componentID) {
+        Settings settings = TestSettingsProvider.reloadSettings(componentID);
+        SettingsUtils.initialize(settings);
+        return settings;
+    }
+
+    /**
+     * Moves an embedded Derby database to the benchmark directory, and removes any earlier database found there.
+     * @param databaseSpecifics The specifics of the database. Updated with the new location.
+     * @param name The name of the database.
+     */
+    static void prepareDerbyDatabase(DatabaseSpecifics databaseSpecifics, String name) {
+        databaseSpecifics.setDatabaseURL("jdbc:derby:" + BENCHMARK_DIR + name);
+        DerbyDatabaseDestroyer.deleteDatabase(databaseSpecifics);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * #%L
+ * Bitrepository Benchmarks
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.benchmark;
+
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.bitrepository.common.settings.Settings;
+import org.bitrepository.pillar.common.ChecksumDatabaseCreator;
+import org.bitrepository.pillar.store.checksumdatabase.ChecksumDAO;
+import org.bitrepository.pillar.store.checksumdatabase.ChecksumDatabaseManager;
+import org.bitrepository.pillar.store.checksumdatabase.ChecksumEntry;
+import org.bitrepository.pillar.store.checksumdatabase.ChecksumExtractor;
+import org.bitrepository.pillar.store.checksumdatabase.ExtractedChecksumResultSet;
+import org.bitrepository.pillar.store.checksumdatabase.ExtractedFileIDsResultSet;
+import org.bitrepository.service.database.DatabaseManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmarks the queries of the reference pillar to its checksum database on embedded Derby: The lookups of single
+ * files, and the extraction of pages of checksums and fileIDs for the GetChecksums and GetFileIDs operations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ChecksumExtractorBenchmark {
+    private static final String CHECKSUM = "abcdef0110fedcba";
+
+    @Param({"10000"})
+    public int numberOfFiles;
+
+    @Param({"1000"})
+    public long pageSize;
+
+    private String collectionID;
+    private ChecksumDAO checksumDAO;
+    private ChecksumExtractor extractor;
+
+    @Setup
+    public void setup() {
+        Settings settings = BenchmarkEnvironment.loadSettings(getClass().getSimpleName());
+        collectionID = settings.getCollections().get(0).getID();
+        BenchmarkEnvironment.prepareDerbyDatabase(
+                settings.getReferenceSettings().getPillarSettings().getChecksumDatabase(), "checksumdb");
+        new ChecksumDatabaseCreator().createChecksumDatabase(settings, null);
+
+        DatabaseManager databaseManager = new ChecksumDatabaseManager(settings);
+        checksumDAO = new ChecksumDAO(databaseManager);
+        Date calculationDate = new Date();
+        for(int i = 0; i < numberOfFiles; i++) {
+            checksumDAO.insertChecksumCalculation(fileID(i), collectionID, CHECKSUM, calculationDate);
+        }
+        extractor = new ChecksumExtractor(databaseManager.getConnector());
+    }
+
+    @TearDown
+    public void tearDown() {
+        checksumDAO.close();
+    }
+
+    @Benchmark
+    public boolean hasFile() {
+        return extractor.hasFile(randomFileID(), collectionID);
+    }
+
+    @Benchmark
+    public ChecksumEntry extractSingleEntry() {
+        return extractor.extractSingleEntry(randomFileID(), collectionID);
+    }
+
+    @Benchmark
+    public ExtractedChecksumResultSet extractChecksumPage() {
+        return extractor.extractEntries(null, null, pageSize, collectionID);
+    }
+
+    @Benchmark
+    public ExtractedFileIDsResultSet extractFileIDsPage() {
+        return extractor.getFileIDs(null, null, pageSize, null, collectionID);
+    }
+
+    private String randomFileID() {
+        return fileID(ThreadLocalRandom.current().nextInt(numberOfFiles));
+    }
+
+    private static String fileID(int i) {
+        return "file-" + i;
+    }
+}
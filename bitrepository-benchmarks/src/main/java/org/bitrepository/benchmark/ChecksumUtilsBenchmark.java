@@ -0,0 +1,71 @@
+/*
+ * #%L
+ * Bitrepository Benchmarks
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.ChecksumType;
+import org.bitrepository.common.utils.ChecksumUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks the checksum calculation, which is performed for every file put to, or audited on, a pillar.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ChecksumUtilsBenchmark {
+    @Param({"MD5", "SHA1", "SHA256", "HMAC_MD5"})
+    public String checksumType;
+
+    @Param({"4096", "1048576"})
+    public int contentSize;
+
+    private byte[] content;
+    private ChecksumSpecTYPE checksumSpec;
+
+    @Setup
+    public void setup() {
+        content = new byte[contentSize];
+        new Random(42).nextBytes(content);
+        checksumSpec = new ChecksumSpecTYPE();
+        checksumSpec.setChecksumType(ChecksumType.valueOf(checksumType));
+        if(checksumType.startsWith("HMAC")) {
+            checksumSpec.setChecksumSalt(new byte[] {'s', 'a', 'l', 't'});
+        }
+    }
+
+    @Benchmark
+    public String generateChecksum() {
+        return ChecksumUtils.generateChecksum(new ByteArrayInputStream(content), checksumSpec);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * #%L
+ * Bitrepository Benchmarks
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.benchmark;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.bitrepository.bitrepositoryelements.FileIDsData;
+import org.bitrepository.bitrepositoryelements.FileIDsData.FileIDsDataItems;
+import org.bitrepository.bitrepositoryelements.FileIDsDataItem;
+import org.bitrepository.common.settings.Settings;
+import org.bitrepository.common.utils.CalendarUtils;
+import org.bitrepository.integrityservice.cache.IntegrityDatabaseManager;
+import org.bitrepository.integrityservice.cache.database.DerbyIntegrityDAO;
+import org.bitrepository.integrityservice.cache.database.FileUpdater;
+import org.bitrepository.integrityservice.cache.database.IntegrityDAO;
+import org.bitrepository.integrityservice.cache.database.IntegrityDatabaseCreator;
+import org.bitrepository.settings.referencesettings.DatabaseSpecifics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks the ingest of a full batch of fileIDs from a pillar into the integrity database on embedded Derby, as
+ * done by the FileUpdater for each page of GetFileIDs results. Both batches of files already known for the pillar,
+ * which are updated, and batches of new files, which are inserted, are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FileUpdaterBenchmark {
+    private static final int BATCH_SIZE = FileUpdater.MAX_BATCH_SIZE;
+
+    private String collectionID;
+    private String pillarID;
+    private IntegrityDAO dao;
+    private FileIDsData knownFiles;
+    /** The index of the next new file.*/
+    private int nextNewFile;
+
+    @Setup
+    public void setup() {
+        Settings settings = BenchmarkEnvironment.loadSettings(getClass().getSimpleName());
+        collectionID = settings.getCollections().get(0).getID();
+        pillarID = settings.getCollections().get(0).getPillarIDs().getPillarID().get(0);
+        DatabaseSpecifics integrityDB =
+                settings.getReferenceSettings().getIntegrityServiceSettings().getIntegrityDatabase();
+        BenchmarkEnvironment.prepareDerbyDatabase(integrityDB, "integritydb");
+        new IntegrityDatabaseCreator().createIntegrityDatabase(settings, null);
+        dao = new DerbyIntegrityDAO(new IntegrityDatabaseManager(integrityDB).getConnector());
+
+        knownFiles = createBatch("known-file-", 0);
+        dao.updateFileIDs(knownFiles, pillarID, collectionID);
+    }
+
+    @Benchmark
+    public void updateKnownFiles() {
+        dao.updateFileIDs(knownFiles, pillarID, collectionID);
+    }
+
+    @Benchmark
+    public void insertNewFiles() {
+        dao.updateFileIDs(createBatch("new-file-", nextNewFile), pillarID, collectionID);
+        nextNewFile += BATCH_SIZE;
+    }
+
+    private static FileIDsData createBatch(String prefix, int first) {
+        XMLGregorianCalendar lastModificationTime = CalendarUtils.getNow();
+        FileIDsDataItems items = new FileIDsDataItems();
+        for(int i = first; i < first + BATCH_SIZE; i++) {
+            FileIDsDataItem item = new FileIDsDataItem();
+            item.setFileID(prefix + i);
+            item.setFileSize(BigInteger.valueOf(i));
+            item.setLastModificationTime(lastModificationTime);
+            items.getFileIDsDataItem().add(item);
+        }
+        FileIDsData data = new FileIDsData();
+        data.setFileIDsDataItems(items);
+        return data;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * #%L
+ * Bitrepository Benchmarks
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.bitrepository.bitrepositorymessages.Message;
+import org.bitrepository.common.JaxbHelper;
+import org.bitrepository.protocol.message.ExampleMessageFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks the marshalling of the messages, as performed by the message bus for every sent and received message:
+ * Serialization and schema validation when sending, and validation and unmarshalling when receiving.
+ * The messages are the example messages of the message specification.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class JaxbHelperBenchmark {
+    @Param({"GetChecksumsRequest", "GetFileIDsFinalResponse", "AlarmMessage"})
+    public String messageType;
+
+    private JaxbHelper jaxbHelper;
+    private Class<? extends Message> messageClass;
+    private Message message;
+    private byte[] xml;
+
+    @Setup
+    public void setup() throws Exception {
+        jaxbHelper = new JaxbHelper(ExampleMessageFactory.PATH_TO_SCHEMA, ExampleMessageFactory.SCHEMA_NAME);
+        messageClass = Class.forName("org.bitrepository.bitrepositorymessages." + messageType)
+                .asSubclass(Message.class);
+        message = ExampleMessageFactory.createMessage(messageClass);
+        xml = jaxbHelper.serializeToXml(message).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String serialize() throws Exception {
+        return jaxbHelper.serializeToXml(message);
+    }
+
+    @Benchmark
+    public void validate() throws Exception {
+        jaxbHelper.validate(new ByteArrayInputStream(xml));
+    }
+
+    @Benchmark
+    public Message unmarshall() throws Exception {
+        return jaxbHelper.loadXml(messageClass, new ByteArrayInputStream(xml));
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * #%L
+ * Bitrepository Benchmarks
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.bitrepository.common.utils.FileUtils;
+import org.bitrepository.pillar.store.filearchive.ReferenceArchive;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmarks the lookups of files in the file archive of the reference pillar, which spans several archive
+ * directories. The lookups of missing files have to check every directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ReferenceArchiveBenchmark {
+    private static final File ARCHIVE_DIR = new File(BenchmarkEnvironment.BENCHMARK_DIR, "archive");
+
+    @Param({"4"})
+    public int numberOfDirectories;
+
+    @Param({"10000"})
+    public int numberOfFiles;
+
+    private ReferenceArchive archive;
+
+    @Setup
+    public void setup() throws Exception {
+        FileUtils.deleteDirIfExists(ARCHIVE_DIR);
+        List<String> dirs = new ArrayList<>();
+        for(int i = 0; i < numberOfDirectories; i++) {
+            dirs.add(new File(ARCHIVE_DIR, "dir" + i).getPath());
+        }
+        archive = new ReferenceArchive(dirs);
+        byte[] content = "benchmark content".getBytes(StandardCharsets.UTF_8);
+        for(int i = 0; i < numberOfFiles; i++) {
+            archive.downloadFileForValidation(fileID(i), new ByteArrayInputStream(content));
+            archive.moveToArchive(fileID(i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        archive.close();
+        FileUtils.deleteDirIfExists(ARCHIVE_DIR);
+    }
+
+    @Benchmark
+    public boolean hasFile() {
+        return archive.hasFile(fileID(ThreadLocalRandom.current().nextInt(numberOfFiles)));
+    }
+
+    @Benchmark
+    public boolean hasMissingFile() {
+        return archive.hasFile("missing-" + ThreadLocalRandom.current().nextInt(numberOfFiles));
+    }
+
+    @Benchmark
+    public File getFile() {
+        return archive.getFile(fileID(ThreadLocalRandom.current().nextInt(numberOfFiles)));
+    }
+
+    @Benchmark
+    public Collection<String> getAllFileIds() {
+        return archive.getAllFileIds();
+    }
+
+    private static String fileID(int i) {
+        return "file-" + i;
+    }
+}
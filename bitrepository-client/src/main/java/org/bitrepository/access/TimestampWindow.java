@@ -0,0 +1,201 @@
+/*
+ * #%L
+ * Bitrepository Access
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.access;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A part of the timestamp range of the results of a paged GetFileIDs or GetChecksums collection.
+ * <p/>
+ * The results of a contributor are paged by asking for the results from the latest timestamp of the previous page.
+ * A large collection can instead be divided into disjoint windows of timestamps, which are paged through
+ * concurrently. The window keeps track of the progress of each contributor within the window, and of the results
+ * delivered with the latest timestamp, since these are delivered again with the following page.
+ * <p/>
+ * The window is thread safe.
+ */
+public class TimestampWindow {
+    /** The default number of windows to divide a collection into.*/
+    public static final int DEFAULT_NUMBER_OF_WINDOWS = 4;
+    /** The minimum length of a window in milliseconds. Shorter ranges are not divided.*/
+    public static final long MINIMUM_WINDOW_LENGTH = TimeUnit.MINUTES.toMillis(1);
+
+    /** The earliest timestamp of the window, inclusive. Null for no limit.*/
+    private final Date minTimestamp;
+    /** The latest timestamp of the window, inclusive. Null for no limit.*/
+    private final Date maxTimestamp;
+    /** The contributors with results in the window.*/
+    private final Set<String> contributors;
+    /** The latest timestamp delivered by each contributor.*/
+    private final Map<String, Date> latestTimestamps = new HashMap<String, Date>();
+    /** The ids of the results delivered by each contributor with the latest timestamp.*/
+    private final Map<String, Set<String>> latestIDs = new HashMap<String, Set<String>>();
+
+    /**
+     * @param minTimestamp The earliest timestamp of the window, inclusive. Null for no limit.
+     * @param maxTimestamp The latest timestamp of the window, inclusive. Null for no limit.
+     * @param contributors The contributors with results in the window.
+     */
+    public TimestampWindow(Date minTimestamp, Date maxTimestamp, Collection<String> contributors) {
+        if (minTimestamp != null && maxTimestamp != null && minTimestamp.after(maxTimestamp)) {
+            throw new IllegalArgumentException(
+                    "minTimestamp=" + minTimestamp + " can not be later than " + "maxTimestamp=" + maxTimestamp);
+        }
+        this.minTimestamp = minTimestamp;
+        this.maxTimestamp = maxTimestamp;
+        this.contributors = Collections.unmodifiableSet(new LinkedHashSet<String>(contributors));
+    }
+
+    public Date getMinTimestamp() {
+        return minTimestamp;
+    }
+
+    public Date getMaxTimestamp() {
+        return maxTimestamp;
+    }
+
+    /**
+     * @return The contributors with results in the window.
+     */
+    public Set<String> getContributors() {
+        return contributors;
+    }
+
+    /**
+     * Registers a result delivered by a contributor.
+     * @param contributor The contributor delivering the result.
+     * @param id The id of the result, e.g. the file id.
+     * @param timestamp The timestamp of the result.
+     * @return Whether the result is new, false if it has already been delivered with a previous page.
+     */
+    public synchronized boolean addResult(String contributor, String id, Date timestamp) {
+        Date latest = latestTimestamps.get(contributor);
+        if (latest == null || timestamp.after(latest)) {
+            latestTimestamps.put(contributor, timestamp);
+            Set<String> ids = new HashSet<String>();
+            ids.add(id);
+            latestIDs.put(contributor, ids);
+            return true;
+        } else if (timestamp.equals(latest)) {
+            return latestIDs.get(contributor).add(id);
+        } else {
+            return true;
+        }
+    }
+
+    /**
+     * @param contributor The contributor.
+     * @return The latest timestamp delivered by the contributor in the window, or null if none has been delivered.
+     */
+    public synchronized Date getLatestTimestamp(String contributor) {
+        return latestTimestamps.get(contributor);
+    }
+
+    /**
+     * Creates the queries for the next page of results from the given contributors within the window.
+     * @param contributorsToQuery The contributors to query.
+     * @param maxNumberOfResults The maximum number of results for each contributor.
+     * @return The queries.
+     */
+    public synchronized ContributorQuery[] getQueries(Collection<String> contributorsToQuery,
+            Integer maxNumberOfResults) {
+        List<ContributorQuery> res = new ArrayList<ContributorQuery>();
+        for (String contributor : contributorsToQuery) {
+            Date latest = latestTimestamps.get(contributor);
+            res.add(new ContributorQuery(contributor, (latest != null ? latest : minTimestamp), maxTimestamp,
+                    maxNumberOfResults));
+        }
+        return res.toArray(new ContributorQuery[res.size()]);
+    }
+
+    /**
+     * Divides the remaining part of the window into disjoint windows, which together cover the results not yet
+     * delivered by the given contributors. The progress of the contributors is carried over into the new windows.
+     * The remaining part is the range from the earliest progress of the contributors until the end of the window,
+     * or until now for a window without an end. The last new window keeps the end of this window, so results
+     * with later timestamps are still collected.
+     * @param remainingContributors The contributors with results left to deliver. Each must have delivered
+     * results in the window.
+     * @param numberOfWindows The number of windows to divide into.
+     * @return The new windows, or only this window if the remaining range is too short to divide.
+     */
+    public synchronized List<TimestampWindow> split(Collection<String> remainingContributors, int numberOfWindows) {
+        Long start = null;
+        for (String contributor : remainingContributors) {
+            Date latest = latestTimestamps.get(contributor);
+            if (latest == null) {
+                return Collections.singletonList(this);
+            }
+            start = (start == null ? latest.getTime() : Math.min(start, latest.getTime()));
+        }
+        long end = (maxTimestamp != null ? maxTimestamp.getTime() : System.currentTimeMillis());
+        if (start == null) {
+            return Collections.singletonList(this);
+        }
+        int count = (int) Math.min(numberOfWindows, (end - start) / MINIMUM_WINDOW_LENGTH);
+        if (count < 2) {
+            return Collections.singletonList(this);
+        }
+
+        long length = (end - start) / count;
+        List<TimestampWindow> res = new ArrayList<TimestampWindow>(count);
+        for (int i = 0; i < count; i++) {
+            Date windowMin = new Date(start + i * length);
+            Date windowMax = (i == count - 1 ? maxTimestamp : new Date(start + (i + 1) * length - 1));
+            List<String> windowContributors = new ArrayList<String>();
+            for (String contributor : remainingContributors) {
+                if (windowMax == null || !latestTimestamps.get(contributor).after(windowMax)) {
+                    windowContributors.add(contributor);
+                }
+            }
+            TimestampWindow window = new TimestampWindow(windowMin, windowMax, windowContributors);
+            for (String contributor : windowContributors) {
+                Date latest = latestTimestamps.get(contributor);
+                if (!latest.before(windowMin)) {
+                    window.latestTimestamps.put(contributor, latest);
+                    window.latestIDs.put(contributor, new HashSet<String>(latestIDs.get(contributor)));
+                }
+            }
+            res.add(window);
+        }
+        return res;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+                "minTimestamp=" + minTimestamp +
+                ", maxTimestamp=" + maxTimestamp +
+                ", contributors=" + contributors +
+                '}';
+    }
+}
@@ -26,6 +26,7 @@ package org.bitrepository.access.getfile;
 
 import org.bitrepository.access.getfile.conversation.GetFileConversationContext;
 import org.bitrepository.access.getfile.conversation.IdentifyingPillarsForGetFile;
+import org.bitrepository.access.getfile.selectors.PillarPerformanceTracker;
 import org.bitrepository.bitrepositoryelements.FilePart;
 import org.bitrepository.client.AbstractClient;
 import org.bitrepository.client.conversation.mediator.ConversationMediator;
@@ -49,6 +50,8 @@ import java.util.Collection;
  */
 public class ConversationBasedGetFileClient extends AbstractClient implements GetFileClient {
     private final Logger log = LoggerFactory.getLogger(getClass());
+    /** The performance observed for the pillars in the conversations of this client. */
+    private final PillarPerformanceTracker performanceTracker = new PillarPerformanceTracker();
 
     /**
      * @see AbstractClient
@@ -99,7 +102,7 @@ public class ConversationBasedGetFileClient extends AbstractClient implements Ge
             String auditTrailInformation) {
         GetFileConversationContext context = new GetFileConversationContext(collectionID,
                 fileID, uploadUrl, filePart, contributors, settings, messageBus, clientID, eventHandler,
-                auditTrailInformation
+                auditTrailInformation, performanceTracker
         );
         startConversation(context, new IdentifyingPillarsForGetFile(context));
     }
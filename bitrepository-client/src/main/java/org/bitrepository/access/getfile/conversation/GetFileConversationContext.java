@@ -23,6 +23,7 @@ package org.bitrepository.access.getfile.conversation;
 
 import java.net.URL;
 import java.util.Collection;
+import org.bitrepository.access.getfile.selectors.PillarPerformanceTracker;
 import org.bitrepository.bitrepositoryelements.FilePart;
 import org.bitrepository.client.conversation.ConversationContext;
 import org.bitrepository.client.eventhandler.EventHandler;
@@ -36,6 +37,7 @@ import org.bitrepository.protocol.messagebus.MessageSender;
 public class GetFileConversationContext extends ConversationContext {
     private FilePart filePart;
     private final URL urlForResult;
+    private final PillarPerformanceTracker performanceTracker;
 
     /**
      * @see ConversationContext for general parameter documentation.
@@ -49,15 +51,17 @@ public class GetFileConversationContext extends ConversationContext {
      * @param clientID The ID of the client
      * @param eventHandler The EventHandler for handling incoming events
      * @param auditTrailInformation The audittrail information for the contributors
+     * @param performanceTracker The statistics for the pillars observed by the client. May be null.
      */
     public GetFileConversationContext(String collectionID,
             String fileID, URL urlForResult, FilePart filePart, Collection<String> contributors,
             Settings settings, MessageSender messageSender, String clientID, EventHandler eventHandler,
-            String auditTrailInformation) {
+            String auditTrailInformation, PillarPerformanceTracker performanceTracker) {
         super(collectionID, OperationType.GET_FILE, settings, messageSender, clientID, fileID, contributors,
                 eventHandler, auditTrailInformation);
         this.filePart = filePart;
         this.urlForResult = urlForResult;
+        this.performanceTracker = performanceTracker;
     }
 
     /**
@@ -73,4 +77,11 @@ public class GetFileConversationContext extends ConversationContext {
     public URL getUrlForResult() {
         return urlForResult;
     }
+
+    /**
+     * @return The statistics for the pillars observed by the client, or null if no statistics are kept.
+     */
+    public PillarPerformanceTracker getPerformanceTracker() {
+        return performanceTracker;
+    }
 }
@@ -44,6 +44,8 @@ import org.bitrepository.common.exceptions.UnableToFinishException;
 class GettingFile extends PerformingOperationState {
     private final GetFileConversationContext context;
     private final SelectedComponentInfo selectedPillar;
+    /** The time the GetFileRequest was sent, used for recording the transfer time of the pillar. */
+    private long requestSentTime;
 
     /**
      * @param context The related conversation containing context information.
@@ -67,11 +69,15 @@ class GettingFile extends PerformingOperationState {
         msg.setPillarID(selectedPillar.getID());
         msg.setDestination(selectedPillar.getDestination());
         context.getMonitor().requestSent("Sending GetFileRequest to ", selectedPillar.toString());
+        requestSentTime = System.currentTimeMillis();
         context.getMessageSender().sendMessage(msg);
     }
 
     @Override
     protected boolean handleFailureResponse(MessageResponse msg) throws UnableToFinishException {
+        if (context.getPerformanceTracker() != null) {
+            context.getPerformanceTracker().recordFailure(msg.getFrom());
+        }
         getContext().getMonitor().contributorFailed(
                 msg.getResponseInfo().getResponseText(), msg.getFrom(), msg.getResponseInfo().getResponseCode());
         throw new UnableToFinishException("Failed to get file from " + msg.getFrom() +
@@ -80,6 +86,10 @@ class GettingFile extends PerformingOperationState {
 
     @Override
     protected void generateContributorCompleteEvent(MessageResponse msg) {
+        if (context.getPerformanceTracker() != null) {
+            context.getPerformanceTracker().recordTransferTime(msg.getFrom(),
+                    System.currentTimeMillis() - requestSentTime);
+        }
         getContext().getMonitor().contributorComplete(new ContributorCompleteEvent(msg.getFrom(), msg.getCollectionID()));
     }
 
@@ -25,18 +25,29 @@
 package org.bitrepository.access.getfile.conversation;
 
 import org.bitrepository.access.getfile.selectors.FastestPillarSelectorForGetFile;
+import org.bitrepository.access.getfile.selectors.PillarPerformanceTracker;
 import org.bitrepository.bitrepositorymessages.IdentifyPillarsForGetFileRequest;
 import org.bitrepository.client.conversation.ConversationContext;
 import org.bitrepository.client.conversation.GeneralConversationState;
 import org.bitrepository.client.conversation.IdentifyingState;
 import org.bitrepository.client.conversation.selector.SelectedComponentInfo;
+import org.bitrepository.settings.referencesettings.GetFileSettings;
 
 
 /**
  * Models the functionality for identifying pillars prior to a get file request.
+ * <p/>
+ * If short circuiting of the identification is enabled in the {@link GetFileSettings}, and the client has enough
+ * observations of the pillars, the identification will finish as soon as the pillar expected to be fastest has
+ * identified itself.
  */
 public class IdentifyingPillarsForGetFile extends IdentifyingState {
+    /** The default number of successful deliveries required before short circuiting the identification. */
+    public static final int DEFAULT_MINIMUM_SAMPLES_FOR_SHORT_CIRCUIT = 5;
+
     private final GetFileConversationContext context;
+    /** The pillar to wait for when short circuiting the identification, null if not short circuiting. */
+    private String preferredPillar;
 
     /** 
      * The constructor for the indicated conversation.
@@ -47,7 +58,8 @@ public class IdentifyingPillarsForGetFile extends IdentifyingState {
         this.context = context;
         context.getMonitor().markAsFailedOnContributorFailure(false);
         if (context.getContributors().size() > 1) {
-            setSelector(new FastestPillarSelectorForGetFile());
+            setSelector(new FastestPillarSelectorForGetFile(context.getPerformanceTracker()));
+            preferredPillar = findPreferredPillar();
         }
     }
 
@@ -63,11 +75,29 @@ public class IdentifyingPillarsForGetFile extends IdentifyingState {
         initializeMessage(msg);
         msg.setDestination(context.getSettings().getCollectionDestination());
         msg.setFileID(context.getFileID());
+        if (getSelector() instanceof FastestPillarSelectorForGetFile) {
+            ((FastestPillarSelectorForGetFile) getSelector()).identifyRequestSent();
+        }
         context.getMessageSender().sendMessage(msg);
         context.getMonitor().identifyRequestSent("Identifying pillars for GetFile");
         
     }
 
+    /**
+     * Extends the default behaviour by finishing the identification as soon as the preferred pillar has identified
+     * itself, when short circuiting the identification.
+     */
+    @Override
+    protected boolean isStateFinished() {
+        if (preferredPillar != null &&
+                ((FastestPillarSelectorForGetFile) getSelector()).hasIdentified(preferredPillar)) {
+            context.getMonitor().debug("Short circuiting the identification, as the preferred pillar "
+                    + preferredPillar + " has identified itself.");
+            return true;
+        }
+        return super.isStateFinished();
+    }
+
     @Override
     protected ConversationContext getContext() {
         return context;
@@ -84,4 +114,22 @@ public class IdentifyingPillarsForGetFile extends IdentifyingState {
     private SelectedComponentInfo getSelectedPillar() {
         return getSelector().getSelectedComponents().iterator().next();
     }
+
+    /**
+     * @return The pillar the client is confident will be fastest, if short circuiting of the identification is
+     * enabled. Otherwise null.
+     */
+    private String findPreferredPillar() {
+        PillarPerformanceTracker tracker = context.getPerformanceTracker();
+        GetFileSettings getFileSettings = context.getSettings().getReferenceSettings().getGetFileSettings();
+        if (tracker == null || getFileSettings == null || !getFileSettings.isSetShortCircuitIdentification()
+                || !getFileSettings.isShortCircuitIdentification()) {
+            return null;
+        }
+        int minimumSamples = DEFAULT_MINIMUM_SAMPLES_FOR_SHORT_CIRCUIT;
+        if (getFileSettings.getMinimumSamplesForShortCircuit() != null) {
+            minimumSamples = getFileSettings.getMinimumSamplesForShortCircuit().intValue();
+        }
+        return tracker.getPreferredPillar(context.getContributors(), minimumSamples);
+    }
 }
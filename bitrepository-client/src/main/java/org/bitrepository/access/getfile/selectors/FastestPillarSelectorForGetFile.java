@@ -21,7 +21,9 @@
  */
 package org.bitrepository.access.getfile.selectors;
 
-import org.bitrepository.bitrepositoryelements.TimeMeasureTYPE;
+import java.util.HashSet;
+import java.util.Set;
+
 import org.bitrepository.bitrepositorymessages.IdentifyPillarsForGetFileResponse;
 import org.bitrepository.bitrepositorymessages.MessageResponse;
 import org.bitrepository.client.conversation.selector.ComponentSelector;
@@ -31,24 +33,81 @@ import org.bitrepository.common.utils.TimeMeasurementUtils;
 /**
  * GetFile specific selector for situations, when the getFile can chose between multiple pillars. The selector will
  * chose the pillar able to return a file fastest, eg. the timeToDeliver id is the smallest.
+ * <p/>
+ * If a {@link PillarPerformanceTracker} is supplied, the expected transfer time observed for the pillar in earlier
+ * conversations is added to the reported timeToDeliver, and the identify latency of the responding pillars are
+ * recorded in the tracker.
  */
 public class FastestPillarSelectorForGetFile extends ComponentSelector {
-    private TimeMeasureTYPE fastestTimeToDeliver;
+    private final PillarPerformanceTracker performanceTracker;
+    /** The pillars which have identified themselves, whether selected or not. */
+    private final Set<String> identifiedPillars = new HashSet<String>();
+    private Long fastestTimeToDeliver;
+    private long identifyRequestSentTime = -1;
+
+    /**
+     * Creates a selector based only on the timeToDeliver reported by the pillars.
+     */
+    public FastestPillarSelectorForGetFile() {
+        this(null);
+    }
+
+    /**
+     * @param performanceTracker The statistics to combine with the reported timeToDeliver. May be null.
+     */
+    public FastestPillarSelectorForGetFile(PillarPerformanceTracker performanceTracker) {
+        this.performanceTracker = performanceTracker;
+    }
+
+    /**
+     * Marks the time the identify request was sent, so the identify latency of the pillars can be recorded.
+     */
+    public synchronized void identifyRequestSent() {
+        identifyRequestSentTime = System.currentTimeMillis();
+    }
 
    @Override
     public synchronized void selectComponent(MessageResponse message) throws UnexpectedResponseException {
         IdentifyPillarsForGetFileResponse response = (IdentifyPillarsForGetFileResponse)message;
-        if (fastestTimeToDeliver == null ) {
-            fastestTimeToDeliver = response.getTimeToDeliver();
-        }
-        if (isFaster(response)) {
-            fastestTimeToDeliver = response.getTimeToDeliver();
+        identifiedPillars.add(response.getFrom());
+        recordIdentifyLatency(response.getFrom());
+        long expectedTimeToDeliver = getExpectedTimeToDeliver(response);
+        if (fastestTimeToDeliver == null || expectedTimeToDeliver <= fastestTimeToDeliver) {
+            fastestTimeToDeliver = expectedTimeToDeliver;
             selectedComponents.clear();
             super.selectComponent(message);
         }
     }
 
-    private boolean isFaster(IdentifyPillarsForGetFileResponse response) {
-        return TimeMeasurementUtils.compare(response.getTimeToDeliver(), fastestTimeToDeliver) <= 0;
+    /**
+     * @param pillarID The pillar to check.
+     * @return Whether the pillar has identified itself as able to deliver the file.
+     */
+    public synchronized boolean hasIdentified(String pillarID) {
+        return identifiedPillars.contains(pillarID);
+    }
+
+    /**
+     * @param response The identify response from the pillar.
+     * @return The number of milliseconds the pillar is expected to use for delivering the file.
+     */
+    private long getExpectedTimeToDeliver(IdentifyPillarsForGetFileResponse response) {
+        if (TimeMeasurementUtils.compare(response.getTimeToDeliver(), Long.MAX_VALUE) >= 0) {
+            return Long.MAX_VALUE;
+        }
+        long timeToDeliver = TimeMeasurementUtils.getTimeMeasureInLong(response.getTimeToDeliver());
+        if (performanceTracker != null) {
+            long expectedTransferTime = performanceTracker.getExpectedTransferTime(response.getFrom());
+            if (expectedTransferTime > 0 && timeToDeliver < Long.MAX_VALUE - expectedTransferTime) {
+                timeToDeliver += expectedTransferTime;
+            }
+        }
+        return timeToDeliver;
+    }
+
+    private void recordIdentifyLatency(String pillarID) {
+        if (performanceTracker != null && identifyRequestSentTime > 0) {
+            performanceTracker.recordIdentifyLatency(pillarID, System.currentTimeMillis() - identifyRequestSentTime);
+        }
     }
 }
@@ -0,0 +1,200 @@
+/*
+ * #%L
+ * Bitrepository Access
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.access.getfile.selectors;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.bitrepository.common.ArgumentValidator;
+
+/**
+ * Keeps track of the performance the client has observed for the individual pillars in earlier GetFile
+ * conversations. The identify latency and the transfer time is recorded for each pillar as exponentially weighted
+ * moving averages, so recent observations weigh more than old ones.
+ * <p/>
+ * The tracker is thread safe, and is intended to be shared by all the conversations of a GetFile client.
+ */
+public class PillarPerformanceTracker {
+    /** The default weight of a new observation in the moving averages. */
+    public static final double DEFAULT_SMOOTHING_FACTOR = 0.3;
+    /** Used to indicate that no observations exists for a pillar. */
+    public static final long UNKNOWN = -1;
+
+    /** The weight of a new observation in the moving averages. */
+    private final double smoothingFactor;
+    /** The statistics for each pillar. */
+    private final ConcurrentMap<String, PillarStatistics> statistics =
+            new ConcurrentHashMap<String, PillarStatistics>();
+
+    /**
+     * Creates a tracker with the default smoothing factor.
+     */
+    public PillarPerformanceTracker() {
+        this(DEFAULT_SMOOTHING_FACTOR);
+    }
+
+    /**
+     * @param smoothingFactor The weight of a new observation in the moving averages. Must be larger than 0 and at
+     * most 1, where 1 means that only the latest observation is used.
+     */
+    public PillarPerformanceTracker(double smoothingFactor) {
+        if (smoothingFactor <= 0 || smoothingFactor > 1) {
+            throw new IllegalArgumentException("The smoothing factor must be in the interval ]0,1], was "
+                    + smoothingFactor);
+        }
+        this.smoothingFactor = smoothingFactor;
+    }
+
+    /**
+     * @param pillarID The pillar which has identified itself.
+     * @param latency The number of milliseconds from the identify request was sent until the response was received.
+     */
+    public void recordIdentifyLatency(String pillarID, long latency) {
+        getStatistics(pillarID).addIdentifyLatency(latency);
+    }
+
+    /**
+     * @param pillarID The pillar which has delivered a file.
+     * @param transferTime The number of milliseconds from the GetFile request was sent until the final response was
+     * received.
+     */
+    public void recordTransferTime(String pillarID, long transferTime) {
+        getStatistics(pillarID).addTransferTime(transferTime);
+    }
+
+    /**
+     * Registers that a pillar has failed to deliver a file. This resets the confidence in the pillar.
+     * @param pillarID The pillar which has failed.
+     */
+    public void recordFailure(String pillarID) {
+        getStatistics(pillarID).failed();
+    }
+
+    /**
+     * @param pillarID The pillar to lookup.
+     * @return The expected identify latency in milliseconds for the pillar, or {@link #UNKNOWN} if the pillar
+     * hasn't been observed.
+     */
+    public long getExpectedIdentifyLatency(String pillarID) {
+        PillarStatistics pillarStatistics = statistics.get(pillarID);
+        return pillarStatistics == null ? UNKNOWN : pillarStatistics.getIdentifyLatency();
+    }
+
+    /**
+     * @param pillarID The pillar to lookup.
+     * @return The expected transfer time in milliseconds for the pillar, or {@link #UNKNOWN} if no file has been
+     * delivered by the pillar.
+     */
+    public long getExpectedTransferTime(String pillarID) {
+        PillarStatistics pillarStatistics = statistics.get(pillarID);
+        return pillarStatistics == null ? UNKNOWN : pillarStatistics.getTransferTime();
+    }
+
+    /**
+     * @param pillarID The pillar to lookup.
+     * @param minimumSamples The number of consecutive successful deliveries required.
+     * @return Whether the pillar has delivered at least the given number of files without failing.
+     */
+    public boolean isConfident(String pillarID, int minimumSamples) {
+        PillarStatistics pillarStatistics = statistics.get(pillarID);
+        return pillarStatistics != null && pillarStatistics.getConsecutiveSuccesses() >= minimumSamples;
+    }
+
+    /**
+     * Finds the pillar expected to deliver a file fastest, based only on the recorded statistics. Only pillars the
+     * tracker is confident about are considered.
+     * @param pillarIDs The pillars to choose between.
+     * @param minimumSamples The number of consecutive successful deliveries required for a pillar to be considered.
+     * @return The ID of the preferred pillar, or null if the tracker isn't confident about any of the pillars.
+     */
+    public String getPreferredPillar(Collection<String> pillarIDs, int minimumSamples) {
+        ArgumentValidator.checkNotNull(pillarIDs, "pillarIDs");
+        String preferredPillar = null;
+        long bestExpectedTime = Long.MAX_VALUE;
+        for (String pillarID : pillarIDs) {
+            if (isConfident(pillarID, minimumSamples)) {
+                long expectedTime = Math.max(getExpectedIdentifyLatency(pillarID), 0)
+                        + getExpectedTransferTime(pillarID);
+                if (expectedTime < bestExpectedTime) {
+                    bestExpectedTime = expectedTime;
+                    preferredPillar = pillarID;
+                }
+            }
+        }
+        return preferredPillar;
+    }
+
+    private PillarStatistics getStatistics(String pillarID) {
+        ArgumentValidator.checkNotNullOrEmpty(pillarID, "pillarID");
+        PillarStatistics pillarStatistics = statistics.get(pillarID);
+        if (pillarStatistics == null) {
+            PillarStatistics newStatistics = new PillarStatistics();
+            pillarStatistics = statistics.putIfAbsent(pillarID, newStatistics);
+            if (pillarStatistics == null) {
+                pillarStatistics = newStatistics;
+            }
+        }
+        return pillarStatistics;
+    }
+
+    /**
+     * The moving averages for a single pillar.
+     */
+    private class PillarStatistics {
+        private double identifyLatency = UNKNOWN;
+        private double transferTime = UNKNOWN;
+        private int consecutiveSuccesses = 0;
+
+        synchronized void addIdentifyLatency(long latency) {
+            identifyLatency = average(identifyLatency, latency);
+        }
+
+        synchronized void addTransferTime(long time) {
+            transferTime = average(transferTime, time);
+            consecutiveSuccesses++;
+        }
+
+        synchronized void failed() {
+            consecutiveSuccesses = 0;
+        }
+
+        synchronized long getIdentifyLatency() {
+            return Math.round(identifyLatency);
+        }
+
+        synchronized long getTransferTime() {
+            return Math.round(transferTime);
+        }
+
+        synchronized int getConsecutiveSuccesses() {
+            return consecutiveSuccesses;
+        }
+
+        private double average(double currentAverage, long observation) {
+            if (currentAverage == UNKNOWN) {
+                return observation;
+            }
+            return smoothingFactor * observation + (1 - smoothingFactor) * currentAverage;
+        }
+    }
+}
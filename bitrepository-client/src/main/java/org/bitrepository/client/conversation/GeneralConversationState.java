@@ -109,7 +109,7 @@ public abstract class GeneralConversationState implements ConversationState {
         try {
             if(processMessage(response)) {
                 responseStatus.responseReceived(response);
-                if (responseStatus.haveAllComponentsResponded()) {
+                if (isStateFinished()) {
                     scheduledTimeout.cancel(true);
                     changeState();
                 }
@@ -172,6 +172,16 @@ public abstract class GeneralConversationState implements ConversationState {
         }
     }
 
+    /**
+     * Decides whether the state has received the responses needed to continue to the next state. The default is to
+     * wait until all the expected contributors have responded. May be overridden by concrete states able to continue
+     * based on a subset of the responses.
+     * @return true if the state should change to the next state.
+     */
+    protected boolean isStateFinished() {
+        return responseStatus.haveAllComponentsResponded();
+    }
+
     /**
      * @return the list of components where a identify response hasn't been received.
      */
@@ -25,11 +25,17 @@
 package org.bitrepository.client.conversation.mediator;
 
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.bitrepository.bitrepositorymessages.Message;
 import org.bitrepository.client.conversation.Conversation;
@@ -46,12 +52,16 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Conversation handler that delegates messages to registered conversations.
+ * <p/>
+ * The conversations are kept in a concurrent map, so delegating messages and registering conversations never blocks
+ * on other conversations. Each conversation has its own scheduled timeout, and timed out conversations are failed
+ * by a bounded pool of threads.
  */
 public class CollectionBasedConversationMediator implements ConversationMediator {
     /** Logger for this class. */
     private final Logger log = LoggerFactory.getLogger(getClass());
     /** Registered conversations, mapping from correlation ID to conversation. */
-    private final Map<String, Conversation> conversations;
+    private final ConcurrentMap<String, RegisteredConversation> conversations;
     /** The injected settings defining the mediator behavior */
     private final Settings settings;
     /** Defines that the timer is a daemon thread. */
@@ -64,8 +74,15 @@ public class CollectionBasedConversationMediator implements ConversationMediator
     private static final Timer cleanTimer = new Timer(NAME_OF_TIMER, TIMER_IS_DAEMON);
     private final MessageBus messagebus;
 
-    /** ThreadFactory for any threads the mediator needs to create*/
-    private static final ThreadFactory threadFactory = new DefaultThreadFactory(CollectionBasedConversationMediator.class.getSimpleName()+"-", Thread.NORM_PRIORITY , false);
+    /** The maximum number of threads used for failing conversations. */
+    private static final int MAX_FAILING_CONVERSATION_THREADS = 4;
+    /** The number of seconds an idle thread for failing conversations is kept alive. */
+    private static final long FAILING_CONVERSATION_THREAD_KEEP_ALIVE = 10;
+    /** The scheduler used for timing out the individual conversations. */
+    private static final ScheduledThreadPoolExecutor timeoutScheduler = createTimeoutScheduler();
+    /** The bounded pool of threads used for failing conversations, so a failing conversation doesn't block the
+     * calling thread. */
+    private static final ThreadPoolExecutor failingConversationExecutor = createFailingConversationExecutor();
 
     @Override
     public void start() {
@@ -88,7 +105,7 @@ public class CollectionBasedConversationMediator implements ConversationMediator
      */
     public CollectionBasedConversationMediator(Settings settings, SecurityManager securityManager) {
         log.debug("Initializing the CollectionBasedConversationMediator");
-        this.conversations = Collections.synchronizedMap(new HashMap<String, Conversation>());
+        this.conversations = new ConcurrentHashMap<String, RegisteredConversation>();
         this.settings = settings;
         messagebus = MessageBusManager.getMessageBus(settings, securityManager);
         start();
@@ -96,26 +113,36 @@ public class CollectionBasedConversationMediator implements ConversationMediator
 
     @Override
     public void addConversation(Conversation conversation) {
-        conversations.put(conversation.getConversationID(), conversation);
+        String conversationID = conversation.getConversationID();
+        if (conversationID == null) {
+            log.warn("Unable to register conversation without a conversation ID: " + conversation);
+            return;
+        }
+        RegisteredConversation registeredConversation = new RegisteredConversation(conversation);
+        conversations.put(conversationID, registeredConversation);
+        long timeout = settings.getReferenceSettings().getClientSettings().getConversationTimeout().longValue();
+        long delay = Math.max(0, timeout - (System.currentTimeMillis() - conversation.getStartTime()));
+        registeredConversation.timeout = timeoutScheduler.schedule(
+                new ConversationTimeout(registeredConversation), delay, TimeUnit.MILLISECONDS);
     }
 
     /**
      * Will try to fail a conversation gracefully. This entitles:
      * <ul>
      * <li> Removing the conversation from the list of conversations.
-     * <li> Attempt to call the failConversation operation on the conversation. The call is made in a separate thread to 
-     * avoid having the failing conversation blocking the calling thread.
+     * <li> Attempt to call the failConversation operation on the conversation. The call is made by the pool of
+     * failing conversation threads to avoid having the failing conversation blocking the calling thread.
      * </ul>
-     * @param conversation The conversation to fail.
+     * Nothing is done if the conversation has already been removed.
+     * @param registeredConversation The conversation to fail.
      * @param message A message describing the failure symptoms.
      */
-    private void failConversation(final Conversation conversation, final String message) {
+    private void failConversation(RegisteredConversation registeredConversation, String message) {
+        Conversation conversation = registeredConversation.conversation;
         String conversationID = conversation.getConversationID();
 
-        if (conversationID != null) {
-            conversations.remove(conversationID);
-            Thread t = threadFactory.newThread(new FailingConversation(conversation, message));
-            t.start();
+        if (conversationID != null && conversations.remove(conversationID, registeredConversation)) {
+            failingConversationExecutor.execute(new FailingConversation(conversation, message));
         }
     }
     
@@ -123,52 +150,97 @@ public class CollectionBasedConversationMediator implements ConversationMediator
      * @param message The message with the unknown conversation ID.
      */
     private void handleUnknownConversation(Message message) {
-        log.debug(message.getClass().getSimpleName() + " from " + message.getFrom() +
-            " with correlationID '" + message.getCorrelationID() + "' could not be delegated to any " +
-                "conversation.");
+        if (log.isDebugEnabled()) {
+            log.debug(message.getClass().getSimpleName() + " from " + message.getFrom() +
+                    " with correlationID '" + message.getCorrelationID() + "' could not be delegated to any " +
+                    "conversation.");
+        }
     }
 
     @Override
     public void onMessage(Message message, MessageContext messageContext) {
         String messageCorrelationID = message.getCorrelationID();
-        Conversation conversation = conversations.get(messageCorrelationID);
-        if (conversation != null) {
-            conversation.onMessage(message, messageContext);
+        RegisteredConversation registeredConversation = 
+                messageCorrelationID == null ? null : conversations.get(messageCorrelationID);
+        if (registeredConversation != null) {
+            registeredConversation.conversation.onMessage(message, messageContext);
         } else {
             handleUnknownConversation(message);
         }
     }
-    
+
     /**
-     * Will clean out obsolete conversations in each run. An obsolete conversation is a conversation which satisfies on 
-     * of the following criterias: <ol>
-     * <li> Returns true for the <code>hasEnded()</code> method.
-     * <li> Is older than the conversationTImeout limit allows.
-     * </ol>
+     * @return The number of conversations currently registered in the mediator.
+     */
+    int getNumberOfConversations() {
+        return conversations.size();
+    }
+
+    /**
+     * Will clean out ended conversations in each run, eg. conversations which returns true for the
+     * <code>hasEnded()</code> method. The timeouts of the removed conversations are cancelled.
      * 
-     * A copy of the current conversations is created before running through the conversations to avoid having to lock
-     * the conversations map while cleaning.
+     * The conversations are iterated directly in the concurrent map, so neither copying nor locking of the
+     * conversations is needed while cleaning.
      */
     private final class ConversationCleaner extends TimerTask {
         @Override
         public void run() {
-            Conversation[] conversationArray = 
-                    conversations.values().toArray(new Conversation[conversations.size()]);
-            long currentTime = System.currentTimeMillis();
-            for (Conversation conversation: conversationArray) {
-                if (conversation.hasEnded()) { 
-                    conversations.remove(conversation.getConversationID());
-                } else if (currentTime - conversation.getStartTime() > 
-                settings.getReferenceSettings().getClientSettings().getConversationTimeout().longValue()) {
-                    log.warn("Failing timed out conversation " + conversation.getConversationID() + " " +
-                    		"(Age " + (currentTime - conversation.getStartTime()) + "ms)");
-                    failConversation(conversation, 
-                            "Failing timed out conversation " + conversation.getConversationID());
+            Iterator<Map.Entry<String, RegisteredConversation>> iterator = conversations.entrySet().iterator();
+            while (iterator.hasNext()) {
+                RegisteredConversation registeredConversation = iterator.next().getValue();
+                if (registeredConversation.conversation.hasEnded()) {
+                    iterator.remove();
+                    registeredConversation.cancelTimeout();
                 }
             }
         }       
     }
-    
+
+    /**
+     * Fails a conversation which hasn't ended before the conversationTimeout limit.
+     */
+    private final class ConversationTimeout implements Runnable {
+        private final RegisteredConversation registeredConversation;
+
+        ConversationTimeout(RegisteredConversation registeredConversation) {
+            this.registeredConversation = registeredConversation;
+        }
+
+        @Override
+        public void run() {
+            Conversation conversation = registeredConversation.conversation;
+            if (conversation.hasEnded()) {
+                conversations.remove(conversation.getConversationID(), registeredConversation);
+            } else if (conversations.get(conversation.getConversationID()) == registeredConversation) {
+                long age = System.currentTimeMillis() - conversation.getStartTime();
+                log.warn("Failing timed out conversation " + conversation.getConversationID() + " " +
+                        "(Age " + age + "ms)");
+                failConversation(registeredConversation,
+                        "Failing timed out conversation " + conversation.getConversationID());
+            }
+        }
+    }
+
+    /**
+     * A conversation registered in the mediator together with its scheduled timeout.
+     */
+    private static final class RegisteredConversation {
+        private final Conversation conversation;
+        private volatile ScheduledFuture<?> timeout;
+
+        RegisteredConversation(Conversation conversation) {
+            this.conversation = conversation;
+        }
+
+        void cancelTimeout() {
+            ScheduledFuture<?> scheduledTimeout = timeout;
+            if (scheduledTimeout != null) {
+                scheduledTimeout.cancel(false);
+            }
+        }
+    }
+
     /**
      * Thread for handling the failing of a conversation.
      */
@@ -194,4 +266,24 @@ public class CollectionBasedConversationMediator implements ConversationMediator
             conversation.failConversation(failedEvent);
         }
     }
+
+    private static ScheduledThreadPoolExecutor createTimeoutScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new DefaultThreadFactory(
+                CollectionBasedConversationMediator.class.getSimpleName() + "-Timeout-", Thread.NORM_PRIORITY));
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    /**
+     * The threads are not daemon threads, so conversations being failed are allowed to finish before the JVM
+     * exits. Idle threads are stopped after a short while.
+     */
+    private static ThreadPoolExecutor createFailingConversationExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_FAILING_CONVERSATION_THREADS,
+                MAX_FAILING_CONVERSATION_THREADS, FAILING_CONVERSATION_THREAD_KEEP_ALIVE, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new DefaultThreadFactory(
+                CollectionBasedConversationMediator.class.getSimpleName() + "-", Thread.NORM_PRIORITY, false));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
 }
@@ -62,12 +62,15 @@ public class BlockingEventHandler implements EventHandler {
     }
 
     /**
-     * Will block until a <code>COMPLETE</code> or <code>FAILED</code> event is received.
+     * Will block until a <code>COMPLETE</code> or <code>FAILED</code> event is received. Returns immediately if the
+     * event has already been received.
      * @return the operationEvent
      */
     public synchronized OperationEvent awaitFinished() {
         try {
-            this.wait();
+            while (finishEvent == null) {
+                this.wait();
+            }
         } catch (InterruptedException ignored) {
         }
         return finishEvent;
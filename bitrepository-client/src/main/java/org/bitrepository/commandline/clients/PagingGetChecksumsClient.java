@@ -21,7 +21,7 @@
  */
 package org.bitrepository.commandline.clients;
 
-import org.bitrepository.access.ContributorQuery;
+import org.bitrepository.access.TimestampWindow;
 import org.bitrepository.access.getchecksums.GetChecksumsClient;
 import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
 import org.bitrepository.client.eventhandler.OperationEvent;
@@ -30,60 +30,61 @@ import org.bitrepository.commandline.output.OutputHandler;
 import org.bitrepository.commandline.outputformatter.GetChecksumsOutputFormatter;
 import org.bitrepository.commandline.resultmodel.GetChecksumsResultModel;
 
-import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collection;
 import java.util.List;
 
 /**
  * Wrapper class for GetChecksumClient to handle paging through large result sets 
  */
-public class PagingGetChecksumsClient {
+public class PagingGetChecksumsClient extends WindowedPagingClient {
 
     private final GetChecksumsClient client;
     private GetChecksumsResultModel model;
-    private GetChecksumsEventHandler eventHandler;
     private final GetChecksumsOutputFormatter outputFormatter;
-    private final OutputHandler outputHandler;
-    private long timeout;
-    private final int pageSize;
+    private String collectionID;
+    private String fileID;
+    private ChecksumSpecTYPE checksumSpec;
     
     public PagingGetChecksumsClient(GetChecksumsClient client, long timeout, int pageSize, GetChecksumsOutputFormatter outputFormatter,
             OutputHandler outputHandler) {
+        this(client, timeout, pageSize, TimestampWindow.DEFAULT_NUMBER_OF_WINDOWS, outputFormatter, outputHandler);
+    }
+    
+    public PagingGetChecksumsClient(GetChecksumsClient client, long timeout, int pageSize, int numberOfWindows,
+            GetChecksumsOutputFormatter outputFormatter, OutputHandler outputHandler) {
+        super(timeout, pageSize, numberOfWindows, outputHandler);
         this.client = client;
-        this.timeout = timeout;
-        this.pageSize = pageSize;
         this.outputFormatter = outputFormatter;
-        this.outputHandler = outputHandler;
     }
     
     public boolean getChecksums(String collectionID, String fileID, List<String> pillarIDs, ChecksumSpecTYPE checksumSpec) {
         model = new GetChecksumsResultModel(pillarIDs);
-        List<String> pillarsToGetFrom = pillarIDs;
+        this.collectionID = collectionID;
+        this.fileID = fileID;
+        this.checksumSpec = checksumSpec;
         outputFormatter.formatHeader();
         
-        while(!pillarsToGetFrom.isEmpty()) {
-            eventHandler = new GetChecksumsEventHandler(model, timeout, outputHandler);
-            ContributorQuery[] queries = makeQuery(pillarsToGetFrom);
-            client.getChecksums(collectionID, queries, fileID, checksumSpec, null, eventHandler, null);
-            OperationEvent event = eventHandler.getFinish();
-            if(event.getEventType().equals(OperationEvent.OperationEventType.FAILED)) {
-                outputFormatter.formatResult(model.getUncompletedResults());
-                return false;
-            }
-            pillarsToGetFrom = eventHandler.getPillarsWithPartialResults();
-            outputFormatter.formatResult(model.getCompletedResults());
+        try {
+            boolean success = getAllPages(pillarIDs);
+            outputFormatter.formatResult(model.getUncompletedResults());
+            return success;
+        } finally {
+            model.close();
         }
-        outputFormatter.formatResult(model.getUncompletedResults());
-        return true;
     }
     
-    
-    private ContributorQuery[] makeQuery(List<String> pillars) {
-        List<ContributorQuery> res = new ArrayList<ContributorQuery>();
-        for(String pillar : pillars) {
-            Date latestResult = model.getLatestContribution(pillar);
-            res.add(new ContributorQuery(pillar, latestResult, null, pageSize));
+    @Override
+    protected List<String> getPage(TimestampWindow window, Collection<String> pillars) {
+        GetChecksumsEventHandler eventHandler = new GetChecksumsEventHandler(model, window, timeout, outputHandler);
+        client.getChecksums(collectionID, window.getQueries(pillars, pageSize), fileID, checksumSpec, null,
+                eventHandler, null);
+        OperationEvent event = eventHandler.getFinish();
+        if(event.getEventType().equals(OperationEvent.OperationEventType.FAILED)) {
+            return null;
+        }
+        synchronized (outputFormatter) {
+            outputFormatter.formatResult(model.getCompletedResults());
         }
-        return res.toArray(new ContributorQuery[pillars.size()]);
+        return eventHandler.getPillarsWithPartialResults();
     }
 }
@@ -21,11 +21,10 @@
  */
 package org.bitrepository.commandline.clients;
 
-import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collection;
 import java.util.List;
 
-import org.bitrepository.access.ContributorQuery;
+import org.bitrepository.access.TimestampWindow;
 import org.bitrepository.access.getfileids.GetFileIDsClient;
 import org.bitrepository.client.eventhandler.OperationEvent;
 import org.bitrepository.commandline.eventhandler.GetFileIDsEventHandler;
@@ -36,52 +35,52 @@ import org.bitrepository.commandline.resultmodel.GetFileIDsResultModel;
 /**
  * Wrapper class for GetFileIDsClient to handle paging through large result sets 
  */
-public class PagingGetFileIDsClient {
+public class PagingGetFileIDsClient extends WindowedPagingClient {
 
     private final GetFileIDsClient client;
     private GetFileIDsResultModel model;
-    private GetFileIDsEventHandler eventHandler;
     private GetFileIDsOutputFormatter outputFormatter;
-    private final OutputHandler outputHandler;
-    private long timeout;
-    private final int pageSize;
+    private String collectionID;
+    private String fileID;
       
     public PagingGetFileIDsClient(GetFileIDsClient client, long timeout, int pageSize, GetFileIDsOutputFormatter outputFormatter,
             OutputHandler outputHandler) {
+        this(client, timeout, pageSize, TimestampWindow.DEFAULT_NUMBER_OF_WINDOWS, outputFormatter, outputHandler);
+    }
+    
+    public PagingGetFileIDsClient(GetFileIDsClient client, long timeout, int pageSize, int numberOfWindows,
+            GetFileIDsOutputFormatter outputFormatter, OutputHandler outputHandler) {
+        super(timeout, pageSize, numberOfWindows, outputHandler);
         this.client = client;
-        this.timeout = timeout;
-        this.pageSize = pageSize;
         this.outputFormatter = outputFormatter;
-        this.outputHandler = outputHandler;
     }
     
     public boolean getFileIDs(String collectionID, String fileID, List<String> pillarIDs) {
         model = new GetFileIDsResultModel(pillarIDs);
-        List<String> pillarsToGetFrom = pillarIDs;
+        this.collectionID = collectionID;
+        this.fileID = fileID;
         outputFormatter.formatHeader();
         
-        while(!pillarsToGetFrom.isEmpty()) {
-            eventHandler = new GetFileIDsEventHandler(model, timeout, outputHandler);
-            ContributorQuery[] queries = makeQuery(pillarsToGetFrom);
-            client.getFileIDs(collectionID, queries, fileID, null, eventHandler);
-            OperationEvent event = eventHandler.getFinish();
-            if(event.getEventType().equals(OperationEvent.OperationEventType.FAILED)) {
-                outputFormatter.formatResult(model.getUncompletedResults());
-                return false;
-            }
-            pillarsToGetFrom = eventHandler.getPillarsWithPartialResults();
-            outputFormatter.formatResult(model.getCompletedResults());
+        try {
+            boolean success = getAllPages(pillarIDs);
+            outputFormatter.formatResult(model.getUncompletedResults());
+            return success;
+        } finally {
+            model.close();
         }
-        outputFormatter.formatResult(model.getUncompletedResults());
-        return true;
     }
     
-    private ContributorQuery[] makeQuery(List<String> pillars) {
-        List<ContributorQuery> res = new ArrayList<ContributorQuery>();
-        for(String pillar : pillars) {
-            Date latestResult = model.getLatestContribution(pillar);
-            res.add(new ContributorQuery(pillar, latestResult, null, pageSize));
+    @Override
+    protected List<String> getPage(TimestampWindow window, Collection<String> pillars) {
+        GetFileIDsEventHandler eventHandler = new GetFileIDsEventHandler(model, window, timeout, outputHandler);
+        client.getFileIDs(collectionID, window.getQueries(pillars, pageSize), fileID, null, eventHandler);
+        OperationEvent event = eventHandler.getFinish();
+        if(event.getEventType().equals(OperationEvent.OperationEventType.FAILED)) {
+            return null;
+        }
+        synchronized (outputFormatter) {
+            outputFormatter.formatResult(model.getCompletedResults());
         }
-        return res.toArray(new ContributorQuery[pillars.size()]);
+        return eventHandler.getPillarsWithPartialResults();
     }
 }
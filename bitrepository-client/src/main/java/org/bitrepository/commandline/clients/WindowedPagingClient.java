@@ -0,0 +1,131 @@
+/*
+ * #%L
+ * Bitrepository Command Line
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.commandline.clients;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.bitrepository.access.TimestampWindow;
+import org.bitrepository.commandline.output.OutputHandler;
+import org.bitrepository.common.DefaultThreadFactory;
+
+/**
+ * Base class for the clients paging through large result sets.
+ * The first page is requested from all the pillars. If more results remain, the rest of the timestamp range is
+ * divided into windows, which are paged through concurrently.
+ */
+abstract class WindowedPagingClient {
+    protected final long timeout;
+    protected final int pageSize;
+    protected final OutputHandler outputHandler;
+    private final int numberOfWindows;
+
+    /**
+     * @param timeout The timeout for each page.
+     * @param pageSize The maximum number of results in each page.
+     * @param numberOfWindows The maximum number of windows to page through concurrently.
+     * @param outputHandler The output handler.
+     */
+    protected WindowedPagingClient(long timeout, int pageSize, int numberOfWindows, OutputHandler outputHandler) {
+        this.timeout = timeout;
+        this.pageSize = pageSize;
+        this.numberOfWindows = numberOfWindows;
+        this.outputHandler = outputHandler;
+    }
+
+    /**
+     * Requests the next page of results within a window, and waits for it.
+     * @param window The window.
+     * @param pillars The pillars to request results from.
+     * @return The pillars with more results in the window, or null if the request failed.
+     */
+    protected abstract List<String> getPage(TimestampWindow window, Collection<String> pillars);
+
+    /**
+     * Pages through all the results from the pillars.
+     * @param pillarIDs The pillars.
+     * @return Whether all the results were delivered.
+     */
+    protected boolean getAllPages(Collection<String> pillarIDs) {
+        TimestampWindow window = new TimestampWindow(null, null, pillarIDs);
+        List<String> pillarsToGetFrom = getPage(window, pillarIDs);
+        if(pillarsToGetFrom == null) {
+            return false;
+        }
+        List<TimestampWindow> windows = window.split(pillarsToGetFrom, numberOfWindows);
+        if(windows.size() == 1) {
+            return getRemainingPages(window, pillarsToGetFrom);
+        }
+
+        outputHandler.debug("Paging through the remaining results in " + windows.size() + " windows: " + windows);
+        ExecutorService executor = Executors.newFixedThreadPool(windows.size(),
+                new DefaultThreadFactory("PagingClient-", Thread.NORM_PRIORITY, true));
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for(final TimestampWindow remainingWindow : windows) {
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return getRemainingPages(remainingWindow, remainingWindow.getContributors());
+                    }
+                }));
+            }
+            boolean success = true;
+            for(Future<Boolean> result : results) {
+                try {
+                    success &= result.get();
+                } catch (ExecutionException e) {
+                    outputHandler.error("Failed to page through the results.", e.getCause());
+                    success = false;
+                }
+            }
+            return success;
+        } catch (InterruptedException e) {
+            throw new IllegalStateException("Interrupted while paging through the results.", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Pages through a window until no more results remain.
+     * @param window The window.
+     * @param pillars The pillars with results in the window.
+     * @return Whether all the results in the window were delivered.
+     */
+    private boolean getRemainingPages(TimestampWindow window, Collection<String> pillars) {
+        Collection<String> pillarsToGetFrom = pillars;
+        while(!pillarsToGetFrom.isEmpty()) {
+            pillarsToGetFrom = getPage(window, pillarsToGetFrom);
+            if(pillarsToGetFrom == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
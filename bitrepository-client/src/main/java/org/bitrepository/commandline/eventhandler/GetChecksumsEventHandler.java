@@ -21,6 +21,7 @@
  */
 package org.bitrepository.commandline.eventhandler;
 
+import org.bitrepository.access.TimestampWindow;
 import org.bitrepository.access.getchecksums.conversation.ChecksumsCompletePillarEvent;
 import org.bitrepository.client.eventhandler.OperationEvent;
 import org.bitrepository.commandline.output.OutputHandler;
@@ -32,10 +33,18 @@ import org.bitrepository.commandline.resultmodel.GetChecksumsResultModel;
 public class GetChecksumsEventHandler extends PagingEventHandler {
 
     private GetChecksumsResultModel model;
+    /** The timestamp window the results are requested for. May be null.*/
+    private TimestampWindow window;
     
     public GetChecksumsEventHandler(GetChecksumsResultModel model, Long timeout, OutputHandler outputHandler) {
+        this(model, null, timeout, outputHandler);
+    }
+    
+    public GetChecksumsEventHandler(GetChecksumsResultModel model, TimestampWindow window, Long timeout,
+            OutputHandler outputHandler) {
         super(timeout, outputHandler);
         this.model = model;
+        this.window = window;
     }
 
     protected void handleResult(OperationEvent event) {
@@ -44,7 +53,7 @@ public class GetChecksumsEventHandler extends PagingEventHandler {
             if(pillarEvent.isPartialResult()) {
                 pillarsWithPartialResults.add(pillarEvent.getContributorID());
             }
-            model.addResults(pillarEvent.getContributorID(), pillarEvent.getChecksums());
+            model.addResults(pillarEvent.getContributorID(), pillarEvent.getChecksums(), window);
         } 
     }
 }
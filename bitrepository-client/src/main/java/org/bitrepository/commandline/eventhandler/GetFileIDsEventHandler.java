@@ -21,6 +21,7 @@
  */
 package org.bitrepository.commandline.eventhandler;
 
+import org.bitrepository.access.TimestampWindow;
 import org.bitrepository.access.getfileids.conversation.FileIDsCompletePillarEvent;
 import org.bitrepository.client.eventhandler.OperationEvent;
 import org.bitrepository.commandline.output.OutputHandler;
@@ -31,10 +32,18 @@ import org.bitrepository.commandline.resultmodel.GetFileIDsResultModel;
  */
 public class GetFileIDsEventHandler extends PagingEventHandler {
     private GetFileIDsResultModel model;
+    /** The timestamp window the results are requested for. May be null.*/
+    private TimestampWindow window;
     
     public GetFileIDsEventHandler(GetFileIDsResultModel model, Long timeout, OutputHandler outputHandler) {
+        this(model, null, timeout, outputHandler);
+    }
+    
+    public GetFileIDsEventHandler(GetFileIDsResultModel model, TimestampWindow window, Long timeout,
+            OutputHandler outputHandler) {
         super(timeout, outputHandler);
         this.model = model;
+        this.window = window;
     }
     
     protected void handleResult(OperationEvent event) {
@@ -43,7 +52,7 @@ public class GetFileIDsEventHandler extends PagingEventHandler {
             if(pillarEvent.isPartialResult()) {
                 pillarsWithPartialResults.add(pillarEvent.getContributorID());
             }
-            model.addResults(pillarEvent.getContributorID(), pillarEvent.getFileIDs());
+            model.addResults(pillarEvent.getContributorID(), pillarEvent.getFileIDs(), window);
         }
     }
 }
@@ -21,6 +21,9 @@
  */
 package org.bitrepository.commandline.resultmodel;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
@@ -30,6 +33,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.bitrepository.access.TimestampWindow;
 import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
 import org.bitrepository.bitrepositoryelements.ResultingChecksums;
 import org.bitrepository.common.utils.Base16Utils;
@@ -39,22 +43,36 @@ import org.bitrepository.common.utils.CalendarUtils;
  * Model for keeping results from a GetFileIDs call. The model is intended to act as a buffer for
  * completed and uncompleted data. The intension is that completed data can be fetched while the 
  * remaining data is still being fetched - this should serve to keep memory use down. 
+ * The model is thread safe, so results for different timestamp windows may be added concurrently.
+ * <p/>
+ * Only a bounded number of uncompleted results are kept in memory, the rest are written to disk, see
+ * {@link SpillableResultMap}. A file with contributions on disk is not reported as completed while the results are
+ * being fetched, but is delivered with the uncompleted results at the end, where the contributions are merged.
+ * The model should be closed when the results have been delivered, to delete the results on disk.
  */
 public class GetChecksumsResultModel {
     
     private List<ChecksumResult> completeResults;
     private Set<String> lastCompletedIDs;
-    private Map<String, ChecksumResult> uncompleteResults;
+    private SpillableResultMap<ChecksumResult> uncompleteResults;
     private Map<String, Date> latestContributorDate;
     
     public GetChecksumsResultModel(Collection<String> expectedContributors) {
+        this(expectedContributors, SpillableResultMap.DEFAULT_MAX_RESULTS_IN_MEMORY);
+    }
+    
+    /**
+     * @param expectedContributors The contributors expected to deliver results.
+     * @param maxResultsInMemory The maximum number of uncompleted results to keep in memory.
+     */
+    public GetChecksumsResultModel(Collection<String> expectedContributors, int maxResultsInMemory) {
         latestContributorDate = new HashMap<String, Date>();
         for(String contributor : expectedContributors) {
             latestContributorDate.put(contributor, new Date(0));
         }
         completeResults = new ArrayList<ChecksumResult>();
         lastCompletedIDs = new HashSet<String>();
-        uncompleteResults = new HashMap<String, ChecksumResult>();
+        uncompleteResults = new ChecksumResultMap(maxResultsInMemory);
     }
     
     /**
@@ -63,21 +81,34 @@ public class GetChecksumsResultModel {
      * @param results the results from the contributor.
      */
     public void addResults(String contributor, ResultingChecksums results) {
+        addResults(contributor, results, null);
+    }
+    
+    /**
+     * Add a set of results from a contributor, requested for a timestamp window. The results delivered again
+     * from the previous page of the window are skipped.
+     * @param contributor the contributor from which the results are from
+     * @param results the results from the contributor.
+     * @param window the timestamp window the results were requested for. May be null.
+     */
+    public synchronized void addResults(String contributor, ResultingChecksums results, TimestampWindow window) {
         Date latestContribution = latestContributorDate.get(contributor);
         for(ChecksumDataForChecksumSpecTYPE item : results.getChecksumDataItems()) {
+            Date resultDate = CalendarUtils.convertFromXMLGregorianCalendar(item.getCalculationTimestamp()); 
+            if(window != null && !window.addResult(contributor, item.getFileID(), resultDate)) {
+                continue;
+            }
             if(lastCompletedIDs.contains(item.getFileID())) {
                 continue;
             }
             String checksum = Base16Utils.decodeBase16(item.getChecksumValue());
-            ChecksumResult result;
-            if(uncompleteResults.containsKey(item.getFileID())) {
-                result = uncompleteResults.get(item.getFileID());
+            ChecksumResult result = uncompleteResults.get(item.getFileID());
+            if(result != null) {
                 result.addContributor(contributor, checksum);
             } else {
                 result = new ChecksumResult(item.getFileID(), contributor, checksum);
             }
             
-            Date resultDate = CalendarUtils.convertFromXMLGregorianCalendar(item.getCalculationTimestamp()); 
             if(resultDate.after(latestContribution)) {
                 latestContribution = resultDate;
             }
@@ -86,7 +117,7 @@ public class GetChecksumsResultModel {
                 completeResults.add(result);
                 uncompleteResults.remove(item.getFileID());
             } else {
-                uncompleteResults.put(item.getFileID(), result);
+                uncompleteResults.put(result);
             }
         }       
         latestContributorDate.put(contributor, latestContribution);
@@ -97,7 +128,7 @@ public class GetChecksumsResultModel {
      * delivered their part), the call is NOT idempotent. 
      * @return The collection of {@link ChecksumResult}s 
      */    
-    public Collection<ChecksumResult> getCompletedResults() {
+    public synchronized Collection<ChecksumResult> getCompletedResults() {
         List<ChecksumResult> completed = completeResults;
         completeResults = null;
         completeResults = new ArrayList<ChecksumResult>();
@@ -110,10 +141,11 @@ public class GetChecksumsResultModel {
 
     /**
      * Get the collection of uncompleted results (the results which does not have had contributions 
-     * from all expected contributors)
+     * from all expected contributors). The results are merged from memory and disk as they are iterated, and
+     * include the files which have only been completed by merging the contributions written to disk.
      * @return The collection of {@link ChecksumResult}s  
      */    
-    public Collection<ChecksumResult> getUncompletedResults() {
+    public synchronized Collection<ChecksumResult> getUncompletedResults() {
         return uncompleteResults.values();
     }
     
@@ -122,7 +154,58 @@ public class GetChecksumsResultModel {
      * @param contributor the contributor to get the Date of the latest contribution.
      * @return Date the date of the latest contribution by the given contributor
      */
-    public Date getLatestContribution(String contributor) {
+    public synchronized Date getLatestContribution(String contributor) {
         return latestContributorDate.get(contributor);
     }
+
+    /**
+     * Delete the uncompleted results written to disk. The model can not be used afterwards.
+     */
+    public synchronized void close() {
+        uncompleteResults.clear();
+    }
+    
+    /**
+     * The uncompleted checksum results, written to disk as the file id followed by the pairs of contributor
+     * and checksum.
+     */
+    private static class ChecksumResultMap extends SpillableResultMap<ChecksumResult> {
+        ChecksumResultMap(int maxResultsInMemory) {
+            super(maxResultsInMemory);
+        }
+        
+        @Override
+        protected String getID(ChecksumResult result) {
+            return result.getID();
+        }
+        
+        @Override
+        protected void merge(ChecksumResult result, ChecksumResult other) {
+            for(String contributor : other.getContributors()) {
+                result.addContributor(contributor, other.getChecksum(contributor));
+            }
+        }
+        
+        @Override
+        protected void write(DataOutputStream out, ChecksumResult result) throws IOException {
+            out.writeUTF(result.getID());
+            List<String> contributors = result.getContributors();
+            out.writeInt(contributors.size());
+            for(String contributor : contributors) {
+                out.writeUTF(contributor);
+                out.writeUTF(result.getChecksum(contributor));
+            }
+        }
+        
+        @Override
+        protected ChecksumResult read(DataInputStream in) throws IOException {
+            String id = in.readUTF();
+            int numberOfContributors = in.readInt();
+            ChecksumResult result = new ChecksumResult(id, in.readUTF(), in.readUTF());
+            for(int i = 1; i < numberOfContributors; i++) {
+                result.addContributor(in.readUTF(), in.readUTF());
+            }
+            return result;
+        }
+    }
 }
@@ -21,6 +21,10 @@
  */
 package org.bitrepository.commandline.resultmodel;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
@@ -30,6 +34,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.bitrepository.access.TimestampWindow;
 import org.bitrepository.bitrepositoryelements.FileIDsDataItem;
 import org.bitrepository.bitrepositoryelements.ResultingFileIDs;
 import org.bitrepository.common.utils.CalendarUtils;
@@ -38,22 +43,36 @@ import org.bitrepository.common.utils.CalendarUtils;
  * Model for keeping results from a GetFileIDs call. The model is intended to act as a buffer for
  * completed and uncompleted data. The intension is that completed data can be fetched while the 
  * remaining data is still being fetched - this should serve to keep memory use down. 
+ * The model is thread safe, so results for different timestamp windows may be added concurrently.
+ * <p/>
+ * Only a bounded number of uncompleted results are kept in memory, the rest are written to disk, see
+ * {@link SpillableResultMap}. A file with contributions on disk is not reported as completed while the results are
+ * being fetched, but is delivered with the uncompleted results at the end, where the contributions are merged.
+ * The model should be closed when the results have been delivered, to delete the results on disk.
  */
 public class GetFileIDsResultModel {
 
     private List<FileIDsResult> completeResults;
     private Set<String> lastCompletedIDs;
-    private Map<String, FileIDsResult> uncompleteResults;
+    private SpillableResultMap<FileIDsResult> uncompleteResults;
     private Map<String, Date> latestContributorDate;
         
     public GetFileIDsResultModel(Collection<String> expectedContributors) {
+        this(expectedContributors, SpillableResultMap.DEFAULT_MAX_RESULTS_IN_MEMORY);
+    }
+    
+    /**
+     * @param expectedContributors The contributors expected to deliver results.
+     * @param maxResultsInMemory The maximum number of uncompleted results to keep in memory.
+     */
+    public GetFileIDsResultModel(Collection<String> expectedContributors, int maxResultsInMemory) {
         latestContributorDate = new HashMap<String, Date>();
         for(String contributor : expectedContributors) {
             latestContributorDate.put(contributor, new Date(0));
         }
         completeResults = new ArrayList<FileIDsResult>();
         lastCompletedIDs = new HashSet<String>();
-        uncompleteResults = new HashMap<String, FileIDsResult>();
+        uncompleteResults = new FileIDsResultMap(maxResultsInMemory);
     }
     
     /**
@@ -62,21 +81,34 @@ public class GetFileIDsResultModel {
      * @param results the results from the contributor.
      */
     public void addResults(String contributor, ResultingFileIDs results) {
+        addResults(contributor, results, null);
+    }
+    
+    /**
+     * Add a set of results from a contributor, requested for a timestamp window. The results delivered again
+     * from the previous page of the window are skipped.
+     * @param contributor the contributor from which the results are from
+     * @param results the results from the contributor.
+     * @param window the timestamp window the results were requested for. May be null.
+     */
+    public synchronized void addResults(String contributor, ResultingFileIDs results, TimestampWindow window) {
         Date latestContribution = latestContributorDate.get(contributor);
         for(FileIDsDataItem item : results.getFileIDsData().getFileIDsDataItems().getFileIDsDataItem()) {
+            Date resultDate = CalendarUtils.convertFromXMLGregorianCalendar(item.getLastModificationTime()); 
+            if(window != null && !window.addResult(contributor, item.getFileID(), resultDate)) {
+                continue;
+            }
             if(lastCompletedIDs.contains(item.getFileID())) {
                 continue;
             }
-            FileIDsResult result;
-            if(uncompleteResults.containsKey(item.getFileID())) {
-                result = uncompleteResults.get(item.getFileID());
+            FileIDsResult result = uncompleteResults.get(item.getFileID());
+            if(result != null) {
                 result.updateSize(item.getFileSize());
                 result.addContributor(contributor);
             } else {
                 result = new FileIDsResult(item.getFileID(), item.getFileSize(), contributor);
             }
             
-            Date resultDate = CalendarUtils.convertFromXMLGregorianCalendar(item.getLastModificationTime()); 
             if(resultDate.after(latestContribution)) {
                 latestContribution = resultDate;
             }
@@ -85,7 +117,7 @@ public class GetFileIDsResultModel {
                 completeResults.add(result);
                 uncompleteResults.remove(item.getFileID());
             } else {
-                uncompleteResults.put(item.getFileID(), result);
+                uncompleteResults.put(result);
             }
         }       
         latestContributorDate.put(contributor, latestContribution);
@@ -96,7 +128,7 @@ public class GetFileIDsResultModel {
      * delivered their part), the call is NOT idempotent. 
      * @return the collection of {@link FileIDsResult}s 
      */    
-    public Collection<FileIDsResult> getCompletedResults() {
+    public synchronized Collection<FileIDsResult> getCompletedResults() {
         List<FileIDsResult> completed = completeResults;
         completeResults = null;
         completeResults = new ArrayList<FileIDsResult>();
@@ -109,10 +141,11 @@ public class GetFileIDsResultModel {
 
     /**
      * Get the collection of uncompleted results (the results which does not have had contributions 
-     * from all expected contributors)
+     * from all expected contributors). The results are merged from memory and disk as they are iterated, and
+     * include the files which have only been completed by merging the contributions written to disk.
      * @return the collection of {@link FileIDsResult} 
      */    
-    public Collection<FileIDsResult> getUncompletedResults() {
+    public synchronized Collection<FileIDsResult> getUncompletedResults() {
         return uncompleteResults.values();
     }
     
@@ -121,7 +154,62 @@ public class GetFileIDsResultModel {
      * @param contributor the contributor to get the Date of the latest contribution.
      * @return Date the date of the latest contribution by the given contributor
      */
-    public Date getLatestContribution(String contributor) {
+    public synchronized Date getLatestContribution(String contributor) {
         return latestContributorDate.get(contributor);
     }
+
+    /**
+     * Delete the uncompleted results written to disk. The model can not be used afterwards.
+     */
+    public synchronized void close() {
+        uncompleteResults.clear();
+    }
+    
+    /**
+     * The uncompleted fileIDs results, written to disk as the file id, the file size if known, and the
+     * contributors.
+     */
+    private static class FileIDsResultMap extends SpillableResultMap<FileIDsResult> {
+        FileIDsResultMap(int maxResultsInMemory) {
+            super(maxResultsInMemory);
+        }
+        
+        @Override
+        protected String getID(FileIDsResult result) {
+            return result.getID();
+        }
+        
+        @Override
+        protected void merge(FileIDsResult result, FileIDsResult other) {
+            result.updateSize(other.getSize());
+            for(String contributor : other.getContributors()) {
+                result.addContributor(contributor);
+            }
+        }
+        
+        @Override
+        protected void write(DataOutputStream out, FileIDsResult result) throws IOException {
+            out.writeUTF(result.getID());
+            out.writeBoolean(result.getSize() != null);
+            if(result.getSize() != null) {
+                out.writeUTF(result.getSize().toString());
+            }
+            out.writeInt(result.getContributors().size());
+            for(String contributor : result.getContributors()) {
+                out.writeUTF(contributor);
+            }
+        }
+        
+        @Override
+        protected FileIDsResult read(DataInputStream in) throws IOException {
+            String id = in.readUTF();
+            BigInteger size = (in.readBoolean() ? new BigInteger(in.readUTF()) : null);
+            int numberOfContributors = in.readInt();
+            FileIDsResult result = new FileIDsResult(id, size, in.readUTF());
+            for(int i = 1; i < numberOfContributors; i++) {
+                result.addContributor(in.readUTF());
+            }
+            return result;
+        }
+    }
 }
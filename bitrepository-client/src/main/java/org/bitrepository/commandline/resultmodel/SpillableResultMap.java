@@ -0,0 +1,369 @@
+/*
+ * #%L
+ * Bitrepository Command Line
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.commandline.resultmodel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Map from file id to the uncompleted result for the file, which keeps a bounded number of results in memory.
+ * <p/>
+ * When the results in memory exceed the limit, they are written to a temporary file as a run sorted on the file id,
+ * and removed from memory. A later contribution for a file written to a run is therefore kept as a separate
+ * result in memory, and the contributions are only combined when the runs are merged on the file id by
+ * {@link #values()}. The number of runs is kept down by merging them into a single run, when there are too many.
+ * <p/>
+ * The map is not thread safe.
+ * @param <T> The type of results.
+ */
+abstract class SpillableResultMap<T> {
+    /** The default maximum number of results kept in memory.*/
+    static final int DEFAULT_MAX_RESULTS_IN_MEMORY = 100000;
+    /** The maximum number of runs, before they are merged into a single run.*/
+    private static final int MAX_NUMBER_OF_RUNS = 64;
+    /** The size of the buffers for reading and writing the runs.*/
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The maximum number of results kept in memory.*/
+    private final int maxResultsInMemory;
+    /** The results in memory.*/
+    private final Map<String, T> results = new HashMap<String, T>();
+    /** The runs written to disk, in the order they were written.*/
+    private final List<File> runs = new ArrayList<File>();
+
+    /**
+     * @param maxResultsInMemory The maximum number of results kept in memory.
+     */
+    SpillableResultMap(int maxResultsInMemory) {
+        if(maxResultsInMemory < 1) {
+            throw new IllegalArgumentException("maxResultsInMemory must be positive, was " + maxResultsInMemory);
+        }
+        this.maxResultsInMemory = maxResultsInMemory;
+    }
+
+    /**
+     * @param result The result.
+     * @return The file id of the result.
+     */
+    protected abstract String getID(T result);
+
+    /**
+     * Adds the contributions of another result for the same file to a result.
+     * @param result The result to add to.
+     * @param other The result with the contributions to add.
+     */
+    protected abstract void merge(T result, T other);
+
+    /**
+     * Writes a result to a run.
+     * @param out The run to write to.
+     * @param result The result to write.
+     */
+    protected abstract void write(DataOutputStream out, T result) throws IOException;
+
+    /**
+     * Reads a result written by {@link #write(DataOutputStream, Object)}.
+     * @param in The run to read from.
+     * @return The result.
+     */
+    protected abstract T read(DataInputStream in) throws IOException;
+
+    /**
+     * @param id The file id.
+     * @return The result for the file in memory, or null if the file has no result in memory.
+     */
+    T get(String id) {
+        return results.get(id);
+    }
+
+    /**
+     * Puts a result in memory. The results in memory are written to a run, if there are too many.
+     * @param result The result.
+     */
+    void put(T result) {
+        results.put(getID(result), result);
+        if(results.size() > maxResultsInMemory) {
+            spill();
+        }
+    }
+
+    /**
+     * @param id The file id of the result to remove from memory.
+     */
+    void remove(String id) {
+        results.remove(id);
+    }
+
+    /**
+     * @return The number of runs written to disk.
+     */
+    int getNumberOfRuns() {
+        return runs.size();
+    }
+
+    /**
+     * Delivers the results merged from the runs and the memory, ordered by file id. The contributions for a file
+     * from different runs are merged into a single result.
+     * The results are read from disk as they are iterated, so the size of the returned collection is found by
+     * iterating through all of them.
+     * @return The results.
+     */
+    Collection<T> values() {
+        final List<File> runsToMerge = new ArrayList<File>(runs);
+        final Collection<T> resultsInMemory = new TreeMap<String, T>(results).values();
+        return new AbstractCollection<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return new MergingIterator(runsToMerge, resultsInMemory.iterator());
+            }
+
+            @Override
+            public boolean isEmpty() {
+                return runsToMerge.isEmpty() && resultsInMemory.isEmpty();
+            }
+
+            @Override
+            public int size() {
+                int size = 0;
+                for(Iterator<T> it = iterator(); it.hasNext(); it.next()) {
+                    size++;
+                }
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Removes the results, and deletes the runs.
+     */
+    void clear() {
+        results.clear();
+        for(File run : runs) {
+            run.delete();
+        }
+        runs.clear();
+    }
+
+    /**
+     * Writes the results in memory to a new run sorted by file id, and merges the runs if there are too many.
+     */
+    private void spill() {
+        writeRun(new TreeMap<String, T>(results).values().iterator());
+        results.clear();
+        if(runs.size() >= MAX_NUMBER_OF_RUNS) {
+            List<File> runsToMerge = new ArrayList<File>(runs);
+            writeRun(new MergingIterator(runsToMerge, null));
+            runs.removeAll(runsToMerge);
+            for(File run : runsToMerge) {
+                run.delete();
+            }
+        }
+    }
+
+    /**
+     * Writes the results to a new run. The run is only added to the runs, when it has been completely written, and
+     * it is deleted if the writing fails.
+     * @param sortedResults The results, sorted by file id.
+     */
+    private void writeRun(Iterator<T> sortedResults) {
+        File run;
+        try {
+            run = File.createTempFile("results", ".run");
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not create a file for the results", e);
+        }
+        run.deleteOnExit();
+        boolean written = false;
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(run), BUFFER_SIZE))) {
+                while(sortedResults.hasNext()) {
+                    out.writeBoolean(true);
+                    write(out, sortedResults.next());
+                }
+                out.writeBoolean(false);
+            }
+            written = true;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write the results to '" + run + "'", e);
+        } finally {
+            if(!written) {
+                run.delete();
+            }
+        }
+        runs.add(run);
+    }
+
+    /**
+     * The next result of a run or of the memory, during a merge.
+     */
+    private class Source implements Comparable<Source> {
+        /** The order of the source. Sources with equal file ids are merged in this order.*/
+        private final int order;
+        private final Iterator<T> results;
+        private T current;
+
+        Source(int order, Iterator<T> results) {
+            this.order = order;
+            this.results = results;
+        }
+
+        /**
+         * @return Whether the source has a next result, which is then the current result.
+         */
+        boolean advance() {
+            current = (results.hasNext() ? results.next() : null);
+            return current != null;
+        }
+
+        @Override
+        public int compareTo(Source other) {
+            int res = getID(current).compareTo(getID(other.current));
+            return (res != 0 ? res : Integer.compare(order, other.order));
+        }
+    }
+
+    /**
+     * Merges sorted runs, and optionally the sorted results from memory, into a single sequence sorted by file id.
+     * The results read from a run are new objects, and they are ordered before the results from memory, so the
+     * results in memory are never changed by a merge.
+     */
+    private class MergingIterator implements Iterator<T> {
+        private final PriorityQueue<Source> sources = new PriorityQueue<Source>();
+
+        /**
+         * @param runsToMerge The runs to merge.
+         * @param resultsInMemory The results from memory sorted by file id, or null.
+         */
+        MergingIterator(List<File> runsToMerge, Iterator<T> resultsInMemory) {
+            for(int i = 0; i < runsToMerge.size(); i++) {
+                addSource(new Source(i, new RunIterator(runsToMerge.get(i))));
+            }
+            if(resultsInMemory != null) {
+                addSource(new Source(runsToMerge.size(), resultsInMemory));
+            }
+        }
+
+        private void addSource(Source source) {
+            if(source.advance()) {
+                sources.add(source);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !sources.isEmpty();
+        }
+
+        @Override
+        public T next() {
+            if(sources.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            Source source = sources.poll();
+            T result = source.current;
+            addSource(source);
+            while(!sources.isEmpty() && getID(sources.peek().current).equals(getID(result))) {
+                Source other = sources.poll();
+                merge(result, other.current);
+                addSource(other);
+            }
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Reads the results of a run. The run is closed when the last result has been read.
+     */
+    private class RunIterator implements Iterator<T> {
+        private final File run;
+        private DataInputStream in;
+        private T next;
+
+        RunIterator(File run) {
+            this.run = run;
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), BUFFER_SIZE));
+                readNext();
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read the results from '" + run + "'", e);
+            }
+        }
+
+        private void readNext() throws IOException {
+            if(in.readBoolean()) {
+                next = read(in);
+            } else {
+                next = null;
+                in.close();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+            if(next == null) {
+                throw new NoSuchElementException();
+            }
+            T result = next;
+            try {
+                readNext();
+            } catch (EOFException e) {
+                throw new IllegalStateException("The results in '" + run + "' are truncated", e);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read the results from '" + run + "'", e);
+            }
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
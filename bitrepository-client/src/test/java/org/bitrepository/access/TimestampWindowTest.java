@@ -0,0 +1,126 @@
+/*
+ * #%L
+ * Bitrepository Access
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.access;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TimestampWindowTest extends ExtendedTestCase {
+    private static final String PILLAR1 = "Pillar1";
+    private static final String PILLAR2 = "Pillar2";
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    @Test(groups = {"regressiontest"})
+    public void redeliveredResultsTest() {
+        addDescription("Tests that results delivered again with the latest timestamp of a page are recognized.");
+        TimestampWindow window = new TimestampWindow(null, null, Arrays.asList(PILLAR1, PILLAR2));
+        Date first = new Date(1000);
+        Date second = new Date(2000);
+
+        addStep("Add results for the first pillar", "The results are new, and the latest timestamp is registered");
+        Assert.assertTrue(window.addResult(PILLAR1, "file1", first));
+        Assert.assertTrue(window.addResult(PILLAR1, "file2", second));
+        Assert.assertEquals(window.getLatestTimestamp(PILLAR1), second);
+        Assert.assertNull(window.getLatestTimestamp(PILLAR2));
+
+        addStep("Deliver the result with the latest timestamp again", "The result is not new");
+        Assert.assertFalse(window.addResult(PILLAR1, "file2", second));
+        Assert.assertTrue(window.addResult(PILLAR1, "file3", second));
+        Assert.assertFalse(window.addResult(PILLAR1, "file3", second));
+
+        addStep("Deliver the same result from the second pillar", "The result is new for the second pillar");
+        Assert.assertTrue(window.addResult(PILLAR2, "file2", second));
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void queriesTest() {
+        addDescription("Tests that the queries continue from the latest timestamp of each contributor.");
+        Date min = new Date(1000);
+        Date max = new Date(5000);
+        TimestampWindow window = new TimestampWindow(min, max, Arrays.asList(PILLAR1, PILLAR2));
+        window.addResult(PILLAR1, "file1", new Date(3000));
+
+        ContributorQuery[] queries = window.getQueries(Arrays.asList(PILLAR1, PILLAR2), 10);
+        Assert.assertEquals(queries.length, 2);
+        Assert.assertEquals(queries[0].getComponentID(), PILLAR1);
+        Assert.assertEquals(queries[0].getMinTimestamp(), new Date(3000));
+        Assert.assertEquals(queries[0].getMaxTimestamp(), max);
+        Assert.assertEquals(queries[0].getMaxNumberOfResults(), Integer.valueOf(10));
+        Assert.assertEquals(queries[1].getComponentID(), PILLAR2);
+        Assert.assertEquals(queries[1].getMinTimestamp(), min);
+        Assert.assertEquals(queries[1].getMaxTimestamp(), max);
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void splitTest() {
+        addDescription("Tests the division of a window into disjoint windows.");
+        long start = System.currentTimeMillis() - 8 * HOUR;
+        Date end = new Date(start + 8 * HOUR);
+        TimestampWindow window = new TimestampWindow(null, end, Arrays.asList(PILLAR1, PILLAR2));
+        window.addResult(PILLAR1, "file1", new Date(start));
+        window.addResult(PILLAR2, "file2", new Date(start + 5 * HOUR));
+
+        addStep("Split the window in four", "Four consecutive windows covering the remaining range");
+        List<TimestampWindow> windows = window.split(Arrays.asList(PILLAR1, PILLAR2), 4);
+        Assert.assertEquals(windows.size(), 4);
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals(windows.get(i).getMinTimestamp(), new Date(start + i * 2 * HOUR));
+        }
+        Assert.assertEquals(windows.get(0).getMaxTimestamp(), new Date(start + 2 * HOUR - 1));
+        Assert.assertEquals(windows.get(3).getMaxTimestamp(), end);
+
+        addStep("Check the contributors of the windows",
+                "The second pillar is only part of the windows after its progress");
+        Assert.assertEquals(windows.get(0).getContributors().size(), 1);
+        Assert.assertEquals(windows.get(1).getContributors().size(), 1);
+        Assert.assertEquals(windows.get(2).getContributors().size(), 2);
+        Assert.assertEquals(windows.get(3).getContributors().size(), 2);
+
+        addStep("Check the progress carried over into the windows",
+                "The progress is kept in the window containing it, and redeliveries are recognized");
+        Assert.assertEquals(windows.get(0).getLatestTimestamp(PILLAR1), new Date(start));
+        Assert.assertFalse(windows.get(0).addResult(PILLAR1, "file1", new Date(start)));
+        Assert.assertNull(windows.get(1).getLatestTimestamp(PILLAR1));
+        Assert.assertEquals(windows.get(2).getLatestTimestamp(PILLAR2), new Date(start + 5 * HOUR));
+        Assert.assertFalse(windows.get(2).addResult(PILLAR2, "file2", new Date(start + 5 * HOUR)));
+        Assert.assertNull(windows.get(3).getLatestTimestamp(PILLAR2));
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void shortRangeIsNotSplitTest() {
+        addDescription("Tests that a window is not divided, when the remaining range is short or unknown.");
+        TimestampWindow window = new TimestampWindow(null, null, Arrays.asList(PILLAR1, PILLAR2));
+        window.addResult(PILLAR1, "file1", new Date());
+
+        addStep("Split with a contributor without progress", "Only the window itself is returned");
+        Assert.assertEquals(window.split(Arrays.asList(PILLAR1, PILLAR2), 4), Arrays.asList(window));
+
+        addStep("Split with a remaining range below the minimum window length", "Only the window itself is returned");
+        Assert.assertEquals(window.split(Arrays.asList(PILLAR1), 4), Arrays.asList(window));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * #%L
+ * Bitrepository Access
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.access.getfile.selectors;
+
+import java.util.Arrays;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class PillarPerformanceTrackerTest extends ExtendedTestCase {
+    private static final String PILLAR1 = "Pillar1";
+    private static final String PILLAR2 = "Pillar2";
+
+    @Test(groups = {"regressiontest"})
+    public void unknownPillarTest() {
+        addDescription("Tests that a pillar without observations is reported as unknown.");
+        PillarPerformanceTracker tracker = new PillarPerformanceTracker();
+        Assert.assertEquals(tracker.getExpectedIdentifyLatency(PILLAR1), PillarPerformanceTracker.UNKNOWN);
+        Assert.assertEquals(tracker.getExpectedTransferTime(PILLAR1), PillarPerformanceTracker.UNKNOWN);
+        Assert.assertFalse(tracker.isConfident(PILLAR1, 1));
+        Assert.assertNull(tracker.getPreferredPillar(Arrays.asList(PILLAR1, PILLAR2), 1));
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void movingAverageTest() {
+        addDescription("Tests that the observations are combined into a exponentially weighted moving average.");
+        PillarPerformanceTracker tracker = new PillarPerformanceTracker(0.5);
+
+        addStep("Record a single transfer time", "The transfer time should be the observation");
+        tracker.recordTransferTime(PILLAR1, 100);
+        Assert.assertEquals(tracker.getExpectedTransferTime(PILLAR1), 100);
+
+        addStep("Record a second transfer time", "The transfer time should be weighted with the earlier value");
+        tracker.recordTransferTime(PILLAR1, 200);
+        Assert.assertEquals(tracker.getExpectedTransferTime(PILLAR1), 150);
+
+        addStep("Record identify latencies", "The identify latency should be averaged independently");
+        tracker.recordIdentifyLatency(PILLAR1, 10);
+        tracker.recordIdentifyLatency(PILLAR1, 30);
+        Assert.assertEquals(tracker.getExpectedIdentifyLatency(PILLAR1), 20);
+        Assert.assertEquals(tracker.getExpectedTransferTime(PILLAR1), 150);
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void confidenceTest() {
+        addDescription("Tests that the confidence in a pillar is based on the consecutive successful deliveries.");
+        PillarPerformanceTracker tracker = new PillarPerformanceTracker();
+        tracker.recordTransferTime(PILLAR1, 100);
+        tracker.recordTransferTime(PILLAR1, 100);
+        Assert.assertTrue(tracker.isConfident(PILLAR1, 2));
+        Assert.assertFalse(tracker.isConfident(PILLAR1, 3));
+
+        addStep("Record a failure for the pillar", "The confidence should be reset");
+        tracker.recordFailure(PILLAR1);
+        Assert.assertFalse(tracker.isConfident(PILLAR1, 1));
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void preferredPillarTest() {
+        addDescription("Tests that the preferred pillar is the confident pillar with the lowest expected time.");
+        PillarPerformanceTracker tracker = new PillarPerformanceTracker();
+        tracker.recordIdentifyLatency(PILLAR1, 10);
+        tracker.recordTransferTime(PILLAR1, 500);
+        tracker.recordIdentifyLatency(PILLAR2, 50);
+        tracker.recordTransferTime(PILLAR2, 100);
+        Assert.assertEquals(tracker.getPreferredPillar(Arrays.asList(PILLAR1, PILLAR2), 1), PILLAR2);
+
+        addStep("Let the fastest pillar fail", "The other pillar should be preferred");
+        tracker.recordFailure(PILLAR2);
+        Assert.assertEquals(tracker.getPreferredPillar(Arrays.asList(PILLAR1, PILLAR2), 1), PILLAR1);
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * #%L
+ * Bitrepository Access
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.client.conversation.mediator;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bitrepository.bitrepositorymessages.AlarmMessage;
+import org.bitrepository.bitrepositorymessages.Message;
+import org.bitrepository.client.conversation.Conversation;
+import org.bitrepository.client.eventhandler.OperationFailedEvent;
+import org.bitrepository.common.settings.Settings;
+import org.bitrepository.common.settings.TestSettingsProvider;
+import org.bitrepository.protocol.MessageContext;
+import org.bitrepository.protocol.messagebus.MessageBusManager;
+import org.bitrepository.protocol.messagebus.SimpleMessageBus;
+import org.bitrepository.protocol.security.DummySecurityManager;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the delegation and timeout handling of the <code>CollectionBasedConversationMediator</code> with many
+ * concurrent conversations, and measures the number of messages the mediator can dispatch per second.
+ */
+public class CollectionBasedConversationMediatorStressTest extends ExtendedTestCase {
+    private Settings settings;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setup() {
+        settings = TestSettingsProvider.getSettings(getClass().getSimpleName());
+        MessageBusManager.injectCustomMessageBus(MessageBusManager.DEFAULT_MESSAGE_BUS, new SimpleMessageBus());
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() {
+        MessageBusManager.clear();
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void messageDelegationTest() {
+        addDescription("Tests that messages are delegated to the conversation with the matching correlation ID.");
+        CollectionBasedConversationMediator mediator = new CollectionBasedConversationMediator(settings,
+                new DummySecurityManager());
+        try {
+            CountingConversation conversation1 = new CountingConversation();
+            CountingConversation conversation2 = new CountingConversation();
+            mediator.addConversation(conversation1);
+            mediator.addConversation(conversation2);
+
+            addStep("Deliver a message for the first conversation and a message for an unknown conversation",
+                    "Only the first conversation should receive a message");
+            mediator.onMessage(createMessage(conversation1.getConversationID()), null);
+            mediator.onMessage(createMessage(UUID.randomUUID().toString()), null);
+            Assert.assertEquals(conversation1.getMessageCount(), 1);
+            Assert.assertEquals(conversation2.getMessageCount(), 0);
+        } finally {
+            mediator.shutdown();
+        }
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void conversationTimeoutTest() throws Exception {
+        addDescription("Tests that conversations are failed when they time out, and only once.");
+        settings.getReferenceSettings().getClientSettings().setConversationTimeout(BigInteger.valueOf(100));
+        CollectionBasedConversationMediator mediator = new CollectionBasedConversationMediator(settings,
+                new DummySecurityManager());
+        try {
+            int numberOfConversations = 100;
+            CountDownLatch failedLatch = new CountDownLatch(numberOfConversations);
+            List<CountingConversation> conversationList = new ArrayList<CountingConversation>();
+            for (int i = 0; i < numberOfConversations; i++) {
+                CountingConversation conversation = new CountingConversation(failedLatch);
+                conversationList.add(conversation);
+                mediator.addConversation(conversation);
+            }
+
+            addStep("Wait for the conversations to time out", "All conversations should be failed");
+            Assert.assertTrue(failedLatch.await(10, TimeUnit.SECONDS), "Not all conversations where failed");
+            Assert.assertEquals(mediator.getNumberOfConversations(), 0);
+            for (CountingConversation conversation : conversationList) {
+                Assert.assertEquals(conversation.getFailCount(), 1);
+            }
+        } finally {
+            mediator.shutdown();
+        }
+    }
+
+    @Test(groups = {"StressTest"})
+    public void messagesDispatchedPerSecondTest() throws Exception {
+        addDescription("Measures how many messages the mediator can dispatch per second with many concurrent "
+                + "conversations, while conversations are continuously added.");
+        int numberOfConversations = 10000;
+        int numberOfThreads = 8;
+        final int messagesPerThread = 500000;
+        final CollectionBasedConversationMediator mediator = new CollectionBasedConversationMediator(settings,
+                new DummySecurityManager());
+        try {
+            addStep("Register " + numberOfConversations + " conversations", "Should be possible");
+            final List<String> conversationIDs = new ArrayList<String>();
+            for (int i = 0; i < numberOfConversations; i++) {
+                CountingConversation conversation = new CountingConversation();
+                conversationIDs.add(conversation.getConversationID());
+                mediator.addConversation(conversation);
+            }
+
+            addStep("Dispatch " + messagesPerThread + " messages from each of " + numberOfThreads + " threads",
+                    "All messages should be delivered");
+            final AtomicLong dispatched = new AtomicLong();
+            final CountDownLatch doneLatch = new CountDownLatch(numberOfThreads);
+            long startTime = System.nanoTime();
+            for (int t = 0; t < numberOfThreads; t++) {
+                final int offset = t;
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < messagesPerThread; i++) {
+                            if (i % 100 == 0) {
+                                mediator.addConversation(new CountingConversation());
+                            }
+                            String id = conversationIDs.get((i + offset) % conversationIDs.size());
+                            mediator.onMessage(createMessage(id), null);
+                            dispatched.incrementAndGet();
+                        }
+                        doneLatch.countDown();
+                    }
+                }).start();
+            }
+            Assert.assertTrue(doneLatch.await(5, TimeUnit.MINUTES));
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            Assert.assertEquals(dispatched.get(), (long) numberOfThreads * messagesPerThread);
+            System.out.println("Dispatched " + dispatched.get() + " messages in " + elapsedMillis + " ms ("
+                    + (dispatched.get() * 1000 / Math.max(1, elapsedMillis)) + " messages per second).");
+        } finally {
+            mediator.shutdown();
+        }
+    }
+
+    private Message createMessage(String correlationID) {
+        AlarmMessage message = new AlarmMessage();
+        message.setCorrelationID(correlationID);
+        return message;
+    }
+
+    /**
+     * Conversation which just counts the messages it receives and the number of times it has been failed.
+     */
+    private static class CountingConversation implements Conversation {
+        private final String conversationID = UUID.randomUUID().toString();
+        private final long startTime = System.currentTimeMillis();
+        private final CountDownLatch failedLatch;
+        private final AtomicLong messageCount = new AtomicLong();
+        private final AtomicLong failCount = new AtomicLong();
+
+        CountingConversation() {
+            this(null);
+        }
+
+        CountingConversation(CountDownLatch failedLatch) {
+            this.failedLatch = failedLatch;
+        }
+
+        @Override
+        public String getConversationID() {
+            return conversationID;
+        }
+
+        @Override
+        public long getStartTime() {
+            return startTime;
+        }
+
+        @Override
+        public void startConversation() {}
+
+        @Override
+        public void endConversation() {}
+
+        @Override
+        public boolean hasEnded() {
+            return failCount.get() > 0;
+        }
+
+        @Override
+        public void failConversation(OperationFailedEvent operationFailedEvent) {
+            failCount.incrementAndGet();
+            if (failedLatch != null) {
+                failedLatch.countDown();
+            }
+        }
+
+        @Override
+        public void onMessage(Message message, MessageContext messageContext) {
+            messageCount.incrementAndGet();
+        }
+
+        long getMessageCount() {
+            return messageCount.get();
+        }
+
+        long getFailCount() {
+            return failCount.get();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * #%L
+ * Bitrepository Command Line
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.commandline.resultmodel;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bitrepository.bitrepositoryelements.FileIDsData;
+import org.bitrepository.bitrepositoryelements.FileIDsData.FileIDsDataItems;
+import org.bitrepository.bitrepositoryelements.FileIDsDataItem;
+import org.bitrepository.bitrepositoryelements.ResultingFileIDs;
+import org.bitrepository.common.utils.CalendarUtils;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class GetFileIDsResultModelTest extends ExtendedTestCase {
+    private static final String PILLAR1 = "Pillar1";
+    private static final String PILLAR2 = "Pillar2";
+
+    @Test(groups = {"regressiontest"})
+    public void completedResultsTest() {
+        addDescription("Tests that the results delivered by all contributors are reported as completed.");
+        GetFileIDsResultModel model = new GetFileIDsResultModel(Arrays.asList(PILLAR1, PILLAR2));
+        try {
+            model.addResults(PILLAR1, createResultingFileIDs("file1", "file2"));
+            Assert.assertTrue(model.getCompletedResults().isEmpty());
+
+            model.addResults(PILLAR2, createResultingFileIDs("file1"));
+            Assert.assertEquals(getIDs(model.getCompletedResults()), Arrays.asList("file1"));
+            Assert.assertEquals(getIDs(model.getUncompletedResults()), Arrays.asList("file2"));
+        } finally {
+            model.close();
+        }
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void spilledResultsTest() {
+        addDescription("Tests that the uncompleted results written to disk are merged with later contributions.");
+        GetFileIDsResultModel model = new GetFileIDsResultModel(Arrays.asList(PILLAR1, PILLAR2), 2);
+        try {
+            addStep("Deliver more files from the first pillar than can be kept in memory",
+                    "The files are uncompleted");
+            model.addResults(PILLAR1, createResultingFileIDs("file3", "file1", "file2"));
+            Assert.assertTrue(model.getCompletedResults().isEmpty());
+
+            addStep("Deliver two of the files from the second pillar",
+                    "The files are not reported as completed, since the first contributions are on disk");
+            model.addResults(PILLAR2, createResultingFileIDs("file1", "file2"));
+            Assert.assertTrue(model.getCompletedResults().isEmpty());
+
+            addStep("Get the uncompleted results", "The contributions are merged, and ordered by file id");
+            List<FileIDsResult> results = new ArrayList<FileIDsResult>(model.getUncompletedResults());
+            Assert.assertEquals(getIDs(results), Arrays.asList("file1", "file2", "file3"));
+            Assert.assertEquals(results.get(0).getContributors(), Arrays.asList(PILLAR1, PILLAR2));
+            Assert.assertEquals(results.get(1).getContributors(), Arrays.asList(PILLAR1, PILLAR2));
+            Assert.assertEquals(results.get(2).getContributors(), Arrays.asList(PILLAR1));
+            Assert.assertEquals(results.get(0).getSize(), BigInteger.ONE);
+        } finally {
+            model.close();
+        }
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void manySpilledResultsTest() {
+        addDescription("Tests that the results are kept, when the many runs on disk are merged.");
+        GetFileIDsResultModel model = new GetFileIDsResultModel(Arrays.asList(PILLAR1, PILLAR2), 1);
+        try {
+            List<String> fileIDs = new ArrayList<String>();
+            for(int i = 0; i < 500; i++) {
+                fileIDs.add(String.format("file%04d", i));
+            }
+            model.addResults(PILLAR1, createResultingFileIDs(fileIDs.toArray(new String[fileIDs.size()])));
+            model.addResults(PILLAR2, createResultingFileIDs(fileIDs.get(0)));
+
+            List<FileIDsResult> results = new ArrayList<FileIDsResult>(model.getUncompletedResults());
+            Assert.assertEquals(getIDs(results), fileIDs);
+            Assert.assertEquals(results.get(0).getContributors(), Arrays.asList(PILLAR1, PILLAR2));
+        } finally {
+            model.close();
+        }
+    }
+
+    private List<String> getIDs(Iterable<FileIDsResult> results) {
+        List<String> ids = new ArrayList<String>();
+        for(FileIDsResult result : results) {
+            ids.add(result.getID());
+        }
+        return ids;
+    }
+
+    private ResultingFileIDs createResultingFileIDs(String... fileIDs) {
+        FileIDsDataItems items = new FileIDsDataItems();
+        for(String fileID : fileIDs) {
+            FileIDsDataItem dataItem = new FileIDsDataItem();
+            dataItem.setFileID(fileID);
+            dataItem.setFileSize(BigInteger.ONE);
+            dataItem.setLastModificationTime(CalendarUtils.getNow());
+            items.getFileIDsDataItem().add(dataItem);
+        }
+        FileIDsData data = new FileIDsData();
+        data.setFileIDsDataItems(items);
+        ResultingFileIDs res = new ResultingFileIDs();
+        res.setFileIDsData(data);
+        return res;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * #%L
+ * Bitrepository Command Line
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.commandline.resultmodel;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class SpillableResultMapTest extends ExtendedTestCase {
+
+    @Test(groups = {"regressiontest"})
+    public void failedSpillTest() {
+        addDescription("Tests that a run, which could not be written, is not used, and the results are kept.");
+        FailingResultMap map = new FailingResultMap();
+        try {
+            addStep("Put more results than the memory limit, while the runs cannot be written",
+                    "The spill fails, and no run is added");
+            map.put("file1");
+            map.failWrites = true;
+            try {
+                map.put("file2");
+                Assert.fail("The spill should fail");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+            Assert.assertEquals(map.getNumberOfRuns(), 0);
+            Assert.assertEquals(getIDs(map), Arrays.asList("file1", "file2"));
+
+            addStep("Put another result, when the runs can be written again", "The results are written to a run");
+            map.failWrites = false;
+            map.put("file3");
+            Assert.assertEquals(map.getNumberOfRuns(), 1);
+            Assert.assertEquals(getIDs(map), Arrays.asList("file1", "file2", "file3"));
+        } finally {
+            map.clear();
+        }
+    }
+
+    private List<String> getIDs(SpillableResultMap<String> map) {
+        return new ArrayList<String>(map.values());
+    }
+
+    /**
+     * Map of file ids, which can be made to fail writing its runs.
+     */
+    private static class FailingResultMap extends SpillableResultMap<String> {
+        boolean failWrites = false;
+
+        FailingResultMap() {
+            super(1);
+        }
+
+        @Override
+        protected String getID(String result) {
+            return result;
+        }
+
+        @Override
+        protected void merge(String result, String other) {}
+
+        @Override
+        protected void write(DataOutputStream out, String result) throws IOException {
+            if(failWrites) {
+                throw new IOException("Failing on purpose");
+            }
+            out.writeUTF(result);
+        }
+
+        @Override
+        protected String read(DataInputStream in) throws IOException {
+            return in.readUTF();
+        }
+    }
+}
@@ -24,6 +24,7 @@
  */
 package org.bitrepository.common.filestore;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collection;
@@ -67,6 +68,19 @@ public interface FileStore {
      * @see #moveToArchive(String,String)
      */
     FileInfo downloadFileForValidation(String fileID, String collectionID, InputStream inputStream) throws IOException;
+
+    /**
+     * Stores a file, which is available on the local file system, in the temporary zone until it has been 
+     * validated. The file may be linked instead of copied, if it is on the same file system as the storage, so it 
+     * must not be modified afterwards.
+     * @param fileID The id of the file to store.
+     * @param collectionID the collection id
+     * @param localFile The local file with the content of the file.
+     * @return The stored file, which should be validated before it is moved to the archive.
+     * @throws IOException If anything unexpected occurs (e.g. file already exists, not enough space, etc.)
+     * @see #moveToArchive(String,String)
+     */
+    FileInfo downloadFileForValidation(String fileID, String collectionID, File localFile) throws IOException;
     
     /**
      * Moves a file from the temporary file zone to the archive.
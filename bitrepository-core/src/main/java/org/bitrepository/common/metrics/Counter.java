@@ -0,0 +1,53 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.common.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonically increasing count, e.g. of messages or bytes. The updates are cheap under contention, so the
+ * counter can be updated on the hot paths.
+ */
+public class Counter {
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Increments the count by one.
+     */
+    public void increment() {
+        count.increment();
+    }
+
+    /**
+     * @param amount The amount to increment the count by.
+     */
+    public void increment(long amount) {
+        count.add(amount);
+    }
+
+    /**
+     * @return The current count.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.common.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of the durations of an operation, e.g. the handling of a message.
+ * The durations are counted in fixed buckets, from a millisecond to five minutes, so recording a duration is lock
+ * free and takes constant space. Percentiles are therefore only known to the precision of the buckets.
+ */
+public class LatencyHistogram {
+    /** The upper bounds of the buckets in milliseconds. Longer durations are counted in an overflow bucket.*/
+    static final long[] BUCKET_BOUNDS = {1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000,
+        300000};
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS.length + 1];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalTime = new LongAdder();
+    private final AtomicLong maxTime = new AtomicLong();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records the duration of an operation.
+     * @param nanos The duration in nanoseconds.
+     */
+    public void record(long nanos) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS.length && millis >= BUCKET_BOUNDS[bucket]) {
+            bucket++;
+        }
+        buckets[bucket].increment();
+        count.increment();
+        totalTime.add(nanos);
+        long currentMax = maxTime.get();
+        while (nanos > currentMax && !maxTime.compareAndSet(currentMax, nanos)) {
+            currentMax = maxTime.get();
+        }
+    }
+
+    /**
+     * Records the duration of an operation started at the given time.
+     * @param startNanos The start of the operation, as given by {@link System#nanoTime()}.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return The number of recorded durations.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return The sum of the recorded durations in nanoseconds.
+     */
+    public long getTotalTime() {
+        return totalTime.sum();
+    }
+
+    /**
+     * @return The average of the recorded durations in milliseconds.
+     */
+    public double getMean() {
+        long recorded = count.sum();
+        return recorded == 0 ? 0 : (double) totalTime.sum() / recorded / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return The longest recorded duration in milliseconds.
+     */
+    public double getMax() {
+        return (double) maxTime.get() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @param percentile The percentile, between 0 and 100.
+     * @return The upper bound in milliseconds of the bucket containing the percentile, or the longest recorded
+     * duration if it is found in the overflow bucket. 0 if nothing has been recorded.
+     */
+    public double getPercentile(double percentile) {
+        long[] cumulativeCounts = getCumulativeCounts();
+        long total = cumulativeCounts[cumulativeCounts.length - 1];
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100);
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            if (cumulativeCounts[i] >= rank) {
+                return Math.min(BUCKET_BOUNDS[i], getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * @return The number of durations shorter than the upper bound of each bucket, followed by the total number of
+     * durations counted in the buckets.
+     */
+    long[] getCumulativeCounts() {
+        long[] cumulativeCounts = new long[buckets.length];
+        long sum = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            sum += buckets[i].sum();
+            cumulativeCounts[i] = sum;
+        }
+        return cumulativeCounts;
+    }
+}
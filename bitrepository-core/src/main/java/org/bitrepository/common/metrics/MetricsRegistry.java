@@ -0,0 +1,332 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.common.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The registry of the runtime metrics of the component, e.g. message rates, handling latencies, queue depths and
+ * pool usage. The metrics are created by the code maintaining them, and are exported through JMX and in the
+ * Prometheus text format.
+ * <p/>
+ * Each metric is identified by a name and an optional list of labels, given as alternating label names and values,
+ * e.g. <code>counter("bitrepository_messages_received_total", "...", "type", "GetFileRequest")</code>.
+ * The metrics with the same name form a family, which must have the same kind of metric for all labels.
+ */
+public final class MetricsRegistry {
+    /** The domain of the object names of the JMX beans.*/
+    public static final String JMX_DOMAIN = "org.bitrepository";
+    /** The content type of the text format.*/
+    public static final String TEXT_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final MetricsRegistry instance = new MetricsRegistry();
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    /** The metric families, mapped from the metric name and kept sorted for the export.*/
+    private final ConcurrentMap<String, MetricFamily> families = new ConcurrentSkipListMap<String, MetricFamily>();
+
+    /**
+     * Use {@link #getInstance()} for the registry of the component. Only for tests.
+     */
+    MetricsRegistry() {}
+
+    public static MetricsRegistry getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param name The name of the counter.
+     * @param help The description of the counter.
+     * @param labels The label names and values of the counter.
+     * @return The counter with the given name and labels. It is created if it does not exist.
+     */
+    public Counter counter(String name, String help, String... labels) {
+        MetricFamily family = getFamily(name, help, MetricType.COUNTER);
+        String labelString = formatLabels(labels);
+        Counter counter = (Counter) family.metrics.get(labelString);
+        if (counter == null) {
+            Counter newCounter = new Counter();
+            counter = (Counter) family.metrics.putIfAbsent(labelString, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * @param name The name of the histogram. Should end with '_seconds', as the durations are exported in seconds.
+     * @param help The description of the histogram.
+     * @param labels The label names and values of the histogram.
+     * @return The histogram with the given name and labels. It is created if it does not exist.
+     */
+    public LatencyHistogram histogram(String name, String help, String... labels) {
+        MetricFamily family = getFamily(name, help, MetricType.HISTOGRAM);
+        String labelString = formatLabels(labels);
+        LatencyHistogram histogram = (LatencyHistogram) family.metrics.get(labelString);
+        if (histogram == null) {
+            LatencyHistogram newHistogram = new LatencyHistogram();
+            histogram = (LatencyHistogram) family.metrics.putIfAbsent(labelString, newHistogram);
+            if (histogram == null) {
+                histogram = newHistogram;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Registers a gauge. A gauge already registered with the same name and labels is replaced.
+     * @param name The name of the gauge.
+     * @param help The description of the gauge.
+     * @param gauge The gauge.
+     * @param labels The label names and values of the gauge.
+     */
+    public void registerGauge(String name, String help, Gauge gauge, String... labels) {
+        getFamily(name, help, MetricType.GAUGE).metrics.put(formatLabels(labels), gauge);
+    }
+
+    /**
+     * Removes a gauge, unless it has been replaced by another gauge.
+     * @param name The name of the gauge.
+     * @param gauge The gauge to remove.
+     * @param labels The label names and values of the gauge.
+     */
+    public void unregisterGauge(String name, Gauge gauge, String... labels) {
+        MetricFamily family = families.get(name);
+        if (family != null) {
+            family.metrics.remove(formatLabels(labels), gauge);
+        }
+    }
+
+    /**
+     * Writes the current value of all metrics in the Prometheus text format.
+     * @param writer The writer to write the metrics to.
+     * @throws IOException If the metrics could not be written.
+     */
+    public void writeText(Writer writer) throws IOException {
+        for (MetricFamily family : families.values()) {
+            writer.write("# HELP " + family.name + " " + family.help.replace("\\", "\\\\").replace("\n", "\\n")
+                    + "\n");
+            writer.write("# TYPE " + family.name + " " + family.type.name().toLowerCase() + "\n");
+            for (Map.Entry<String, Object> entry : new TreeMap<String, Object>(family.metrics).entrySet()) {
+                String labels = entry.getKey();
+                Object metric = entry.getValue();
+                switch (family.type) {
+                case COUNTER:
+                    writeSample(writer, family.name, labels, ((Counter) metric).getCount());
+                    break;
+                case GAUGE:
+                    writeSample(writer, family.name, labels, getGaugeValue((Gauge) metric));
+                    break;
+                case HISTOGRAM:
+                    writeHistogram(writer, family.name, labels, (LatencyHistogram) metric);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown metric type " + family.type);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The current value of all metrics, as exported through JMX. The key is the metric name followed by
+     * the labels in braces. Histograms are exported by their count, and their mean, max and 99th percentile in
+     * milliseconds.
+     */
+    public Map<String, Number> getValues() {
+        Map<String, Number> values = new TreeMap<String, Number>();
+        for (MetricFamily family : families.values()) {
+            for (Map.Entry<String, Object> entry : family.metrics.entrySet()) {
+                String key = family.name + (entry.getKey().isEmpty() ? "" : "{" + entry.getKey() + "}");
+                Object metric = entry.getValue();
+                switch (family.type) {
+                case COUNTER:
+                    values.put(key, ((Counter) metric).getCount());
+                    break;
+                case GAUGE:
+                    values.put(key, getGaugeValue((Gauge) metric));
+                    break;
+                case HISTOGRAM:
+                    LatencyHistogram histogram = (LatencyHistogram) metric;
+                    values.put(key + ".count", histogram.getCount());
+                    values.put(key + ".meanMillis", histogram.getMean());
+                    values.put(key + ".maxMillis", histogram.getMax());
+                    values.put(key + ".p99Millis", histogram.getPercentile(99));
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown metric type " + family.type);
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Registers a JMX bean with the metrics in the platform MBean server, under the name
+     * 'org.bitrepository:type=Metrics,component=&lt;componentID&gt;'. Nothing is done if the bean is already
+     * registered.
+     * @param componentID The ID of the component the metrics belong to.
+     */
+    public void registerMBean(String componentID) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = getObjectName(componentID);
+            synchronized (this) {
+                if (!server.isRegistered(objectName)) {
+                    server.registerMBean(new MetricsMBean(this), objectName);
+                    log.debug("Registered the metrics as the JMX bean '{}'", objectName);
+                }
+            }
+        } catch (JMException e) {
+            log.warn("Could not register the metrics for '" + componentID + "' in JMX", e);
+        }
+    }
+
+    /**
+     * Removes the JMX bean registered by {@link #registerMBean(String)}.
+     * @param componentID The ID of the component the metrics belong to.
+     */
+    public void unregisterMBean(String componentID) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = getObjectName(componentID);
+            synchronized (this) {
+                if (server.isRegistered(objectName)) {
+                    server.unregisterMBean(objectName);
+                }
+            }
+        } catch (JMException e) {
+            log.warn("Could not unregister the metrics for '" + componentID + "' in JMX", e);
+        }
+    }
+
+    static ObjectName getObjectName(String componentID) throws JMException {
+        return new ObjectName(JMX_DOMAIN + ":type=Metrics,component=" + ObjectName.quote(componentID));
+    }
+
+    private MetricFamily getFamily(String name, String help, MetricType type) {
+        MetricFamily family = families.get(name);
+        if (family == null) {
+            MetricFamily newFamily = new MetricFamily(name, help, type);
+            family = families.putIfAbsent(name, newFamily);
+            if (family == null) {
+                family = newFamily;
+            }
+        }
+        if (family.type != type) {
+            throw new IllegalArgumentException("The metric '" + name + "' is a " + family.type + ", not a " + type);
+        }
+        return family;
+    }
+
+    /**
+     * Formats the labels as in the text format, e.g. 'type="GetFileRequest"'.
+     */
+    private static String formatLabels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("The labels must be given as pairs of names and values");
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                sb.append(",");
+            }
+            String value = (labels[i + 1] == null ? "" : labels[i + 1]);
+            sb.append(labels[i]).append("=\"")
+                .append(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n")).append("\"");
+        }
+        return sb.toString();
+    }
+
+    private double getGaugeValue(Gauge gauge) {
+        try {
+            return gauge.getValue();
+        } catch (RuntimeException e) {
+            log.debug("Could not read gauge value", e);
+            return Double.NaN;
+        }
+    }
+
+    private static void writeHistogram(Writer writer, String name, String labels, LatencyHistogram histogram)
+            throws IOException {
+        long[] cumulativeCounts = histogram.getCumulativeCounts();
+        String labelPrefix = labels.isEmpty() ? "" : labels + ",";
+        for (int i = 0; i < LatencyHistogram.BUCKET_BOUNDS.length; i++) {
+            writeSample(writer, name + "_bucket",
+                    labelPrefix + "le=\"" + (LatencyHistogram.BUCKET_BOUNDS[i] / 1000.0) + "\"", cumulativeCounts[i]);
+        }
+        writeSample(writer, name + "_bucket", labelPrefix + "le=\"+Inf\"",
+                cumulativeCounts[cumulativeCounts.length - 1]);
+        writeSample(writer, name + "_sum", labels, histogram.getTotalTime() / 1e9);
+        writeSample(writer, name + "_count", labels, cumulativeCounts[cumulativeCounts.length - 1]);
+    }
+
+    private static void writeSample(Writer writer, String name, String labels, long value) throws IOException {
+        writer.write(name + (labels.isEmpty() ? "" : "{" + labels + "}") + " " + value + "\n");
+    }
+
+    private static void writeSample(Writer writer, String name, String labels, double value) throws IOException {
+        String formattedValue;
+        if (Double.isNaN(value)) {
+            formattedValue = "NaN";
+        } else if (Double.isInfinite(value)) {
+            formattedValue = value > 0 ? "+Inf" : "-Inf";
+        } else {
+            formattedValue = Double.toString(value);
+        }
+        writer.write(name + (labels.isEmpty() ? "" : "{" + labels + "}") + " " + formattedValue + "\n");
+    }
+
+    private enum MetricType {
+        COUNTER, GAUGE, HISTOGRAM
+    }
+
+    /**
+     * The metrics with the same name, mapped from their formatted labels.
+     */
+    private static class MetricFamily {
+        private final String name;
+        private final String help;
+        private final MetricType type;
+        private final ConcurrentMap<String, Object> metrics = new ConcurrentHashMap<String, Object>();
+
+        MetricFamily(String name, String help, MetricType type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.common.utils;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
+import org.bitrepository.common.ArgumentValidator;
+import org.bitrepository.protocol.CoordinationLayerException;
+
+/**
+ * Output stream, which calculates the checksum of the data while it is written to the underlying stream.
+ * Makes it possible to produce data and its checksum in a single pass, instead of reading the data again afterwards
+ * with {@link ChecksumUtils#generateChecksum(java.io.InputStream, ChecksumSpecTYPE)}.
+ */
+public class ChecksumOutputStream extends FilterOutputStream {
+    /** The message digest, when the checksum is not salted.*/
+    private final MessageDigest digester;
+    /** The message authentication code, when the checksum is salted.*/
+    private final Mac messageAuthenticationCode;
+    /** The checksum, when it has been calculated.*/
+    private String checksum;
+
+    /**
+     * Constructor.
+     * @param out The stream to write the data to.
+     * @param csSpec The algorithm to use for calculation together with an optional salt.
+     */
+    public ChecksumOutputStream(OutputStream out, ChecksumSpecTYPE csSpec) {
+        super(out);
+        ArgumentValidator.checkNotNull(csSpec, "ChecksumSpecTYPE csSpec");
+        try {
+            ChecksumUtils.verifyAlgorithm(csSpec);
+            if(ChecksumUtils.requiresSalt(csSpec.getChecksumType())) {
+                String algorithmName = csSpec.getChecksumType().name().replace("_", "");
+                Key key = new SecretKeySpec(csSpec.getChecksumSalt(), algorithmName);
+                messageAuthenticationCode = Mac.getInstance(algorithmName);
+                messageAuthenticationCode.init(key);
+                digester = null;
+            } else {
+                digester = MessageDigest.getInstance(csSpec.getChecksumType().name().replace("SHA", "SHA-"));
+                messageAuthenticationCode = null;
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("The checksum algorithm is not supported: " + csSpec, e);
+        } catch (Exception e) {
+            throw new CoordinationLayerException("Cannot calculate the checksum with algorithm '"
+                    + csSpec.getChecksumType() + "'", e);
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        update(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        update(b, off, len);
+    }
+
+    /**
+     * Updates the checksum calculation with the written data.
+     * @param b The data.
+     * @param off The offset of the written data.
+     * @param len The number of written bytes.
+     */
+    private void update(byte[] b, int off, int len) {
+        if(checksum != null) {
+            throw new IllegalStateException("Cannot write more data, when the checksum has been calculated.");
+        }
+        if(digester != null) {
+            digester.update(b, off, len);
+        } else {
+            messageAuthenticationCode.update(b, off, len);
+        }
+    }
+
+    /**
+     * Finishes the checksum calculation. No more data can be written afterwards.
+     * @return The checksum of the written data in hexadecimal.
+     */
+    public String getChecksum() {
+        if(checksum == null) {
+            byte[] digest = digester != null ? digester.digest() : messageAuthenticationCode.doFinal();
+            checksum = Base16Utils.decodeBase16(digest);
+        }
+        return checksum;
+    }
+}
@@ -39,6 +39,8 @@ import org.bitrepository.bitrepositoryelements.ChecksumDataForFileTYPE;
 import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
 import org.bitrepository.bitrepositoryelements.ChecksumType;
 import org.bitrepository.common.filestore.FileInfo;
+import org.bitrepository.common.metrics.MeteredInputStream;
+import org.bitrepository.common.metrics.MetricsRegistry;
 import org.bitrepository.common.settings.Settings;
 import org.bitrepository.protocol.CoordinationLayerException;
 
@@ -122,6 +124,10 @@ public final class ChecksumUtils {
     public static String generateChecksum(InputStream content, ChecksumSpecTYPE csSpec) {
         byte[] digest = null;
         ChecksumType algorithm = csSpec.getChecksumType();
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        content = new MeteredInputStream(content, registry.counter("bitrepository_checksum_bytes_total",
+                "The number of bytes the checksums have been calculated for.", "algorithm", algorithm.name()));
+        long startTime = System.nanoTime();
         
         try {
         	if(requiresSalt(algorithm)) {
@@ -141,6 +147,8 @@ public final class ChecksumUtils {
         	throw new IllegalStateException("The checksum algorithm '" + csSpec.getChecksumType().name() 
         			+ "' is not supported.");        	
         }
+        registry.histogram("bitrepository_checksum_calculation_seconds",
+                "The time it took to calculate the checksums.", "algorithm", algorithm.name()).recordSince(startTime);
 
         return Base16Utils.decodeBase16(digest);
     }
@@ -29,6 +29,12 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.util.Enumeration;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -231,6 +237,53 @@ public final class FileUtils {
         }
     }
     
+    /**
+     * Creates a hard link to a file, or copies the file if the link cannot be created, e.g. when the files are on
+     * different file systems or the file system does not support hard links. The linked file shares its content 
+     * with the source, so the source must not be modified in place afterwards.
+     * @param source The source file to link to.
+     * @param target The target file. Must not already exist, and its directory must exist.
+     * @return Whether a hard link was created.
+     */
+    public static boolean linkOrCopyFile(File source, File target) {
+        ArgumentValidator.checkNotNull(source, "File source");
+        ArgumentValidator.checkTrue(source.isFile(), "File source should exist");
+        ArgumentValidator.checkNotNull(target, "File target");
+        
+        try {
+            Files.createLink(target.toPath(), source.toPath());
+            return true;
+        } catch (FileAlreadyExistsException | NoSuchFileException e) {
+            throw new IllegalStateException("Could not link the file '" + source + "' to '" + target + "'.", e);
+        } catch (FileSystemException | UnsupportedOperationException e) {
+            log.debug("Could not link the file '" + source + "' to '" + target + "', copying it instead: " 
+                    + e.getMessage());
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not link the file '" + source + "' to '" + target + "'.", e);
+        }
+        copyFile(source, target);
+        return false;
+    }
+    
+    /**
+     * Finds the local file addressed by a URL.
+     * @param url The URL.
+     * @return The file, or null if the URL is not a 'file' URL to an existing file.
+     */
+    public static File getLocalFile(URL url) {
+        ArgumentValidator.checkNotNull(url, "URL url");
+        if(!"file".equalsIgnoreCase(url.getProtocol())) {
+            return null;
+        }
+        try {
+            File file = new File(url.toURI());
+            return file.isFile() ? file : null;
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            log.debug("The URL '" + url + "' does not address a local file.", e);
+            return null;
+        }
+    }
+    
     /** Write the contents of a stream into a file.
      *
      * @param in A stream to read from.  This stream is not closed by this
@@ -36,12 +36,26 @@ import org.bitrepository.common.utils.StreamUtils;
 
 /**
  * File exchange used for exchanging files on a local filesystem 
+ * <p/>
+ * If hard links are used, local files are linked into and out of the storage directory instead of being copied, 
+ * when they are on the same file system. Otherwise the files are copied.
  */
 public class LocalFileExchange implements FileExchange {
     private final File storageDir;
+    /** Whether to hard link the local files instead of copying them.*/
+    private final boolean useHardLinks;
 
     public LocalFileExchange(String storageDir) {
+        this(storageDir, false);
+    }
+
+    /**
+     * @param storageDir The directory to exchange the files through.
+     * @param useHardLinks Whether local files should be hard linked instead of copied, when possible.
+     */
+    public LocalFileExchange(String storageDir, boolean useHardLinks) {
         this.storageDir = new File(storageDir);
+        this.useHardLinks = useHardLinks;
     }
 
     @Override
@@ -58,7 +72,11 @@ public class LocalFileExchange implements FileExchange {
     public URL putFile(File dataFile) {
         try {
             File dest = new File(storageDir, new File(dataFile.toString()).getName());
-            FileUtils.copyFile(dataFile, dest);
+            if(useHardLinks) {
+                replaceWithLink(dataFile, dest);
+            } else {
+                FileUtils.copyFile(dataFile, dest);
+            }
             return dest.toURI().toURL();
         } catch (MalformedURLException e) {
             throw new IllegalStateException("Cannot create the URL.", e);
@@ -86,6 +104,12 @@ public class LocalFileExchange implements FileExchange {
             throw new IllegalStateException("Cannot create the URL.", e);
         }
         
+        File localFile = useHardLinks ? FileUtils.getLocalFile(url) : null;
+        if(localFile != null) {
+            replaceWithLink(localFile, outputFile);
+            return;
+        }
+        
         try(OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile))) {
             getFile(out, url);
         } catch (IOException e) {
@@ -107,6 +131,19 @@ public class LocalFileExchange implements FileExchange {
         return url;
     }
 
+    /**
+     * Links the target file to the source file, or copies the source file if it cannot be linked. 
+     * Any existing target file is replaced.
+     * @param source The file to link to.
+     * @param target The file to replace with the link.
+     */
+    private void replaceWithLink(File source, File target) {
+        if(target.exists() && !target.delete()) {
+            throw new CoordinationLayerException("Could not replace the file '" + target.getAbsolutePath() + "'.");
+        }
+        FileUtils.linkOrCopyFile(source, target);
+    }
+
     @Override
     public void deleteFile(URL url) throws IOException, URISyntaxException {
         File fileToDelete = new File(url.getFile());
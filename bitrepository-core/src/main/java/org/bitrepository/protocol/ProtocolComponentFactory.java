@@ -30,6 +30,7 @@ import org.bitrepository.protocol.http.HttpsFileExchange;
 import org.bitrepository.protocol.messagebus.MessageBus;
 import org.bitrepository.protocol.messagebus.MessageBusManager;
 import org.bitrepository.protocol.security.SecurityManager;
+import org.bitrepository.settings.referencesettings.FileExchangeSettings;
 import org.bitrepository.settings.referencesettings.ProtocolType;
 
 /**
@@ -85,8 +86,10 @@ public final class ProtocolComponentFactory {
                 } else if (protocolType == ProtocolType.HTTPS) {
                     fileExchange = new HttpsFileExchange(settings);
                 } else if (protocolType == ProtocolType.FILE) {
-                    fileExchange = new LocalFileExchange(
-                            settings.getReferenceSettings().getFileExchangeSettings().getPath());
+                    FileExchangeSettings fileExchangeSettings = settings.getReferenceSettings()
+                            .getFileExchangeSettings();
+                    fileExchange = new LocalFileExchange(fileExchangeSettings.getPath(), 
+                            fileExchangeSettings.isSetUseHardLinks() && fileExchangeSettings.isUseHardLinks());
                 }
             } else {
                 fileExchange = new HttpFileExchange(settings);
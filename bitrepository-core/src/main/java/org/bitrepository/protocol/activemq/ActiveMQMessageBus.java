@@ -49,6 +49,7 @@ import org.bitrepository.bitrepositorymessages.Message;
 import org.bitrepository.bitrepositorymessages.MessageRequest;
 import org.bitrepository.common.DefaultThreadFactory;
 import org.bitrepository.common.JaxbHelper;
+import org.bitrepository.common.metrics.MetricsRegistry;
 import org.bitrepository.common.settings.Settings;
 import org.bitrepository.protocol.CoordinationLayerException;
 import org.bitrepository.protocol.MessageContext;
@@ -64,9 +65,12 @@ import org.bitrepository.protocol.messagebus.logger.GetChecksumsMessageLogger;
 import org.bitrepository.protocol.messagebus.logger.GetFileIDsMessageLogger;
 import org.bitrepository.protocol.messagebus.logger.GetFileMessageLogger;
 import org.bitrepository.protocol.messagebus.logger.GetStatusMessageLogger;
+import org.bitrepository.protocol.messagebus.logger.LogMessageTraceSink;
 import org.bitrepository.protocol.messagebus.logger.MessageLoggerProvider;
 import org.bitrepository.protocol.messagebus.logger.PutFileMessageLogger;
+import org.bitrepository.protocol.messagebus.logger.ReplaceFileMessageLogger;
 import org.bitrepository.protocol.security.SecurityManager;
+import org.bitrepository.settings.referencesettings.GeneralSettings;
 import org.bitrepository.settings.referencesettings.MessageThreadPools;
 import org.bitrepository.settings.repositorysettings.MessageBusConfiguration;
 import org.bouncycastle.cms.SignerId;
@@ -171,6 +175,22 @@ public class ActiveMQMessageBus implements MessageBus {
             messageThreadPoolConfig = settings.getReferenceSettings().getGeneralSettings().getMessageThreadPools();
         }
         receivedMessageHandler = new ReceivedMessageHandler(messageThreadPoolConfig);
+        registerMessageTraceSink(settings);
+        MetricsRegistry.getInstance().registerMBean(clientID);
+    }
+
+    /**
+     * Starts the tracing of the sent and received messages, if a sample interval is given in the settings.
+     * @param settings The settings.
+     */
+    private void registerMessageTraceSink(Settings settings) {
+        GeneralSettings generalSettings = settings.getReferenceSettings().getGeneralSettings();
+        if (generalSettings != null && generalSettings.getMessageTraceSampleInterval() != null) {
+            long sampleInterval = generalSettings.getMessageTraceSampleInterval().longValue();
+            log.info("Tracing every {}. message to the logger '{}'.", sampleInterval, 
+                    LogMessageTraceSink.TRACE_LOGGER_NAME);
+            MessageLoggerProvider.getInstance().setTraceSink(new LogMessageTraceSink(), sampleInterval);
+        }
     }
 
     /**
@@ -236,12 +256,20 @@ public class ActiveMQMessageBus implements MessageBus {
         log.debug("Consumer session closed.");
         connection.close();
         log.debug("Connection closed.");
+        MetricsRegistry.getInstance().unregisterMBean(clientID);
     }
 
     @Override
     public void sendMessage(Message content) {
+        long startTime = System.nanoTime();
         sendMessage(content.getDestination(), content.getReplyTo(), content.getTo(), content.getCollectionID(),
                 content.getCorrelationID(), content);
+        String type = content.getClass().getSimpleName();
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        registry.histogram("bitrepository_message_send_seconds",
+                "The time it took to serialize, sign and send the messages.", "type", type).recordSince(startTime);
+        registry.counter("bitrepository_messages_sent_total", "The number of sent messages.", "type", type)
+                .increment();
         MessageLoggerProvider.getInstance().logMessageSent(content);
     }
 
@@ -267,8 +295,8 @@ public class ActiveMQMessageBus implements MessageBus {
         try {
             xmlContent = jaxbHelper.serializeToXml(content);
             jaxbHelper.validate(new ByteArrayInputStream(xmlContent.getBytes()));
-            log.trace("The following message is sent to the destination '" + destinationID + "'" + " on message-bus '"
-                    + configuration.getName() + "': \n{}", xmlContent);
+            log.trace("The following message is sent to the destination '{}' on message-bus '{}': \n{}", 
+                    destinationID, configuration.getName(), xmlContent);
 
             javax.jms.Message msg = producerSession.createTextMessage(xmlContent);
             String stringData = ((TextMessage) msg).getText();
@@ -423,26 +451,27 @@ public class ActiveMQMessageBus implements MessageBus {
                 if (type.startsWith("Identify") && type.endsWith("Request")) {
                     if(!componentFilter.isEmpty()) {
                         if (recipientID != null && !componentFilter.contains(recipientID)) {
-                            log.trace("Ignoring " + type + " message to other component " + recipientID);
+                            log.trace("Ignoring {} message to other component {}", type, recipientID);
                             return;
                         }
                     }
                     String collectionID = jmsMessage.getStringProperty(COLLECTION_ID_KEY);
                     if(!collectionFilter.isEmpty()) {
                         if (collectionID != null && !collectionFilter.contains(collectionID)) {
-                            log.trace("Ignoring message to unknown collection " + collectionID);
+                            log.trace("Ignoring message to unknown collection {}", collectionID);
                             return;
                         }
                     }
                 }
                 String signature = jmsMessage.getStringProperty(MESSAGE_SIGNATURE_KEY);
                 text = ((TextMessage) jmsMessage).getText();
-                log.trace("Received xml message: " + text);
-                jaxbHelper.validate(new ByteArrayInputStream(text.getBytes("UTF-8")));
+                log.trace("Received xml message: {}", text);
+                byte[] textBytes = text.getBytes("UTF-8");
+                jaxbHelper.validate(new ByteArrayInputStream(textBytes));
                 Message content = (Message) jaxbHelper.loadXml(
                         Class.forName("org.bitrepository.bitrepositorymessages." + type),
-                        new ByteArrayInputStream(text.getBytes("UTF-8")));
-                log.trace("Checking signature " + signature);
+                        new ByteArrayInputStream(textBytes));
+                log.trace("Checking signature {}", signature);
                 SignerId signer = securityManager.authenticateMessage(text, signature);
                 securityManager.authorizeCertificateUse((content).getFrom(), text, signature);
                 if (content instanceof MessageRequest) {
@@ -458,12 +487,26 @@ public class ActiveMQMessageBus implements MessageBus {
                 }
                 MessageContext messageContext = new MessageContext(certificateFingerprint);
                 receivedMessageHandler.deliver(messageListener, content, messageContext);
+                MetricsRegistry.getInstance().counter("bitrepository_messages_received_total",
+                        "The number of received messages handed to the message handlers.", "type", type)
+                        .increment();
             } catch (SAXException e) {
                 log.error("Error validating message " + jmsMessage, e);
+                countRejectedMessage(type);
             } catch (Exception e) {
                 log.error("Error handling message. Received type was '" + type + "'.\n{}", text, e);
+                countRejectedMessage(type);
             }
         }
+
+        /**
+         * @param type The type of the message which could not be validated, authenticated or delivered.
+         */
+        private void countRejectedMessage(String type) {
+            MetricsRegistry.getInstance().counter("bitrepository_messages_rejected_total",
+                    "The number of received messages which could not be validated, authenticated or delivered.",
+                    "type", (type == null ? "unknown" : type)).increment();
+        }
     }
 
     // This should be done on a per module basis, but how?
@@ -472,7 +515,7 @@ public class ActiveMQMessageBus implements MessageBus {
         loggerProvider.registerLogger(OperationType.GET_FILE, new GetFileMessageLogger());
         loggerProvider.registerLogger(OperationType.PUT_FILE, new PutFileMessageLogger());
         loggerProvider.registerLogger(OperationType.DELETE_FILE, new DeleteFileMessageLogger());
-        loggerProvider.registerLogger(OperationType.REPLACE_FILE, new GetStatusMessageLogger());
+        loggerProvider.registerLogger(OperationType.REPLACE_FILE, new ReplaceFileMessageLogger());
         loggerProvider.registerLogger(OperationType.GET_FILE_IDS, new GetFileIDsMessageLogger());
         loggerProvider.registerLogger(OperationType.GET_CHECKSUMS, new GetChecksumsMessageLogger());
         loggerProvider.registerLogger(OperationType.GET_AUDIT_TRAILS, new GetAuditTrailsMessageLogger());
@@ -50,6 +50,8 @@ import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.ChunkyManagedHttpClientConnectionFactory;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.bitrepository.common.ArgumentValidator;
+import org.bitrepository.common.metrics.MeteredInputStream;
+import org.bitrepository.common.metrics.MetricsRegistry;
 import org.bitrepository.common.settings.Settings;
 import org.bitrepository.common.utils.StreamUtils;
 import org.bitrepository.protocol.CoordinationLayerException;
@@ -60,6 +62,7 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Simple interface for data transfer between an application and a HTTP server.
+ * The transferred bytes and the duration of the transfers are recorded in the {@link MetricsRegistry}.
  */
 public class HttpFileExchange implements FileExchange {
     private final Logger log = LoggerFactory.getLogger(getClass());
@@ -153,8 +156,11 @@ public class HttpFileExchange implements FileExchange {
             throw new IllegalArgumentException("OutputStream out: '" + out
                     + "', URL: '" + url + "'");
         }
+        long startTime = System.nanoTime();
         InputStream is = retrieveStream(url);
         StreamUtils.copyInputStreamToOutputStream(is, out);
+        MetricsRegistry.getInstance().histogram("bitrepository_file_exchange_download_seconds",
+                "The time it took to download files through the file exchange.").recordSince(startTime);
     }
     
     /**
@@ -167,7 +173,9 @@ public class HttpFileExchange implements FileExchange {
         HttpURLConnection conn = getConnection(url);
         conn.setDoInput(true);
         conn.setRequestMethod("GET");
-        return conn.getInputStream();
+        return new MeteredInputStream(conn.getInputStream(), MetricsRegistry.getInstance().counter(
+                "bitrepository_file_exchange_downloaded_bytes_total",
+                "The number of bytes downloaded through the file exchange."));
     }
     
     /**
@@ -186,11 +194,14 @@ public class HttpFileExchange implements FileExchange {
     private void performUpload(InputStream in, URL url) throws IOException {
         ArgumentValidator.checkNotNull(in, "InputStream in");
         ArgumentValidator.checkNotNull(url, "URL url");
-        
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        long startTime = System.nanoTime();
 
         try (CloseableHttpClient httpClient = getHttpClient()) {
             HttpPut httpPut = new HttpPut(url.toExternalForm());
-            InputStreamEntity reqEntity = new LargeChunkedInputStreamEntity(in);
+            InputStreamEntity reqEntity = new LargeChunkedInputStreamEntity(new MeteredInputStream(in,
+                    registry.counter("bitrepository_file_exchange_uploaded_bytes_total",
+                            "The number of bytes uploaded through the file exchange.")));
             reqEntity.setChunked(true);
             httpPut.setEntity(reqEntity);
             HttpResponse response = httpClient.execute(httpPut);
@@ -203,6 +214,8 @@ public class HttpFileExchange implements FileExchange {
             log.debug("Uploaded datastream to url '" + url.toString() + "' and "
                     + "received the response line '" + response.getStatusLine() + "'.");
         }
+        registry.histogram("bitrepository_file_exchange_upload_seconds",
+                "The time it took to upload files through the file exchange.").recordSince(startTime);
     }
     
     @Override
@@ -0,0 +1,152 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.messagebus;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bitrepository.common.metrics.LatencyHistogram;
+import org.bitrepository.common.metrics.MetricsRegistry;
+
+/**
+ * The statistics for the handling of a single message type in the {@link ReceivedMessageHandler}.
+ * All updates are lock free, so the statistics can be maintained for every message.
+ * The distributions of the queue and handling times are also recorded in the {@link MetricsRegistry}.
+ */
+public class MessageHandlingStatistics {
+    private final String messageType;
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong active = new AtomicLong();
+    private final AtomicLong handled = new AtomicLong();
+    private final AtomicLong totalQueueTime = new AtomicLong();
+    private final AtomicLong totalHandlingTime = new AtomicLong();
+    private final AtomicLong maxHandlingTime = new AtomicLong();
+    private final LatencyHistogram queueTimeHistogram;
+    private final LatencyHistogram handlingTimeHistogram;
+
+    /**
+     * @param messageType The simple class name of the message type.
+     */
+    public MessageHandlingStatistics(String messageType) {
+        this.messageType = messageType;
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        queueTimeHistogram = registry.histogram("bitrepository_message_queue_seconds",
+                "The time received messages waited before being handled.", "type", messageType);
+        handlingTimeHistogram = registry.histogram("bitrepository_message_handling_seconds",
+                "The time it took to handle the received messages.", "type", messageType);
+    }
+
+    /**
+     * Registers that a message has been handed to an executor.
+     */
+    void messageQueued() {
+        queued.incrementAndGet();
+    }
+
+    /**
+     * Registers that the handling of a message has started.
+     * @param queueTime The number of nanoseconds the message waited before the handling started.
+     */
+    void handlingStarted(long queueTime) {
+        queued.decrementAndGet();
+        active.incrementAndGet();
+        totalQueueTime.addAndGet(queueTime);
+        queueTimeHistogram.record(queueTime);
+    }
+
+    /**
+     * Registers that the handling of a message has finished.
+     * @param handlingTime The number of nanoseconds the handling took.
+     */
+    void handlingFinished(long handlingTime) {
+        active.decrementAndGet();
+        handled.incrementAndGet();
+        totalHandlingTime.addAndGet(handlingTime);
+        handlingTimeHistogram.record(handlingTime);
+        long currentMax = maxHandlingTime.get();
+        while (handlingTime > currentMax && !maxHandlingTime.compareAndSet(currentMax, handlingTime)) {
+            currentMax = maxHandlingTime.get();
+        }
+    }
+
+    /**
+     * @return The simple class name of the message type.
+     */
+    public String getMessageType() {
+        return messageType;
+    }
+
+    /**
+     * @return The number of messages of this type waiting to be handled.
+     */
+    public long getQueueDepth() {
+        return queued.get();
+    }
+
+    /**
+     * @return The number of messages of this type currently being handled.
+     */
+    public long getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * @return The number of messages of this type which has been handled.
+     */
+    public long getHandledCount() {
+        return handled.get();
+    }
+
+    /**
+     * @return The average number of milliseconds the handled messages waited before being handled.
+     */
+    public double getAverageQueueTime() {
+        return average(totalQueueTime.get());
+    }
+
+    /**
+     * @return The average number of milliseconds it took to handle the messages.
+     */
+    public double getAverageHandlingTime() {
+        return average(totalHandlingTime.get());
+    }
+
+    /**
+     * @return The maximum number of milliseconds it has taken to handle a message.
+     */
+    public long getMaxHandlingTime() {
+        return TimeUnit.NANOSECONDS.toMillis(maxHandlingTime.get());
+    }
+
+    private double average(long totalNanos) {
+        long count = handled.get();
+        return count == 0 ? 0 : (double) totalNanos / count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+        return "MessageHandlingStatistics [messageType=" + messageType + ", queueDepth=" + getQueueDepth()
+                + ", active=" + getActiveCount() + ", handled=" + getHandledCount()
+                + ", averageQueueTime=" + getAverageQueueTime() + "ms, averageHandlingTime="
+                + getAverageHandlingTime() + "ms, maxHandlingTime=" + getMaxHandlingTime() + "ms]";
+    }
+}
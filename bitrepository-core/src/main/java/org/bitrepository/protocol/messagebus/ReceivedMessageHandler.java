@@ -22,15 +22,28 @@
 package org.bitrepository.protocol.messagebus;
 
 import java.math.BigInteger;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.bitrepository.bitrepositorymessages.Message;
 import org.bitrepository.common.DefaultThreadFactory;
+import org.bitrepository.common.metrics.Gauge;
+import org.bitrepository.common.metrics.MetricsRegistry;
 import org.bitrepository.protocol.MessageContext;
 import org.bitrepository.protocol.utils.MessageCategoryUtils;
 import org.bitrepository.settings.referencesettings.MessageCategory;
@@ -41,11 +54,24 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Takes care of handling the further processing by the listeners in separated thread.
+ * <p/>
+ * Statistics for the queue depth and handling time of each message type are maintained, and can be accessed
+ * through {@link #getStatistics()}. The queue depths are also exported through the {@link MetricsRegistry}.
+ * <p/>
+ * If PrioritizeFastMessages is set in the configuration, the pools with a bounded number of threads will process
+ * waiting messages of the FAST category before waiting messages of the SLOW category.
  */
 public class ReceivedMessageHandler {
     private final Logger log = LoggerFactory.getLogger(getClass());
+    /** The number of seconds idle threads are kept in pools with on demand creation of threads. */
+    private static final long IDLE_THREAD_KEEP_ALIVE = 60;
     private final ExecutorModel executorModel;
     private final ThreadFactory threadFactory = new DefaultThreadFactory("ReceivedMessageHandler-", Thread.NORM_PRIORITY ,false);
+    /** The handling statistics, mapped from the simple class name of the message type. */
+    private final ConcurrentMap<String, MessageHandlingStatistics> statistics =
+            new ConcurrentHashMap<String, MessageHandlingStatistics>();
+    /** Used for keeping the order of the received messages within a category, when prioritizing. */
+    private final AtomicLong messageSequence = new AtomicLong();
 
     public ReceivedMessageHandler(MessageThreadPools messageThreadPools) {
         executorModel = new ExecutorModel(messageThreadPools);
@@ -59,8 +85,53 @@ public class ReceivedMessageHandler {
      */
     public void deliver(MessageListener listener, Message message, MessageContext messageContext) {
         MessageProcessor processor = new MessageProcessor(listener, message, messageContext);
+        processor.messageStatistics.messageQueued();
         executorModel.retrieveExecuter(message).execute(processor);
+    }
+
+    /**
+     * @return The handling statistics for the message types received, mapped from the simple class name of the
+     * message type.
+     */
+    public Map<String, MessageHandlingStatistics> getStatistics() {
+        return Collections.unmodifiableMap(statistics);
+    }
+
+    private MessageHandlingStatistics getStatistics(Message message) {
+        String messageType = message.getClass().getSimpleName();
+        MessageHandlingStatistics messageStatistics = statistics.get(messageType);
+        if (messageStatistics == null) {
+            MessageHandlingStatistics newStatistics = new MessageHandlingStatistics(messageType);
+            messageStatistics = statistics.putIfAbsent(messageType, newStatistics);
+            if (messageStatistics == null) {
+                messageStatistics = newStatistics;
+                registerGauges(messageStatistics);
             }
+        }
+        return messageStatistics;
+    }
+
+    /**
+     * Exports the number of waiting and active messages of a message type as gauges.
+     * @param messageStatistics The statistics for the message type.
+     */
+    private void registerGauges(final MessageHandlingStatistics messageStatistics) {
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        registry.registerGauge("bitrepository_message_queue_depth", "The number of messages waiting to be handled.",
+                new Gauge() {
+                    @Override
+                    public double getValue() {
+                        return messageStatistics.getQueueDepth();
+                    }
+                }, "type", messageStatistics.getMessageType());
+        registry.registerGauge("bitrepository_message_active", "The number of messages currently being handled.",
+                new Gauge() {
+                    @Override
+                    public double getValue() {
+                        return messageStatistics.getActiveCount();
+                    }
+                }, "type", messageStatistics.getMessageType());
+    }
 
     /**
      * Use this to close down the running executors.
@@ -79,6 +150,14 @@ public class ReceivedMessageHandler {
         /** The message for the listener to handle.*/
         private final Message message;
         private final MessageContext messageContext;
+        /** The statistics for the type of the message.*/
+        private final MessageHandlingStatistics messageStatistics;
+        /** The time the message was queued for processing, in nanoseconds.*/
+        private final long queuedTime = System.nanoTime();
+        /** The order the message was received in.*/
+        private final long sequenceNumber = messageSequence.getAndIncrement();
+        /** Whether the message belongs to the FAST category.*/
+        private final boolean fast;
 
         /**
          * @param listener The MessageListener to handle the message.
@@ -89,11 +168,61 @@ public class ReceivedMessageHandler {
             this.listener = listener;
             this.message = message;
             this.messageContext = messageContext;
+            this.messageStatistics = getStatistics(message);
+            this.fast = MessageCategoryUtils.getCategory(message) == MessageCategory.FAST;
         }
 
         @Override
         public void run() {
-            listener.onMessage(message, messageContext);
+            long startTime = System.nanoTime();
+            messageStatistics.handlingStarted(startTime - queuedTime);
+            try {
+                listener.onMessage(message, messageContext);
+            } finally {
+                messageStatistics.handlingFinished(System.nanoTime() - startTime);
+            }
+        }
+    }
+
+    /**
+     * Orders the messages waiting to be processed with the FAST messages first, and otherwise in the order they
+     * were received.
+     */
+    private static class MessagePriorityComparator implements Comparator<Runnable> {
+        @Override
+        public int compare(Runnable r1, Runnable r2) {
+            MessageProcessor processor1 = (MessageProcessor) r1;
+            MessageProcessor processor2 = (MessageProcessor) r2;
+            if (processor1.fast != processor2.fast) {
+                return processor1.fast ? -1 : 1;
+            }
+            return Long.compare(processor1.sequenceNumber, processor2.sequenceNumber);
+        }
+    }
+
+    /**
+     * Priority queue which refuses new elements when the capacity is reached, so the executor will fall back to its
+     * rejection policy. The capacity is only approximate under concurrent offers.
+     */
+    private static class BoundedPriorityBlockingQueue extends PriorityBlockingQueue<Runnable> {
+        private final int capacity;
+
+        BoundedPriorityBlockingQueue(int capacity) {
+            super(capacity, new MessagePriorityComparator());
+            this.capacity = capacity;
+        }
+
+        @Override
+        public boolean offer(Runnable runnable) {
+            if (size() >= capacity) {
+                return false;
+            }
+            return super.offer(runnable);
+        }
+
+        @Override
+        public int remainingCapacity() {
+            return Math.max(0, capacity - size());
         }
     }
 
@@ -104,6 +233,10 @@ public class ReceivedMessageHandler {
         private CollectionExecutorModel defaultCollectionExecutorModel;
         private final Map<String, CollectionExecutorModel> collectionExecutorModelMap =
                 new HashMap<String, CollectionExecutorModel>();
+        /** The maximum number of threads for pools without a pool size, null if unbounded. */
+        private BigInteger defaultMaxPoolSize;
+        /** Whether FAST messages should be processed before waiting SLOW messages. */
+        private boolean prioritizeFastMessages = false;
 
         /**
          * Creates the different executor services based on the supplied configuration.
@@ -111,6 +244,10 @@ public class ReceivedMessageHandler {
          */
         ExecutorModel(MessageThreadPools messageThreadPools) {
             if (messageThreadPools != null) {
+                defaultMaxPoolSize = messageThreadPools.getDefaultMaxPoolSize();
+                if (messageThreadPools.isSetPrioritizeFastMessages()) {
+                    prioritizeFastMessages = messageThreadPools.isPrioritizeFastMessages();
+                }
                 for (MessageThreadPool messageThreadPool : messageThreadPools.getMessageThreadPool()) {
                     List<String> collections = messageThreadPool.getCollection();
                     if (collections != null  && !collections.isEmpty()) {
@@ -133,7 +270,7 @@ public class ReceivedMessageHandler {
                 defaultCollectionExecutorModel = new CollectionExecutorModel();
             }
             if (defaultCollectionExecutorModel.defaultexecutor == null) {
-                defaultCollectionExecutorModel.defaultexecutor = Executors.newCachedThreadPool(threadFactory);
+                defaultCollectionExecutorModel.defaultexecutor = createExecutorService(null, null);
             }
         }
 
@@ -156,16 +293,45 @@ public class ReceivedMessageHandler {
             if (defaultCollectionExecutorModel != null) {
                 defaultCollectionExecutorModel.shutdown();
             }
+            for (CollectionExecutorModel collectionExecutorModel : collectionExecutorModelMap.values()) {
+                collectionExecutorModel.shutdown();
+            }
         }
 
-        private ExecutorService createExecutorService(BigInteger poolSize) {
-            if (poolSize == null) {
+        /**
+         * Creates the executor for a pool. Pools with a pool size have a fixed number of threads. Pools without a
+         * pool size create threads on demand, either unbounded or limited by the default max pool size.
+         * If the pool has a bounded number of threads and a max queue size, messages are processed by the
+         * delivering thread when the queue is full. If FAST messages are prioritized, the queue is ordered by
+         * the message category.
+         * @param poolSize The number of threads in the pool, or null.
+         * @param maxQueueSize The maximum number of messages waiting for the pool, or null.
+         * @return The executor for the pool.
+         */
+        private ExecutorService createExecutorService(BigInteger poolSize, BigInteger maxQueueSize) {
+            if (poolSize == null && defaultMaxPoolSize == null) {
                 return Executors.newCachedThreadPool(threadFactory);
-            } else if (poolSize.intValue() == 1) {
-                return Executors.newSingleThreadExecutor(threadFactory);
+            }
+            BlockingQueue<Runnable> queue;
+            if (prioritizeFastMessages) {
+                if (maxQueueSize == null) {
+                    queue = new PriorityBlockingQueue<Runnable>(11, new MessagePriorityComparator());
+                } else {
+                    queue = new BoundedPriorityBlockingQueue(maxQueueSize.intValue());
+                }
+            } else if (maxQueueSize == null) {
+                queue = new LinkedBlockingQueue<Runnable>();
             } else {
-                return Executors.newFixedThreadPool(poolSize.intValue(),threadFactory);
+                queue = new ArrayBlockingQueue<Runnable>(maxQueueSize.intValue());
             }
+            int numberOfThreads = (poolSize != null ? poolSize : defaultMaxPoolSize).intValue();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(numberOfThreads, numberOfThreads,
+                    IDLE_THREAD_KEEP_ALIVE, TimeUnit.SECONDS, queue, threadFactory,
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+            if (poolSize == null) {
+                executor.allowCoreThreadTimeOut(true);
+            }
+            return executor;
         }
 
         /**
@@ -179,7 +345,8 @@ public class ReceivedMessageHandler {
             void addPool(MessageThreadPool messageThreadPool) {
                 List<String> messageNames = messageThreadPool.getMessageName();
                 MessageCategory messageCategory = messageThreadPool.getMessageCategory();
-                ExecutorService executor = createExecutorService(messageThreadPool.getPoolSize());
+                ExecutorService executor = createExecutorService(messageThreadPool.getPoolSize(),
+                        messageThreadPool.getMaxQueueSize());
                 if (messageNames != null && !messageNames.isEmpty()) {
                     for (String messageName : messageNames) {
                         messageExecutorMap.put(messageName, executor);
@@ -208,6 +375,10 @@ public class ReceivedMessageHandler {
                     defaultexecutor.shutdown();
                 }
 
+                for (ExecutorService executor : categoryExecutorMap.values()) {
+                    executor.shutdown();
+                }
+
                 for (ExecutorService executor : messageExecutorMap.values()) {
                     executor.shutdown();
                 }
@@ -37,16 +37,16 @@ public class DefaultMessagingLogger implements MessageLogger {
 
     @Override
     public void logMessageSent(Message message) {
-        StringBuilder messageSB = new StringBuilder("Sent ");
         if (shouldLogFullMessage(message)) {
-            logFullMessage(appendFullRepresentation(messageSB, message).toString());
-        } else {
+            logFullMessage(appendFullRepresentation(new StringBuilder("Sent "), message).toString());
+        } else if (shouldLogShortMessage(message)) {
+            StringBuilder messageSB = new StringBuilder("Sent ");
             appendMessageIDString(messageSB, message);
-            messageSB.append(" collectionID " + message.getCollectionID() + ", ");
+            messageSB.append(" collectionID ").append(message.getCollectionID()).append(", ");
             if (message.isSetTo()) {
-                messageSB.append(" to " + message.getTo() + ", ");
+                messageSB.append(" to ").append(message.getTo()).append(", ");
             }
-            messageSB.append(" destination " + message.getDestination() + ": ");
+            messageSB.append(" destination ").append(message.getDestination()).append(": ");
             appendShortRepresentation(messageSB, message);
             logShortMessage(messageSB.toString());
         }
@@ -54,13 +54,13 @@ public class DefaultMessagingLogger implements MessageLogger {
 
     @Override
     public void logMessageReceived(Message message) {
-        StringBuilder messageSB = new StringBuilder("Received ");
         if (shouldLogFullMessage(message)) {
-            logFullMessage(appendFullRepresentation(messageSB, message).toString());
-        } else {
+            logFullMessage(appendFullRepresentation(new StringBuilder("Received "), message).toString());
+        } else if (shouldLogShortMessage(message)) {
+            StringBuilder messageSB = new StringBuilder("Received ");
             appendMessageIDString(messageSB, message);
-            messageSB.append(" collectionID " + message.getCollectionID() + ", ");
-            messageSB.append(" from " + message.getFrom() + ": ");
+            messageSB.append(" collectionID ").append(message.getCollectionID()).append(", ");
+            messageSB.append(" from ").append(message.getFrom()).append(": ");
             appendShortRepresentation(messageSB, message);
             logShortMessage(messageSB.toString());
         }
@@ -88,6 +88,16 @@ public class DefaultMessagingLogger implements MessageLogger {
         return messageSB;
     }
 
+    /**
+     * Indicates whether the short version of the message should be logged. Must match the level used in
+     * {@link #logShortMessage(String)}, so the message is not built when it will not be logged.
+     * @param message The message to log
+     * @return whether to log the message or not
+     */
+    protected boolean shouldLogShortMessage(Message message) {
+        return log.isDebugEnabled();
+    }
+
     /**
      * Log the short version of the message at debug level.
      * May be overridden to log at a different level for concrete messages.
@@ -106,14 +116,14 @@ public class DefaultMessagingLogger implements MessageLogger {
 
     private StringBuilder appendMessageIDString(StringBuilder messageSB, Message message) {
         messageSB.append(message.getClass().getSimpleName());
-        messageSB.append("(" + MessageUtils.getShortConversationID(message.getCorrelationID()) + ")");
+        messageSB.append('(').append(MessageUtils.getShortConversationID(message.getCorrelationID())).append(')');
         return messageSB;
     }
 
     private StringBuilder appendResponseInfo(StringBuilder messageSB, MessageResponse response) {
         messageSB.append(response.getResponseInfo().getResponseCode());
         if (response.getResponseInfo().getResponseText() != null) {
-            messageSB.append("(" + response.getResponseInfo().getResponseText() + ")");
+            messageSB.append('(').append(response.getResponseInfo().getResponseText()).append(')');
         }
         return messageSB;
     }
@@ -33,6 +33,11 @@ public class GetStatusMessageLogger extends DefaultMessagingLogger {
         return false;
     }
 
+    @Override
+    protected boolean shouldLogShortMessage(Message message) {
+        return log.isTraceEnabled();
+    }
+
     /**
      * To avoid spawning the log with the GetStatus message 'heartbeats', the message are only
      * logged at trace level.
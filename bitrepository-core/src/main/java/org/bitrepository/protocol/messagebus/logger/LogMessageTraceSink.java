@@ -0,0 +1,46 @@
+package org.bitrepository.protocol.messagebus.logger;
+
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the message traces as key-value pairs to a dedicated logger at info level, so the traces can be routed 
+ * to a separate appender independently of the normal message logging.
+ */
+public class LogMessageTraceSink implements MessageTraceSink {
+    /** The name of the logger the traces are written to.*/
+    public static final String TRACE_LOGGER_NAME = "org.bitrepository.protocol.messagebus.trace";
+    private final Logger log = LoggerFactory.getLogger(TRACE_LOGGER_NAME);
+
+    @Override
+    public void trace(MessageTrace trace) {
+        if (log.isInfoEnabled()) {
+            log.info("timestamp={} direction={} type={} correlationID={} collectionID={} from={} to={} "
+                    + "destination={} responseCode={}", trace.getTimestamp(), trace.getDirection(), 
+                    trace.getMessageType(), trace.getCorrelationID(), trace.getCollectionID(), trace.getFrom(), 
+                    trace.getTo(), trace.getDestination(), trace.getResponseCode());
+        }
+    }
+}
@@ -24,8 +24,9 @@ package org.bitrepository.protocol.messagebus.logger;
 
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.bitrepository.bitrepositorymessages.Message;
 import org.bitrepository.protocol.OperationType;
@@ -36,12 +37,20 @@ import org.bitrepository.protocol.OperationType;
  *
  * Custom logs can be defined for individual classes, which can be added through the
  * addMessageLogger method with a specific logger class for the operation.
+ *
+ * A sample of the messages can further be delivered to a {@link MessageTraceSink} in a structured form, e.g. for
+ * analysing the message traffic without enabling the debug logging.
  */
 public class MessageLoggerProvider implements MessageLogger {
     private final static MessageLoggerProvider instance = new MessageLoggerProvider();
 
-    private final Map<String, MessageLogger> messageToLoggerMap = new HashMap<String, MessageLogger>();
+    private final Map<String, MessageLogger> messageToLoggerMap = new ConcurrentHashMap<String, MessageLogger>();
     private final MessageLogger defaultLogger = new DefaultMessagingLogger();
+    /** The sink for the message traces. Null if the messages should not be traced.*/
+    private volatile MessageTraceSink traceSink;
+    /** Only every sampleInterval'th message is traced.*/
+    private volatile long traceSampleInterval = 1;
+    private final AtomicLong traceCounter = new AtomicLong();
 
     private MessageLoggerProvider() {}
 
@@ -50,13 +59,35 @@ public class MessageLoggerProvider implements MessageLogger {
     }
 
     public void logMessageSent(Message message) {
+        traceMessage(MessageTrace.Direction.SENT, message);
         lookupLogger(message).logMessageSent(message);
     }
 
     public void logMessageReceived(Message message) {
+        traceMessage(MessageTrace.Direction.RECEIVED, message);
         lookupLogger(message).logMessageReceived(message);
     }
 
+    /**
+     * Sets the sink for the structured message traces.
+     * @param traceSink The sink to deliver the traces to, or null to stop the tracing.
+     * @param sampleInterval Only every sampleInterval'th message is traced. Must be positive.
+     */
+    public void setTraceSink(MessageTraceSink traceSink, long sampleInterval) {
+        if (sampleInterval < 1) {
+            throw new IllegalArgumentException("The sample interval must be positive, was " + sampleInterval);
+        }
+        this.traceSampleInterval = sampleInterval;
+        this.traceSink = traceSink;
+    }
+
+    private void traceMessage(MessageTrace.Direction direction, Message message) {
+        MessageTraceSink sink = traceSink;
+        if (sink != null && traceCounter.getAndIncrement() % traceSampleInterval == 0) {
+            sink.trace(new MessageTrace(direction, message));
+        }
+    }
+
     public void registerLogger(Collection<String> messageSimpleNames, MessageLogger customLogger) {
         for (String messageName:messageSimpleNames) {
             messageToLoggerMap.put(messageName, customLogger);
@@ -77,9 +108,9 @@ public class MessageLoggerProvider implements MessageLogger {
     }
 
     private MessageLogger lookupLogger(Message message) {
-        String messageName = message.getClass().getSimpleName();
-        if (messageToLoggerMap.containsKey(messageName)) {
-            return messageToLoggerMap.get(messageName);
+        MessageLogger logger = messageToLoggerMap.get(message.getClass().getSimpleName());
+        if (logger != null) {
+            return logger;
         } else {
             return defaultLogger;
         }
@@ -0,0 +1,117 @@
+package org.bitrepository.protocol.messagebus.logger;
+
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import org.bitrepository.bitrepositoryelements.ResponseCode;
+import org.bitrepository.bitrepositorymessages.Message;
+import org.bitrepository.bitrepositorymessages.MessageResponse;
+
+/**
+ * Structured trace of a single message sent or received on the message bus. Only contains the routing information 
+ * of the message, so it is cheap to create and can be delivered to a {@link MessageTraceSink} without formatting.
+ */
+public class MessageTrace {
+    /** Whether the message was sent or received.*/
+    public enum Direction {
+        SENT,
+        RECEIVED
+    }
+
+    private final long timestamp;
+    private final Direction direction;
+    private final String messageType;
+    private final String correlationID;
+    private final String collectionID;
+    private final String from;
+    private final String to;
+    private final String destination;
+    private final ResponseCode responseCode;
+
+    /**
+     * @param direction Whether the message was sent or received.
+     * @param message The message to trace.
+     */
+    public MessageTrace(Direction direction, Message message) {
+        this.timestamp = System.currentTimeMillis();
+        this.direction = direction;
+        this.messageType = message.getClass().getSimpleName();
+        this.correlationID = message.getCorrelationID();
+        this.collectionID = message.getCollectionID();
+        this.from = message.getFrom();
+        this.to = message.getTo();
+        this.destination = message.getDestination();
+        if (message instanceof MessageResponse && ((MessageResponse) message).getResponseInfo() != null) {
+            this.responseCode = ((MessageResponse) message).getResponseInfo().getResponseCode();
+        } else {
+            this.responseCode = null;
+        }
+    }
+
+    /**
+     * @return The time in milliseconds since epoch, where the message was traced.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return Whether the message was sent or received.
+     */
+    public Direction getDirection() {
+        return direction;
+    }
+
+    /**
+     * @return The simple class name of the message.
+     */
+    public String getMessageType() {
+        return messageType;
+    }
+
+    public String getCorrelationID() {
+        return correlationID;
+    }
+
+    public String getCollectionID() {
+        return collectionID;
+    }
+
+    public String getFrom() {
+        return from;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    /**
+     * @return The response code of the message, or null if the message is not a response.
+     */
+    public ResponseCode getResponseCode() {
+        return responseCode;
+    }
+}
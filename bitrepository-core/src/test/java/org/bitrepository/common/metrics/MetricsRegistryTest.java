@@ -0,0 +1,142 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.common.metrics;
+
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class MetricsRegistryTest extends ExtendedTestCase {
+    private MetricsRegistry registry;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setup() {
+        registry = new MetricsRegistry();
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void counterTest() throws Exception {
+        addDescription("Tests the counters of the registry.");
+        addStep("Increment a counter for two different labels", "The counters are kept separately");
+        registry.counter("test_total", "Test counter.", "type", "A").increment();
+        registry.counter("test_total", "Test counter.", "type", "A").increment(2);
+        registry.counter("test_total", "Test counter.", "type", "B").increment();
+        Assert.assertEquals(registry.counter("test_total", "Test counter.", "type", "A").getCount(), 3);
+
+        addStep("Write the metrics as text", "The counters are written with their labels");
+        String text = getText();
+        Assert.assertTrue(text.contains("# TYPE test_total counter\n"), text);
+        Assert.assertTrue(text.contains("test_total{type=\"A\"} 3\n"), text);
+        Assert.assertTrue(text.contains("test_total{type=\"B\"} 1\n"), text);
+        Assert.assertEquals(registry.getValues().get("test_total{type=\"A\"}"), 3L);
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void histogramTest() throws Exception {
+        addDescription("Tests the latency histograms of the registry.");
+        LatencyHistogram histogram = registry.histogram("test_seconds", "Test histogram.");
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(7));
+        histogram.record(TimeUnit.MINUTES.toNanos(10));
+        Assert.assertEquals(histogram.getCount(), 3);
+        Assert.assertEquals(histogram.getPercentile(50), 10.0);
+        Assert.assertEquals(histogram.getMax(), (double) TimeUnit.MINUTES.toMillis(10));
+
+        String text = getText();
+        Assert.assertTrue(text.contains("# TYPE test_seconds histogram\n"), text);
+        Assert.assertTrue(text.contains("test_seconds_bucket{le=\"0.001\"} 0\n"), text);
+        Assert.assertTrue(text.contains("test_seconds_bucket{le=\"0.005\"} 1\n"), text);
+        Assert.assertTrue(text.contains("test_seconds_bucket{le=\"0.01\"} 2\n"), text);
+        Assert.assertTrue(text.contains("test_seconds_bucket{le=\"300.0\"} 2\n"), text);
+        Assert.assertTrue(text.contains("test_seconds_bucket{le=\"+Inf\"} 3\n"), text);
+        Assert.assertTrue(text.contains("test_seconds_count 3\n"), text);
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void gaugeTest() throws Exception {
+        addDescription("Tests the registration of gauges.");
+        Gauge gauge = new ConstantGauge(1);
+        registry.registerGauge("test_gauge", "Test gauge.", gauge, "pool", "a\"b");
+        Assert.assertTrue(getText().contains("test_gauge{pool=\"a\\\"b\"} 1.0\n"));
+
+        addStep("Replace the gauge and unregister the old gauge", "The new gauge is kept");
+        registry.registerGauge("test_gauge", "Test gauge.", new ConstantGauge(2), "pool", "a\"b");
+        registry.unregisterGauge("test_gauge", gauge, "pool", "a\"b");
+        Assert.assertTrue(getText().contains("test_gauge{pool=\"a\\\"b\"} 2.0\n"));
+
+        addStep("Use the name of the gauge for a counter", "An exception is thrown");
+        try {
+            registry.counter("test_gauge", "Test counter.");
+            Assert.fail("Should throw an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void jmxTest() throws Exception {
+        addDescription("Tests the export of the metrics through JMX.");
+        String componentID = "MetricsRegistryTest-" + System.currentTimeMillis();
+        registry.counter("test_total", "Test counter.").increment();
+        registry.registerMBean(componentID);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = MetricsRegistry.getObjectName(componentID);
+            Assert.assertEquals(server.getAttribute(objectName, "test_total"), 1L);
+
+            addStep("Create a metric after the registration", "The metric is also exported");
+            registry.histogram("test_seconds", "Test histogram.").record(TimeUnit.MILLISECONDS.toNanos(2));
+            Assert.assertEquals(server.getAttribute(objectName, "test_seconds.count"), 1L);
+        } finally {
+            registry.unregisterMBean(componentID);
+        }
+        Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(
+                MetricsRegistry.getObjectName(componentID)));
+    }
+
+    private String getText() throws Exception {
+        StringWriter writer = new StringWriter();
+        registry.writeText(writer);
+        return writer.toString();
+    }
+
+    private static class ConstantGauge implements Gauge {
+        private final double value;
+
+        ConstantGauge(double value) {
+            this.value = value;
+        }
+
+        @Override
+        public double getValue() {
+            return value;
+        }
+    }
+}
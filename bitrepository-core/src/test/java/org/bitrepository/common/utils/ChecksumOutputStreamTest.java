@@ -0,0 +1,76 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.common.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.ChecksumType;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ChecksumOutputStreamTest extends ExtendedTestCase {
+    private static final byte[] DATA = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8);
+
+    @Test(groups = { "regressiontest" })
+    public void checksumOfWrittenData() throws Exception {
+        addDescription("Tests that the checksum of the written data is identical to the checksum calculated by "
+                + "reading the data afterwards, and that the data is written unchanged.");
+        ChecksumSpecTYPE csSpec = new ChecksumSpecTYPE();
+        csSpec.setChecksumType(ChecksumType.MD5);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ChecksumOutputStream checksumStream = new ChecksumOutputStream(out, csSpec)) {
+            checksumStream.write(DATA, 0, 10);
+            checksumStream.write(DATA[10]);
+            checksumStream.write(DATA, 11, DATA.length - 11);
+            checksumStream.close();
+            Assert.assertEquals(checksumStream.getChecksum(), "9e107d9d372bb6826bd81d3542a419d6");
+            Assert.assertEquals(checksumStream.getChecksum(),
+                    ChecksumUtils.generateChecksum(new ByteArrayInputStream(DATA), csSpec));
+        }
+        Assert.assertEquals(out.toByteArray(), DATA);
+    }
+
+    @Test(groups = { "regressiontest" })
+    public void saltedChecksumOfWrittenData() throws Exception {
+        addDescription("Tests that salted checksums are calculated with HMAC, like the ChecksumUtils.");
+        ChecksumSpecTYPE csSpec = new ChecksumSpecTYPE();
+        csSpec.setChecksumType(ChecksumType.HMAC_SHA256);
+        csSpec.setChecksumSalt("key".getBytes(StandardCharsets.UTF_8));
+        try (ChecksumOutputStream checksumStream = new ChecksumOutputStream(new ByteArrayOutputStream(), csSpec)) {
+            checksumStream.write(DATA);
+            Assert.assertEquals(checksumStream.getChecksum(),
+                    ChecksumUtils.generateChecksum(new ByteArrayInputStream(DATA), csSpec));
+        }
+    }
+
+    @Test(groups = { "regressiontest" }, expectedExceptions = IllegalArgumentException.class)
+    public void missingSalt() throws Exception {
+        addDescription("Tests that a HMAC checksum cannot be calculated without a salt.");
+        ChecksumSpecTYPE csSpec = new ChecksumSpecTYPE();
+        csSpec.setChecksumType(ChecksumType.HMAC_SHA256);
+        new ChecksumOutputStream(new ByteArrayOutputStream(), csSpec);
+    }
+}
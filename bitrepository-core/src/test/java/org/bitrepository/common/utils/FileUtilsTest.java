@@ -22,6 +22,7 @@
 package org.bitrepository.common.utils;
 
 import java.io.File;
+import java.net.URL;
 
 import org.apache.activemq.util.ByteArrayInputStream;
 import org.bitrepository.common.TestValidationUtils;
@@ -188,6 +189,72 @@ public class FileUtilsTest extends ExtendedTestCase {
         Assert.assertEquals(testFile.length(), DATA.length());
     }
 
+    @Test(groups = {"regressiontest"})
+    public void linkOrCopyFileTester() throws Exception {
+        addDescription("Test linking a file.");
+        addStep("Setup", "");
+        File dir = FileUtils.retrieveDirectory(DIR);
+        File testFile = new File(dir, TEST_FILE_NAME);
+        File linkedFile = new File(dir, MOVED_FILE_NAME);
+        FileUtils.writeStreamToFile(new ByteArrayInputStream(DATA.getBytes()), testFile);
+        
+        addStep("Link the file", "Both files should exist with the same content.");
+        FileUtils.linkOrCopyFile(testFile, linkedFile);
+        Assert.assertTrue(testFile.exists());
+        Assert.assertTrue(linkedFile.exists());
+        Assert.assertEquals(linkedFile.length(), DATA.length());
+        
+        addStep("Delete the original file", "The linked file should still exist.");
+        FileUtils.delete(testFile);
+        Assert.assertTrue(linkedFile.exists());
+        Assert.assertEquals(linkedFile.length(), DATA.length());
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void linkOrCopyFileToExistingTargetTester() throws Exception {
+        addDescription("Test that linking a file to an existing file fails, instead of overwriting it.");
+        addStep("Setup", "");
+        File dir = FileUtils.retrieveDirectory(DIR);
+        File testFile = new File(dir, TEST_FILE_NAME);
+        File existingFile = new File(dir, MOVED_FILE_NAME);
+        FileUtils.writeStreamToFile(new ByteArrayInputStream(DATA.getBytes()), testFile);
+        FileUtils.writeStreamToFile(new ByteArrayInputStream("existing".getBytes()), existingFile);
+        
+        addStep("Link the file to the existing file", "Should fail, and leave the existing file untouched.");
+        try {
+            FileUtils.linkOrCopyFile(testFile, existingFile);
+            Assert.fail("Should throw an exception here.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        Assert.assertEquals(existingFile.length(), "existing".length());
+        
+        addStep("Link the file into a directory which does not exist", "Should fail.");
+        try {
+            FileUtils.linkOrCopyFile(testFile, new File(new File(dir, SUB_DIR), MOVED_FILE_NAME));
+            Assert.fail("Should throw an exception here.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void getLocalFileTester() throws Exception {
+        addDescription("Test finding the local file for an URL.");
+        File dir = FileUtils.retrieveDirectory(DIR);
+        File testFile = new File(dir, TEST_FILE_NAME);
+        
+        addStep("Find a file which does not exist", "Should not be found.");
+        Assert.assertNull(FileUtils.getLocalFile(testFile.toURI().toURL()));
+        
+        addStep("Find an existing file", "Should be found.");
+        FileUtils.writeStreamToFile(new ByteArrayInputStream(DATA.getBytes()), testFile);
+        Assert.assertEquals(FileUtils.getLocalFile(testFile.toURI().toURL()), testFile.getAbsoluteFile());
+        
+        addStep("Find the file for a http URL", "Should not be found.");
+        Assert.assertNull(FileUtils.getLocalFile(new URL("http://localhost/" + TEST_FILE_NAME)));
+    }
+
     @Test(groups = {"regressiontest"})
     public void unzipFileTester() throws Exception {
         addDescription("Test unzipping a file.");
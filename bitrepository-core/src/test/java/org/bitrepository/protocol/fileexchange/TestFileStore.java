@@ -26,6 +26,7 @@ package org.bitrepository.protocol.fileexchange;
 
 import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -109,6 +110,14 @@ public class TestFileStore implements FileStore {
         return new DefaultFileInfo(theFile);
     }
     
+    @Override
+    public FileInfo downloadFileForValidation(String fileID, String collectionID, File localFile) 
+            throws IOException {
+        try (InputStream in = new FileInputStream(localFile)) {
+            return downloadFileForValidation(fileID, collectionID, in);
+        }
+    }
+    
     @Override
     public void moveToArchive(String fileID, String collectionID) {
         // This does nothing.
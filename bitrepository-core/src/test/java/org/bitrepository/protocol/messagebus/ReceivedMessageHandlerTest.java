@@ -25,6 +25,7 @@ import java.math.BigInteger;
 import java.util.Arrays;
 
 import org.bitrepository.bitrepositorymessages.GetStatusRequest;
+import org.bitrepository.bitrepositorymessages.IdentifyPillarsForGetFileRequest;
 import org.bitrepository.bitrepositorymessages.Message;
 import org.bitrepository.bitrepositorymessages.PutFileRequest;
 import org.bitrepository.protocol.MessageContext;
@@ -32,6 +33,8 @@ import org.bitrepository.settings.referencesettings.MessageCategory;
 import org.bitrepository.settings.referencesettings.MessageThreadPool;
 import org.bitrepository.settings.referencesettings.MessageThreadPools;
 import org.jaccept.structure.ExtendedTestCase;
+import org.mockito.InOrder;
+import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import static org.mockito.Mockito.*;
@@ -302,6 +305,109 @@ public class ReceivedMessageHandlerTest extends ExtendedTestCase {
         verify(secondCollection1Listener, timeout(100)).onMessage(putFileRequest, null);
     }
 
+    @Test(groups = { "regressiontest" })
+    public void boundedDefaultPool() {
+        addDescription("Tests that the default pool is limited by the DefaultMaxPoolSize.");
+        addFixture("Create a ReceivedMessageHandler with no pools and a DefaultMaxPoolSize of 2.");
+        MessageThreadPools poolsConfiguration = createMessageThreadPools();
+        poolsConfiguration.setDefaultMaxPoolSize(BigInteger.valueOf(2));
+        ReceivedMessageHandler handler = new ReceivedMessageHandler(poolsConfiguration);
+
+        addStep("Dispatch messages to three listeners, the first two blocking.",
+                "The third listener should not be notified.");
+        BlockingMessageListener[] blockingListeners = createBlockingMessageListeners(2);
+        MessageListener lastListener = mock(MessageListener.class);
+        Message testMessage = new Message();
+        deliverAsynchronously(handler, testMessage, blockingListeners);
+        deliverAsynchronously(handler, testMessage, lastListener);
+        verifyNoMoreInteractions(lastListener);
+        Assert.assertEquals(handler.getStatistics().get("Message").getQueueDepth(), 1);
+        Assert.assertEquals(handler.getStatistics().get("Message").getActiveCount(), 2);
+
+        addStep("Unblock the first listener", "The last listener should now be notified.");
+        blockingListeners[0].unblock();
+        verify(lastListener, timeout(100)).onMessage(testMessage, null);
+        blockingListeners[1].unblock();
+        verify(blockingListeners[1].listener, timeout(100)).onMessage(testMessage, null);
+    }
+
+    @Test(groups = { "regressiontest" })
+    public void fullQueueIsProcessedByDeliveringThread() {
+        addDescription("Tests that a message is processed by the delivering thread, when the queue of a pool is full.");
+        addFixture("Create a ReceivedMessageHandler with a single pool of size 1 and a max queue size of 1.");
+        MessageThreadPool poolConfiguration = createMessageThreadPool(1, null, null, null);
+        poolConfiguration.setMaxQueueSize(BigInteger.ONE);
+        ReceivedMessageHandler handler = new ReceivedMessageHandler(createMessageThreadPools(poolConfiguration));
+
+        addStep("Dispatch messages to a blocking listener and a queued listener.", "None should be notified.");
+        BlockingMessageListener blockingListener = new BlockingMessageListener(mock(MessageListener.class));
+        MessageListener queuedListener = mock(MessageListener.class);
+        Message testMessage = new Message();
+        deliverAsynchronously(handler, testMessage, blockingListener, queuedListener);
+        verifyNoMoreInteractions(blockingListener.listener, queuedListener);
+
+        addStep("Dispatch a third message", "The message should be processed by the delivering thread.");
+        final Thread deliveringThread = Thread.currentThread();
+        final boolean[] processedByDeliveringThread = new boolean[1];
+        handler.deliver(new MessageListener() {
+            @Override
+            public void onMessage(Message message, MessageContext messageContext) {
+                processedByDeliveringThread[0] = Thread.currentThread() == deliveringThread;
+            }
+        }, testMessage, null);
+        Assert.assertTrue(processedByDeliveringThread[0]);
+
+        blockingListener.unblock();
+        verify(queuedListener, timeout(100)).onMessage(testMessage, null);
+    }
+
+    @Test(groups = { "regressiontest" })
+    public void handlingStatistics() {
+        addDescription("Tests that the handling statistics are maintained for each message type.");
+        ReceivedMessageHandler handler = new ReceivedMessageHandler(null);
+        MessageListener listener = mock(MessageListener.class);
+        Message getStatusRequest = new GetStatusRequest();
+        Message putFileRequest = new PutFileRequest();
+        deliverAsynchronously(handler, getStatusRequest, listener, listener);
+        deliverAsynchronously(handler, putFileRequest, listener);
+        Assert.assertEquals(handler.getStatistics().get(GetStatusRequest.class.getSimpleName()).getHandledCount(), 2);
+        Assert.assertEquals(handler.getStatistics().get(PutFileRequest.class.getSimpleName()).getHandledCount(), 1);
+        Assert.assertEquals(handler.getStatistics().get(PutFileRequest.class.getSimpleName()).getQueueDepth(), 0);
+        Assert.assertEquals(handler.getStatistics().get(PutFileRequest.class.getSimpleName()).getActiveCount(), 0);
+    }
+
+    @Test(groups = { "regressiontest" })
+    public void prioritizedFastMessages() {
+        addDescription("Tests that waiting FAST messages are processed before waiting SLOW messages, when " +
+                "PrioritizeFastMessages is set.");
+        addFixture("Create a ReceivedMessageHandler with a single pool of size 1, prioritizing fast messages.");
+        MessageThreadPools poolsConfiguration = createMessageThreadPools(createMessageThreadPool(1, null, null, null));
+        poolsConfiguration.setPrioritizeFastMessages(true);
+        ReceivedMessageHandler handler = new ReceivedMessageHandler(poolsConfiguration);
+
+        addStep("Block the pool and dispatch two put requests followed by an identify request.",
+                "None of the messages should be processed.");
+        BlockingMessageListener blockingListener = new BlockingMessageListener(mock(MessageListener.class));
+        MessageListener listener = mock(MessageListener.class);
+        Message firstPutFileRequest = new PutFileRequest();
+        Message secondPutFileRequest = new PutFileRequest();
+        Message identifyRequest = new IdentifyPillarsForGetFileRequest();
+        deliverAsynchronously(handler, new Message(), blockingListener);
+        handler.deliver(listener, firstPutFileRequest, null);
+        handler.deliver(listener, secondPutFileRequest, null);
+        handler.deliver(listener, identifyRequest, null);
+        verifyNoMoreInteractions(listener);
+
+        addStep("Unblock the pool", "The identify request should be processed before the put requests, and the " +
+                "put requests in the order they were received.");
+        blockingListener.unblock();
+        verify(listener, timeout(100).times(3)).onMessage(any(Message.class), any(MessageContext.class));
+        InOrder inOrder = inOrder(listener);
+        inOrder.verify(listener).onMessage(identifyRequest, null);
+        inOrder.verify(listener).onMessage(firstPutFileRequest, null);
+        inOrder.verify(listener).onMessage(secondPutFileRequest, null);
+    }
+
     private BlockingMessageListener[] createBlockingMessageListeners(int number) {
         BlockingMessageListener[] listeners = new BlockingMessageListener[number];
         for (int i=0; i<number;i++) {
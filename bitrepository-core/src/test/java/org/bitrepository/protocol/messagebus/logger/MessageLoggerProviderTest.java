@@ -0,0 +1,116 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.messagebus.logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bitrepository.bitrepositoryelements.ResponseCode;
+import org.bitrepository.bitrepositoryelements.ResponseInfo;
+import org.bitrepository.bitrepositorymessages.AlarmMessage;
+import org.bitrepository.bitrepositorymessages.GetFileFinalResponse;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+public class MessageLoggerProviderTest extends ExtendedTestCase {
+    private static final String TEST_COLLECTION = "collection1";
+
+    @AfterMethod(alwaysRun = true)
+    public void resetTraceSink() {
+        MessageLoggerProvider.getInstance().setTraceSink(null, 1);
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void traceSamplingTest() {
+        addDescription("Tests that only the sampled messages are delivered to the trace sink.");
+        CollectingTraceSink sink = new CollectingTraceSink();
+        MessageLoggerProvider provider = MessageLoggerProvider.getInstance();
+
+        addStep("Log messages without a trace sink", "Should not fail");
+        provider.logMessageSent(createMessage());
+
+        addStep("Set a trace sink sampling every second message and log four messages",
+                "Two messages should be traced");
+        provider.setTraceSink(sink, 2);
+        for (int i = 0; i < 4; i++) {
+            provider.logMessageReceived(createMessage());
+        }
+        Assert.assertEquals(sink.traces.size(), 2);
+        MessageTrace trace = sink.traces.get(0);
+        Assert.assertEquals(trace.getDirection(), MessageTrace.Direction.RECEIVED);
+        Assert.assertEquals(trace.getMessageType(), AlarmMessage.class.getSimpleName());
+        Assert.assertEquals(trace.getCollectionID(), TEST_COLLECTION);
+        Assert.assertNull(trace.getResponseCode());
+
+        addStep("Remove the trace sink and log a message", "No more messages should be traced");
+        provider.setTraceSink(null, 1);
+        provider.logMessageSent(createMessage());
+        Assert.assertEquals(sink.traces.size(), 2);
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void traceResponseTest() {
+        addDescription("Tests that the response code is included in the trace of a response.");
+        CollectingTraceSink sink = new CollectingTraceSink();
+        MessageLoggerProvider.getInstance().setTraceSink(sink, 1);
+        GetFileFinalResponse response = new GetFileFinalResponse();
+        response.setCollectionID(TEST_COLLECTION);
+        response.setCorrelationID("correlation1");
+        ResponseInfo responseInfo = new ResponseInfo();
+        responseInfo.setResponseCode(ResponseCode.OPERATION_COMPLETED);
+        response.setResponseInfo(responseInfo);
+
+        MessageLoggerProvider.getInstance().logMessageSent(response);
+        Assert.assertEquals(sink.traces.size(), 1);
+        Assert.assertEquals(sink.traces.get(0).getDirection(), MessageTrace.Direction.SENT);
+        Assert.assertEquals(sink.traces.get(0).getResponseCode(), ResponseCode.OPERATION_COMPLETED);
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void invalidSampleIntervalTest() {
+        addDescription("Tests that the sample interval must be positive.");
+        try {
+            MessageLoggerProvider.getInstance().setTraceSink(new CollectingTraceSink(), 0);
+            Assert.fail("Should throw an exception");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private AlarmMessage createMessage() {
+        AlarmMessage message = new AlarmMessage();
+        message.setCollectionID(TEST_COLLECTION);
+        message.setCorrelationID("correlation1");
+        return message;
+    }
+
+    private static class CollectingTraceSink implements MessageTraceSink {
+        private final List<MessageTrace> traces = new ArrayList<MessageTrace>();
+
+        @Override
+        public void trace(MessageTrace trace) {
+            traces.add(trace);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.performancetest;
+
+import java.math.BigInteger;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.bitrepository.bitrepositorymessages.GetChecksumsRequest;
+import org.bitrepository.bitrepositorymessages.IdentifyPillarsForGetChecksumsRequest;
+import org.bitrepository.bitrepositorymessages.Message;
+import org.bitrepository.protocol.MessageContext;
+import org.bitrepository.protocol.messagebus.MessageHandlingStatistics;
+import org.bitrepository.protocol.messagebus.MessageListener;
+import org.bitrepository.protocol.messagebus.ReceivedMessageHandler;
+import org.bitrepository.settings.referencesettings.MessageThreadPool;
+import org.bitrepository.settings.referencesettings.MessageThreadPools;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Stress testing of the prioritization of FAST messages in the <code>ReceivedMessageHandler</code>.
+ * A backlog of slow GetChecksumsRequests is delivered to a bounded pool, while identify requests are delivered at a
+ * steady rate. The time the identify requests wait before being handled is measured.
+ */
+public class ReceivedMessageHandlerPriorityStressTest extends ExtendedTestCase {
+    /** The number of threads in the pool. */
+    private static final int POOL_SIZE = 4;
+    /** The number of milliseconds it takes to handle a GetChecksumsRequest. */
+    private static final long BULK_HANDLING_TIME = 50;
+    /** The number of GetChecksumsRequests in the backlog. */
+    private static final int NUMBER_OF_BULK_MESSAGES = 400;
+    /** The number of identify requests delivered during the test. */
+    private static final int NUMBER_OF_IDENTIFY_MESSAGES = 100;
+
+    @Test( groups = {"StressTest"} )
+    public void identifyLatencyUnderBulkLoad() throws Exception {
+        addDescription("Tests that the identify requests are handled promptly, even with a large backlog of bulk "
+                + "requests, when FAST messages are prioritized.");
+        addStep("Measure the identify latency without prioritization", "Should grow with the backlog.");
+        MessageHandlingStatistics unprioritized = runLoad(false);
+        System.out.println("Without prioritization: " + unprioritized);
+
+        addStep("Measure the identify latency with prioritization",
+                "The identify requests should wait at most for a bulk request to finish.");
+        MessageHandlingStatistics prioritized = runLoad(true);
+        System.out.println("With prioritization: " + prioritized);
+
+        Assert.assertTrue(prioritized.getAverageQueueTime() < 2 * BULK_HANDLING_TIME, "The identify requests "
+                + "waited " + prioritized.getAverageQueueTime() + " ms on average");
+        Assert.assertTrue(prioritized.getAverageQueueTime() < unprioritized.getAverageQueueTime(),
+                "The prioritization should reduce the identify latency");
+    }
+
+    /**
+     * Delivers the bulk backlog and the identify requests.
+     * @param prioritize Whether to prioritize FAST messages.
+     * @return The handling statistics for the identify requests.
+     */
+    private MessageHandlingStatistics runLoad(boolean prioritize) throws Exception {
+        MessageThreadPool pool = new MessageThreadPool();
+        pool.setPoolSize(BigInteger.valueOf(POOL_SIZE));
+        MessageThreadPools pools = new MessageThreadPools();
+        pools.getMessageThreadPool().add(pool);
+        pools.setPrioritizeFastMessages(prioritize);
+        ReceivedMessageHandler handler = new ReceivedMessageHandler(pools);
+
+        final CountDownLatch identifyLatch = new CountDownLatch(NUMBER_OF_IDENTIFY_MESSAGES);
+        MessageListener listener = new MessageListener() {
+            @Override
+            public void onMessage(Message message, MessageContext messageContext) {
+                if (message instanceof GetChecksumsRequest) {
+                    try {
+                        Thread.sleep(BULK_HANDLING_TIME);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                } else {
+                    identifyLatch.countDown();
+                }
+            }
+        };
+
+        try {
+            for (int i = 0; i < NUMBER_OF_BULK_MESSAGES; i++) {
+                handler.deliver(listener, new GetChecksumsRequest(), null);
+            }
+            for (int i = 0; i < NUMBER_OF_IDENTIFY_MESSAGES; i++) {
+                handler.deliver(listener, new IdentifyPillarsForGetChecksumsRequest(), null);
+                Thread.sleep(BULK_HANDLING_TIME / 2);
+            }
+            Assert.assertTrue(identifyLatch.await(
+                    NUMBER_OF_BULK_MESSAGES * BULK_HANDLING_TIME, TimeUnit.MILLISECONDS));
+            return handler.getStatistics().get(IdentifyPillarsForGetChecksumsRequest.class.getSimpleName());
+        } finally {
+            handler.close();
+        }
+    }
+}
@@ -37,8 +37,8 @@ import org.bitrepository.common.settings.XMLFileSettingsLoader;
 import org.bitrepository.common.utils.SettingsUtils;
 import org.bitrepository.integrityservice.alerter.IntegrityAlarmDispatcher;
 import org.bitrepository.integrityservice.alerter.IntegrityAlerter;
-import org.bitrepository.integrityservice.cache.IntegrityDatabase;
 import org.bitrepository.integrityservice.cache.IntegrityModel;
+import org.bitrepository.integrityservice.cache.database.IntegrityDAOFactory;
 import org.bitrepository.integrityservice.collector.DelegatingIntegrityInformationCollector;
 import org.bitrepository.integrityservice.collector.IntegrityInformationCollector;
 import org.bitrepository.integrityservice.reports.IntegrityReportProvider;
@@ -117,7 +117,7 @@ public final class IntegrityServiceManager {
                 settings.getComponentID());
                 
         alarmDispatcher = new IntegrityAlarmDispatcher(settings, messageBus, AlarmLevel.ERROR);
-        model = new IntegrityDatabase(settings);
+        model = new IntegrityDAOFactory().getIntegrityModelInstance(settings);
 
         AccessComponentFactory acf = AccessComponentFactory.getInstance();
         ModifyComponentFactory mcf = ModifyComponentFactory.getInstance();
@@ -23,11 +23,13 @@ package org.bitrepository.integrityservice.cache;
 
 import java.util.Collection;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
 import org.bitrepository.bitrepositoryelements.FileIDsData;
+import org.bitrepository.bitrepositoryelements.FileIDsDataItem;
 import org.bitrepository.common.settings.Settings;
 import org.bitrepository.integrityservice.cache.database.IntegrityDAO;
 import org.bitrepository.integrityservice.cache.database.IntegrityDAOFactory;
@@ -52,11 +54,27 @@ public class IntegrityDatabase implements IntegrityModel {
         store.updateFileIDs(data, pillarID, collectionID);
     }
 
+    @Override
+    public void addFileIDs(Iterator<FileIDsDataItem> dataItems, String pillarID, String collectionID) {
+        store.updateFileIDs(dataItems, pillarID, collectionID);
+    }
+
     @Override
     public void addChecksums(List<ChecksumDataForChecksumSpecTYPE> data, String pillarID, String collectionID) {
         store.updateChecksums(data, pillarID, collectionID);
     }
 
+    @Override
+    public void addFileIDsWithoutProgress(Iterator<FileIDsDataItem> dataItems, String pillarID, String collectionID) {
+        store.updateFileIDs(dataItems, pillarID, collectionID, false);
+    }
+
+    @Override
+    public void addChecksumsWithoutProgress(List<ChecksumDataForChecksumSpecTYPE> data, String pillarID,
+            String collectionID) {
+        store.updateChecksums(data, pillarID, collectionID, false);
+    }
+
     @Override
     public Collection<FileInfo> getFileInfos(String fileID, String collectionID) {
         return store.getFileInfosForFile(fileID, collectionID);
@@ -71,6 +89,26 @@ public class IntegrityDatabase implements IntegrityModel {
     public void resetChecksumCollectionProgress(String collectionID) {
         store.resetChecksumCollectionProgress(collectionID);
     }
+    
+    @Override
+    public void resetFileCollectionProgress(String pillarID, String collectionID) {
+        store.resetFileCollectionProgress(collectionID, pillarID);
+    }
+    
+    @Override
+    public void resetChecksumCollectionProgress(String pillarID, String collectionID) {
+        store.resetChecksumCollectionProgress(collectionID, pillarID);
+    }
+    
+    @Override
+    public void advanceFileCollectionProgress(String pillarID, String collectionID, Date latestFileDate) {
+        store.advanceFileCollectionProgress(collectionID, pillarID, latestFileDate);
+    }
+    
+    @Override
+    public void advanceChecksumCollectionProgress(String pillarID, String collectionID, Date latestChecksumDate) {
+        store.advanceChecksumCollectionProgress(collectionID, pillarID, latestChecksumDate);
+    }
 
     @Override
     public long getNumberOfFilesInCollection(String collectionID) {
@@ -168,4 +206,9 @@ public class IntegrityDatabase implements IntegrityModel {
     public Map<String, PillarCollectionMetric> getPillarCollectionMetrics(String collectionID) {
         return store.getPillarCollectionMetrics(collectionID);
     }
+
+    @Override
+    public void reconcileCollectionMetrics(String collectionID) {
+        store.reconcileCollectionMetrics(collectionID);
+    }
 }
@@ -26,11 +26,13 @@ package org.bitrepository.integrityservice.cache;
 
 import java.util.Collection;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
 import org.bitrepository.bitrepositoryelements.FileIDsData;
+import org.bitrepository.bitrepositoryelements.FileIDsDataItem;
 import org.bitrepository.integrityservice.cache.database.IntegrityIssueIterator;
 import org.bitrepository.integrityservice.statistics.StatisticsCollector;
 
@@ -45,6 +47,15 @@ public interface IntegrityModel {
      * @param collectionID The id of the collection the received data belongs to.
      */
     void addFileIDs(FileIDsData data, String pillarID, String collectionID);
+    
+    /**
+     * Add file ID data to cache, which is read as it is needed, e.g. from a result file.
+     * The data is added in bounded batches, so it does not have to be held in memory at once.
+     * @param dataItems The received data.
+     * @param pillarID The id of the pillar the received data comes from.
+     * @param collectionID The id of the collection the received data belongs to.
+     */
+    void addFileIDs(Iterator<FileIDsDataItem> dataItems, String pillarID, String collectionID);
 
     /**
      * Add checksum data to cache.
@@ -54,6 +65,27 @@ public interface IntegrityModel {
      */
     void addChecksums(List<ChecksumDataForChecksumSpecTYPE> data, String pillarID, String collectionID);
 
+    /**
+     * Add file ID data to cache, without moving the file collection progress of the pillar. Used for data which is
+     * collected out of order, where the progress is moved by {@link #advanceFileCollectionProgress(String, String,
+     * Date)} once all the data has been collected.
+     * @param dataItems The received data.
+     * @param pillarID The id of the pillar the received data comes from.
+     * @param collectionID The id of the collection the received data belongs to.
+     */
+    void addFileIDsWithoutProgress(Iterator<FileIDsDataItem> dataItems, String pillarID, String collectionID);
+
+    /**
+     * Add checksum data to cache, without moving the checksum collection progress of the pillar. Used for data
+     * which is collected out of order, where the progress is moved by
+     * {@link #advanceChecksumCollectionProgress(String, String, Date)} once all the data has been collected.
+     * @param data The received data.
+     * @param pillarID The id of the pillar the received data comes from.
+     * @param collectionID The id of the collection the received data belongs to.
+     */
+    void addChecksumsWithoutProgress(List<ChecksumDataForChecksumSpecTYPE> data, String pillarID,
+            String collectionID);
+
     /**
      * Retrieves the information of a given file id for all pillars.
      * @param fileID The id of the file.
@@ -73,6 +105,37 @@ public interface IntegrityModel {
      * @param collectionID The collection to reset the checksum collection status of
      */
     void resetChecksumCollectionProgress(String collectionID);
+
+    /**
+     * Reset the status of the fileID collection of a single pillar
+     * @param pillarID The pillar to reset the fileID collection status of
+     * @param collectionID The collection to reset the fileID collection status in
+     */
+    void resetFileCollectionProgress(String pillarID, String collectionID);
+
+    /**
+     * Reset the status of the checksum collection of a single pillar
+     * @param pillarID The pillar to reset the checksum collection status of
+     * @param collectionID The collection to reset the checksum collection status in
+     */
+    void resetChecksumCollectionProgress(String pillarID, String collectionID);
+
+    /**
+     * Moves the status of the fileID collection of a pillar forward to the given date. An earlier date is ignored.
+     * @param pillarID The pillar to move the fileID collection status of
+     * @param collectionID The collection to move the fileID collection status in
+     * @param latestFileDate The date of the latest file collected from the pillar
+     */
+    void advanceFileCollectionProgress(String pillarID, String collectionID, Date latestFileDate);
+
+    /**
+     * Moves the status of the checksum collection of a pillar forward to the given date. An earlier date is
+     * ignored.
+     * @param pillarID The pillar to move the checksum collection status of
+     * @param collectionID The collection to move the checksum collection status in
+     * @param latestChecksumDate The date of the latest checksum collected from the pillar
+     */
+    void advanceChecksumCollectionProgress(String pillarID, String collectionID, Date latestChecksumDate);
     
     /**
      * Retrieves the number of files in a collection
@@ -188,6 +251,13 @@ public interface IntegrityModel {
      */
     Map<String, PillarCollectionMetric> getPillarCollectionMetrics(String collectionID);
     
+    /**
+     * Recalculates the file count and size metrics for the given collection, which are otherwise maintained 
+     * incrementally as the integrity information is updated. 
+     * @param collectionID The ID of the collection
+     */
+    void reconcileCollectionMetrics(String collectionID);
+    
     /**
      *  Retrieves the latest collection statistics for the given collection
      *  @param collectionID The ID of the collection
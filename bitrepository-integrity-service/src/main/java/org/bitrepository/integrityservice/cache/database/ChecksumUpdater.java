@@ -23,7 +23,10 @@ package org.bitrepository.integrityservice.cache.database;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -48,32 +51,37 @@ import org.slf4j.LoggerFactory;
  *  This should be no problem since 1) it will get overwritten the next time the files is reported
  *  and 2) the pillar calculated a checksum meaning that at that time the pillar must have had the 
  *  file.  
+ *  
+ *  The {@link CollectionMetrics} of the collection are updated with the inserted files, when the batch has been
+ *  committed. The inserted files have no size until it is reported by a GetFileIDs update.
  */
 public class ChecksumUpdater {
 
     /**
-     * SQL for conditional insert of the fileID in the files table.
-     * The insert is only performed when the (file_id, collection_key) 
-     * tuple is not already found in the database  
+     * SQL for conditional insert of the file in the fileinfo table.
+     * The insert is only performed when the (file_key, pillar_key) 
+     * tuple is not already found in the database. The file must be in the {@link FileDictionary}.
      */
     private final String insertFileInfoWithChecksumSql = "INSERT INTO fileinfo ("
-            + " collectionID, pillarID, fileID, file_timestamp, last_seen_getfileids,"
+            + " file_key, pillar_key, collection_key, file_timestamp, last_seen_getfileids,"
             + " checksum, checksum_timestamp, last_seen_getchecksums)"
-            + " (SELECT collectionID, ?, ?, ?, ?, ?, ?, ? FROM collections"
-                + " WHERE collectionID = ?"
+            + " (SELECT file_key, ?, collection_key, ?, ?, ?, ?, ? FROM files"
+                + " WHERE collection_key = ?"
+                + " AND fileID = ?"
                 + " AND NOT EXISTS ("
                     + " SELECT * FROM fileinfo "
-                    + " WHERE fileID = ?"
-                    + " AND collectionID = ?"
-                    + " AND pillarID = ?))";
+                    + " WHERE fileinfo.file_key = files.file_key"
+                    + " AND pillar_key = ?))";
 
     private final String updateChecksumSql = "UPDATE fileinfo "
             + "	SET checksum = ?,"
             + " checksum_timestamp = ?,"
             + " last_seen_getchecksums = ?"
-            + " WHERE fileID = ?"
-            + "	AND collectionID = ?"
-            + " AND pillarID = ?";	
+            + " WHERE file_key = (SELECT file_key FROM files WHERE collection_key = ? AND fileID = ?)"
+            + " AND pillar_key = ?";	
+
+    private final String countFileCopiesSql = "SELECT COUNT(*) FROM fileinfo"
+            + " WHERE file_key = (SELECT file_key FROM files WHERE collection_key = ? AND fileID = ?)";
 
     private final String insertLatestChecksumTime = "INSERT INTO collection_progress "
             + "(collectionID, pillarID, latest_checksum_timestamp)"
@@ -87,28 +95,54 @@ public class ChecksumUpdater {
     private final String updateLatestChecksumTime = "UPDATE collection_progress"
             + " SET latest_checksum_timestamp = ? "
             + " WHERE collectionID = ?"
-            + " AND pillarID = ?";
+            + " AND pillarID = ?"
+            + " AND (latest_checksum_timestamp IS NULL OR latest_checksum_timestamp < ?)";
 
     private Logger log = LoggerFactory.getLogger(getClass());
 
     private final String collectionID;
+    private final int collectionKey;
     private final String pillar;
+    private final int pillarKey;
     private final Connection conn;
+    private final CollectionMetrics metrics;
+    private final FileDictionary fileDictionary;
+    private final boolean updateProgress;
     private PreparedStatement insertFileInfoPS;
     private PreparedStatement updateChecksumPS;
+    private PreparedStatement countFileCopiesPS;
     private PreparedStatement insertLatestChecksumTimePS;
     private PreparedStatement updateLatestChecksumTimePS;
+    /** The fileIDs in the current batch, in the order they were added.*/
+    private final List<String> batchFileIDs = new ArrayList<>();
 
-    public ChecksumUpdater(String pillar, Connection dbConnection, String collectionID) {
+    /**
+     * @param pillar The ID of the pillar the checksums are from.
+     * @param pillarKey The key of the pillar the checksums are from.
+     * @param dbConnection The connection to use. Is closed when the update is done.
+     * @param collectionID The ID of the collection the checksums are from.
+     * @param collectionKey The key of the collection the checksums are from.
+     * @param metrics The metrics of the collection, which should be updated with the new files.
+     * @param fileDictionary The dictionary, which the files are added to before they are inserted.
+     * @param updateProgress Whether the checksum collection progress of the pillar is moved to the latest checksum.
+     */
+    public ChecksumUpdater(String pillar, int pillarKey, Connection dbConnection, String collectionID, 
+            int collectionKey, CollectionMetrics metrics, FileDictionary fileDictionary, boolean updateProgress) {
         this.collectionID = collectionID;
+        this.collectionKey = collectionKey;
         this.pillar = pillar;
+        this.pillarKey = pillarKey;
         conn = dbConnection;
+        this.metrics = metrics;
+        this.fileDictionary = fileDictionary;
+        this.updateProgress = updateProgress;
     }
 
     private void init() throws SQLException {
         conn.setAutoCommit(false);
         insertFileInfoPS = conn.prepareStatement(insertFileInfoWithChecksumSql);
         updateChecksumPS = conn.prepareStatement(updateChecksumSql);
+        countFileCopiesPS = conn.prepareStatement(countFileCopiesSql);
         insertLatestChecksumTimePS = conn.prepareStatement(insertLatestChecksumTime);
         updateLatestChecksumTimePS = conn.prepareStatement(updateLatestChecksumTime);
     }
@@ -127,6 +161,7 @@ public class ChecksumUpdater {
                 for(ChecksumDataForChecksumSpecTYPE csData : data) {
                     updateChecksum(csData);
                     addFileInfoWithChecksum(csData);
+                    batchFileIDs.add(csData.getFileID());
                     maxDate = TimeUtils.getMaxDate(maxDate, 
                             CalendarUtils.convertFromXMLGregorianCalendar(csData.getCalculationTimestamp()));                	
                 }
@@ -138,6 +173,7 @@ public class ChecksumUpdater {
                 close();
             }
         } catch (SQLException e) {
+            metrics.markStale();
             log.error("Failed to update files", e);
         }
     } 
@@ -146,17 +182,15 @@ public class ChecksumUpdater {
         long calculationTime = CalendarUtils.convertFromXMLGregorianCalendar(item.getCalculationTimestamp()).getTime();
 
         Date now = new Date();
-        insertFileInfoPS.setString(1, pillar);
-        insertFileInfoPS.setString(2, item.getFileID());
-        insertFileInfoPS.setLong(3, calculationTime);
-        insertFileInfoPS.setLong(4, now.getTime());
-        insertFileInfoPS.setString(5, Base16Utils.decodeBase16(item.getChecksumValue()));
-        insertFileInfoPS.setLong(6, calculationTime);
-        insertFileInfoPS.setLong(7, now.getTime());
-        insertFileInfoPS.setString(8, collectionID);
-        insertFileInfoPS.setString(9, item.getFileID());
-        insertFileInfoPS.setString(10, collectionID);
-        insertFileInfoPS.setString(11, pillar);
+        insertFileInfoPS.setInt(1, pillarKey);
+        insertFileInfoPS.setLong(2, calculationTime);
+        insertFileInfoPS.setLong(3, now.getTime());
+        insertFileInfoPS.setString(4, Base16Utils.decodeBase16(item.getChecksumValue()));
+        insertFileInfoPS.setLong(5, calculationTime);
+        insertFileInfoPS.setLong(6, now.getTime());
+        insertFileInfoPS.setInt(7, collectionKey);
+        insertFileInfoPS.setString(8, item.getFileID());
+        insertFileInfoPS.setInt(9, pillarKey);
         insertFileInfoPS.addBatch();
     }
 
@@ -167,9 +201,9 @@ public class ChecksumUpdater {
         updateChecksumPS.setString(1, Base16Utils.decodeBase16(item.getChecksumValue()));
         updateChecksumPS.setLong(2, calculationTime);
         updateChecksumPS.setLong(3, now.getTime());
-        updateChecksumPS.setString(4, item.getFileID());
-        updateChecksumPS.setString(5, collectionID);
-        updateChecksumPS.setString(6, pillar);
+        updateChecksumPS.setInt(4, collectionKey);
+        updateChecksumPS.setString(5, item.getFileID());
+        updateChecksumPS.setInt(6, pillarKey);
         updateChecksumPS.addBatch();
     }
 
@@ -177,6 +211,7 @@ public class ChecksumUpdater {
         updateLatestChecksumTimePS.setLong(1, maxDate.getTime());
         updateLatestChecksumTimePS.setString(2, collectionID);
         updateLatestChecksumTimePS.setString(3, pillar);
+        updateLatestChecksumTimePS.setLong(4, maxDate.getTime());
 
         insertLatestChecksumTimePS.setString(1, pillar);
         insertLatestChecksumTimePS.setLong(2, maxDate.getTime());
@@ -186,11 +221,53 @@ public class ChecksumUpdater {
     }
 
     private void execute() throws SQLException {
-        updateChecksumPS.executeBatch();
-        insertFileInfoPS.executeBatch();
-        updateLatestChecksumTimePS.execute();
-        insertLatestChecksumTimePS.execute();
-        conn.commit();
+        boolean trackMetrics = !metrics.isStale();
+        metrics.beginModification();
+        fileDictionary.beginUpdate();
+        try {
+            fileDictionary.addFiles(conn, collectionKey, batchFileIDs);
+            updateChecksumPS.executeBatch();
+            int[] inserted = insertFileInfoPS.executeBatch();
+            if(updateProgress) {
+                updateLatestChecksumTimePS.execute();
+                insertLatestChecksumTimePS.execute();
+            }
+
+            List<String> addedFiles = new ArrayList<>();
+            List<Long> copyCounts = new ArrayList<>();
+            for(int i = 0; trackMetrics && i < inserted.length; i++) {
+                if(inserted[i] == Statement.SUCCESS_NO_INFO) {
+                    trackMetrics = false;
+                } else if(inserted[i] > 0) {
+                    addedFiles.add(batchFileIDs.get(i));
+                    copyCounts.add(countCopies(batchFileIDs.get(i)));
+                }
+            }
+            conn.commit();
+
+            if(!trackMetrics) {
+                metrics.markStale();
+                return;
+            }
+            for(int i = 0; i < addedFiles.size(); i++) {
+                metrics.fileAdded(pillar, addedFiles.get(i), null, copyCounts.get(i), false);
+            }
+        } finally {
+            fileDictionary.endUpdate();
+            metrics.endModification();
+        }
+    }
+
+    /**
+     * @param fileID The ID of the file.
+     * @return The number of copies of the file in the collection. 
+     */
+    private long countCopies(String fileID) throws SQLException {
+        countFileCopiesPS.setInt(1, collectionKey);
+        countFileCopiesPS.setString(2, fileID);
+        try (ResultSet rs = countFileCopiesPS.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0L;
+        }
     }
 
     private void close() throws SQLException {
@@ -200,6 +277,9 @@ public class ChecksumUpdater {
         if(insertFileInfoPS != null) {
             insertFileInfoPS.close();
         }
+        if(countFileCopiesPS != null) {
+            countFileCopiesPS.close();
+        }
         if(conn != null) {
             conn.setAutoCommit(true);
             conn.close();
@@ -0,0 +1,313 @@
+/*
+ * #%L
+ * Bitrepository Integrity Service
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.integrityservice.cache.database;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.bitrepository.integrityservice.cache.PillarCollectionMetric;
+
+/**
+ * The file count and accumulated file size of a collection, both in total and for each pillar.
+ * As for the database queries, the size of the collection counts each distinct size reported for a file.
+ *
+ * The metrics are maintained incrementally by the {@link FileUpdater}, the {@link ChecksumUpdater} and the removal
+ * of files, and are reconciled against the database by the {@link IntegrityDAO}. The key-value store maintains
+ * its metrics in the same way.
+ * Changes are only applied while the metrics are valid, as a change to stale metrics would be lost at the next
+ * reconciliation anyway. Stale metrics keep the values they had when they became stale, so readers are always 
+ * given the latest consistent values, and never have to wait for a reconciliation.
+ * 
+ * The updates of the database are registered with {@link #beginModification()} before they are committed, and with 
+ * {@link #endModification()} when they have been applied to the metrics. The result of a reconciliation is 
+ * discarded, if any modification was in progress while it ran, as it is unknown whether the reconciliation query saw 
+ * the modification, and whether the modification has been applied to the metrics. 
+ * Only a single reconciliation of the metrics should run at a time, see {@link #getReconciliationLock()}.
+ * 
+ * Along with the metrics, the files with fewer copies than expected can be tracked, so the files with missing copies
+ * can be found without grouping all the files of the collection in the database. The tracked files are only 
+ * candidates, which must be confirmed against the database. The tracking is stopped when the metrics become stale, 
+ * or when more than {@link #MAX_INCOMPLETE_FILES} files are missing copies.
+ */
+public class CollectionMetrics {
+    /** The maximum number of files with missing copies tracked in memory.*/
+    public static final int MAX_INCOMPLETE_FILES = 100000;
+    /** Indicates that the files with missing copies are not tracked.*/
+    private static final int NOT_TRACKED = -1;
+    
+    /** The file count and accumulated file size for each pillar.*/
+    private final Map<String, long[]> pillarMetrics = new HashMap<>();
+    /** The number of distinct files in the collection.*/
+    private long fileCount;
+    /** The accumulated size of the distinct file sizes for each file in the collection.*/
+    private long collectionSize;
+    /** Whether the metrics should be reconciled before they are used.*/
+    private boolean stale = true;
+    /** The number of changes registered, used for detecting changes during a reconciliation.*/
+    private long modifications;
+    /** The number of modifications of the database, which are in progress.*/
+    private int activeModifications;
+    /** The lock held while the metrics are reconciled.*/
+    private final Lock reconciliationLock = new ReentrantLock();
+    /** The files with fewer copies than expected, if tracked.*/
+    private final Set<String> incompleteFiles = new TreeSet<>();
+    /** The expected number of copies of each file, or NOT_TRACKED if the incomplete files are not tracked.*/
+    private int expectedCopies = NOT_TRACKED;
+    /** The time of the latest reconciliation of the incomplete files.*/
+    private long incompleteFilesReconciliationTime;
+
+    /**
+     * @return Whether the metrics should be reconciled before they are used.
+     */
+    public synchronized boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * Marks the metrics as stale, e.g. when an update could not be accounted for.
+     */
+    public synchronized void markStale() {
+        modifications++;
+        stale = true;
+        stopTrackingIncompleteFiles();
+    }
+
+    /**
+     * Registers that the database is about to be modified. Must be followed by {@link #endModification()}, 
+     * when the modification has been committed, and applied to the metrics. 
+     */
+    public synchronized void beginModification() {
+        modifications++;
+        activeModifications++;
+    }
+
+    /**
+     * Registers that a modification of the database has been committed, or rolled back, and has been applied to the 
+     * metrics. 
+     */
+    public synchronized void endModification() {
+        modifications++;
+        activeModifications--;
+    }
+
+    /**
+     * @return The lock, which should be held while the metrics are reconciled, so concurrent readers do not run 
+     * duplicate reconciliations.
+     */
+    public Lock getReconciliationLock() {
+        return reconciliationLock;
+    }
+
+    /**
+     * @return The number of changes registered so far. Should be given to {@link #reconciled} afterwards.
+     */
+    public synchronized long startReconciliation() {
+        return modifications;
+    }
+
+    /**
+     * Replaces the metrics with the result of a reconciliation against the database, unless the database has been 
+     * modified during the reconciliation. In that case the current metrics are kept, and are still stale if they 
+     * were stale.
+     * @param modificationsAtStart The number of changes when the reconciliation started.
+     * @param pillarCollectionMetrics The metrics for each pillar.
+     * @param fileCount The number of distinct files in the collection.
+     * @param collectionSize The accumulated size of the distinct file sizes for each file in the collection.
+     * @return Whether the result of the reconciliation was used.
+     */
+    public synchronized boolean reconciled(long modificationsAtStart,
+            Map<String, PillarCollectionMetric> pillarCollectionMetrics, long fileCount, long collectionSize) {
+        if(modifications != modificationsAtStart || activeModifications > 0) {
+            return false;
+        }
+        pillarMetrics.clear();
+        for(Map.Entry<String, PillarCollectionMetric> entry : pillarCollectionMetrics.entrySet()) {
+            pillarMetrics.put(entry.getKey(), new long[] {entry.getValue().getPillarFileCount(),
+                    entry.getValue().getPillarCollectionSize()});
+        }
+        this.fileCount = fileCount;
+        this.collectionSize = collectionSize;
+        stale = false;
+        return true;
+    }
+
+    /**
+     * Replaces the tracked files with missing copies with the result of a reconciliation against the database.
+     * The files are not tracked, if the collection has changed during the reconciliation, or if there are too many.
+     * @param modificationsAtStart The number of changes when the reconciliation started.
+     * @param expectedCopiesOfFiles The expected number of copies of each file.
+     * @param filesWithMissingCopies The files with fewer copies than expected.
+     */
+    synchronized void incompleteFilesReconciled(long modificationsAtStart, int expectedCopiesOfFiles,
+            Collection<String> filesWithMissingCopies) {
+        stopTrackingIncompleteFiles();
+        if(stale || modifications != modificationsAtStart || activeModifications > 0 
+                || filesWithMissingCopies.size() > MAX_INCOMPLETE_FILES) {
+            return;
+        }
+        incompleteFiles.addAll(filesWithMissingCopies);
+        expectedCopies = expectedCopiesOfFiles;
+        incompleteFilesReconciliationTime = System.currentTimeMillis();
+    }
+    
+    /**
+     * @param expectedCopiesOfFiles The expected number of copies of each file.
+     * @param maxAge The maximum number of milliseconds since the latest reconciliation of the files.
+     * @return The files with fewer copies than expected in sorted order, or null if they are not tracked for the 
+     * expected number of copies, or if they are older than the given age.
+     */
+    synchronized List<String> getIncompleteFiles(int expectedCopiesOfFiles, long maxAge) {
+        if(expectedCopies == NOT_TRACKED || expectedCopies != expectedCopiesOfFiles 
+                || System.currentTimeMillis() - incompleteFilesReconciliationTime > maxAge) {
+            return null;
+        }
+        return new ArrayList<>(incompleteFiles);
+    }
+    
+    /**
+     * Updates the tracked files with missing copies with the current number of copies of a file.
+     * @param fileID The ID of the file.
+     * @param copies The number of copies of the file in the collection.
+     */
+    private void updateIncompleteFile(String fileID, long copies) {
+        if(expectedCopies == NOT_TRACKED) {
+            return;
+        }
+        if(copies > 0 && copies < expectedCopies) {
+            incompleteFiles.add(fileID);
+            if(incompleteFiles.size() > MAX_INCOMPLETE_FILES) {
+                stopTrackingIncompleteFiles();
+            }
+        } else {
+            incompleteFiles.remove(fileID);
+        }
+    }
+    
+    /**
+     * Stops tracking the files with missing copies, until they are reconciled again. 
+     */
+    private void stopTrackingIncompleteFiles() {
+        incompleteFiles.clear();
+        expectedCopies = NOT_TRACKED;
+    }
+
+    /**
+     * Registers that a file has been added to a pillar.
+     * @param pillarID The ID of the pillar.
+     * @param fileID The ID of the file.
+     * @param fileSize The size of the file, or null if unknown.
+     * @param copies The number of copies of the file in the collection, including the added one.
+     * @param newSizeInCollection Whether no other pillar in the collection has the file with the same size.
+     */
+    public synchronized void fileAdded(String pillarID, String fileID, Long fileSize, long copies,
+            boolean newSizeInCollection) {
+        modifications++;
+        if(stale) {
+            return;
+        }
+        updateIncompleteFile(fileID, copies);
+        boolean newInCollection = (copies == 1);
+        long size = (fileSize == null ? 0 : fileSize);
+        long[] metric = pillarMetrics.get(pillarID);
+        if(metric == null) {
+            metric = new long[2];
+            pillarMetrics.put(pillarID, metric);
+        }
+        metric[0]++;
+        metric[1] += size;
+        if(newInCollection) {
+            fileCount++;
+        }
+        if(newSizeInCollection) {
+            collectionSize += size;
+        }
+    }
+
+    /**
+     * Registers that a file has been removed from a pillar.
+     * @param pillarID The ID of the pillar.
+     * @param fileID The ID of the file.
+     * @param fileSize The size of the removed file, or null if unknown.
+     * @param remainingCopies The number of copies of the file remaining in the collection.
+     * @param lastOfSize Whether no remaining pillar in the collection has the file with the same size.
+     */
+    public synchronized void fileRemoved(String pillarID, String fileID, Long fileSize, long remainingCopies, 
+            boolean lastOfSize) {
+        modifications++;
+        if(stale) {
+            return;
+        }
+        long size = (fileSize == null ? 0 : fileSize);
+        long[] metric = pillarMetrics.get(pillarID);
+        if(metric == null) {
+            stale = true;
+            stopTrackingIncompleteFiles();
+            return;
+        }
+        updateIncompleteFile(fileID, remainingCopies);
+        boolean lastCopy = (remainingCopies == 0);
+        metric[0]--;
+        metric[1] -= size;
+        if(metric[0] == 0) {
+            pillarMetrics.remove(pillarID);
+        }
+        if(lastCopy) {
+            fileCount--;
+        }
+        if(lastOfSize) {
+            collectionSize -= size;
+        }
+    }
+
+    /**
+     * @return A mapping between the pillars with files in the collection and their PillarCollectionMetric, 
+     * as of the latest consistent state of the metrics.
+     */
+    public synchronized Map<String, PillarCollectionMetric> getPillarCollectionMetrics() {
+        Map<String, PillarCollectionMetric> metrics = new HashMap<>();
+        for(Map.Entry<String, long[]> entry : pillarMetrics.entrySet()) {
+            metrics.put(entry.getKey(), new PillarCollectionMetric(entry.getValue()[1], entry.getValue()[0]));
+        }
+        return metrics;
+    }
+
+    /**
+     * @return The number of distinct files in the collection.
+     */
+    public synchronized long getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * @return The accumulated size of the distinct file sizes for each file in the collection.
+     */
+    public synchronized long getCollectionSize() {
+        return collectionSize;
+    }
+}
@@ -39,11 +39,14 @@ public class DerbyIntegrityDAO extends IntegrityDAO {
 
     @Override
     protected String getFindFilesWithMissingCopiesSql() {
-        String findFilesSql = "SELECT fileid FROM fileinfo"
-                + " WHERE collectionid = ?"
-                + " GROUP BY fileid"
-                + " HAVING COUNT(fileid) < ?"
-                + " ORDER BY fileid"
+        String findFilesSql = "SELECT fileID FROM files"
+                + " JOIN ("
+                    + " SELECT file_key FROM fileinfo"
+                    + " WHERE collection_key = ?"
+                    + " GROUP BY file_key"
+                    + " HAVING COUNT(*) < ?) AS incomplete"
+                + " ON files.file_key = incomplete.file_key"
+                + " ORDER BY fileID"
                 + " OFFSET ? ROWS"
                 + " FETCH FIRST ? ROWS ONLY";
         
@@ -60,7 +63,8 @@ public class DerbyIntegrityDAO extends IntegrityDAO {
         pillars.removeAll(pillarsInDb);
         
         for(String pillar : pillars) {
-            String sql = "INSERT INTO pillar (pillarID) VALUES (?)";
+            String sql = "INSERT INTO pillar (pillarID, pillar_key)"
+                    + " (SELECT ?, COALESCE(MAX(pillar_key), 0) + 1 FROM pillar)";
             DatabaseUtils.executeStatement(dbConnector, sql, pillar);
         }        
     }
@@ -75,7 +79,8 @@ public class DerbyIntegrityDAO extends IntegrityDAO {
         collections.removeAll(collectionsInDb);
         
         for(String collection : collections) {
-            String sql = "INSERT INTO collections (collectionID) VALUES (?)";
+            String sql = "INSERT INTO collections (collectionID, collection_key)"
+                    + " (SELECT ?, COALESCE(MAX(collection_key), 0) + 1 FROM collections)";
             DatabaseUtils.executeStatement(dbConnector, sql, collection);
         }
     }
@@ -83,8 +88,9 @@ public class DerbyIntegrityDAO extends IntegrityDAO {
     @Override
     protected String getAllFileIDsSql() {
         String getAllFileIDsSql = "SELECT fileID FROM fileinfo"
-                + " WHERE collectionID = ?"
-                + " AND pillarID = ?"
+                + " JOIN files ON fileinfo.file_key = files.file_key"
+                + " WHERE fileinfo.collection_key = ?"
+                + " AND pillar_key = ?"
                 + " ORDER BY fileID"
                 + " OFFSET ? ROWS"
                 + " FETCH FIRST ? ROWS ONLY";
@@ -104,8 +110,11 @@ public class DerbyIntegrityDAO extends IntegrityDAO {
 
     @Override
     protected String getFileIdAtIndexSql() {
-        String getFileIDAtIndexSql = "SELECT DISTINCT( fileID ) FROM fileinfo"
-                + " WHERE collectionID = ?"
+        String getFileIDAtIndexSql = "SELECT fileID FROM files"
+                + " WHERE collection_key = ?"
+                + " AND EXISTS ("
+                    + " SELECT * FROM fileinfo"
+                    + " WHERE fileinfo.file_key = files.file_key)"
                 + " OFFSET ? ROWS"
                 + " FETCH FIRST ? ROWS ONLY";
         return getFileIDAtIndexSql;
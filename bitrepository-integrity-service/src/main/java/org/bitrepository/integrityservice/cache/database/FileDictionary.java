@@ -0,0 +1,128 @@
+/*
+ * #%L
+ * Bitrepository Integrity Service
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.integrityservice.cache.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.bitrepository.service.database.DatabaseUtils;
+
+/**
+ * Maintains the files table, which maps the ID of a file in a collection to the compact key used for the file in
+ * the fileinfo table.
+ *
+ * The files are added to the dictionary in their own transaction before the fileinfo entries referring to them are
+ * inserted. The additions are serialized, so concurrent updates from different pillars with the same files don't
+ * violate the uniqueness of the (collection_key, fileID) tuple.
+ *
+ * An entry is removed, when the last fileinfo entry referring to it is removed. As an update adds the files before
+ * it inserts the fileinfo entries referring to them, the updates must enclose their use of the dictionary in
+ * {@link #beginUpdate()} and {@link #endUpdate()}, so an entry is not removed between the addition and the insert.
+ */
+public class FileDictionary {
+    /**
+     * SQL for conditional insert of a fileID in the files table.
+     * The insert is only performed when the (collection_key, fileID) tuple is not already found in the database.
+     */
+    private final String insertFileSql = "INSERT INTO files (collection_key, fileID)"
+            + " (SELECT collection_key, ? FROM collections"
+                + " WHERE collection_key = ?"
+                + " AND NOT EXISTS ("
+                    + " SELECT * FROM files"
+                    + " WHERE collection_key = ?"
+                    + " AND fileID = ?))";
+
+    /** SQL for removing a file from the files table, when no fileinfo entries refer to it. */
+    private final String removeUnreferencedFileSql = "DELETE FROM files"
+            + " WHERE file_key = ?"
+            + " AND NOT EXISTS ("
+                + " SELECT * FROM fileinfo"
+                + " WHERE fileinfo.file_key = files.file_key)";
+
+    /** Shared by the running updates, and held exclusively while removing entries. */
+    private final ReadWriteLock updateLock = new ReentrantReadWriteLock();
+
+    /**
+     * Marks the beginning of an update, which adds files and inserts entries referring to them.
+     * No entries are removed from the dictionary until the update is ended with {@link #endUpdate()}.
+     */
+    public void beginUpdate() {
+        updateLock.readLock().lock();
+    }
+
+    /**
+     * Marks the end of an update started with {@link #beginUpdate()}. Must be called by the same thread, after the
+     * entries referring to the added files have been committed or rolled back.
+     */
+    public void endUpdate() {
+        updateLock.readLock().unlock();
+    }
+
+    /**
+     * Adds the files, which are not already known, to the dictionary and commits them.
+     * Nothing is added for an unknown collection.
+     * @param conn The connection to use. Must not be in auto-commit mode, and must not have uncommitted changes.
+     * @param collectionKey The key of the collection of the files.
+     * @param fileIDs The IDs of the files.
+     * @throws SQLException If the files could not be added.
+     */
+    public synchronized void addFiles(Connection conn, int collectionKey, Collection<String> fileIDs)
+            throws SQLException {
+        if(fileIDs.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement ps = conn.prepareStatement(insertFileSql)) {
+            for(String fileID : fileIDs) {
+                ps.setString(1, fileID);
+                ps.setInt(2, collectionKey);
+                ps.setInt(3, collectionKey);
+                ps.setString(4, fileID);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        }
+    }
+
+    /**
+     * Removes a file from the dictionary, unless some fileinfo entry still refers to it.
+     * Waits for the running updates to end, so a file they have just added is not removed.
+     * @param conn The connection to use. Must be in auto-commit mode.
+     * @param fileKey The key of the file.
+     * @throws SQLException If the file could not be removed.
+     */
+    public void removeUnreferencedFile(Connection conn, long fileKey) throws SQLException {
+        updateLock.writeLock().lock();
+        try (PreparedStatement ps = DatabaseUtils.createPreparedStatement(conn, removeUnreferencedFileSql, fileKey)) {
+            ps.executeUpdate();
+        } finally {
+            updateLock.writeLock().unlock();
+        }
+    }
+}
@@ -23,9 +23,14 @@ package org.bitrepository.integrityservice.cache.database;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Types;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
 
 import org.bitrepository.bitrepositoryelements.FileIDsData.FileIDsDataItems;
 import org.bitrepository.bitrepositoryelements.FileIDsDataItem;
@@ -41,31 +46,68 @@ import org.slf4j.LoggerFactory;
  *  Implementation detail: Postgres will first feature 'upsert' functionality in version 9.5. 
  *  This means that we currently can't use the functionality, and is forced
  *  to use the two call way. I.e. the conditional update, the conditional insert 
+ *  
+ *  The {@link CollectionMetrics} of the collection are updated with the inserted files, when the batch has been
+ *  committed. Changes of the size of already known files are not tracked, but leaves the metrics stale. 
+ *  Files reported without a size, e.g. by a checksum pillar, only changes the size of a known file, if the file 
+ *  had a size. 
+ *  
+ *  The files are executed and committed in batches of at most {@link #MAX_BATCH_SIZE} files, so the memory and 
+ *  transaction size are bounded when the files are delivered by an iterator. The latest file time of the pillar 
+ *  is only updated when all the files have been committed, so a failed update is retried from the same time. 
  */
 public class FileUpdater {
+    /** The maximum number of files executed and committed in a single batch.*/
+    public static final int MAX_BATCH_SIZE = 10000;
 
     /**
-     * SQL for conditional insert of the fileID in the files table.
-     * The insert is only performed when the (file_id, collection_key) 
-     * tuple is not already found in the database  
+     * SQL for conditional insert of the file in the fileinfo table.
+     * The insert is only performed when the (file_key, pillar_key) 
+     * tuple is not already found in the database. The file must be in the {@link FileDictionary}.
      */
     private final String insertFileInfoSql = "INSERT INTO fileinfo ("
-    		+ " collectionID, pillarID, fileID, filesize, file_timestamp, last_seen_getfileids)"
-    		+ " (SELECT collectionID, ?, ?, ?, ?, ? FROM collections"
-    		+ " WHERE collectionID = ? "
+    		+ " file_key, pillar_key, collection_key, filesize, file_timestamp, last_seen_getfileids)"
+    		+ " (SELECT file_key, ?, collection_key, ?, ?, ? FROM files"
+    		+ " WHERE collection_key = ?"
+    		+ " AND fileID = ?"
     		+ " AND NOT EXISTS ("
     			+ " SELECT * FROM fileinfo "
-    			+ " WHERE fileID = ?"
-    			+ " AND collectionID = ?"
-    			+ " AND pillarID = ?))";
+    			+ " WHERE fileinfo.file_key = files.file_key"
+    			+ " AND pillar_key = ?))";
     
     private final String updateFileInfoSql = "UPDATE fileinfo "
     		+ "	SET filesize = ?,"
     		+ " file_timestamp = ?,"
     		+ " last_seen_getfileids = ?"
-    		+ " WHERE fileID = ?"
-    		+ "	AND collectionID = ?"
-    		+ " AND pillarID = ?";	
+    		+ " WHERE file_key = (SELECT file_key FROM files WHERE collection_key = ? AND fileID = ?)"
+    		+ " AND pillar_key = ?";	
+    
+    /**
+     * SQL for updating the size of a known file, when it differs from the size in the database.
+     * Used for detecting size changes, which can't be applied to the collection metrics. 
+     */
+    private final String updateFileSizeSql = "UPDATE fileinfo"
+            + " SET filesize = ?"
+            + " WHERE file_key = (SELECT file_key FROM files WHERE collection_key = ? AND fileID = ?)"
+            + " AND pillar_key = ?"
+            + " AND (filesize IS NULL OR filesize <> ?)";
+    
+    /**
+     * SQL for clearing the size of a known file, when it is reported without a size.
+     * Used for detecting size changes, as only files, which had a size, are changed.
+     */
+    private final String clearFileSizeSql = "UPDATE fileinfo"
+            + " SET filesize = NULL"
+            + " WHERE file_key = (SELECT file_key FROM files WHERE collection_key = ? AND fileID = ?)"
+            + " AND pillar_key = ?"
+            + " AND filesize IS NOT NULL";
+    
+    /**
+     * SQL for counting the copies of a file in the collection, and the copies with a given size. 
+     */
+    private final String countFileCopiesSql = "SELECT COUNT(*),"
+            + " SUM(CASE WHEN filesize = ? THEN 1 ELSE 0 END) FROM fileinfo"
+            + " WHERE file_key = (SELECT file_key FROM files WHERE collection_key = ? AND fileID = ?)";
     
     private final String insertLatestFileTime = "INSERT INTO collection_progress "
             + "(collectionID, pillarID, latest_file_timestamp)"
@@ -78,28 +120,60 @@ public class FileUpdater {
     private final String updateLatestFileTime = "UPDATE collection_progress"
             + " SET latest_file_timestamp = ? "
             + " WHERE collectionID = ?"
-            + " AND pillarID = ?";
+            + " AND pillarID = ?"
+            + " AND (latest_file_timestamp IS NULL OR latest_file_timestamp < ?)";
 
     private Logger log = LoggerFactory.getLogger(getClass());
     
     private final String collectionID;
+    private final int collectionKey;
     private final String pillar;
+    private final int pillarKey;
     private final Connection conn;
+    private final CollectionMetrics metrics;
+    private final FileDictionary fileDictionary;
+    private final boolean updateProgress;
     private PreparedStatement insertFileInfoPS;
     private PreparedStatement updateFileInfoPS;
+    private PreparedStatement updateFileSizePS;
+    private PreparedStatement clearFileSizePS;
+    private PreparedStatement countFileCopiesPS;
     private PreparedStatement insertLatestFileTimePS;
     private PreparedStatement updateLatestFileTimePS;
+    /** The items in the current batch, in the order they were added.*/
+    private final List<FileIDsDataItem> batchItems = new ArrayList<>();
+    /** Whether the changes are tracked in the metrics. They are not when the metrics are stale anyway.*/
+    private boolean trackMetrics;
     
-    public FileUpdater(String pillar, Connection dbConnection, String collectionID) {
+    /**
+     * @param pillar The ID of the pillar the files are from.
+     * @param pillarKey The key of the pillar the files are from.
+     * @param dbConnection The connection to use. Is closed when the update is done.
+     * @param collectionID The ID of the collection the files are from.
+     * @param collectionKey The key of the collection the files are from.
+     * @param metrics The metrics of the collection, which should be updated with the new files.
+     * @param fileDictionary The dictionary, which the files are added to before they are inserted.
+     * @param updateProgress Whether the file collection progress of the pillar is moved to the latest file.
+     */
+    public FileUpdater(String pillar, int pillarKey, Connection dbConnection, String collectionID, 
+            int collectionKey, CollectionMetrics metrics, FileDictionary fileDictionary, boolean updateProgress) {
         this.collectionID = collectionID;
+        this.collectionKey = collectionKey;
         this.pillar = pillar;
+        this.pillarKey = pillarKey;
         conn = dbConnection;
+        this.metrics = metrics;
+        this.fileDictionary = fileDictionary;
+        this.updateProgress = updateProgress;
     }
     
     private void init() throws SQLException {
         conn.setAutoCommit(false);
         insertFileInfoPS = conn.prepareStatement(insertFileInfoSql);
         updateFileInfoPS = conn.prepareStatement(updateFileInfoSql);
+        updateFileSizePS = conn.prepareStatement(updateFileSizeSql);
+        clearFileSizePS = conn.prepareStatement(clearFileSizeSql);
+        countFileCopiesPS = conn.prepareStatement(countFileCopiesSql);
         insertLatestFileTimePS = conn.prepareStatement(insertLatestFileTime);
         updateLatestFileTimePS = conn.prepareStatement(updateLatestFileTime);
     }
@@ -109,45 +183,62 @@ public class FileUpdater {
      * @param dataItems the FileIDs to update
      */
     public void updateFiles(FileIDsDataItems dataItems) {
+        updateFiles(dataItems.getFileIDsDataItem().iterator());
+    }
+    
+    /**
+     * Method to handle the actual update, for files which are read as they are needed.
+     * @param dataItems the FileIDs to update
+     */
+    public void updateFiles(Iterator<FileIDsDataItem> dataItems) {
         try {
             init();
             log.debug("Initialized fileUpdater");
+            trackMetrics = !metrics.isStale();
             try {
                 Date maxDate = new Date(0);
-                for(FileIDsDataItem item : dataItems.getFileIDsDataItem()) {
-                	updateFileInfo(item);
-                	addFileInfo(item);
-                	maxDate = TimeUtils.getMaxDate(maxDate, 
-                	        CalendarUtils.convertFromXMLGregorianCalendar(item.getLastModificationTime()));
+                while(dataItems.hasNext()) {
+                    FileIDsDataItem item = dataItems.next();
+                    updateFileSize(item);
+                    updateFileInfo(item);
+                    addFileInfo(item);
+                    batchItems.add(item);
+                    maxDate = TimeUtils.getMaxDate(maxDate, 
+                            CalendarUtils.convertFromXMLGregorianCalendar(item.getLastModificationTime()));
+                    if(batchItems.size() >= MAX_BATCH_SIZE) {
+                        execute();
+                        log.debug("Done executing file update batch");
+                    }
                 }
-                updateMaxTime(maxDate);
-                log.debug("Done building file update batch");
                 execute();
                 log.debug("Done executing file update batch");
+                if(updateProgress) {
+                    updateMaxTime(maxDate);
+                }
+                conn.commit();
             } finally {
                 close();
             }
         } catch (SQLException e) {
+            metrics.markStale();
             log.error("Failed to update files", e);
         }
     } 
     
     private void addFileInfo(FileIDsDataItem item) throws SQLException {
         Date now = new Date();
-        insertFileInfoPS.setString(1, pillar);
-        insertFileInfoPS.setString(2, item.getFileID());
+        insertFileInfoPS.setInt(1, pillarKey);
     	if(item.getFileSize() == null) {
-        	insertFileInfoPS.setNull(3, Types.BIGINT);
+        	insertFileInfoPS.setNull(2, Types.BIGINT);
         } else {
-        	insertFileInfoPS.setLong(3, item.getFileSize().longValue());
+        	insertFileInfoPS.setLong(2, item.getFileSize().longValue());
         }
     	long time = CalendarUtils.convertFromXMLGregorianCalendar(item.getLastModificationTime()).getTime();
-    	insertFileInfoPS.setLong(4, time);
-    	insertFileInfoPS.setLong(5, now.getTime());
-        insertFileInfoPS.setString(6, collectionID);
-        insertFileInfoPS.setString(7, item.getFileID());
-    	insertFileInfoPS.setString(8, collectionID);
-    	insertFileInfoPS.setString(9, pillar);
+    	insertFileInfoPS.setLong(3, time);
+    	insertFileInfoPS.setLong(4, now.getTime());
+        insertFileInfoPS.setInt(5, collectionKey);
+        insertFileInfoPS.setString(6, item.getFileID());
+    	insertFileInfoPS.setInt(7, pillarKey);
     	insertFileInfoPS.addBatch();
     }
     
@@ -161,30 +252,134 @@ public class FileUpdater {
         long time = CalendarUtils.convertFromXMLGregorianCalendar(item.getLastModificationTime()).getTime();
         updateFileInfoPS.setLong(2, time);
         updateFileInfoPS.setLong(3, now.getTime());
-        updateFileInfoPS.setString(4, item.getFileID());
-        updateFileInfoPS.setString(5, collectionID);
-        updateFileInfoPS.setString(6, pillar);
+        updateFileInfoPS.setInt(4, collectionKey);
+        updateFileInfoPS.setString(5, item.getFileID());
+        updateFileInfoPS.setInt(6, pillarKey);
         updateFileInfoPS.addBatch();
     }
     
+    private void updateFileSize(FileIDsDataItem item) throws SQLException {
+        if(!trackMetrics) {
+            return;
+        }
+        if(item.getFileSize() == null) {
+            clearFileSizePS.setInt(1, collectionKey);
+            clearFileSizePS.setString(2, item.getFileID());
+            clearFileSizePS.setInt(3, pillarKey);
+            clearFileSizePS.addBatch();
+            return;
+        }
+        updateFileSizePS.setLong(1, item.getFileSize().longValue());
+        updateFileSizePS.setInt(2, collectionKey);
+        updateFileSizePS.setString(3, item.getFileID());
+        updateFileSizePS.setInt(4, pillarKey);
+        updateFileSizePS.setLong(5, item.getFileSize().longValue());
+        updateFileSizePS.addBatch();
+    }
+    
     private void updateMaxTime(Date maxDate) throws SQLException {
         updateLatestFileTimePS.setLong(1, maxDate.getTime());
         updateLatestFileTimePS.setString(2, collectionID);
         updateLatestFileTimePS.setString(3, pillar);
+        updateLatestFileTimePS.setLong(4, maxDate.getTime());
         
         insertLatestFileTimePS.setString(1, pillar);
         insertLatestFileTimePS.setLong(2, maxDate.getTime());
         insertLatestFileTimePS.setString(3, collectionID);
         insertLatestFileTimePS.setString(4, collectionID);
         insertLatestFileTimePS.setString(5, pillar);
+        updateLatestFileTimePS.execute();
+        insertLatestFileTimePS.execute();
     }
     
+    /**
+     * Adds the files in the current batch to the dictionary, executes and commits the batch, and updates the 
+     * metrics with the inserted files.
+     */
     private void execute() throws SQLException {
-        updateFileInfoPS.executeBatch();
-        insertFileInfoPS.executeBatch();
-        updateLatestFileTimePS.execute();
-        insertLatestFileTimePS.execute();
-        conn.commit();
+        if(batchItems.isEmpty()) {
+            return;
+        }
+        List<String> fileIDs = new ArrayList<>();
+        for(FileIDsDataItem item : batchItems) {
+            fileIDs.add(item.getFileID());
+        }
+        metrics.beginModification();
+        fileDictionary.beginUpdate();
+        try {
+            fileDictionary.addFiles(conn, collectionKey, fileIDs);
+            int[] resized = updateFileSizePS.executeBatch();
+            int[] cleared = clearFileSizePS.executeBatch();
+            updateFileInfoPS.executeBatch();
+            int[] inserted = insertFileInfoPS.executeBatch();
+
+            List<FileIDsDataItem> addedFiles = new ArrayList<>();
+            List<long[]> copyCounts = new ArrayList<>();
+            if(trackMetrics) {
+                trackMetrics = !hasChangedSizes(resized) && !hasChangedSizes(cleared);
+                for(int i = 0; trackMetrics && i < inserted.length; i++) {
+                    if(inserted[i] == Statement.SUCCESS_NO_INFO) {
+                        trackMetrics = false;
+                    } else if(inserted[i] > 0) {
+                        FileIDsDataItem item = batchItems.get(i);
+                        addedFiles.add(item);
+                        copyCounts.add(countCopies(item));
+                    }
+                }
+            }
+            conn.commit();
+            batchItems.clear();
+
+            if(!trackMetrics) {
+                metrics.markStale();
+                return;
+            }
+            for(int i = 0; i < addedFiles.size(); i++) {
+                FileIDsDataItem item = addedFiles.get(i);
+                Long fileSize = (item.getFileSize() == null ? null : item.getFileSize().longValue());
+                long[] counts = copyCounts.get(i);
+                metrics.fileAdded(pillar, item.getFileID(), fileSize, counts[0],
+                        fileSize != null && counts[1] == 1);
+            }
+        } finally {
+            fileDictionary.endUpdate();
+            metrics.endModification();
+        }
+    }
+
+    /**
+     * Determines whether the size of any known file may have been changed by the batch.
+     * The sizes are only changed for files, which had a size different from the reported one.
+     * @param counts The update counts for the size updates, or for the clearing of the sizes.
+     * @return Whether any size has been changed, or it is unknown.
+     */
+    private boolean hasChangedSizes(int[] counts) {
+        for(int count : counts) {
+            if(count != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * @param item The inserted file.
+     * @return The number of copies of the file in the collection, and the number of copies with the same size. 
+     */
+    private long[] countCopies(FileIDsDataItem item) throws SQLException {
+        if(item.getFileSize() == null) {
+            countFileCopiesPS.setNull(1, Types.BIGINT);
+        } else {
+            countFileCopiesPS.setLong(1, item.getFileSize().longValue());
+        }
+        countFileCopiesPS.setInt(2, collectionKey);
+        countFileCopiesPS.setString(3, item.getFileID());
+        try (ResultSet rs = countFileCopiesPS.executeQuery()) {
+            if(!rs.next()) {
+                return new long[2];
+            }
+            return new long[] {rs.getLong(1), rs.getLong(2)};
+        }
     }
     
     private void close() throws SQLException {
@@ -194,6 +389,15 @@ public class FileUpdater {
         if(insertFileInfoPS != null) {
         	insertFileInfoPS.close();
         }
+        if(updateFileSizePS != null) {
+            updateFileSizePS.close();
+        }
+        if(clearFileSizePS != null) {
+            clearFileSizePS.close();
+        }
+        if(countFileCopiesPS != null) {
+            countFileCopiesPS.close();
+        }
         if(conn != null) {
             conn.setAutoCommit(true);
             conn.close();
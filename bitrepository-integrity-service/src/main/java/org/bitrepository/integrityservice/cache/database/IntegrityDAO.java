@@ -29,11 +29,16 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
 import org.bitrepository.bitrepositoryelements.FileIDsData;
+import org.bitrepository.bitrepositoryelements.FileIDsDataItem;
 import org.bitrepository.common.ArgumentValidator;
 import org.bitrepository.common.utils.CalendarUtils;
 import org.bitrepository.integrityservice.cache.CollectionStat;
@@ -49,17 +54,43 @@ import org.slf4j.LoggerFactory;
 /**
  * Common parts of the implementation of the access to the integrity db. 
  * Database specific backends are abstracted out in concrete classes.  
+ * 
+ * The file count and size metrics of the collections are maintained incrementally in memory, 
+ * and are only recalculated from the database when the DAO is created, and when they are explicitly reconciled, 
+ * e.g. by a workflow. Reading the metrics never queries the database, but delivers the latest consistent metrics.  
+ * Likewise, the files with missing copies are tracked in memory, so they can be found without grouping all the files 
+ * of the collection in the database.
+ * 
+ * The fileinfo table refers to the files, pillars and collections by compact integer keys, instead of by their IDs. 
+ * The keys of the pillars and collections are cached, and the keys of the files are maintained by the 
+ * {@link FileDictionary}. 
  */
 public abstract class IntegrityDAO {
 	private Logger log = LoggerFactory.getLogger(getClass());
 	
+    /** The maximum age of the tracked files with missing copies before they are reconciled against the database.*/
+    private static final long INCOMPLETE_FILES_RECONCILIATION_INTERVAL = TimeUnit.DAYS.toMillis(1);
+    /** The key used for unknown pillars and collections, which matches no entries in the database.*/
+    private static final int NO_KEY = -1;
+	
     /** The connector to the database.*/
     protected final DBConnector dbConnector;
+    /** The incrementally maintained metrics, mapped by collectionID.*/
+    private final ConcurrentMap<String, CollectionMetrics> collectionMetrics = new ConcurrentHashMap<>();
+    /** The keys of the known collections, mapped by collectionID.*/
+    private final ConcurrentMap<String, Integer> collectionKeys = new ConcurrentHashMap<>();
+    /** The keys of the known pillars, mapped by pillarID.*/
+    private final ConcurrentMap<String, Integer> pillarKeys = new ConcurrentHashMap<>();
+    /** The dictionary of the files, shared by all updates.*/
+    private final FileDictionary fileDictionary = new FileDictionary();
     
     public IntegrityDAO(DBConnector dbConnector) {
     	this.dbConnector = dbConnector;
     	initializePillars();
     	initializeCollections();
+    	for(String collectionID : getCollections()) {
+    	    reconcileCollectionMetrics(collectionID);
+    	}
     }
     
     /**
@@ -110,10 +141,43 @@ public abstract class IntegrityDAO {
         ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
         log.trace("Updating the file ids '" + data + "' for pillar '" + pillarID + "'");
         
-        FileUpdater fu = new FileUpdater(pillarID, dbConnector.getConnection(), collectionID);
+        FileUpdater fu = new FileUpdater(pillarID, getPillarKey(pillarID), dbConnector.getConnection(), 
+                collectionID, getCollectionKey(collectionID), getCollectionMetrics(collectionID), fileDictionary);
         fu.updateFiles(data.getFileIDsDataItems());
     }
     
+    /**
+     * Update the database with fileIDs data from a pillar for a given collection, which is read as it is needed. 
+     * The data is committed in batches of at most {@link FileUpdater#MAX_BATCH_SIZE} files. 
+     * @param dataItems The FileIDsDataItems to update the database with
+     * @param pillarID The ID of the pillar to update the with the FileIDsDataItems
+     * @param collectionID The ID of the collection to update with the FileIDsDataItems
+     */
+    public void updateFileIDs(Iterator<FileIDsDataItem> dataItems, String pillarID, String collectionID) {
+        updateFileIDs(dataItems, pillarID, collectionID, true);
+    }
+    
+    /**
+     * Update the database with fileIDs data from a pillar for a given collection, which is read as it is needed. 
+     * The data is committed in batches of at most {@link FileUpdater#MAX_BATCH_SIZE} files. 
+     * @param dataItems The FileIDsDataItems to update the database with
+     * @param pillarID The ID of the pillar to update the with the FileIDsDataItems
+     * @param collectionID The ID of the collection to update with the FileIDsDataItems
+     * @param updateProgress Whether the file collection progress of the pillar is moved to the latest file
+     */
+    public void updateFileIDs(Iterator<FileIDsDataItem> dataItems, String pillarID, String collectionID,
+            boolean updateProgress) {
+        ArgumentValidator.checkNotNull(dataItems, "Iterator<FileIDsDataItem> dataItems");
+        ArgumentValidator.checkNotNullOrEmpty(pillarID, "String pillarID");
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        log.trace("Updating the streamed file ids for pillar '" + pillarID + "'");
+        
+        FileUpdater fu = new FileUpdater(pillarID, getPillarKey(pillarID), dbConnector.getConnection(), 
+                collectionID, getCollectionKey(collectionID), getCollectionMetrics(collectionID), fileDictionary,
+                updateProgress);
+        fu.updateFiles(dataItems);
+    }
+    
     /**
      * Update the database with a batch of checksum data from a pillar for a given collection. 
      * @param data The list of ChecksumDataForChecksumSpecTYPE to update the database with
@@ -121,11 +185,25 @@ public abstract class IntegrityDAO {
      * @param collectionID The ID of the collection to update with the data
      */
     public void updateChecksums(List<ChecksumDataForChecksumSpecTYPE> data, String pillarID, String collectionID) {
+        updateChecksums(data, pillarID, collectionID, true);
+    }
+    
+    /**
+     * Update the database with a batch of checksum data from a pillar for a given collection. 
+     * @param data The list of ChecksumDataForChecksumSpecTYPE to update the database with
+     * @param pillarID The ID of the pillar to update with the data
+     * @param collectionID The ID of the collection to update with the data
+     * @param updateProgress Whether the checksum collection progress of the pillar is moved to the latest checksum
+     */
+    public void updateChecksums(List<ChecksumDataForChecksumSpecTYPE> data, String pillarID, String collectionID,
+            boolean updateProgress) {
     	ArgumentValidator.checkNotNull(data, "List<ChecksumDataForChecksumSpecTYPE> data");
         ArgumentValidator.checkNotNullOrEmpty(pillarID, "String pillarID");
         ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
         
-        ChecksumUpdater cu = new ChecksumUpdater(pillarID, dbConnector.getConnection(), collectionID);
+        ChecksumUpdater cu = new ChecksumUpdater(pillarID, getPillarKey(pillarID), dbConnector.getConnection(), 
+                collectionID, getCollectionKey(collectionID), getCollectionMetrics(collectionID), fileDictionary,
+                updateProgress);
         cu.updateChecksums(data);
     }
 
@@ -205,6 +283,84 @@ public abstract class IntegrityDAO {
         DatabaseUtils.executeStatement(dbConnector, resetSql, collectionID);
     }
     
+    /**
+     * Reset the file collection progress of a single pillar in a given collection
+     * @param collectionID The ID of the collection to reset file collection progress in
+     * @param pillarID The ID of the pillar to reset file collection progress for
+     */
+    public void resetFileCollectionProgress(String collectionID, String pillarID) {
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        ArgumentValidator.checkNotNullOrEmpty(pillarID, "String pillarID");
+        String resetSql = "UPDATE collection_progress"
+                + " SET latest_file_timestamp = NULL"
+                + " WHERE collectionID = ?"
+                + " AND pillarID = ?";
+        
+        DatabaseUtils.executeStatement(dbConnector, resetSql, collectionID, pillarID);
+    }
+    
+    /**
+     * Reset the checksum collection progress of a single pillar in a given collection
+     * @param collectionID The ID of the collection to reset checksum collection progress in
+     * @param pillarID The ID of the pillar to reset checksum collection progress for
+     */
+    public void resetChecksumCollectionProgress(String collectionID, String pillarID) {
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        ArgumentValidator.checkNotNullOrEmpty(pillarID, "String pillarID");
+        String resetSql = "UPDATE collection_progress"
+                + " SET latest_checksum_timestamp = NULL"
+                + " WHERE collectionID = ?"
+                + " AND pillarID = ?";
+        
+        DatabaseUtils.executeStatement(dbConnector, resetSql, collectionID, pillarID);
+    }
+    
+    /**
+     * Moves the file collection progress of a pillar in a given collection forward. An earlier date is ignored.
+     * @param collectionID The ID of the collection to move file collection progress in
+     * @param pillarID The ID of the pillar to move file collection progress for
+     * @param latestFileDate The date of the latest file collected from the pillar
+     */
+    public void advanceFileCollectionProgress(String collectionID, String pillarID, Date latestFileDate) {
+        advanceCollectionProgress(collectionID, pillarID, "latest_file_timestamp", latestFileDate);
+    }
+    
+    /**
+     * Moves the checksum collection progress of a pillar in a given collection forward. An earlier date is ignored.
+     * @param collectionID The ID of the collection to move checksum collection progress in
+     * @param pillarID The ID of the pillar to move checksum collection progress for
+     * @param latestChecksumDate The date of the latest checksum collected from the pillar
+     */
+    public void advanceChecksumCollectionProgress(String collectionID, String pillarID, Date latestChecksumDate) {
+        advanceCollectionProgress(collectionID, pillarID, "latest_checksum_timestamp", latestChecksumDate);
+    }
+    
+    /**
+     * Moves a collection progress column of a pillar forward, creating the progress of the pillar if it is not 
+     * known.
+     */
+    private void advanceCollectionProgress(String collectionID, String pillarID, String column, Date date) {
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        ArgumentValidator.checkNotNullOrEmpty(pillarID, "String pillarID");
+        ArgumentValidator.checkNotNull(date, "Date date");
+        String updateSql = "UPDATE collection_progress"
+                + " SET " + column + " = ?"
+                + " WHERE collectionID = ?"
+                + " AND pillarID = ?"
+                + " AND (" + column + " IS NULL OR " + column + " < ?)";
+        String insertSql = "INSERT INTO collection_progress (collectionID, pillarID, " + column + ")"
+                + " ( SELECT collectionID, ?, ? FROM collections"
+                    + " WHERE collectionID = ?"
+                    + " AND NOT EXISTS ( SELECT * FROM collection_progress"
+                        + " WHERE collectionID = ?"
+                        + " AND pillarID = ?))";
+        
+        DatabaseUtils.executeStatement(dbConnector, updateSql, date.getTime(), collectionID, pillarID, 
+                date.getTime());
+        DatabaseUtils.executeStatement(dbConnector, insertSql, pillarID, date.getTime(), collectionID, 
+                collectionID, pillarID);
+    }
+    
     /**
      * Get fileIDs for those files which have outdated checksums
      * @param collectionID The ID of the collection to get fileIDs from
@@ -217,12 +373,14 @@ public abstract class IntegrityDAO {
         ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
         ArgumentValidator.checkNotNull(maxDate, "Date maxDate");
         
-        String retrieveSql = "SELECT fileID from fileinfo"
-                + " WHERE collectionID = ?"
-                + " AND pillarID = ?"
+        String retrieveSql = "SELECT fileID FROM fileinfo"
+                + " JOIN files ON fileinfo.file_key = files.file_key"
+                + " WHERE fileinfo.collection_key = ?"
+                + " AND pillar_key = ?"
                 + " AND checksum_timestamp < ?";
         
-        return makeIntegrityIssueIterator(retrieveSql, collectionID, pillarID, maxDate.getTime());
+        return makeIntegrityIssueIterator(retrieveSql, getCollectionKey(collectionID), getPillarKey(pillarID), 
+                maxDate.getTime());
     }
     
     /**
@@ -238,13 +396,15 @@ public abstract class IntegrityDAO {
         ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
         ArgumentValidator.checkNotNullOrEmpty(pillarID, "String pillarID");
         
-        String retrieveSql = "SELECT fileID from fileinfo"
-                + " WHERE collectionID = ?"
-                + " AND pillarID = ?"
+        String retrieveSql = "SELECT fileID FROM fileinfo"
+                + " JOIN files ON fileinfo.file_key = files.file_key"
+                + " WHERE fileinfo.collection_key = ?"
+                + " AND pillar_key = ?"
                 + " AND (checksum is NULL"
                 + " OR last_seen_getchecksums < ?)";
         
-        return makeIntegrityIssueIterator(retrieveSql, collectionID, pillarID, cutoffDate.getTime());
+        return makeIntegrityIssueIterator(retrieveSql, getCollectionKey(collectionID), getPillarKey(pillarID), 
+                cutoffDate.getTime());
     }
     
     /**
@@ -259,16 +419,19 @@ public abstract class IntegrityDAO {
         ArgumentValidator.checkNotNullOrEmpty(pillarID, "String pillarID");
         ArgumentValidator.checkNotNull(cutoffDate, "Date cutoffDate");
         
-        String findOrphansSql = "SELECT fileID from fileinfo"
-                + " WHERE collectionID = ?"
-                + " AND pillarID = ?"
+        String findOrphansSql = "SELECT fileID FROM fileinfo"
+                + " JOIN files ON fileinfo.file_key = files.file_key"
+                + " WHERE fileinfo.collection_key = ?"
+                + " AND pillar_key = ?"
                 + " AND last_seen_getfileids < ?";
         
-        return makeIntegrityIssueIterator(findOrphansSql, collectionID, pillarID, cutoffDate.getTime());
+        return makeIntegrityIssueIterator(findOrphansSql, getCollectionKey(collectionID), getPillarKey(pillarID), 
+                cutoffDate.getTime());
     }
     
     /**
-     * Remove the file entry for a given pillar in a given collection from the database
+     * Remove the file entry for a given pillar in a given collection from the database.
+     * When the last copy of the file is removed, the file is also removed from the {@link FileDictionary}.
      * @param collectionID The ID of the collection
      * @param pillarID The ID of the pillar
      * @param fileID The ID of the file
@@ -278,12 +441,66 @@ public abstract class IntegrityDAO {
         ArgumentValidator.checkNotNullOrEmpty(pillarID, "String pillarID");
         ArgumentValidator.checkNotNullOrEmpty(fileID, "String fileID");
 
-        String removeSql = "DELETE FROM fileinfo"
-                + " WHERE collectionID = ?"
-                + " AND pillarID = ?"
+        String selectFileKeySql = "SELECT file_key FROM files"
+                + " WHERE collection_key = ?"
                 + " AND fileID = ?";
+        String selectFileSizeSql = "SELECT filesize FROM fileinfo"
+                + " WHERE file_key = ?"
+                + " AND pillar_key = ?";
+        String removeSql = "DELETE FROM fileinfo"
+                + " WHERE file_key = ?"
+                + " AND pillar_key = ?";
+        String countFileCopiesSql = "SELECT COUNT(*),"
+                + " SUM(CASE WHEN filesize = ? THEN 1 ELSE 0 END) FROM fileinfo"
+                + " WHERE file_key = ?";
         
-        DatabaseUtils.executeStatement(dbConnector, removeSql, collectionID, pillarID, fileID);
+        Long fileKey = DatabaseUtils.selectFirstLongValue(dbConnector, selectFileKeySql, 
+                getCollectionKey(collectionID), fileID);
+        if(fileKey == null) {
+            return;
+        }
+        int pillarKey = getPillarKey(pillarID);
+        CollectionMetrics metrics = getCollectionMetrics(collectionID);
+        metrics.beginModification();
+        try (Connection conn = dbConnector.getConnection()) {
+            Long fileSize = null;
+            try (PreparedStatement ps = DatabaseUtils.createPreparedStatement(conn, selectFileSizeSql, 
+                    fileKey, pillarKey);
+                 ResultSet dbResult = ps.executeQuery()) {
+                if(dbResult.next()) {
+                    fileSize = dbResult.getLong(1);
+                    if(dbResult.wasNull()) {
+                        fileSize = null;
+                    }
+                }
+            }
+            
+            int removed;
+            long copies = -1;
+            try (PreparedStatement ps = DatabaseUtils.createPreparedStatement(conn, removeSql, 
+                    fileKey, pillarKey)) {
+                removed = ps.executeUpdate();
+            }
+            if(removed > 0) {
+                try (PreparedStatement ps = DatabaseUtils.createPreparedStatement(conn, countFileCopiesSql, 
+                        (fileSize == null ? -1L : fileSize), fileKey);
+                     ResultSet dbResult = ps.executeQuery()) {
+                    dbResult.next();
+                    copies = dbResult.getLong(1);
+                    boolean lastOfSize = fileSize != null && dbResult.getLong(2) == 0;
+                    metrics.fileRemoved(pillarID, fileID, fileSize, copies, lastOfSize);
+                }
+            }
+            if(copies == 0) {
+                fileDictionary.removeUnreferencedFile(conn, fileKey);
+            }
+        } catch (SQLException e) {
+            metrics.markStale();
+            throw new IllegalStateException("Could not remove the file '" + fileID + "' on pillar '" + pillarID 
+                    + "' in collection '" + collectionID + "' with the SQL '" + removeSql + "'.", e);
+        } finally {
+            metrics.endModification();
+        }
     }
     
     /**
@@ -293,7 +510,8 @@ public abstract class IntegrityDAO {
     protected abstract String getFindFilesWithMissingCopiesSql();
     
     /**
-     * Method to find files in a given collection missing on a given pillar
+     * Method to find files in a given collection missing on a given pillar.
+     * The files are delivered from the files with missing copies tracked in memory, when possible.
      * @param collectionID The ID of the collection
      * @param expectedCopies The number of copies that should be present
      * @param firstIndex start the iterator at this index, or 0 if null
@@ -307,11 +525,59 @@ public abstract class IntegrityDAO {
         long first = firstIndex == null ? 0 : firstIndex;
         long maxRes = maxResults == null ? Long.MAX_VALUE : maxResults;
         
+        List<String> incompleteFiles = getIncompleteFiles(collectionID, expectedCopies);
+        if(incompleteFiles != null) {
+            int fromIndex = (int) Math.min(first, incompleteFiles.size());
+            int toIndex = (int) Math.min(fromIndex + Math.min(maxRes, Integer.MAX_VALUE), incompleteFiles.size());
+            return IntegrityIssueIterator.forIssues(incompleteFiles.subList(fromIndex, toIndex));
+        }
+        
         String findFileSql = getFindFilesWithMissingCopiesSql();
-        return makeIntegrityIssueIterator(findFileSql, collectionID, expectedCopies,
+        return makeIntegrityIssueIterator(findFileSql, getCollectionKey(collectionID), expectedCopies,
                 first, maxRes);
     }
     
+    /**
+     * Delivers the tracked files with missing copies, and reconciles them against the database if needed. 
+     * @param collectionID The ID of the collection
+     * @param expectedCopies The number of copies that should be present
+     * @return The files with missing copies, or null if they could not be tracked, e.g. if there are too many.
+     */
+    private List<String> getIncompleteFiles(String collectionID, int expectedCopies) {
+        CollectionMetrics metrics = getCollectionMetrics(collectionID);
+        if(metrics.isStale()) {
+            reconcileCollectionMetrics(collectionID);
+        }
+        List<String> incompleteFiles = metrics.getIncompleteFiles(expectedCopies, 
+                INCOMPLETE_FILES_RECONCILIATION_INTERVAL);
+        if(incompleteFiles != null) {
+            return incompleteFiles;
+        }
+        
+        metrics.getReconciliationLock().lock();
+        try {
+            incompleteFiles = metrics.getIncompleteFiles(expectedCopies, INCOMPLETE_FILES_RECONCILIATION_INTERVAL);
+            if(incompleteFiles != null) {
+                return incompleteFiles;
+            }
+            long modifications = metrics.startReconciliation();
+            List<String> filesWithMissingCopies = new ArrayList<>();
+            try (IntegrityIssueIterator it = makeIntegrityIssueIterator(getFindFilesWithMissingCopiesSql(), 
+                    getCollectionKey(collectionID), expectedCopies, 0L, 
+                    (long) CollectionMetrics.MAX_INCOMPLETE_FILES + 1)) {
+                String fileID;
+                while((fileID = it.getNextIntegrityIssue()) != null) {
+                    filesWithMissingCopies.add(fileID);
+                }
+            }
+            metrics.incompleteFilesReconciled(modifications, expectedCopies, filesWithMissingCopies);
+            log.debug("Reconciled the files with missing copies for collection '" + collectionID + "'.");
+        } finally {
+            metrics.getReconciliationLock().unlock();
+        }
+        return metrics.getIncompleteFiles(expectedCopies, INCOMPLETE_FILES_RECONCILIATION_INTERVAL);
+    }
+    
     /**
      * Method to find the files in a collection where the pillars does not agree upon the checksum
      * @param collectionID The ID of the collection
@@ -320,13 +586,15 @@ public abstract class IntegrityDAO {
     public IntegrityIssueIterator findFilesWithChecksumInconsistincies(String collectionID) {
         ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
                 
-        String findInconsistentChecksumsSql = "SELECT fileID FROM ("
-                + " SELECT fileID, count(distinct(checksum)) as checksums FROM fileinfo"
-                + " WHERE collectionID = ?"
-                + " GROUP BY fileID) as subselect"
-                + " WHERE checksums > 1";
+        String findInconsistentChecksumsSql = "SELECT fileID FROM files"
+                + " JOIN ("
+                    + " SELECT file_key FROM fileinfo"
+                    + " WHERE collection_key = ?"
+                    + " GROUP BY file_key"
+                    + " HAVING COUNT(DISTINCT checksum) > 1) AS inconsistent"
+                + " ON files.file_key = inconsistent.file_key";
         
-        return makeIntegrityIssueIterator(findInconsistentChecksumsSql, collectionID);
+        return makeIntegrityIssueIterator(findInconsistentChecksumsSql, getCollectionKey(collectionID));
     }
     
     /**
@@ -354,7 +622,8 @@ public abstract class IntegrityDAO {
             first = firstIndex;
         }
         String getAllFileIDsSql = getAllFileIDsSql();
-        return makeIntegrityIssueIterator(getAllFileIDsSql, collectionID, pillarID, first, maxResults);
+        return makeIntegrityIssueIterator(getAllFileIDsSql, getCollectionKey(collectionID), getPillarKey(pillarID), 
+                first, maxResults);
     }
     
     /**
@@ -372,7 +641,7 @@ public abstract class IntegrityDAO {
      */
     public String getFileIdAtIndex(String collectionID, Long index) {
         String getSql = getFileIdAtIndexSql();
-        return DatabaseUtils.selectFirstStringValue(dbConnector, getSql, collectionID, index, 1);
+        return DatabaseUtils.selectFirstStringValue(dbConnector, getSql, getCollectionKey(collectionID), index, 1);
     }
     
     /**
@@ -388,11 +657,15 @@ public abstract class IntegrityDAO {
         List<FileInfo> res = new ArrayList<FileInfo>();
         String getFileInfoSql = "SELECT pillarID, filesize, checksum, file_timestamp,"
                 + " checksum_timestamp, last_seen_getfileids, last_seen_getchecksums FROM fileinfo"
-                + " WHERE collectionID = ?"
-                + " AND fileID = ?";
+                + " JOIN pillar ON fileinfo.pillar_key = pillar.pillar_key"
+                + " WHERE file_key = ("
+                    + " SELECT file_key FROM files"
+                    + " WHERE collection_key = ?"
+                    + " AND fileID = ?)";
         
         try (Connection conn = dbConnector.getConnection();
-             PreparedStatement ps = DatabaseUtils.createPreparedStatement(conn, getFileInfoSql, collectionID, fileID)) {
+             PreparedStatement ps = DatabaseUtils.createPreparedStatement(conn, getFileInfoSql, 
+                     getCollectionKey(collectionID), fileID)) {
             try (ResultSet dbResult = ps.executeQuery()) {
                 while(dbResult.next()) {
                     Date lastFileCheck = new Date(dbResult.getLong("file_timestamp"));
@@ -438,13 +711,111 @@ public abstract class IntegrityDAO {
      *         the returned map is empty if nothing is found for the collection. Never null.
      */
     public Map<String, PillarCollectionMetric> getPillarCollectionMetrics(String collectionID) {
+        return getCollectionMetrics(collectionID).getPillarCollectionMetrics();
+    }
+    
+    /**
+     * Get the size of a given collection
+     * @param collectionID The ID of the collection
+     * @return The size of the collection 
+     */
+    public long getCollectionSize(String collectionID) {
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        return getCollectionMetrics(collectionID).getCollectionSize();
+    }
+    
+    /**
+     * Get the number of files in a given collection
+     * @param collectionID The ID of the collection
+     * @return The number of files in the collection 
+     */
+    public Long getNumberOfFilesInCollection(String collectionID) {
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        return getCollectionMetrics(collectionID).getFileCount();
+    }
+    
+    /**
+     * Recalculates the file count and size metrics of the given collection from the database.
+     * Only a single reconciliation runs at a time for a collection. The result is discarded, if the collection is 
+     * changed while the metrics are recalculated, and the readers keep getting the latest consistent metrics.
+     * @param collectionID The ID of the collection
+     */
+    public void reconcileCollectionMetrics(String collectionID) {
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        CollectionMetrics metrics = getCollectionMetrics(collectionID);
+        metrics.getReconciliationLock().lock();
+        try {
+            long modifications = metrics.startReconciliation();
+            Map<String, PillarCollectionMetric> pillarMetrics = selectPillarCollectionMetrics(collectionID);
+            Long fileCount = selectNumberOfFilesInCollection(collectionID);
+            long collectionSize = selectCollectionSize(collectionID);
+            if(metrics.reconciled(modifications, pillarMetrics, (fileCount == null ? 0 : fileCount), 
+                    collectionSize)) {
+                log.debug("Reconciled the metrics for collection '" + collectionID + "'.");
+            } else {
+                log.debug("The collection '" + collectionID + "' was changed while its metrics were reconciled. "
+                        + "Keeping the current metrics.");
+            }
+        } finally {
+            metrics.getReconciliationLock().unlock();
+        }
+    }
+    
+    /**
+     * @param collectionID The ID of the collection.
+     * @return The key of the collection, or a key matching nothing if the collection is unknown.
+     */
+    private int getCollectionKey(String collectionID) {
+        Integer key = collectionKeys.get(collectionID);
+        if(key == null) {
+            String selectSql = "SELECT MAX(collection_key) FROM collections WHERE collectionID = ?";
+            key = DatabaseUtils.selectIntValue(dbConnector, selectSql, collectionID);
+            if(key == null) {
+                return NO_KEY;
+            }
+            collectionKeys.putIfAbsent(collectionID, key);
+        }
+        return key;
+    }
+    
+    /**
+     * @param pillarID The ID of the pillar.
+     * @return The key of the pillar, or a key matching nothing if the pillar is unknown.
+     */
+    private int getPillarKey(String pillarID) {
+        Integer key = pillarKeys.get(pillarID);
+        if(key == null) {
+            String selectSql = "SELECT MAX(pillar_key) FROM pillar WHERE pillarID = ?";
+            key = DatabaseUtils.selectIntValue(dbConnector, selectSql, pillarID);
+            if(key == null) {
+                return NO_KEY;
+            }
+            pillarKeys.putIfAbsent(pillarID, key);
+        }
+        return key;
+    }
+    
+    private CollectionMetrics getCollectionMetrics(String collectionID) {
+        CollectionMetrics metrics = collectionMetrics.get(collectionID);
+        if(metrics == null) {
+            collectionMetrics.putIfAbsent(collectionID, new CollectionMetrics());
+            metrics = collectionMetrics.get(collectionID);
+        }
+        return metrics;
+    }
+    
+    private Map<String, PillarCollectionMetric> selectPillarCollectionMetrics(String collectionID) {
         Map<String, PillarCollectionMetric> metrics = new HashMap<>();
-        String selectSql = "SELECT pillarID, COUNT(fileID) as filecount, SUM(filesize) as sizesum FROM fileinfo"
-                + " WHERE collectionID = ?"
-                + " GROUP BY pillarID";
+        String selectSql = "SELECT pillarID, filecount, sizesum FROM pillar"
+                + " JOIN ("
+                    + " SELECT pillar_key, COUNT(*) AS filecount, SUM(filesize) AS sizesum FROM fileinfo"
+                    + " WHERE collection_key = ?"
+                    + " GROUP BY pillar_key) AS metrics"
+                + " ON pillar.pillar_key = metrics.pillar_key";
         
         try (Connection conn = dbConnector.getConnection();
-             PreparedStatement ps = DatabaseUtils.createPreparedStatement(conn, selectSql, collectionID);
+             PreparedStatement ps = DatabaseUtils.createPreparedStatement(conn, selectSql, 
+                     getCollectionKey(collectionID));
              ResultSet dbResult = ps.executeQuery()) {
                while(dbResult.next()) {
                    String pillarid = dbResult.getString("pillarID");
@@ -461,33 +832,20 @@ public abstract class IntegrityDAO {
         return metrics;
     }
     
-    /**
-     * Get the size of a given collection
-     * @param collectionID The ID of the collection
-     * @return The size of the collection 
-     */
-    public long getCollectionSize(String collectionID) {
-        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
-        
+    private long selectCollectionSize(String collectionID) {
         String getCollectionSizeSql = "SELECT SUM(filesize) FROM "
-                        + "(SELECT distinct(fileID), filesize from fileinfo"
-                            + " WHERE collectionID = ?) AS subselect";
-        Long size = DatabaseUtils.selectFirstLongValue(dbConnector, getCollectionSizeSql, collectionID);
+                        + "(SELECT DISTINCT file_key, filesize FROM fileinfo"
+                            + " WHERE collection_key = ?) AS subselect";
+        Long size = DatabaseUtils.selectFirstLongValue(dbConnector, getCollectionSizeSql, 
+                getCollectionKey(collectionID));
         return (size == null ? 0 : size);
     }
     
-    /**
-     * Get the number of files in a given collection
-     * @param collectionID The ID of the collection
-     * @return The number of files in the collection 
-     */
-    public Long getNumberOfFilesInCollection(String collectionID) {
-        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
-        
-        String getNumberOfFilesSql = "SELECT COUNT(DISTINCT(fileid)) FROM fileinfo"
-                        + " WHERE collectionID = ?";
+    private Long selectNumberOfFilesInCollection(String collectionID) {
+        String getNumberOfFilesSql = "SELECT COUNT(DISTINCT file_key) FROM fileinfo"
+                        + " WHERE collection_key = ?";
         
-        return DatabaseUtils.selectFirstLongValue(dbConnector, getNumberOfFilesSql, collectionID);
+        return DatabaseUtils.selectFirstLongValue(dbConnector, getNumberOfFilesSql, getCollectionKey(collectionID));
     }
     
     /**
@@ -588,9 +946,12 @@ public abstract class IntegrityDAO {
         ArgumentValidator.checkNotNullOrEmpty(fileID, "String fileID");
         
         String getEarliestFileDateSql = "SELECT MIN(file_timestamp) FROM fileinfo"
-                + " WHERE collectionID = ?"
-                + " AND fileID = ?";
-        long time = DatabaseUtils.selectFirstLongValue(dbConnector, getEarliestFileDateSql, collectionID, fileID);
+                + " WHERE file_key = ("
+                    + " SELECT file_key FROM files"
+                    + " WHERE collection_key = ?"
+                    + " AND fileID = ?)";
+        long time = DatabaseUtils.selectFirstLongValue(dbConnector, getEarliestFileDateSql, 
+                getCollectionKey(collectionID), fileID);
         return new Date(time);
     }
     
@@ -21,16 +21,46 @@
  */
 package org.bitrepository.integrityservice.cache.database;
 
+import org.bitrepository.common.settings.Settings;
+import org.bitrepository.integrityservice.cache.IntegrityDatabase;
 import org.bitrepository.integrityservice.cache.IntegrityDatabaseManager;
+import org.bitrepository.integrityservice.cache.IntegrityModel;
+import org.bitrepository.integrityservice.cache.keyvalue.KeyValueIntegrityModel;
 import org.bitrepository.service.database.DatabaseFactory;
 import org.bitrepository.service.database.DatabaseManager;
 import org.bitrepository.settings.referencesettings.DatabaseSpecifics;
+import org.bitrepository.settings.referencesettings.IntegrityServiceSettings;
+import org.bitrepository.settings.referencesettings.IntegrityStoreType;
 
 
 /**
  * Factory class to obtain the appropriate type of DAO class for the specified database type 
  */
 public class IntegrityDAOFactory extends DatabaseFactory<IntegrityDAO> {
+    /**
+     * Obtain the IntegrityModel for the integrity store in the settings. This is the embedded key-value store,
+     * when the IntegrityStoreType is KEY_VALUE_STORE, otherwise the SQL database.
+     * @param settings The settings.
+     * @return The IntegrityModel.
+     */
+    public IntegrityModel getIntegrityModelInstance(Settings settings) {
+        if(usesKeyValueStore(settings)) {
+            DatabaseSpecifics ds = 
+                    settings.getReferenceSettings().getIntegrityServiceSettings().getIntegrityDatabase();
+            return new KeyValueIntegrityModel(ds);
+        }
+        return new IntegrityDatabase(settings);
+    }
+
+    /**
+     * @param settings The settings.
+     * @return Whether the integrity information is kept in the embedded key-value store instead of a SQL database.
+     */
+    public static boolean usesKeyValueStore(Settings settings) {
+        IntegrityServiceSettings integritySettings = settings.getReferenceSettings().getIntegrityServiceSettings();
+        return integritySettings.isSetIntegrityStoreType() 
+                && integritySettings.getIntegrityStoreType() == IntegrityStoreType.KEY_VALUE_STORE;
+    }
 
     public IntegrityDAO getIntegrityDAOInstance(DatabaseSpecifics ds) {
         IntegrityDAO dao = getDAOInstance(ds);
@@ -43,7 +43,8 @@ public class IntegrityDBTools extends IntegrityDAOUtils {
             throw new IntegrityDBStateException("Collection '" + collectionID +"' already exists in integrityDB, can't add.");
         }
         
-        String sql = "INSERT INTO collections ( collectionID ) VALUES ( ? )";
+        String sql = "INSERT INTO collections ( collectionID, collection_key )"
+                + " ( SELECT ?, COALESCE(MAX(collection_key), 0) + 1 FROM collections )";
         DatabaseUtils.executeStatement(dbConnector, sql, collectionID);
         
     }
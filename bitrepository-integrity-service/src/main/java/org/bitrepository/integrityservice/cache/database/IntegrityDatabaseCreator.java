@@ -49,6 +49,10 @@ public class IntegrityDatabaseCreator extends DatabaseCreator {
     }
 
     public void createIntegrityDatabase(Settings settings, String pathToSqlCreationScript) {
+        if(IntegrityDAOFactory.usesKeyValueStore(settings)) {
+            throw new IllegalStateException("The integrity service uses the key-value store, which is created "
+                    + "when the service is started. No integrity database is created.");
+        }
         DatabaseSpecifics databaseSpecifics =
                 settings.getReferenceSettings().getIntegrityServiceSettings().getIntegrityDatabase();
 
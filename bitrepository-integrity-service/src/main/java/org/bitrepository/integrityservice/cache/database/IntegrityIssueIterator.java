@@ -29,9 +29,12 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
 
 /**
  * Class to handle iteration over large set of integrity issues, delivering only IDs 
+ * The issues are either delivered from a query, or from a list of issues found in memory.
  */
 public class IntegrityIssueIterator implements Closeable {
     
@@ -40,9 +43,32 @@ public class IntegrityIssueIterator implements Closeable {
     private ResultSet issueResultSet = null;
     private Connection conn = null;
     private final PreparedStatement ps;
+    /** The issues, when they are delivered from memory instead of a query.*/
+    private final Iterator<String> issues;
     
     public IntegrityIssueIterator(PreparedStatement ps) {
+        this(ps, null);
+    }
+    
+    private IntegrityIssueIterator(PreparedStatement ps, Iterator<String> issues) {
         this.ps = ps;
+        this.issues = issues;
+    }
+    
+    /**
+     * @param issues The issues to deliver.
+     * @return An iterator delivering the given issues.
+     */
+    public static IntegrityIssueIterator forIssues(List<String> issues) {
+        return forIssues(issues.iterator());
+    }
+
+    /**
+     * @param issues The issues to deliver. May find the issues lazily, as they are requested.
+     * @return An iterator delivering the issues of the given iterator.
+     */
+    public static IntegrityIssueIterator forIssues(Iterator<String> issues) {
+        return new IntegrityIssueIterator(null, issues);
     }
     
     /**
@@ -77,6 +103,9 @@ public class IntegrityIssueIterator implements Closeable {
      * @throws RuntimeException in case the close operation failed
      */
     public String getNextIntegrityIssue() throws IllegalStateException, RuntimeException{
+        if(issues != null) {
+            return issues.hasNext() ? issues.next() : null;
+        }
         try {
             String issue = null;
             if(issueResultSet == null) {
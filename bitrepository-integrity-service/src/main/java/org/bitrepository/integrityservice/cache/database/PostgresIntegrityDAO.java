@@ -21,6 +21,7 @@
  */
 package org.bitrepository.integrityservice.cache.database;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.bitrepository.common.utils.SettingsUtils;
@@ -38,35 +39,47 @@ public class PostgresIntegrityDAO extends IntegrityDAO {
 
     @Override
     protected synchronized void initializePillars() {
-        List<String> pillars = SettingsUtils.getAllPillarIDs();
+        List<String> pillars = new ArrayList<>(SettingsUtils.getAllPillarIDs());
+        
+        String getExistingPillars = "SELECT pillarID FROM pillar";
+        
+        List<String> pillarsInDb = DatabaseUtils.selectStringList(dbConnector, getExistingPillars, new Object[0]);
+        pillars.removeAll(pillarsInDb);
+        
         for(String pillar : pillars) {
-            String sql = "INSERT INTO pillar (pillarID)"
-                    + " (SELECT ? WHERE NOT EXISTS ("
-                            + " SELECT pillarID FROM pillar"
-                            + " WHERE pillarID = ?))";
-            DatabaseUtils.executeStatement(dbConnector, sql, pillar, pillar);
+            String sql = "INSERT INTO pillar (pillarID, pillar_key)"
+                    + " (SELECT ?, COALESCE(MAX(pillar_key), 0) + 1 FROM pillar)";
+            DatabaseUtils.executeStatement(dbConnector, sql, pillar);
         }
     }
     
     @Override
     protected synchronized void initializeCollections() {
-        List<String> collections = SettingsUtils.getAllCollectionsIDs();
+        List<String> collections = new ArrayList<>(SettingsUtils.getAllCollectionsIDs());
+        
+        String getExistingCollections = "SELECT collectionID FROM collections";
+        
+        List<String> collectionsInDb = DatabaseUtils.selectStringList(dbConnector, getExistingCollections, 
+                new Object[0]);
+        collections.removeAll(collectionsInDb);
+        
         for(String collection : collections) {
-            String sql = "INSERT INTO collections (collectionID)"
-                    + " (SELECT ? WHERE NOT EXISTS ("
-                            + " SELECT collectionID FROM collections"
-                            + " WHERE collectionID = ?))";
-            DatabaseUtils.executeStatement(dbConnector, sql, collection, collection);
+            String sql = "INSERT INTO collections (collectionID, collection_key)"
+                    + " (SELECT ?, COALESCE(MAX(collection_key), 0) + 1 FROM collections)";
+            DatabaseUtils.executeStatement(dbConnector, sql, collection);
         }
     }
 
     @Override
     protected String getFindFilesWithMissingCopiesSql() {
-        String findFilesSql = "SELECT fileid FROM fileinfo"
-                + " WHERE collectionid = ?"
-                + " GROUP BY fileid"
-                + " HAVING COUNT(fileid) < ?"
-                + " ORDER BY fileid"
+        String findFilesSql = "SELECT fileID FROM files"
+                + " JOIN ("
+                    + " SELECT file_key FROM fileinfo"
+                    + " WHERE collection_key = ?"
+                    + " GROUP BY file_key"
+                    + " HAVING COUNT(*) < ?) AS incomplete"
+                + " ON files.file_key = incomplete.file_key"
+                + " ORDER BY fileID"
                 + " OFFSET ?"
                 + " LIMIT ?";
 
@@ -76,8 +89,9 @@ public class PostgresIntegrityDAO extends IntegrityDAO {
     @Override
     protected String getAllFileIDsSql() {
         String getAllFileIDsSql = "SELECT fileID FROM fileinfo"
-                + " WHERE collectionID = ?"
-                + " AND pillarID = ?"
+                + " JOIN files ON fileinfo.file_key = files.file_key"
+                + " WHERE fileinfo.collection_key = ?"
+                + " AND pillar_key = ?"
                 + " ORDER BY fileID"
                 + " OFFSET ?"
                 + " LIMIT ?";
@@ -97,8 +111,11 @@ public class PostgresIntegrityDAO extends IntegrityDAO {
 
     @Override
     protected String getFileIdAtIndexSql() {
-        String getFileIDAtIndexSql = "SELECT DISTINCT( fileID ) FROM fileinfo"
-                + " WHERE collectionID = ?"
+        String getFileIDAtIndexSql = "SELECT fileID FROM files"
+                + " WHERE collection_key = ?"
+                + " AND EXISTS ("
+                    + " SELECT * FROM fileinfo"
+                    + " WHERE fileinfo.file_key = files.file_key)"
                 + " OFFSET ? "
                 + " LIMIT ?";
         return getFileIDAtIndexSql;
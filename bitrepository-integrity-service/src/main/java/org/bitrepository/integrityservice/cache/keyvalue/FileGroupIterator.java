@@ -0,0 +1,150 @@
+/*
+ * #%L
+ * Bitrepository Integrity Service
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.integrityservice.cache.keyvalue;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Merges the file records of the pillars of a collection into the groups of records for each file.
+ *
+ * The records of each pillar are delivered ordered by fileID, as they are stored under keys with the pillar in
+ * front of the fileID. The iterator performs a merge of the sorted records of the pillars, so the groups are
+ * delivered ordered by fileID while only holding a single record per pillar in memory.
+ */
+class FileGroupIterator implements Iterator<FileGroupIterator.FileGroup> {
+    /** The cursors over the records of the pillars, ordered by their current fileID.*/
+    private final PriorityQueue<PillarCursor> cursors;
+
+    /**
+     * @param pillarRecords The records of each pillar, ordered by fileID. The keys of the records must be the
+     * fileIDs prefixed by a prefix of the given length.
+     * @param prefixLengths The length of the key prefix in front of the fileID for each pillar.
+     */
+    FileGroupIterator(Map<String, Iterator<Map.Entry<String, byte[]>>> pillarRecords,
+            Map<String, Integer> prefixLengths) {
+        cursors = new PriorityQueue<>(Math.max(1, pillarRecords.size()), new Comparator<PillarCursor>() {
+            @Override
+            public int compare(PillarCursor c1, PillarCursor c2) {
+                return c1.fileID.compareTo(c2.fileID);
+            }
+        });
+        for(Map.Entry<String, Iterator<Map.Entry<String, byte[]>>> pillar : pillarRecords.entrySet()) {
+            PillarCursor cursor = new PillarCursor(pillar.getKey(), pillar.getValue(),
+                    prefixLengths.get(pillar.getKey()));
+            if(cursor.advance()) {
+                cursors.add(cursor);
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !cursors.isEmpty();
+    }
+
+    @Override
+    public FileGroup next() {
+        if(cursors.isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        FileGroup group = new FileGroup(cursors.peek().fileID);
+        while(!cursors.isEmpty() && cursors.peek().fileID.equals(group.fileID)) {
+            PillarCursor cursor = cursors.poll();
+            group.records.put(cursor.pillarID, cursor.record);
+            if(cursor.advance()) {
+                cursors.add(cursor);
+            }
+        }
+        return group;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * The encoded records of a file on the pillars, where it is found.
+     */
+    static class FileGroup {
+        /** The ID of the file.*/
+        final String fileID;
+        /** The encoded records of the file, mapped by the pillars.*/
+        final Map<String, byte[]> records = new HashMap<>();
+
+        FileGroup(String fileID) {
+            this.fileID = fileID;
+        }
+
+        /**
+         * @return The number of pillars with the file.
+         */
+        int getNumberOfCopies() {
+            return records.size();
+        }
+
+        /**
+         * @param pillarID The ID of the pillar.
+         * @return The decoded record for the file on the pillar, or null if the pillar does not have the file.
+         */
+        FileRecord getRecord(String pillarID) {
+            byte[] data = records.get(pillarID);
+            return (data == null ? null : FileRecord.fromBytes(data));
+        }
+    }
+
+    /**
+     * The position in the records of a single pillar.
+     */
+    private static class PillarCursor {
+        private final String pillarID;
+        private final Iterator<Map.Entry<String, byte[]>> records;
+        private final int prefixLength;
+        private String fileID;
+        private byte[] record;
+
+        PillarCursor(String pillarID, Iterator<Map.Entry<String, byte[]>> records, int prefixLength) {
+            this.pillarID = pillarID;
+            this.records = records;
+            this.prefixLength = prefixLength;
+        }
+
+        /**
+         * Moves to the next record of the pillar.
+         * @return Whether there was a next record.
+         */
+        boolean advance() {
+            if(!records.hasNext()) {
+                return false;
+            }
+            Map.Entry<String, byte[]> entry = records.next();
+            fileID = entry.getKey().substring(prefixLength);
+            record = entry.getValue();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * #%L
+ * Bitrepository Integrity Service
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.integrityservice.cache.keyvalue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Date;
+
+import org.bitrepository.common.utils.CalendarUtils;
+import org.bitrepository.integrityservice.cache.FileInfo;
+
+/**
+ * The integrity information about a file on a pillar, as stored in the key-value store.
+ * Corresponds to a row in the fileinfo table of the integrity database. Any of the fields may be unknown (null).
+ *
+ * The record is encoded as a bit mask of the known fields followed by the known fields, so unknown fields take
+ * no space.
+ */
+class FileRecord {
+    private static final int FILE_SIZE = 1;
+    private static final int CHECKSUM = 1 << 1;
+    private static final int FILE_TIMESTAMP = 1 << 2;
+    private static final int CHECKSUM_TIMESTAMP = 1 << 3;
+    private static final int LAST_SEEN_GETFILEIDS = 1 << 4;
+    private static final int LAST_SEEN_GETCHECKSUMS = 1 << 5;
+
+    /** The size of the file.*/
+    Long fileSize;
+    /** The checksum of the file.*/
+    String checksum;
+    /** The last modified time (millis since epoch) on the pillar.*/
+    Long fileTimestamp;
+    /** The calculation timestamp (millis since epoch) of the checksum.*/
+    Long checksumTimestamp;
+    /** The last time (millis since epoch) the file was seen on a list of fileIDs for the pillar.*/
+    Long lastSeenGetFileIDs;
+    /** The last time (millis since epoch) the files was seen on a list of checksums for the pillar.*/
+    Long lastSeenGetChecksums;
+
+    /**
+     * @return The encoded record.
+     */
+    byte[] toBytes() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            int fields = (fileSize == null ? 0 : FILE_SIZE)
+                    | (checksum == null ? 0 : CHECKSUM)
+                    | (fileTimestamp == null ? 0 : FILE_TIMESTAMP)
+                    | (checksumTimestamp == null ? 0 : CHECKSUM_TIMESTAMP)
+                    | (lastSeenGetFileIDs == null ? 0 : LAST_SEEN_GETFILEIDS)
+                    | (lastSeenGetChecksums == null ? 0 : LAST_SEEN_GETCHECKSUMS);
+            out.writeByte(fields);
+            writeLong(out, fileSize);
+            if(checksum != null) {
+                out.writeUTF(checksum);
+            }
+            writeLong(out, fileTimestamp);
+            writeLong(out, checksumTimestamp);
+            writeLong(out, lastSeenGetFileIDs);
+            writeLong(out, lastSeenGetChecksums);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not encode the file record", e);
+        }
+    }
+
+    /**
+     * @param data The encoded record.
+     * @return The decoded record.
+     */
+    static FileRecord fromBytes(byte[] data) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            int fields = in.readByte();
+            FileRecord record = new FileRecord();
+            record.fileSize = readLong(in, fields, FILE_SIZE);
+            record.checksum = ((fields & CHECKSUM) == 0 ? null : in.readUTF());
+            record.fileTimestamp = readLong(in, fields, FILE_TIMESTAMP);
+            record.checksumTimestamp = readLong(in, fields, CHECKSUM_TIMESTAMP);
+            record.lastSeenGetFileIDs = readLong(in, fields, LAST_SEEN_GETFILEIDS);
+            record.lastSeenGetChecksums = readLong(in, fields, LAST_SEEN_GETCHECKSUMS);
+            return record;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not decode the file record", e);
+        }
+    }
+
+    /**
+     * Converts the record into the FileInfo delivered by the IntegrityModel.
+     * As for the integrity database, unknown timestamps are delivered as epoch.
+     * @param fileID The ID of the file.
+     * @param pillarID The ID of the pillar.
+     * @return The FileInfo.
+     */
+    FileInfo toFileInfo(String fileID, String pillarID) {
+        FileInfo info = new FileInfo(fileID,
+                CalendarUtils.getXmlGregorianCalendar(new Date(valueOf(fileTimestamp))), checksum,
+                valueOf(fileSize), CalendarUtils.getXmlGregorianCalendar(new Date(valueOf(checksumTimestamp))),
+                pillarID);
+        info.setLastSeenGetFileIDs(new Date(valueOf(lastSeenGetFileIDs)));
+        info.setLastSeenGetChecksums(new Date(valueOf(lastSeenGetChecksums)));
+        return info;
+    }
+
+    private static long valueOf(Long value) {
+        return (value == null ? 0L : value);
+    }
+
+    private static void writeLong(DataOutputStream out, Long value) throws IOException {
+        if(value != null) {
+            out.writeLong(value);
+        }
+    }
+
+    private static Long readLong(DataInputStream in, int fields, int field) throws IOException {
+        return ((fields & field) == 0 ? null : in.readLong());
+    }
+}
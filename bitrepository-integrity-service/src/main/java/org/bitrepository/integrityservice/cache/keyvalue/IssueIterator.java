@@ -0,0 +1,90 @@
+/*
+ * #%L
+ * Bitrepository Integrity Service
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.integrityservice.cache.keyvalue;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Delivers the fileIDs of the integrity issues found among the elements of a scan, as the scan proceeds.
+ * The scan is only read as far as needed for delivering the requested range of issues.
+ * @param <T> The type of the scanned elements.
+ */
+abstract class IssueIterator<T> implements Iterator<String> {
+    /** The scanned elements.*/
+    private final Iterator<T> source;
+    /** The number of issues still to skip before the first delivered issue.*/
+    private long toSkip;
+    /** The number of issues still to deliver.*/
+    private long remaining;
+    /** The next issue to deliver, or null if it has not been found yet.*/
+    private String nextIssue;
+
+    /**
+     * @param source The scanned elements.
+     * @param firstIndex The index of the first issue to deliver.
+     * @param maxResults The maximum number of issues to deliver.
+     */
+    IssueIterator(Iterator<T> source, long firstIndex, long maxResults) {
+        this.source = source;
+        this.toSkip = firstIndex;
+        this.remaining = maxResults;
+    }
+
+    /**
+     * @param element The scanned element.
+     * @return The fileID of the element, if it is an integrity issue, otherwise null.
+     */
+    protected abstract String issueOf(T element);
+
+    @Override
+    public boolean hasNext() {
+        while(nextIssue == null && remaining > 0 && source.hasNext()) {
+            String issue = issueOf(source.next());
+            if(issue == null) {
+                continue;
+            }
+            if(toSkip > 0) {
+                toSkip--;
+            } else {
+                nextIssue = issue;
+            }
+        }
+        return nextIssue != null;
+    }
+
+    @Override
+    public String next() {
+        if(!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String issue = nextIssue;
+        nextIssue = null;
+        remaining--;
+        return issue;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
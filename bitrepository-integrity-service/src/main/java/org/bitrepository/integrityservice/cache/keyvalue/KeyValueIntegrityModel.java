@@ -0,0 +1,861 @@
+/*
+ * #%L
+ * Bitrepository Integrity Service
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.integrityservice.cache.keyvalue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.FileIDsData;
+import org.bitrepository.bitrepositoryelements.FileIDsDataItem;
+import org.bitrepository.common.ArgumentValidator;
+import org.bitrepository.common.utils.Base16Utils;
+import org.bitrepository.common.utils.CalendarUtils;
+import org.bitrepository.common.utils.SettingsUtils;
+import org.bitrepository.common.utils.TimeUtils;
+import org.bitrepository.integrityservice.cache.CollectionStat;
+import org.bitrepository.integrityservice.cache.FileInfo;
+import org.bitrepository.integrityservice.cache.IntegrityModel;
+import org.bitrepository.integrityservice.cache.PillarCollectionMetric;
+import org.bitrepository.integrityservice.cache.PillarCollectionStat;
+import org.bitrepository.integrityservice.cache.database.CollectionMetrics;
+import org.bitrepository.integrityservice.cache.database.IntegrityIssueIterator;
+import org.bitrepository.integrityservice.cache.keyvalue.FileGroupIterator.FileGroup;
+import org.bitrepository.integrityservice.statistics.StatisticsCollector;
+import org.bitrepository.settings.referencesettings.DatabaseSpecifics;
+import org.mapdb.Atomic;
+import org.mapdb.BTreeMap;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * IntegrityModel storing the integrity information in an embedded, ordered key-value store (a MapDB B-tree file),
+ * instead of a SQL database. The store runs inside the integrity service, so no database server is needed.
+ *
+ * The file records are stored under the key 'collectionID, pillarID, fileID', so the files of a pillar in a
+ * collection are a single range of the store ordered by fileID. Queries for a single pillar scan this range, and
+ * queries across the pillars of a collection merge the ranges of the pillars (see {@link FileGroupIterator}).
+ * The collection metrics (file count, size and the pillar metrics) are maintained incrementally as the files are
+ * updated, as {@link CollectionMetrics} for the integrity database. They are found by a merge of the collection when
+ * the store is opened, and when they are reconciled.
+ *
+ * The updates are committed in batches of {@link #MAX_BATCH_SIZE} files, as for the integrity database, and at
+ * the end of each page of results. The store has a single transaction, which a commit ends for every change made
+ * so far, so the writing methods are synchronized on the model. Otherwise a writer would commit the half finished
+ * updates of another writer, e.g. of a concurrently collected timestamp window. The readers are not synchronized.
+ */
+public class KeyValueIntegrityModel implements IntegrityModel {
+    /** The maximum number of files updated between commits.*/
+    public static final int MAX_BATCH_SIZE = 10000;
+    /** Separates the parts of the keys. Cannot be part of an ID, as it is not allowed in XML.*/
+    static final char SEPARATOR = '\u0000';
+    /** The character following the separator, which delimits the end of a key range.*/
+    static final char RANGE_END = '\u0001';
+
+    private Logger log = LoggerFactory.getLogger(getClass());
+
+    /** The store.*/
+    private final DB db;
+    /** The encoded file records, keyed by collectionID, pillarID and fileID.*/
+    private final BTreeMap<String, byte[]> files;
+    /** The latest file timestamp of the pillars, keyed by collectionID and pillarID.*/
+    private final BTreeMap<String, Long> latestFileTimes;
+    /** The latest checksum timestamp of the pillars, keyed by collectionID and pillarID.*/
+    private final BTreeMap<String, Long> latestChecksumTimes;
+    /** The collection statistics, keyed by collectionID and statistics number.*/
+    private final BTreeMap<String, long[]> collectionStats;
+    /** The pillar statistics, keyed by collectionID, statistics number and pillarID.*/
+    private final BTreeMap<String, long[]> pillarStats;
+    /** The number of the latest statistics.*/
+    private final Atomic.Long statisticsNumber;
+
+    /** The metrics of each collection.*/
+    private final ConcurrentMap<String, CollectionMetrics> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * @param databaseSpecifics The specifics for the store. The DatabaseURL is the path to the store file.
+     */
+    public KeyValueIntegrityModel(DatabaseSpecifics databaseSpecifics) {
+        this(new File(databaseSpecifics.getDatabaseURL()));
+    }
+
+    /**
+     * @param storeFile The file of the store. Created if it does not exist.
+     */
+    public KeyValueIntegrityModel(File storeFile) {
+        File dir = storeFile.getAbsoluteFile().getParentFile();
+        if(dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IllegalStateException("Could not create the directory for the store '" + storeFile + "'");
+        }
+        log.info("Opening the integrity key-value store '" + storeFile.getAbsolutePath() + "'");
+        db = DBMaker.fileDB(storeFile).fileMmapEnableIfSupported().transactionEnable().closeOnJvmShutdown().make();
+        files = db.treeMap("fileinfo", Serializer.STRING, Serializer.BYTE_ARRAY).createOrOpen();
+        latestFileTimes = db.treeMap("latest_file_timestamp", Serializer.STRING, Serializer.LONG).createOrOpen();
+        latestChecksumTimes = db.treeMap("latest_checksum_timestamp", Serializer.STRING, Serializer.LONG)
+                .createOrOpen();
+        collectionStats = db.treeMap("collectionstats", Serializer.STRING, Serializer.LONG_ARRAY).createOrOpen();
+        pillarStats = db.treeMap("pillarstats", Serializer.STRING, Serializer.LONG_ARRAY).createOrOpen();
+        statisticsNumber = db.atomicLong("statistics_number").createOrOpen();
+        db.commit();
+        for(String collectionID : getCollectionsWithFiles()) {
+            reconcileCollectionMetrics(collectionID);
+        }
+    }
+
+    @Override
+    public void addFileIDs(FileIDsData data, String pillarID, String collectionID) {
+        ArgumentValidator.checkNotNull(data, "FileIDsData data");
+        addFileIDs(data.getFileIDsDataItems().getFileIDsDataItem().iterator(), pillarID, collectionID);
+    }
+
+    @Override
+    public void addFileIDs(Iterator<FileIDsDataItem> dataItems, String pillarID, String collectionID) {
+        addFileIDs(dataItems, pillarID, collectionID, true);
+    }
+
+    @Override
+    public void addFileIDsWithoutProgress(Iterator<FileIDsDataItem> dataItems, String pillarID, String collectionID) {
+        addFileIDs(dataItems, pillarID, collectionID, false);
+    }
+
+    /**
+     * Adds file ID data, and moves the file collection progress of the pillar if requested.
+     */
+    private synchronized void addFileIDs(Iterator<FileIDsDataItem> dataItems, String pillarID, String collectionID,
+            boolean updateProgress) {
+        ArgumentValidator.checkNotNull(dataItems, "Iterator<FileIDsDataItem> dataItems");
+        if(!isKnown(collectionID, pillarID)) {
+            return;
+        }
+        Date maxDate = new Date(0);
+        int batchSize = 0;
+        CollectionMetrics collectionMetrics = getMetrics(collectionID);
+        List<String> otherPillars = getOtherPillars(collectionID, pillarID);
+        collectionMetrics.beginModification();
+        try {
+            while(dataItems.hasNext()) {
+                FileIDsDataItem item = dataItems.next();
+                Date lastModified = CalendarUtils.convertFromXMLGregorianCalendar(item.getLastModificationTime());
+                byte[] existing = files.get(fileKey(collectionID, pillarID, item.getFileID()));
+                FileRecord record = (existing == null ? new FileRecord() : FileRecord.fromBytes(existing));
+                record.fileSize = (item.getFileSize() == null ? null : item.getFileSize().longValue());
+                record.fileTimestamp = lastModified.getTime();
+                record.lastSeenGetFileIDs = System.currentTimeMillis();
+                storeRecord(collectionMetrics, otherPillars, collectionID, pillarID, item.getFileID(),
+                        (existing == null ? null : FileRecord.fromBytes(existing)), record);
+                maxDate = TimeUtils.getMaxDate(maxDate, lastModified);
+                if(++batchSize >= MAX_BATCH_SIZE) {
+                    db.commit();
+                    batchSize = 0;
+                }
+            }
+            if(updateProgress) {
+                advanceProgress(latestFileTimes, pillarKey(collectionID, pillarID), maxDate.getTime());
+            }
+            db.commit();
+        } finally {
+            collectionMetrics.endModification();
+        }
+    }
+
+    @Override
+    public void addChecksums(List<ChecksumDataForChecksumSpecTYPE> data, String pillarID, String collectionID) {
+        addChecksums(data, pillarID, collectionID, true);
+    }
+
+    @Override
+    public void addChecksumsWithoutProgress(List<ChecksumDataForChecksumSpecTYPE> data, String pillarID,
+            String collectionID) {
+        addChecksums(data, pillarID, collectionID, false);
+    }
+
+    /**
+     * Adds checksum data, and moves the checksum collection progress of the pillar if requested.
+     */
+    private synchronized void addChecksums(List<ChecksumDataForChecksumSpecTYPE> data, String pillarID,
+            String collectionID, boolean updateProgress) {
+        ArgumentValidator.checkNotNull(data, "List<ChecksumDataForChecksumSpecTYPE> data");
+        if(!isKnown(collectionID, pillarID)) {
+            return;
+        }
+        Date maxDate = new Date(0);
+        int batchSize = 0;
+        CollectionMetrics collectionMetrics = getMetrics(collectionID);
+        List<String> otherPillars = getOtherPillars(collectionID, pillarID);
+        collectionMetrics.beginModification();
+        try {
+            for(ChecksumDataForChecksumSpecTYPE item : data) {
+                Date calculationTime = CalendarUtils.convertFromXMLGregorianCalendar(item.getCalculationTimestamp());
+                long now = System.currentTimeMillis();
+                byte[] existing = files.get(fileKey(collectionID, pillarID, item.getFileID()));
+                FileRecord record;
+                if(existing == null) {
+                    record = new FileRecord();
+                    record.fileTimestamp = calculationTime.getTime();
+                    record.lastSeenGetFileIDs = now;
+                } else {
+                    record = FileRecord.fromBytes(existing);
+                }
+                record.checksum = Base16Utils.decodeBase16(item.getChecksumValue());
+                record.checksumTimestamp = calculationTime.getTime();
+                record.lastSeenGetChecksums = now;
+                storeRecord(collectionMetrics, otherPillars, collectionID, pillarID, item.getFileID(),
+                        (existing == null ? null : FileRecord.fromBytes(existing)), record);
+                maxDate = TimeUtils.getMaxDate(maxDate, calculationTime);
+                if(++batchSize >= MAX_BATCH_SIZE) {
+                    db.commit();
+                    batchSize = 0;
+                }
+            }
+            if(updateProgress) {
+                advanceProgress(latestChecksumTimes, pillarKey(collectionID, pillarID), maxDate.getTime());
+            }
+            db.commit();
+        } finally {
+            collectionMetrics.endModification();
+        }
+    }
+
+    @Override
+    public Collection<FileInfo> getFileInfos(String fileID, String collectionID) {
+        ArgumentValidator.checkNotNullOrEmpty(fileID, "String fileID");
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        List<FileInfo> infos = new ArrayList<>();
+        for(String pillarID : getPillarsWithFiles(collectionID)) {
+            byte[] data = files.get(fileKey(collectionID, pillarID, fileID));
+            if(data != null) {
+                infos.add(FileRecord.fromBytes(data).toFileInfo(fileID, pillarID));
+            }
+        }
+        return infos;
+    }
+
+    @Override
+    public synchronized void resetFileCollectionProgress(String collectionID) {
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        collectionRange(latestFileTimes, collectionID).clear();
+        db.commit();
+    }
+
+    @Override
+    public synchronized void resetChecksumCollectionProgress(String collectionID) {
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        collectionRange(latestChecksumTimes, collectionID).clear();
+        db.commit();
+    }
+
+    @Override
+    public synchronized void resetFileCollectionProgress(String pillarID, String collectionID) {
+        ArgumentValidator.checkNotNullOrEmpty(pillarID, "String pillarID");
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        latestFileTimes.remove(pillarKey(collectionID, pillarID));
+        db.commit();
+    }
+
+    @Override
+    public synchronized void resetChecksumCollectionProgress(String pillarID, String collectionID) {
+        ArgumentValidator.checkNotNullOrEmpty(pillarID, "String pillarID");
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        latestChecksumTimes.remove(pillarKey(collectionID, pillarID));
+        db.commit();
+    }
+
+    @Override
+    public synchronized void advanceFileCollectionProgress(String pillarID, String collectionID,
+            Date latestFileDate) {
+        ArgumentValidator.checkNotNull(latestFileDate, "Date latestFileDate");
+        if(!isKnown(collectionID, pillarID)) {
+            return;
+        }
+        advanceProgress(latestFileTimes, pillarKey(collectionID, pillarID), latestFileDate.getTime());
+        db.commit();
+    }
+
+    @Override
+    public synchronized void advanceChecksumCollectionProgress(String pillarID, String collectionID,
+            Date latestChecksumDate) {
+        ArgumentValidator.checkNotNull(latestChecksumDate, "Date latestChecksumDate");
+        if(!isKnown(collectionID, pillarID)) {
+            return;
+        }
+        advanceProgress(latestChecksumTimes, pillarKey(collectionID, pillarID), latestChecksumDate.getTime());
+        db.commit();
+    }
+
+    @Override
+    public long getNumberOfFilesInCollection(String collectionID) {
+        return getMetrics(collectionID).getFileCount();
+    }
+
+    @Override
+    public IntegrityIssueIterator getFilesOnPillar(String pillarID, long firstIndex, long maxResults,
+            String collectionID) {
+        final int prefixLength = pillarPrefix(collectionID, pillarID).length();
+        Iterator<String> keys = pillarRange(collectionID, pillarID).keySet().iterator();
+        return IntegrityIssueIterator.forIssues(new IssueIterator<String>(keys, firstIndex, maxResults) {
+            @Override
+            protected String issueOf(String key) {
+                return key.substring(prefixLength);
+            }
+        });
+    }
+
+    @Override
+    public IntegrityIssueIterator findFilesWithMissingCopies(String collectionID, final int expectedCopies,
+            Long firstIndex, Long maxResults) {
+        return IntegrityIssueIterator.forIssues(new IssueIterator<FileGroup>(getFileGroups(collectionID),
+                (firstIndex == null ? 0L : firstIndex), (maxResults == null ? Long.MAX_VALUE : maxResults)) {
+            @Override
+            protected String issueOf(FileGroup group) {
+                return (group.getNumberOfCopies() < expectedCopies ? group.fileID : null);
+            }
+        });
+    }
+
+    @Override
+    public synchronized void deleteFileIdEntry(String collectionID, String pillarID, String fileID) {
+        ArgumentValidator.checkNotNullOrEmpty(fileID, "String fileID");
+        CollectionMetrics collectionMetrics = getMetrics(collectionID);
+        collectionMetrics.beginModification();
+        try {
+            byte[] existing = files.get(fileKey(collectionID, pillarID, fileID));
+            if(existing != null) {
+                storeRecord(collectionMetrics, getOtherPillars(collectionID, pillarID), collectionID, pillarID,
+                        fileID, FileRecord.fromBytes(existing), null);
+            }
+            db.commit();
+        } finally {
+            collectionMetrics.endModification();
+        }
+    }
+
+    @Override
+    public IntegrityIssueIterator findFilesWithMissingChecksum(String collectionID, String pillarID,
+            final Date cutoffDate) {
+        ArgumentValidator.checkNotNull(cutoffDate, "Date cutoffDate");
+        return findPillarIssues(collectionID, pillarID, new RecordCondition() {
+            @Override
+            public boolean isIssue(FileRecord record) {
+                return record.checksum == null || (record.lastSeenGetChecksums != null
+                        && record.lastSeenGetChecksums < cutoffDate.getTime());
+            }
+        });
+    }
+
+    @Override
+    public IntegrityIssueIterator findChecksumsOlderThan(final Date date, String pillarID, String collectionID) {
+        ArgumentValidator.checkNotNull(date, "Date date");
+        return findPillarIssues(collectionID, pillarID, new RecordCondition() {
+            @Override
+            public boolean isIssue(FileRecord record) {
+                return record.checksumTimestamp != null && record.checksumTimestamp < date.getTime();
+            }
+        });
+    }
+
+    @Override
+    public IntegrityIssueIterator findOrphanFiles(String collectionID, String pillarID, final Date cutoffDate) {
+        ArgumentValidator.checkNotNull(cutoffDate, "Date cutoffDate");
+        return findPillarIssues(collectionID, pillarID, new RecordCondition() {
+            @Override
+            public boolean isIssue(FileRecord record) {
+                return record.lastSeenGetFileIDs != null && record.lastSeenGetFileIDs < cutoffDate.getTime();
+            }
+        });
+    }
+
+    @Override
+    public IntegrityIssueIterator getFilesWithInconsistentChecksums(String collectionID) {
+        return IntegrityIssueIterator.forIssues(new IssueIterator<FileGroup>(getFileGroups(collectionID),
+                0L, Long.MAX_VALUE) {
+            @Override
+            protected String issueOf(FileGroup group) {
+                if(group.getNumberOfCopies() < 2) {
+                    return null;
+                }
+                Set<String> checksums = new HashSet<>();
+                for(String pillarID : group.records.keySet()) {
+                    String checksum = group.getRecord(pillarID).checksum;
+                    if(checksum != null) {
+                        checksums.add(checksum);
+                    }
+                }
+                return (checksums.size() > 1 ? group.fileID : null);
+            }
+        });
+    }
+
+    @Override
+    public Date getDateForNewestFileEntryForCollection(String collectionID) {
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        Long latest = null;
+        for(Long time : collectionRange(latestFileTimes, collectionID).values()) {
+            latest = (latest == null ? time : Math.max(latest, time));
+        }
+        return (latest == null ? null : new Date(latest));
+    }
+
+    @Override
+    public Date getDateForNewestFileEntryForPillar(String pillarID, String collectionID) {
+        Long time = latestFileTimes.get(pillarKey(collectionID, pillarID));
+        return (time == null ? null : new Date(time));
+    }
+
+    @Override
+    public Date getDateForNewestChecksumEntryForPillar(String pillarID, String collectionID) {
+        Long time = latestChecksumTimes.get(pillarKey(collectionID, pillarID));
+        return (time == null ? null : new Date(time));
+    }
+
+    @Override
+    public Long getCollectionFileSize(String collectionID) {
+        return getMetrics(collectionID).getCollectionSize();
+    }
+
+    @Override
+    public Map<String, PillarCollectionMetric> getPillarCollectionMetrics(String collectionID) {
+        return getMetrics(collectionID).getPillarCollectionMetrics();
+    }
+
+    /**
+     * Finds the file count, size and pillar metrics of a collection by merging the files of the pillars.
+     * The size of a file is only counted once, unless the pillars disagree about the size.
+     * The result is discarded, if the collection is changed while it is merged.
+     * @param collectionID The ID of the collection.
+     */
+    @Override
+    public void reconcileCollectionMetrics(String collectionID) {
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        CollectionMetrics collectionMetrics = getMetrics(collectionID);
+        collectionMetrics.getReconciliationLock().lock();
+        try {
+            long modificationsAtStart = collectionMetrics.startReconciliation();
+            long fileCount = 0;
+            long collectionSize = 0;
+            Map<String, long[]> pillarSums = new LinkedHashMap<>();
+            Set<Long> sizes = new HashSet<>();
+            Iterator<FileGroup> groups = getFileGroups(collectionID);
+            while(groups.hasNext()) {
+                FileGroup group = groups.next();
+                fileCount++;
+                sizes.clear();
+                for(String pillarID : group.records.keySet()) {
+                    Long size = group.getRecord(pillarID).fileSize;
+                    long[] sums = pillarSums.get(pillarID);
+                    if(sums == null) {
+                        sums = new long[2];
+                        pillarSums.put(pillarID, sums);
+                    }
+                    sums[0] += (size == null ? 0L : size);
+                    sums[1]++;
+                    if(size != null) {
+                        sizes.add(size);
+                    }
+                }
+                for(Long size : sizes) {
+                    collectionSize += size;
+                }
+            }
+            Map<String, PillarCollectionMetric> pillarMetrics = new HashMap<>();
+            for(Map.Entry<String, long[]> sums : pillarSums.entrySet()) {
+                pillarMetrics.put(sums.getKey(), new PillarCollectionMetric(sums.getValue()[0], sums.getValue()[1]));
+            }
+            if(!collectionMetrics.reconciled(modificationsAtStart, pillarMetrics, fileCount, collectionSize)) {
+                log.info("The collection '" + collectionID + "' was changed while its metrics were reconciled. "
+                        + "The metrics are kept.");
+            }
+        } finally {
+            collectionMetrics.getReconciliationLock().unlock();
+        }
+    }
+
+    @Override
+    public List<CollectionStat> getLatestCollectionStat(String collectionID, int count) {
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        List<CollectionStat> stats = new ArrayList<>();
+        for(long[] stat : collectionRange(collectionStats, collectionID).descendingMap().values()) {
+            if(stats.size() >= count) {
+                break;
+            }
+            stats.add(new CollectionStat(collectionID, stat[0], stat[1], stat[2], new Date(stat[3]),
+                    new Date(stat[4]), new Date(stat[5])));
+        }
+        Collections.reverse(stats);
+        return stats;
+    }
+
+    @Override
+    public List<PillarCollectionStat> getLatestPillarStats(String collectionID) {
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        List<PillarCollectionStat> stats = new ArrayList<>();
+        NavigableMap<String, long[]> collectionRange = collectionRange(collectionStats, collectionID);
+        if(collectionRange.isEmpty()) {
+            return stats;
+        }
+        String statisticsPrefix = collectionRange.lastKey() + SEPARATOR;
+        for(Map.Entry<String, long[]> entry : prefixRange(pillarStats, statisticsPrefix).entrySet()) {
+            long[] stat = entry.getValue();
+            stats.add(new PillarCollectionStat(entry.getKey().substring(statisticsPrefix.length()), collectionID,
+                    stat[0], stat[1], stat[2], stat[3], stat[4], stat[5], null, null));
+        }
+        return stats;
+    }
+
+    @Override
+    public synchronized void close() {
+        if(!db.isClosed()) {
+            db.close();
+        }
+    }
+
+    @Override
+    public synchronized void createStatistics(String collectionID, StatisticsCollector statisticsCollector) {
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        long number = statisticsNumber.incrementAndGet();
+        CollectionStat collectionStat = statisticsCollector.getCollectionStat();
+        collectionStat.setUpdateTime(new Date());
+        putCollectionStat(number, collectionStat);
+        for(String pillarID : SettingsUtils.getPillarIDsForCollection(collectionID)) {
+            putPillarStat(number, statisticsCollector.getPillarCollectionStat(pillarID));
+        }
+        db.commit();
+    }
+
+    @Override
+    public Date getEarlistFileDate(String collectionID, String fileID) {
+        ArgumentValidator.checkNotNullOrEmpty(fileID, "String fileID");
+        Long earliest = null;
+        for(String pillarID : getPillarsWithFiles(collectionID)) {
+            byte[] data = files.get(fileKey(collectionID, pillarID, fileID));
+            Long time = (data == null ? null : FileRecord.fromBytes(data).fileTimestamp);
+            if(time != null) {
+                earliest = (earliest == null ? time : Math.min(earliest, time));
+            }
+        }
+        return (earliest == null ? null : new Date(earliest));
+    }
+
+    @Override
+    public String getFileIDAtPosition(String collectionID, Long position) {
+        ArgumentValidator.checkNotNull(position, "Long position");
+        Iterator<FileGroup> groups = getFileGroups(collectionID);
+        for(long i = 0; i < position && groups.hasNext(); i++) {
+            groups.next();
+        }
+        return (groups.hasNext() ? groups.next().fileID : null);
+    }
+
+    /**
+     * Puts the record of a file on a pillar directly into the store, without committing it.
+     * Used for migrating the integrity information into the store. The metrics of the collection are stale until
+     * they are reconciled, or the store is reopened.
+     * @param collectionID The ID of the collection.
+     * @param pillarID The ID of the pillar.
+     * @param fileID The ID of the file.
+     * @param record The record of the file on the pillar.
+     */
+    void putFileRecord(String collectionID, String pillarID, String fileID, FileRecord record) {
+        getMetrics(collectionID).markStale();
+        files.put(fileKey(collectionID, pillarID, fileID), record.toBytes());
+    }
+
+    /**
+     * Puts the collection progress of a pillar directly into the store, without committing it.
+     * @param collectionID The ID of the collection.
+     * @param pillarID The ID of the pillar.
+     * @param latestFileTime The latest file timestamp for the pillar, or null if unknown.
+     * @param latestChecksumTime The latest checksum timestamp for the pillar, or null if unknown.
+     */
+    void putCollectionProgress(String collectionID, String pillarID, Long latestFileTime, Long latestChecksumTime) {
+        if(latestFileTime != null) {
+            latestFileTimes.put(pillarKey(collectionID, pillarID), latestFileTime);
+        }
+        if(latestChecksumTime != null) {
+            latestChecksumTimes.put(pillarKey(collectionID, pillarID), latestChecksumTime);
+        }
+    }
+
+    /**
+     * Puts a collection statistic directly into the store, without committing it.
+     * @param number The number of the statistics. Later statistics must have higher numbers.
+     * @param stat The collection statistic. The update time must be set.
+     */
+    void putCollectionStat(long number, CollectionStat stat) {
+        if(statisticsNumber.get() < number) {
+            statisticsNumber.set(number);
+        }
+        collectionStats.put(statisticsKey(stat.getCollectionID(), number), new long[] {
+            stat.getFileCount(), stat.getDataSize(), stat.getChecksumErrors(), stat.getLatestFileTime().getTime(),
+            stat.getStatsTime().getTime(), stat.getUpdateTime().getTime()});
+    }
+
+    /**
+     * Puts a pillar statistic directly into the store, without committing it.
+     * @param number The number of the statistics, which the pillar statistic belongs to.
+     * @param stat The pillar statistic.
+     */
+    void putPillarStat(long number, PillarCollectionStat stat) {
+        pillarStats.put(statisticsKey(stat.getCollectionID(), number) + SEPARATOR + stat.getPillarID(), new long[] {
+            stat.getFileCount(), stat.getDataSize(), stat.getMissingFiles(), stat.getChecksumErrors(),
+            stat.getMissingChecksums(), stat.getObsoleteChecksums()});
+    }
+
+    /**
+     * Commits the changes put directly into the store.
+     */
+    synchronized void commit() {
+        db.commit();
+    }
+
+    /**
+     * @param collectionID The ID of the collection.
+     * @param pillarID The ID of the pillar.
+     * @return Whether the pillar is part of the collection according to the settings. Logs when it is not.
+     */
+    private boolean isKnown(String collectionID, String pillarID) {
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        ArgumentValidator.checkNotNullOrEmpty(pillarID, "String pillarID");
+        if(!SettingsUtils.getAllCollectionsIDs().contains(collectionID)) {
+            log.warn("Ignoring the update for the unknown collection '" + collectionID + "'");
+            return false;
+        }
+        if(!SettingsUtils.getPillarIDsForCollection(collectionID).contains(pillarID)) {
+            log.warn("Ignoring the update for the pillar '" + pillarID + "', which is not part of the collection '"
+                    + collectionID + "'");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Moves the collection progress of a pillar forward to the given time. The progress is never moved back, since
+     * the results for different timestamp windows may be delivered in any order.
+     */
+    private static void advanceProgress(BTreeMap<String, Long> progress, String key, long time) {
+        Long current = progress.putIfAbsent(key, time);
+        while(current != null && current < time && !progress.replace(key, current, time)) {
+            current = progress.get(key);
+        }
+    }
+
+    /**
+     * @param collectionID The ID of the collection.
+     * @return The metrics of the collection. Every collection with files in the store when it was opened has been
+     * reconciled, and every change goes through the metrics, so new metrics are for a collection without files.
+     */
+    private CollectionMetrics getMetrics(String collectionID) {
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        CollectionMetrics collectionMetrics = metrics.get(collectionID);
+        if(collectionMetrics == null) {
+            CollectionMetrics emptyMetrics = new CollectionMetrics();
+            emptyMetrics.reconciled(emptyMetrics.startReconciliation(),
+                    new HashMap<String, PillarCollectionMetric>(), 0L, 0L);
+            collectionMetrics = metrics.putIfAbsent(collectionID, emptyMetrics);
+            if(collectionMetrics == null) {
+                collectionMetrics = emptyMetrics;
+            }
+        }
+        return collectionMetrics;
+    }
+
+    /**
+     * Stores the new record of a file on a pillar, or removes it, and applies the change to the metrics of the
+     * collection. This is synchronized on the metrics, so updates of the same file from different pillars see each
+     * others copies when counting the copies of the file.
+     * @param collectionMetrics The metrics of the collection.
+     * @param otherPillars The other pillars, which may have a copy of the file.
+     * @param collectionID The ID of the collection.
+     * @param pillarID The ID of the pillar.
+     * @param fileID The ID of the file.
+     * @param previous The previous record of the file on the pillar, or null if the pillar did not have the file.
+     * @param current The new record of the file on the pillar, or null if the file is removed from the pillar.
+     */
+    private void storeRecord(CollectionMetrics collectionMetrics, List<String> otherPillars, String collectionID,
+            String pillarID, String fileID, FileRecord previous, FileRecord current) {
+        String key = fileKey(collectionID, pillarID, fileID);
+        synchronized(collectionMetrics) {
+            if(current == null) {
+                files.remove(key);
+            } else {
+                files.put(key, current.toBytes());
+            }
+            if(previous != null && current != null && Objects.equals(previous.fileSize, current.fileSize)) {
+                return;
+            }
+            long otherCopies = 0;
+            Set<Long> otherSizes = new HashSet<>();
+            for(String otherPillar : otherPillars) {
+                byte[] data = files.get(fileKey(collectionID, otherPillar, fileID));
+                if(data != null) {
+                    otherCopies++;
+                    Long size = FileRecord.fromBytes(data).fileSize;
+                    if(size != null) {
+                        otherSizes.add(size);
+                    }
+                }
+            }
+            if(previous != null) {
+                collectionMetrics.fileRemoved(pillarID, fileID, previous.fileSize, otherCopies,
+                        previous.fileSize != null && !otherSizes.contains(previous.fileSize));
+            }
+            if(current != null) {
+                collectionMetrics.fileAdded(pillarID, fileID, current.fileSize, otherCopies + 1,
+                        current.fileSize != null && !otherSizes.contains(current.fileSize));
+            }
+        }
+    }
+
+    /**
+     * @param collectionID The ID of the collection.
+     * @param pillarID The ID of the pillar.
+     * @return The other pillars, which may have files in the collection. Both the pillars of the collection in the
+     * settings, and the pillars with files in the store.
+     */
+    private List<String> getOtherPillars(String collectionID, String pillarID) {
+        Set<String> pillars = new HashSet<>(SettingsUtils.getPillarIDsForCollection(collectionID));
+        pillars.addAll(getPillarsWithFiles(collectionID));
+        pillars.remove(pillarID);
+        return new ArrayList<>(pillars);
+    }
+
+    /**
+     * @return The IDs of the collections, which have files in the store.
+     */
+    private List<String> getCollectionsWithFiles() {
+        List<String> collections = new ArrayList<>();
+        String key = files.ceilingKey("");
+        while(key != null) {
+            String collectionID = key.substring(0, key.indexOf(SEPARATOR));
+            collections.add(collectionID);
+            key = files.ceilingKey(collectionID + RANGE_END);
+        }
+        return collections;
+    }
+
+    /**
+     * @param collectionID The ID of the collection.
+     * @return The IDs of the pillars, which have files in the collection.
+     */
+    private List<String> getPillarsWithFiles(String collectionID) {
+        List<String> pillars = new ArrayList<>();
+        String prefix = collectionID + SEPARATOR;
+        String key = files.ceilingKey(prefix);
+        while(key != null && key.startsWith(prefix)) {
+            String pillarID = key.substring(prefix.length(), key.indexOf(SEPARATOR, prefix.length()));
+            pillars.add(pillarID);
+            key = files.ceilingKey(prefix + pillarID + RANGE_END);
+        }
+        return pillars;
+    }
+
+    /**
+     * @param collectionID The ID of the collection.
+     * @return The records of the files in the collection, grouped by file and ordered by fileID.
+     */
+    private Iterator<FileGroup> getFileGroups(String collectionID) {
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        Map<String, Iterator<Map.Entry<String, byte[]>>> pillarRecords = new HashMap<>();
+        Map<String, Integer> prefixLengths = new HashMap<>();
+        for(String pillarID : getPillarsWithFiles(collectionID)) {
+            pillarRecords.put(pillarID, pillarRange(collectionID, pillarID).entrySet().iterator());
+            prefixLengths.put(pillarID, pillarPrefix(collectionID, pillarID).length());
+        }
+        return new FileGroupIterator(pillarRecords, prefixLengths);
+    }
+
+    private IntegrityIssueIterator findPillarIssues(String collectionID, String pillarID,
+            final RecordCondition condition) {
+        final int prefixLength = pillarPrefix(collectionID, pillarID).length();
+        Iterator<Map.Entry<String, byte[]>> records = pillarRange(collectionID, pillarID).entrySet().iterator();
+        return IntegrityIssueIterator.forIssues(new IssueIterator<Map.Entry<String, byte[]>>(records,
+                0L, Long.MAX_VALUE) {
+            @Override
+            protected String issueOf(Map.Entry<String, byte[]> entry) {
+                return (condition.isIssue(FileRecord.fromBytes(entry.getValue()))
+                        ? entry.getKey().substring(prefixLength) : null);
+            }
+        });
+    }
+
+    private NavigableMap<String, byte[]> pillarRange(String collectionID, String pillarID) {
+        return prefixRange(files, pillarPrefix(collectionID, pillarID));
+    }
+
+    private static <V> NavigableMap<String, V> collectionRange(BTreeMap<String, V> map, String collectionID) {
+        return prefixRange(map, collectionID + SEPARATOR);
+    }
+
+    /**
+     * @param map The map.
+     * @param prefix The prefix of the keys, ending with the separator.
+     * @return The part of the map with keys starting with the prefix.
+     */
+    private static <V> NavigableMap<String, V> prefixRange(BTreeMap<String, V> map, String prefix) {
+        String end = prefix.substring(0, prefix.length() - 1) + RANGE_END;
+        return map.subMap(prefix, true, end, false);
+    }
+
+    private static String pillarPrefix(String collectionID, String pillarID) {
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        ArgumentValidator.checkNotNullOrEmpty(pillarID, "String pillarID");
+        return collectionID + SEPARATOR + pillarID + SEPARATOR;
+    }
+
+    private static String pillarKey(String collectionID, String pillarID) {
+        return collectionID + SEPARATOR + pillarID;
+    }
+
+    private static String fileKey(String collectionID, String pillarID, String fileID) {
+        return pillarPrefix(collectionID, pillarID) + fileID;
+    }
+
+    /**
+     * The statistics numbers are zero padded, so the statistics of a collection are ordered by number.
+     */
+    private static String statisticsKey(String collectionID, long number) {
+        return collectionID + SEPARATOR + String.format("%019d", number);
+    }
+
+    /**
+     * Condition for a file record being an integrity issue.
+     */
+    private interface RecordCondition {
+        boolean isIssue(FileRecord record);
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * #%L
+ * Bitrepository Integrity Service
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.integrityservice.cache.keyvalue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Date;
+
+import org.bitrepository.integrityservice.cache.CollectionStat;
+import org.bitrepository.integrityservice.cache.PillarCollectionStat;
+import org.bitrepository.service.database.DBConnector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copies the content of an integrity database into a key-value store, for moving an integrity service from the
+ * SQL database to the embedded key-value store.
+ *
+ * The file information is streamed from the database and committed to the store in batches, so the migration
+ * does not need memory for the whole collection. The integrity database must be at the current version.
+ */
+public class KeyValueStoreMigrator {
+    /** The size of the batches of files committed to the store, and fetched from the database.*/
+    private static final int BATCH_SIZE = KeyValueIntegrityModel.MAX_BATCH_SIZE;
+
+    private final String selectFileInfoSql = "SELECT collections.collectionID, pillar.pillarID, files.fileID,"
+            + " filesize, checksum, file_timestamp, checksum_timestamp, last_seen_getfileids, last_seen_getchecksums"
+            + " FROM fileinfo"
+            + " JOIN files ON fileinfo.file_key = files.file_key"
+            + " JOIN pillar ON fileinfo.pillar_key = pillar.pillar_key"
+            + " JOIN collections ON fileinfo.collection_key = collections.collection_key";
+
+    private final String selectCollectionProgressSql = "SELECT collectionID, pillarID, latest_file_timestamp,"
+            + " latest_checksum_timestamp FROM collection_progress";
+
+    private final String selectCollectionStatsSql = "SELECT stats.stat_key, stats.collectionID, stat_time,"
+            + " last_update, file_count, file_size, checksum_errors_count, latest_file_date"
+            + " FROM stats"
+            + " JOIN collectionstats ON stats.stat_key = collectionstats.stat_key";
+
+    private final String selectPillarStatsSql = "SELECT stats.stat_key, stats.collectionID, pillarID, file_count,"
+            + " file_size, missing_files_count, checksum_errors_count, missing_checksums_count,"
+            + " obsolete_checksums_count"
+            + " FROM stats"
+            + " JOIN pillarstats ON stats.stat_key = pillarstats.stat_key";
+
+    private Logger log = LoggerFactory.getLogger(getClass());
+
+    private final DBConnector dbConnector;
+    private final KeyValueIntegrityModel store;
+
+    /**
+     * @param dbConnector The connector to the integrity database to migrate from.
+     * @param store The key-value store to migrate into.
+     */
+    public KeyValueStoreMigrator(DBConnector dbConnector, KeyValueIntegrityModel store) {
+        this.dbConnector = dbConnector;
+        this.store = store;
+    }
+
+    /**
+     * Copies the file information, collection progress and statistics of the integrity database into the store.
+     * Entries already found in the store are overwritten.
+     * @return The number of migrated file entries.
+     */
+    public long migrate() {
+        try (Connection conn = dbConnector.getConnection()) {
+            conn.setAutoCommit(false);
+            long fileEntries = migrateFileInfo(conn);
+            migrateCollectionProgress(conn);
+            migrateStatistics(conn);
+            conn.setAutoCommit(true);
+            return fileEntries;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not migrate the integrity database to the key-value store", e);
+        }
+    }
+
+    private long migrateFileInfo(Connection conn) throws SQLException {
+        long count = 0;
+        try (PreparedStatement ps = conn.prepareStatement(selectFileInfoSql)) {
+            ps.setFetchSize(BATCH_SIZE);
+            try (ResultSet rs = ps.executeQuery()) {
+                while(rs.next()) {
+                    FileRecord record = new FileRecord();
+                    record.fileSize = getLong(rs, "filesize");
+                    record.checksum = rs.getString("checksum");
+                    record.fileTimestamp = getLong(rs, "file_timestamp");
+                    record.checksumTimestamp = getLong(rs, "checksum_timestamp");
+                    record.lastSeenGetFileIDs = getLong(rs, "last_seen_getfileids");
+                    record.lastSeenGetChecksums = getLong(rs, "last_seen_getchecksums");
+                    store.putFileRecord(rs.getString("collectionID"), rs.getString("pillarID"),
+                            rs.getString("fileID"), record);
+                    if(++count % BATCH_SIZE == 0) {
+                        store.commit();
+                        log.info("Migrated " + count + " file entries");
+                    }
+                }
+            }
+        }
+        store.commit();
+        log.info("Migrated " + count + " file entries");
+        return count;
+    }
+
+    private void migrateCollectionProgress(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(selectCollectionProgressSql);
+                ResultSet rs = ps.executeQuery()) {
+            while(rs.next()) {
+                store.putCollectionProgress(rs.getString("collectionID"), rs.getString("pillarID"),
+                        getLong(rs, "latest_file_timestamp"), getLong(rs, "latest_checksum_timestamp"));
+            }
+        }
+        store.commit();
+    }
+
+    private void migrateStatistics(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(selectCollectionStatsSql);
+                ResultSet rs = ps.executeQuery()) {
+            while(rs.next()) {
+                store.putCollectionStat(rs.getLong("stat_key"), new CollectionStat(rs.getString("collectionID"),
+                        rs.getLong("file_count"), rs.getLong("file_size"), rs.getLong("checksum_errors_count"),
+                        new Date(rs.getLong("latest_file_date")), new Date(rs.getLong("stat_time")),
+                        new Date(rs.getLong("last_update"))));
+            }
+        }
+        try (PreparedStatement ps = conn.prepareStatement(selectPillarStatsSql);
+                ResultSet rs = ps.executeQuery()) {
+            while(rs.next()) {
+                store.putPillarStat(rs.getLong("stat_key"), new PillarCollectionStat(rs.getString("pillarID"),
+                        rs.getString("collectionID"), rs.getLong("file_count"), rs.getLong("file_size"),
+                        rs.getLong("missing_files_count"), rs.getLong("checksum_errors_count"),
+                        rs.getLong("missing_checksums_count"), rs.getLong("obsolete_checksums_count"), null, null));
+            }
+        }
+        store.commit();
+    }
+
+    private static Long getLong(ResultSet rs, String column) throws SQLException {
+        long value = rs.getLong(column);
+        return (rs.wasNull() ? null : value);
+    }
+}
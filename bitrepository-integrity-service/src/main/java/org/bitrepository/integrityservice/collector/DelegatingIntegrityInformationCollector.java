@@ -74,8 +74,15 @@ public class DelegatingIntegrityInformationCollector implements IntegrityInforma
     @Override
     public synchronized void getFileIDs(String collectionID, Collection<String> pillarIDs, String auditTrailInformation, 
             ContributorQuery[] queries, EventHandler eventHandler) {
+        getFileIDs(collectionID, pillarIDs, auditTrailInformation, queries, null, eventHandler);
+    }
+
+    @Override
+    public synchronized void getFileIDs(String collectionID, Collection<String> pillarIDs, 
+            String auditTrailInformation, ContributorQuery[] queries, URL addressForResult, 
+            EventHandler eventHandler) {
         try {
-            getFileIDsClient.getFileIDs(collectionID, queries, null, null, eventHandler);
+            getFileIDsClient.getFileIDs(collectionID, queries, null, addressForResult, eventHandler);
         } catch (Exception e) {
             // Barrier
             log.error("Unexpected failure!", e);
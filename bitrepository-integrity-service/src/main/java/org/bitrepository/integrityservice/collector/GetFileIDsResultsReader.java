@@ -0,0 +1,116 @@
+/*
+ * #%L
+ * Bitrepository Integrity Service
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.integrityservice.collector;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.bitrepository.bitrepositoryelements.FileIDsDataItem;
+import org.bitrepository.common.ArgumentValidator;
+
+/**
+ * Reads the FileIDsDataItems of a GetFileIDs result file one at a time, so the file ids can be ingested without 
+ * holding the whole result in memory.
+ * The file is read with StAX, and only the FileIDsDataItem elements are unmarshalled.
+ * Failures to read the file are thrown as IllegalStateExceptions from the iterator methods.
+ */
+public class GetFileIDsResultsReader implements Iterator<FileIDsDataItem>, Closeable {
+    /** The local name of the elements with the file ids.*/
+    private static final String FILE_IDS_DATA_ITEM = "FileIDsDataItem";
+    
+    /** The reader for the result file.*/
+    private final XMLStreamReader reader;
+    /** The unmarshaller for the FileIDsDataItem elements.*/
+    private final Unmarshaller unmarshaller;
+    /** The next item to deliver, or null if it has not been read yet.*/
+    private FileIDsDataItem nextItem;
+    
+    /**
+     * @param resultStream The stream with the GetFileIDs result file. Is not closed by the reader.
+     * @throws JAXBException If the unmarshaller could not be created.
+     * @throws XMLStreamException If the stream could not be read.
+     */
+    public GetFileIDsResultsReader(InputStream resultStream) throws JAXBException, XMLStreamException {
+        ArgumentValidator.checkNotNull(resultStream, "InputStream resultStream");
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        reader = factory.createXMLStreamReader(resultStream);
+        unmarshaller = JAXBContext.newInstance(FileIDsDataItem.class).createUnmarshaller();
+    }
+    
+    @Override
+    public boolean hasNext() {
+        if(nextItem == null) {
+            nextItem = readNextItem();
+        }
+        return nextItem != null;
+    }
+    
+    @Override
+    public FileIDsDataItem next() {
+        if(!hasNext()) {
+            throw new NoSuchElementException("No more file ids in the result.");
+        }
+        FileIDsDataItem res = nextItem;
+        nextItem = null;
+        return res;
+    }
+    
+    /**
+     * Advances the reader to the next FileIDsDataItem element, and unmarshals it.
+     * @return The next item, or null if there are no more items in the result.
+     */
+    private FileIDsDataItem readNextItem() {
+        try {
+            while(reader.hasNext()) {
+                if(reader.getEventType() == XMLStreamConstants.START_ELEMENT 
+                        && FILE_IDS_DATA_ITEM.equals(reader.getLocalName())) {
+                    return unmarshaller.unmarshal(reader, FileIDsDataItem.class).getValue();
+                }
+                reader.next();
+            }
+            return null;
+        } catch (XMLStreamException | JAXBException e) {
+            throw new IllegalStateException("Could not read the file ids from the result.", e);
+        }
+    }
+    
+    @Override
+    public void close() {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException("Could not close the reader for the result.", e);
+        }
+    }
+}
@@ -21,18 +21,33 @@
  */
 package org.bitrepository.integrityservice.collector;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Iterator;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
+import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLStreamException;
+
+import org.bitrepository.access.TimestampWindow;
 import org.bitrepository.access.getchecksums.conversation.ChecksumsCompletePillarEvent;
 import org.bitrepository.access.getfileids.conversation.FileIDsCompletePillarEvent;
+import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.FileIDsDataItem;
+import org.bitrepository.bitrepositoryelements.ResultingFileIDs;
 import org.bitrepository.client.eventhandler.ContributorFailedEvent;
 import org.bitrepository.client.eventhandler.EventHandler;
 import org.bitrepository.client.eventhandler.OperationEvent;
 import org.bitrepository.client.eventhandler.OperationEvent.OperationEventType;
+import org.bitrepository.common.utils.CalendarUtils;
 import org.bitrepository.integrityservice.cache.IntegrityModel;
 import org.bitrepository.integrityservice.workflow.IntegrityContributors;
+import org.bitrepository.protocol.FileExchange;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,6 +68,12 @@ public class IntegrityCollectorEventHandler implements EventHandler {
     private final BlockingQueue<OperationEvent> finalEventQueue = new LinkedBlockingQueue<OperationEvent>();
     /** The integrity contributors, keeps track of who have failed, are active or finished */
     private final IntegrityContributors integrityContributors;
+    /** The file exchange for retrieving results delivered at a result address. May be null.*/
+    private final FileExchange fileExchange;
+    /** The timestamp window the results are collected for, which tracks the progress. May be null.*/
+    private final TimestampWindow window;
+    /** Whether the collection progress in the model is moved with the results.*/
+    private final boolean updateProgress;
     
     /**
      * Constructor.
@@ -62,9 +83,53 @@ public class IntegrityCollectorEventHandler implements EventHandler {
      */
     public IntegrityCollectorEventHandler(IntegrityModel model, long timeout, 
             IntegrityContributors integrityContributors) {
+        this(model, timeout, integrityContributors, null);
+    }
+    
+    /**
+     * Constructor for handling GetFileIDs results, which may be delivered at a result address.
+     * @param model The integrity model, where the results of GetChecksums or GetFileIDs are to be delivered.
+     * @param timeout The maximum amount of millisecond to wait for an result.
+     * @param integrityContributors the integrity contributors
+     * @param fileExchange The file exchange for retrieving the results delivered at a result address.
+     */
+    public IntegrityCollectorEventHandler(IntegrityModel model, long timeout, 
+            IntegrityContributors integrityContributors, FileExchange fileExchange) {
+        this(model, timeout, integrityContributors, fileExchange, null);
+    }
+    
+    /**
+     * Constructor for handling the results collected for a timestamp window.
+     * @param model The integrity model, where the results of GetChecksums or GetFileIDs are to be delivered.
+     * @param timeout The maximum amount of millisecond to wait for an result.
+     * @param integrityContributors the integrity contributors
+     * @param fileExchange The file exchange for retrieving the results delivered at a result address. May be null.
+     * @param window The timestamp window, where the progress of the contributors is registered. May be null.
+     */
+    public IntegrityCollectorEventHandler(IntegrityModel model, long timeout, 
+            IntegrityContributors integrityContributors, FileExchange fileExchange, TimestampWindow window) {
+        this(model, timeout, integrityContributors, fileExchange, window, true);
+    }
+    
+    /**
+     * Constructor for handling the results collected for a timestamp window, which may be collected out of order.
+     * @param model The integrity model, where the results of GetChecksums or GetFileIDs are to be delivered.
+     * @param timeout The maximum amount of millisecond to wait for an result.
+     * @param integrityContributors the integrity contributors
+     * @param fileExchange The file exchange for retrieving the results delivered at a result address. May be null.
+     * @param window The timestamp window, where the progress of the contributors is registered. May be null.
+     * @param updateProgress Whether the collection progress in the model is moved with the results. If not, the
+     * progress must be moved when all the results have been collected.
+     */
+    public IntegrityCollectorEventHandler(IntegrityModel model, long timeout, 
+            IntegrityContributors integrityContributors, FileExchange fileExchange, TimestampWindow window,
+            boolean updateProgress) {
         this.store = model;
         this.timeout = timeout;
         this.integrityContributors = integrityContributors;
+        this.fileExchange = fileExchange;
+        this.window = window;
+        this.updateProgress = updateProgress;
     }
     
     @Override
@@ -106,8 +171,19 @@ public class IntegrityCollectorEventHandler implements EventHandler {
             ChecksumsCompletePillarEvent checksumEvent = (ChecksumsCompletePillarEvent) event;
             log.trace("Receiving GetChecksums result: {}", 
                     checksumEvent.getChecksums().getChecksumDataItems().toString());
-            store.addChecksums(checksumEvent.getChecksums().getChecksumDataItems(), checksumEvent.getContributorID(), 
-                    checksumEvent.getCollectionID());
+            if(updateProgress) {
+                store.addChecksums(checksumEvent.getChecksums().getChecksumDataItems(), 
+                        checksumEvent.getContributorID(), checksumEvent.getCollectionID());
+            } else {
+                store.addChecksumsWithoutProgress(checksumEvent.getChecksums().getChecksumDataItems(), 
+                        checksumEvent.getContributorID(), checksumEvent.getCollectionID());
+            }
+            if(window != null) {
+                for(ChecksumDataForChecksumSpecTYPE item : checksumEvent.getChecksums().getChecksumDataItems()) {
+                    window.addResult(checksumEvent.getContributorID(), item.getFileID(),
+                            CalendarUtils.convertFromXMLGregorianCalendar(item.getCalculationTimestamp()));
+                }
+            }
             if(checksumEvent.isPartialResult()) {
                 integrityContributors.succeedContributor(checksumEvent.getContributorID());
             } else {
@@ -115,9 +191,26 @@ public class IntegrityCollectorEventHandler implements EventHandler {
             }
         } else if(event instanceof FileIDsCompletePillarEvent) {
             FileIDsCompletePillarEvent fileidEvent = (FileIDsCompletePillarEvent) event;
-            log.trace("Receiving GetFileIDs result: {}", fileidEvent.getFileIDs().getFileIDsData().toString());
-            store.addFileIDs(fileidEvent.getFileIDs().getFileIDsData(), fileidEvent.getContributorID(),
-                    fileidEvent.getCollectionID());
+            ResultingFileIDs result = fileidEvent.getFileIDs();
+            if(result.getFileIDsData() != null) {
+                log.trace("Receiving GetFileIDs result: {}", result.getFileIDsData());
+                if(updateProgress) {
+                    store.addFileIDs(result.getFileIDsData(), fileidEvent.getContributorID(),
+                            fileidEvent.getCollectionID());
+                } else {
+                    store.addFileIDsWithoutProgress(
+                            result.getFileIDsData().getFileIDsDataItems().getFileIDsDataItem().iterator(),
+                            fileidEvent.getContributorID(), fileidEvent.getCollectionID());
+                }
+                if(window != null) {
+                    for(FileIDsDataItem item : result.getFileIDsData().getFileIDsDataItems().getFileIDsDataItem()) {
+                        registerInWindow(fileidEvent.getContributorID(), item);
+                    }
+                }
+            } else if(!addFileIDsFromResultAddress(result.getResultAddress(), fileidEvent)) {
+                integrityContributors.failContributor(fileidEvent.getContributorID());
+                return;
+            }
             if(fileidEvent.isPartialResult()) {
                 integrityContributors.succeedContributor(fileidEvent.getContributorID());
             } else {
@@ -127,4 +220,96 @@ public class IntegrityCollectorEventHandler implements EventHandler {
             log.warn("Unexpected component complete event: " + event.toString());
         }
     }
+    
+    /**
+     * Streams the file ids from a result file into the model, without holding the whole result in memory.
+     * The result file is deleted from the file exchange afterwards.
+     * @param resultAddress The address of the result file.
+     * @param event The event for the completion of a GetFileIDs for a single pillar.
+     * @return Whether the file ids were added to the model.
+     */
+    private boolean addFileIDsFromResultAddress(String resultAddress, FileIDsCompletePillarEvent event) {
+        if(resultAddress == null || fileExchange == null) {
+            log.warn("Cannot retrieve the GetFileIDs result from '" + event.getContributorID() 
+                    + "' with the result address '" + resultAddress + "'.");
+            return false;
+        }
+        log.debug("Receiving GetFileIDs result from '" + resultAddress + "'.");
+        URL resultUrl;
+        try {
+            resultUrl = new URL(resultAddress);
+        } catch (MalformedURLException e) {
+            log.warn("Invalid result address for the GetFileIDs result from '" + event.getContributorID() + "'.", e);
+            return false;
+        }
+        try (InputStream resultStream = fileExchange.getFile(resultUrl);
+                GetFileIDsResultsReader dataItems = new GetFileIDsResultsReader(resultStream)) {
+            Iterator<FileIDsDataItem> items = new WindowRegisteringIterator(dataItems, event.getContributorID());
+            if(updateProgress) {
+                store.addFileIDs(items, event.getContributorID(), event.getCollectionID());
+            } else {
+                store.addFileIDsWithoutProgress(items, event.getContributorID(), event.getCollectionID());
+            }
+            return true;
+        } catch (IOException | JAXBException | XMLStreamException | RuntimeException e) {
+            log.warn("Could not read the GetFileIDs result from '" + resultAddress + "'.", e);
+            return false;
+        } finally {
+            deleteResultFile(resultUrl);
+        }
+    }
+    
+    /**
+     * Removes a result file from the file exchange.
+     * @param resultUrl The address of the result file.
+     */
+    private void deleteResultFile(URL resultUrl) {
+        try {
+            fileExchange.deleteFile(resultUrl);
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            log.warn("Could not delete the result file '" + resultUrl + "' from the file exchange.", e);
+        }
+    }
+    
+    /**
+     * Registers a delivered file id in the timestamp window, if any.
+     * @param contributor The contributor delivering the file id.
+     * @param item The delivered file id.
+     */
+    private void registerInWindow(String contributor, FileIDsDataItem item) {
+        if(window != null) {
+            window.addResult(contributor, item.getFileID(),
+                    CalendarUtils.convertFromXMLGregorianCalendar(item.getLastModificationTime()));
+        }
+    }
+    
+    /**
+     * Registers the file ids in the timestamp window as they are read by the model.
+     */
+    private class WindowRegisteringIterator implements Iterator<FileIDsDataItem> {
+        private final Iterator<FileIDsDataItem> dataItems;
+        private final String contributor;
+        
+        WindowRegisteringIterator(Iterator<FileIDsDataItem> dataItems, String contributor) {
+            this.dataItems = dataItems;
+            this.contributor = contributor;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            return dataItems.hasNext();
+        }
+        
+        @Override
+        public FileIDsDataItem next() {
+            FileIDsDataItem item = dataItems.next();
+            registerInWindow(contributor, item);
+            return item;
+        }
+        
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
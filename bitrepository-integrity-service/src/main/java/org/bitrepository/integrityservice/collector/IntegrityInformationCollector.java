@@ -55,6 +55,19 @@ public interface IntegrityInformationCollector {
                     ContributorQuery[] queries,
             EventHandler eventHandler);
 
+    /**
+     * Starts collection the given file ids from the given pillar ids, delivered as result files.
+     * @param collectionID The ID of the collection to collect fileIDs from
+     * @param pillarIDs The collection of ids of the pillars to request for the file ids.
+     * @param auditTrailInformation The audit trail information for the conversation.
+     * @param queries The limiting contributor queries for the collection of file ids. 
+     * @param addressForResult The address the pillars should upload the results to, suffixed with the id of the 
+     * pillar. If null, the results are delivered in the response messages.
+     * @param eventHandler The eventhandler for the results of the checksum collection. 
+     */
+    void getFileIDs(String collectionID, Collection<String> pillarIDs, String auditTrailInformation,
+            ContributorQuery[] queries, URL addressForResult, EventHandler eventHandler);
+
     /**
      * Request the specified checksums for from the given pillars.
      * @param collectionID The ID of the collection to collect checksums from
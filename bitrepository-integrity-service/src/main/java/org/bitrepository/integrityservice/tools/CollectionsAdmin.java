@@ -26,6 +26,7 @@ import java.util.List;
 import org.bitrepository.common.settings.Settings;
 import org.bitrepository.common.settings.XMLFileSettingsLoader;
 import org.bitrepository.common.utils.SettingsUtils;
+import org.bitrepository.integrityservice.cache.database.IntegrityDAOFactory;
 import org.bitrepository.integrityservice.cache.database.IntegrityDBTools;
 import org.bitrepository.service.ServiceSettingsProvider;
 import org.bitrepository.service.database.DBConnector;
@@ -47,6 +48,11 @@ public class CollectionsAdmin {
                 new ServiceSettingsProvider(new XMLFileSettingsLoader(pathToSettings), ServiceType.INTEGRITY_SERVICE);
         settings = settingsLoader.getSettings();
         SettingsUtils.initialize(settings);
+        if(IntegrityDAOFactory.usesKeyValueStore(settings)) {
+            throw new IllegalStateException("The collections can only be administrated in an integrity database. "
+                    + "The integrity service uses the key-value store, where the collections follow the "
+                    + "RepositorySettings.");
+        }
         tools = new IntegrityDBTools(new DBConnector(settings.getReferenceSettings().getIntegrityServiceSettings().getIntegrityDatabase()));
     }
     
@@ -0,0 +1,75 @@
+/*
+ * #%L
+ * Bitrepository Integrity Service
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.integrityservice.tools;
+
+import java.io.File;
+
+import org.bitrepository.common.settings.Settings;
+import org.bitrepository.common.settings.XMLFileSettingsLoader;
+import org.bitrepository.common.utils.SettingsUtils;
+import org.bitrepository.integrityservice.cache.database.IntegrityDAOFactory;
+import org.bitrepository.integrityservice.cache.keyvalue.KeyValueIntegrityModel;
+import org.bitrepository.integrityservice.cache.keyvalue.KeyValueStoreMigrator;
+import org.bitrepository.service.ServiceSettingsProvider;
+import org.bitrepository.service.database.DBConnector;
+import org.bitrepository.settings.referencesettings.ServiceType;
+
+/**
+ * Class to handle launching of the migration from the integrity database in the settings to a key-value store.
+ * After the migration the IntegrityStoreType in the settings should be changed to the key-value store.
+ */
+public class KeyValueStoreMigrationLauncher {
+
+    public static void main(String[] args) {
+        if(!(args.length == 2)) {
+            printUsage();
+            System.exit(1);
+        }
+        String settingsPath = args[0];
+        File storeFile = new File(args[1]);
+
+        ServiceSettingsProvider settingsLoader =
+                new ServiceSettingsProvider(new XMLFileSettingsLoader(settingsPath), ServiceType.INTEGRITY_SERVICE);
+        Settings settings = settingsLoader.getSettings();
+        SettingsUtils.initialize(settings);
+        if(IntegrityDAOFactory.usesKeyValueStore(settings)) {
+            System.err.println("The settings must point at the integrity database to migrate from, "
+                    + "but the IntegrityStoreType is already the key-value store.");
+            System.exit(1);
+        }
+
+        DBConnector connector = new DBConnector(
+                settings.getReferenceSettings().getIntegrityServiceSettings().getIntegrityDatabase());
+        KeyValueIntegrityModel store = new KeyValueIntegrityModel(storeFile);
+        try {
+            long fileEntries = new KeyValueStoreMigrator(connector, store).migrate();
+            System.out.println("Migrated " + fileEntries + " file entries to '" + storeFile.getAbsolutePath() + "'");
+        } finally {
+            store.close();
+            connector.destroy();
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: migrateToKeyValueStore.sh <path-to-settings> <path-to-store-file>");
+    }
+}
@@ -35,6 +35,7 @@ import org.bitrepository.integrityservice.workflow.step.HandleDeletedFilesStep;
 import org.bitrepository.integrityservice.workflow.step.HandleMissingChecksumsStep;
 import org.bitrepository.integrityservice.workflow.step.HandleMissingFilesStep;
 import org.bitrepository.integrityservice.workflow.step.HandleObsoleteChecksumsStep;
+import org.bitrepository.integrityservice.workflow.step.ReconcileCollectionMetricsStep;
 import org.bitrepository.integrityservice.workflow.step.UpdateChecksumsStep;
 import org.bitrepository.integrityservice.workflow.step.UpdateFileIDsStep;
 import org.bitrepository.service.workflow.JobID;
@@ -134,6 +135,10 @@ public abstract class IntegrityCheckWorkflow extends Workflow {
                             statisticsCollector);
             performStep(handleObsoleteChecksumsStep);
             
+            ReconcileCollectionMetricsStep reconcileMetrics = new ReconcileCollectionMetricsStep(
+                    context.getStore(), collectionID);
+            performStep(reconcileMetrics);
+            
             CreateStatisticsEntryStep createStatistics = new CreateStatisticsEntryStep(
                     context.getStore(), collectionID, statisticsCollector);
             performStep(createStatistics);
@@ -106,6 +106,24 @@ public class IntegrityContributors {
         }
     }
     
+    /**
+     * Mark a contributor as failed, without further retries, e.g. when it has used up its retries in a part of
+     * the collection handled separately.
+     * @param contributor The contributor which have failed
+     */
+    public synchronized void failContributorWithoutRetries(String contributor) {
+        if(activeContributors.remove(contributor) != null) {
+            failedContributors.add(contributor);
+        }
+    }
+    
+    /**
+     * @return The number of times in a row a contributor must have failed to be marked as failed.
+     */
+    public int getMaxContributorFailures() {
+        return maxContributorFailures;
+    }
+    
     /**
      * Mark a contributor as having succeeded the last request. 
      * @param contributor The contributor which have succeeded
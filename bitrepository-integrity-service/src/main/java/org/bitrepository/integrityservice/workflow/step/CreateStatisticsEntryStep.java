@@ -55,6 +55,8 @@ public class CreateStatisticsEntryStep extends AbstractWorkFlowStep {
     /**
      * Uses IntegrityChecker to validate whether any checksums are missing.
      * Dispatches an alarm if any checksums were missing.
+     * The collection metrics should be reconciled by a {@link ReconcileCollectionMetricsStep} first, so the 
+     * statistics entries are exact.
      */
     @Override
     public synchronized void performStep() {
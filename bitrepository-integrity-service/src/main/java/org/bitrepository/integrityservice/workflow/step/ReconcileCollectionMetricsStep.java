@@ -0,0 +1,59 @@
+/*
+ * #%L
+ * Bitrepository Integrity Service
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.integrityservice.workflow.step;
+
+import org.bitrepository.integrityservice.cache.IntegrityModel;
+import org.bitrepository.service.workflow.AbstractWorkFlowStep;
+
+/**
+ * A workflow step for recalculating the file count and size metrics of the collection from the integrity model.
+ * The metrics are otherwise maintained incrementally, and are read from the latest reconciliation, so the 
+ * recalculation is kept out of the reads, e.g. from the web interface.
+ */
+public class ReconcileCollectionMetricsStep extends AbstractWorkFlowStep {
+    /** The Integrity Model. */
+    private final IntegrityModel store;
+    /** The collectionID */
+    private final String collectionID;
+    
+    public ReconcileCollectionMetricsStep(IntegrityModel store, String collectionID) {
+        this.store = store;
+        this.collectionID = collectionID;
+    }
+    
+    @Override
+    public String getName() {
+        return "Reconcile collection metrics";
+    }
+
+    /**
+     * Reconciles the metrics of the collection, so the following statistics entries are exact.
+     */
+    @Override
+    public synchronized void performStep() {
+        store.reconcileCollectionMetrics(collectionID);
+    }
+
+    public static String getDescription() {
+        return "Recalculates the file count and size metrics of the collection.";
+    }
+}
@@ -28,7 +28,9 @@ import java.util.List;
 import java.util.Set;
 
 import org.bitrepository.access.ContributorQuery;
+import org.bitrepository.access.TimestampWindow;
 import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
+import org.bitrepository.client.eventhandler.EventHandler;
 import org.bitrepository.client.eventhandler.OperationEvent;
 import org.bitrepository.client.eventhandler.OperationEvent.OperationEventType;
 import org.bitrepository.client.eventhandler.OperationFailedEvent;
@@ -111,9 +113,12 @@ public abstract class UpdateChecksumsStep extends AbstractWorkFlowStep {
             Set<String> pillarsToCollectFrom =  integrityContributors.getActiveContributors();
             log.debug("Collecting checksums from '" + pillarsToCollectFrom + "' for collection '" 
                     + collectionID + "'.");
+            TimestampWindow window = new TimestampWindow(null, null, pillarsToCollectFrom);
+            boolean collectedInWindows = false;
             while (!pillarsToCollectFrom.isEmpty()) {
+                // The checksums are delivered in the response messages, so no file exchange is needed.
                 IntegrityCollectorEventHandler eventHandler = new IntegrityCollectorEventHandler(store, 
-                        timeout, integrityContributors);
+                        timeout, integrityContributors, null, window);
                 ContributorQuery[] queries = getQueries(pillarsToCollectFrom);
                 collector.getChecksums(collectionID, pillarsToCollectFrom, checksumType, null, "IntegrityService: "
                         + getName(), queries, eventHandler);
@@ -124,6 +129,15 @@ public abstract class UpdateChecksumsStep extends AbstractWorkFlowStep {
                 }
                 log.debug("Collecting of checksums ids had the final event: " + event);
                 pillarsToCollectFrom = integrityContributors.getActiveContributors();
+                if(!collectedInWindows && !pillarsToCollectFrom.isEmpty()) {
+                    List<TimestampWindow> windows = window.split(pillarsToCollectFrom,
+                            TimestampWindow.DEFAULT_NUMBER_OF_WINDOWS);
+                    if(windows.size() > 1) {
+                        collectInWindows(windows);
+                        collectedInWindows = true;
+                        pillarsToCollectFrom = integrityContributors.getActiveContributors();
+                    }
+                }
             }
             
             finalStepAction();
@@ -141,17 +155,54 @@ public abstract class UpdateChecksumsStep extends AbstractWorkFlowStep {
             log.info("Get failure event, but no contributors marked as failed, retrying");
         } else {
             OperationFailedEvent ofe = (OperationFailedEvent) event;
-            if(abortInCaseOfFailure) {
-                alerter.integrityFailed("Integrity check aborted while getting checksums due to failed contributors: " 
-                        + integrityContributors.getFailedContributors(), collectionID);
-                throw new WorkflowAbortedException("Aborting workflow due to failure collecting checksums. "
-                        + "Cause: " + ofe.toString());
-            } else {
-                log.info("Failure occured collecting fileIDs, continuing collecting checksums. Failure {}", ofe.toString());
-                alerter.integrityFailed("Failure while collecting checksums, the check will continue "
-                        + "with the information available. The failed contributors were: " 
-                        + integrityContributors.getFailedContributors(), collectionID);
+            handleFailedContributors(ofe.toString());
+        }
+    }
+    
+    /**
+     * Checks to see if the workflow should be aborted due to failed contributors, and sends alarms.
+     * @param cause The cause of the failure.
+     */
+    private void handleFailedContributors(String cause) throws WorkflowAbortedException {
+        if(abortInCaseOfFailure) {
+            alerter.integrityFailed("Integrity check aborted while getting checksums due to failed contributors: " 
+                    + integrityContributors.getFailedContributors(), collectionID);
+            throw new WorkflowAbortedException("Aborting workflow due to failure collecting checksums. "
+                    + "Cause: " + cause);
+        } else {
+            log.info("Failure occured collecting fileIDs, continuing collecting checksums. Failure {}", cause);
+            alerter.integrityFailed("Failure while collecting checksums, the check will continue "
+                    + "with the information available. The failed contributors were: " 
+                    + integrityContributors.getFailedContributors(), collectionID);
+        }
+    }
+    
+    /**
+     * Collects the remaining checksums concurrently in the given timestamp windows. See {@link WindowedCollector}
+     * for how the contributors and their collection progress are handled.
+     * @param windows The timestamp windows.
+     */
+    private void collectInWindows(List<TimestampWindow> windows) throws InterruptedException,
+            WorkflowAbortedException {
+        log.info("Collecting the remaining checksums of collection '" + collectionID + "' in " + windows.size()
+                + " timestamp windows.");
+        WindowedCollector windowedCollector = new WindowedCollector(store, timeout, 
+                maxNumberOfResultsPerConversation, integrityContributors, null) {
+            @Override
+            protected void collectPage(Collection<String> contributors, ContributorQuery[] queries,
+                    EventHandler eventHandler) {
+                collector.getChecksums(collectionID, contributors, checksumType, null, "IntegrityService: "
+                        + getName(), queries, eventHandler);
+            }
+
+            @Override
+            protected void advanceProgress(String contributor, Date latest) {
+                store.advanceChecksumCollectionProgress(contributor, collectionID, latest);
             }
+        };
+        Set<String> failedContributors = windowedCollector.collect(windows);
+        if(!failedContributors.isEmpty()) {
+            handleFailedContributors("Failed to collect checksums in timestamp windows from " + failedContributors);
         }
     }
     
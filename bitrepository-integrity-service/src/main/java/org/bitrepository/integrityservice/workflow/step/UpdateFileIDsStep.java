@@ -22,13 +22,18 @@
  */
 package org.bitrepository.integrityservice.workflow.step;
 
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
+import java.util.UUID;
 
 import org.bitrepository.access.ContributorQuery;
+import org.bitrepository.access.TimestampWindow;
+import org.bitrepository.client.eventhandler.EventHandler;
 import org.bitrepository.client.eventhandler.OperationEvent;
 import org.bitrepository.client.eventhandler.OperationEvent.OperationEventType;
 import org.bitrepository.client.eventhandler.OperationFailedEvent;
@@ -39,8 +44,11 @@ import org.bitrepository.integrityservice.cache.IntegrityModel;
 import org.bitrepository.integrityservice.collector.IntegrityCollectorEventHandler;
 import org.bitrepository.integrityservice.collector.IntegrityInformationCollector;
 import org.bitrepository.integrityservice.workflow.IntegrityContributors;
+import org.bitrepository.protocol.FileExchange;
+import org.bitrepository.protocol.ProtocolComponentFactory;
 import org.bitrepository.service.exception.WorkflowAbortedException;
 import org.bitrepository.service.workflow.AbstractWorkFlowStep;
+import org.bitrepository.settings.referencesettings.IntegrityServiceSettings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -67,6 +75,8 @@ public abstract class UpdateFileIDsStep extends AbstractWorkFlowStep {
     private boolean abortInCaseOfFailure = true;
     /** Contributors for collecting information */
     private final IntegrityContributors integrityContributors;
+    /** The file exchange the file ids are delivered on as result files. Null if delivered in the messages.*/
+    private final FileExchange fileExchange;
         
     /**
      * Constructor.
@@ -88,6 +98,14 @@ public abstract class UpdateFileIDsStep extends AbstractWorkFlowStep {
         if(settings.getReferenceSettings().getIntegrityServiceSettings().isSetAbortOnFailedContributor()) {
             abortInCaseOfFailure = settings.getReferenceSettings().getIntegrityServiceSettings().isAbortOnFailedContributor();
         }
+        IntegrityServiceSettings integrityServiceSettings 
+                = settings.getReferenceSettings().getIntegrityServiceSettings();
+        if(integrityServiceSettings.isSetUseResultFilesForFileIDs() 
+                && integrityServiceSettings.isUseResultFilesForFileIDs()) {
+            fileExchange = ProtocolComponentFactory.getInstance().getFileExchange(settings);
+        } else {
+            fileExchange = null;
+        }
     }
     
     /**
@@ -102,12 +120,13 @@ public abstract class UpdateFileIDsStep extends AbstractWorkFlowStep {
         try {
             Set<String> pillarsToCollectFrom = integrityContributors.getActiveContributors();
             log.debug("Collecting fileIDs from: " + pillarsToCollectFrom);
+            TimestampWindow window = new TimestampWindow(null, null, pillarsToCollectFrom);
+            boolean collectedInWindows = false;
             while (!pillarsToCollectFrom.isEmpty()) {
                 IntegrityCollectorEventHandler eventHandler 
-                    = new IntegrityCollectorEventHandler(store, timeout, integrityContributors);
+                    = new IntegrityCollectorEventHandler(store, timeout, integrityContributors, fileExchange, window);
                 ContributorQuery[] queries = getQueries(pillarsToCollectFrom);
-                collector.getFileIDs(collectionID, pillarsToCollectFrom,
-                        "IntegrityService: " + getName(), queries, eventHandler);
+                requestFileIDs(pillarsToCollectFrom, queries, eventHandler);
                 
                 OperationEvent event = eventHandler.getFinish();
                 if(event.getEventType() == OperationEventType.FAILED) {
@@ -115,6 +134,15 @@ public abstract class UpdateFileIDsStep extends AbstractWorkFlowStep {
                  }
                 log.debug("Collection of file ids had the final event: " + event);
                 pillarsToCollectFrom = integrityContributors.getActiveContributors();
+                if(!collectedInWindows && !pillarsToCollectFrom.isEmpty()) {
+                    List<TimestampWindow> windows = window.split(pillarsToCollectFrom,
+                            TimestampWindow.DEFAULT_NUMBER_OF_WINDOWS);
+                    if(windows.size() > 1) {
+                        collectInWindows(windows);
+                        collectedInWindows = true;
+                        pillarsToCollectFrom = integrityContributors.getActiveContributors();
+                    }
+                }
             }
         } catch (InterruptedException e) {
             log.warn("Interrupted while collecting file ids.", e);
@@ -130,17 +158,82 @@ public abstract class UpdateFileIDsStep extends AbstractWorkFlowStep {
             log.info("Get failure event, but no contributors marked as failed, retrying");
         } else {
             OperationFailedEvent ofe = (OperationFailedEvent) event;
-            if(abortInCaseOfFailure) {
-                alerter.integrityFailed("Integrity check aborted while getting fileIDs due to failed contributors: " 
-                        + integrityContributors.getFailedContributors(), collectionID);
-                throw new WorkflowAbortedException("Aborting workflow due to failure collecting fileIDs. "
-                        + "Cause: " + ofe.toString());
-            } else {
-                log.info("Failure occured collecting fileIDs, continuing collecting fileIDs. Failure {}", ofe.toString());
-                alerter.integrityFailed("Failure while collecting fileIDs, the check will continue "
-                        + "with the information available. The failed contributors were: " 
-                        + integrityContributors.getFailedContributors(), collectionID);
+            handleFailedContributors(ofe.toString());
+        }
+    }
+    
+    /**
+     * Checks to see if the workflow should be aborted due to failed contributors, and sends alarms.
+     * @param cause The cause of the failure.
+     */
+    private void handleFailedContributors(String cause) throws WorkflowAbortedException {
+        if(abortInCaseOfFailure) {
+            alerter.integrityFailed("Integrity check aborted while getting fileIDs due to failed contributors: " 
+                    + integrityContributors.getFailedContributors(), collectionID);
+            throw new WorkflowAbortedException("Aborting workflow due to failure collecting fileIDs. "
+                    + "Cause: " + cause);
+        } else {
+            log.info("Failure occured collecting fileIDs, continuing collecting fileIDs. Failure {}", cause);
+            alerter.integrityFailed("Failure while collecting fileIDs, the check will continue "
+                    + "with the information available. The failed contributors were: " 
+                    + integrityContributors.getFailedContributors(), collectionID);
+        }
+    }
+    
+    /**
+     * Collects the remaining fileIDs concurrently in the given timestamp windows. See {@link WindowedCollector}
+     * for how the contributors and their collection progress are handled.
+     * @param windows The timestamp windows.
+     */
+    private void collectInWindows(List<TimestampWindow> windows) throws InterruptedException,
+            WorkflowAbortedException {
+        log.info("Collecting the remaining fileIDs of collection '" + collectionID + "' in " + windows.size()
+                + " timestamp windows.");
+        WindowedCollector windowedCollector = new WindowedCollector(store, timeout, 
+                maxNumberOfResultsPerConversation, integrityContributors, fileExchange) {
+            @Override
+            protected void collectPage(Collection<String> contributors, ContributorQuery[] queries,
+                    EventHandler eventHandler) {
+                requestFileIDs(contributors, queries, eventHandler);
+            }
+
+            @Override
+            protected void advanceProgress(String contributor, Date latest) {
+                store.advanceFileCollectionProgress(contributor, collectionID, latest);
             }
+        };
+        Set<String> failedContributors = windowedCollector.collect(windows);
+        if(!failedContributors.isEmpty()) {
+            handleFailedContributors("Failed to collect fileIDs in timestamp windows from " + failedContributors);
+        }
+    }
+    
+    /**
+     * Requests a page of file ids from the given pillars. The file ids are delivered as result files on the file
+     * exchange, if configured, and otherwise in the response messages.
+     * @param pillars The pillars to collect from.
+     * @param queries The queries for the pillars.
+     * @param eventHandler The event handler for the results.
+     */
+    private void requestFileIDs(Collection<String> pillars, ContributorQuery[] queries, EventHandler eventHandler) {
+        String auditTrailInformation = "IntegrityService: " + getName();
+        if(fileExchange == null) {
+            collector.getFileIDs(collectionID, pillars, auditTrailInformation, queries, eventHandler);
+        } else {
+            collector.getFileIDs(collectionID, pillars, auditTrailInformation, queries, getResultAddress(),
+                    eventHandler);
+        }
+    }
+    
+    /**
+     * @return A new address on the file exchange for the result files of a page. The pillars suffix it with their 
+     * id.
+     */
+    private URL getResultAddress() {
+        try {
+            return fileExchange.getURL("GetFileIDs-" + collectionID + "-" + UUID.randomUUID().toString());
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException("Could not create the address for the GetFileIDs results.", e);
         }
     }
     
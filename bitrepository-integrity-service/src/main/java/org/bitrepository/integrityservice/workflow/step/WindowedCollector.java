@@ -0,0 +1,243 @@
+/*
+ * #%L
+ * Bitrepository Integrity Service
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.integrityservice.workflow.step;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.bitrepository.access.ContributorQuery;
+import org.bitrepository.access.TimestampWindow;
+import org.bitrepository.client.eventhandler.EventHandler;
+import org.bitrepository.client.eventhandler.OperationEvent;
+import org.bitrepository.common.DefaultThreadFactory;
+import org.bitrepository.integrityservice.cache.IntegrityModel;
+import org.bitrepository.integrityservice.collector.IntegrityCollectorEventHandler;
+import org.bitrepository.integrityservice.workflow.IntegrityContributors;
+import org.bitrepository.protocol.FileExchange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the remaining part of a paged GetFileIDs or GetChecksums collection concurrently in timestamp windows.
+ * Each window is paged through by its own conversations, and keeps track of the progress and the failures of the
+ * contributors within the window.
+ * <p/>
+ * The windows finish out of order, so the results are stored without moving the collection progress of the
+ * contributors. The progress is only moved when all the windows have been collected. Thus a restart during the
+ * collection does not skip the windows which were not collected, and continues from the progress from before the
+ * windows. A contributor which fails in a window has its progress moved up to the latest result it delivered in
+ * that window, since the earlier windows and the start of the failed window have been collected.
+ */
+abstract class WindowedCollector {
+    /** The log.*/
+    private Logger log = LoggerFactory.getLogger(getClass());
+
+    /** The model where the integrity data is stored.*/
+    private final IntegrityModel store;
+    /** The timeout for waiting for the results of a page.*/
+    private final long timeout;
+    /** The maximum number of results for each conversation.*/
+    private final Integer maxNumberOfResultsPerConversation;
+    /** The contributors of the whole collection, which are finished or failed when the windows are collected.*/
+    private final IntegrityContributors integrityContributors;
+    /** The file exchange for retrieving the results delivered as result files. May be null.*/
+    private final FileExchange fileExchange;
+
+    /**
+     * @param store The model where the integrity data is stored.
+     * @param timeout The timeout for waiting for the results of a page.
+     * @param maxNumberOfResultsPerConversation The maximum number of results for each conversation.
+     * @param integrityContributors The contributors of the whole collection. The number of times in a row a
+     * contributor must fail in a window to be marked as failed is taken from these.
+     * @param fileExchange The file exchange for retrieving the results delivered as result files. Null if the
+     * results are delivered in the response messages.
+     */
+    WindowedCollector(IntegrityModel store, long timeout, Integer maxNumberOfResultsPerConversation,
+            IntegrityContributors integrityContributors, FileExchange fileExchange) {
+        this.store = store;
+        this.timeout = timeout;
+        this.maxNumberOfResultsPerConversation = maxNumberOfResultsPerConversation;
+        this.integrityContributors = integrityContributors;
+        this.fileExchange = fileExchange;
+    }
+
+    /**
+     * Starts the collection of a page of results.
+     * @param contributors The contributors to collect from.
+     * @param queries The queries for the page of the window.
+     * @param eventHandler The event handler for the results.
+     */
+    protected abstract void collectPage(Collection<String> contributors, ContributorQuery[] queries,
+            EventHandler eventHandler);
+
+    /**
+     * Moves the collection progress of a contributor forward to the latest result collected in the windows.
+     * @param contributor The contributor.
+     * @param latest The timestamp of the latest result.
+     */
+    protected abstract void advanceProgress(String contributor, Date latest);
+
+    /**
+     * Collects the windows concurrently, and waits for all of them to finish. Afterwards the contributors are
+     * finished and their progress is moved to their latest result, unless they failed in any of the windows. A
+     * failed contributor only has its progress moved up to its latest result in the earliest window it failed in.
+     * If the collection is interrupted or fails, the progress is kept as it was before the windows.
+     * @param windows The windows to collect, ordered by their timestamps.
+     * @return The contributors which failed in any of the windows.
+     * @throws InterruptedException If interrupted while waiting for the windows.
+     */
+    Set<String> collect(List<TimestampWindow> windows) throws InterruptedException {
+        Set<String> contributors = new HashSet<String>();
+        for(TimestampWindow window : windows) {
+            contributors.addAll(window.getContributors());
+        }
+        boolean completed = false;
+        try {
+            List<Set<String>> failedInWindows = collectWindows(windows);
+            Set<String> failedContributors = new HashSet<String>();
+            for(String contributor : contributors) {
+                int failedWindow = getFirstFailedWindow(failedInWindows, contributor);
+                List<TimestampWindow> collectedWindows = windows;
+                if(failedWindow < 0) {
+                    integrityContributors.finishContributor(contributor);
+                } else {
+                    failedContributors.add(contributor);
+                    integrityContributors.failContributorWithoutRetries(contributor);
+                    collectedWindows = windows.subList(0, failedWindow + 1);
+                }
+                Date latest = getLatestTimestamp(collectedWindows, contributor);
+                if(latest != null) {
+                    advanceProgress(contributor, latest);
+                }
+            }
+            completed = true;
+            return failedContributors;
+        } finally {
+            if(!completed) {
+                log.warn("The collection in timestamp windows did not complete. The progress of " + contributors
+                        + " is kept from before the windows.");
+            }
+        }
+    }
+
+    /**
+     * @param failedInWindows The contributors which failed in each of the windows.
+     * @param contributor The contributor.
+     * @return The index of the first window the contributor failed in, or -1 if it did not fail.
+     */
+    private int getFirstFailedWindow(List<Set<String>> failedInWindows, String contributor) {
+        for(int i = 0; i < failedInWindows.size(); i++) {
+            if(failedInWindows.get(i).contains(contributor)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param windows The windows.
+     * @param contributor The contributor.
+     * @return The timestamp of the latest result delivered by the contributor in any of the windows, or null if
+     * none has been delivered.
+     */
+    private Date getLatestTimestamp(List<TimestampWindow> windows, String contributor) {
+        Date latest = null;
+        for(TimestampWindow window : windows) {
+            Date windowLatest = window.getLatestTimestamp(contributor);
+            if(windowLatest != null && (latest == null || windowLatest.after(latest))) {
+                latest = windowLatest;
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Collects the windows concurrently, and waits for all of them to finish.
+     * @param windows The windows to collect.
+     * @return The contributors which failed in each of the windows, in the order of the windows.
+     * @throws InterruptedException If interrupted while waiting for the windows.
+     */
+    private List<Set<String>> collectWindows(List<TimestampWindow> windows) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(windows.size(),
+                new DefaultThreadFactory("WindowedCollector-", Thread.NORM_PRIORITY, true));
+        try {
+            List<Future<Set<String>>> results = new ArrayList<Future<Set<String>>>();
+            for(final TimestampWindow window : windows) {
+                results.add(executor.submit(new Callable<Set<String>>() {
+                    @Override
+                    public Set<String> call() throws Exception {
+                        return collectWindow(window);
+                    }
+                }));
+            }
+
+            List<Set<String>> failedContributors = new ArrayList<Set<String>>();
+            for(int i = 0; i < windows.size(); i++) {
+                try {
+                    failedContributors.add(results.get(i).get());
+                } catch (ExecutionException e) {
+                    log.warn("Failed to collect " + windows.get(i), e.getCause());
+                    failedContributors.add(windows.get(i).getContributors());
+                }
+            }
+            return failedContributors;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Pages through a window until all its contributors have finished or failed.
+     * @param window The window.
+     * @return The contributors which failed in the window.
+     */
+    private Set<String> collectWindow(TimestampWindow window) throws InterruptedException {
+        IntegrityContributors contributors = new IntegrityContributors(window.getContributors(),
+                integrityContributors.getMaxContributorFailures());
+        Set<String> pillarsToCollectFrom = contributors.getActiveContributors();
+        while(!pillarsToCollectFrom.isEmpty()) {
+            IntegrityCollectorEventHandler eventHandler = new IntegrityCollectorEventHandler(store, timeout,
+                    contributors, fileExchange, window, false);
+            collectPage(pillarsToCollectFrom, window.getQueries(pillarsToCollectFrom,
+                    maxNumberOfResultsPerConversation), eventHandler);
+
+            OperationEvent event = eventHandler.getFinish();
+            log.debug("Collection of " + window + " had the final event: " + event);
+            if(event == null) {
+                for(String pillar : pillarsToCollectFrom) {
+                    contributors.failContributor(pillar);
+                }
+            }
+            pillarsToCollectFrom = contributors.getActiveContributors();
+        }
+        return contributors.getFailedContributors();
+    }
+}
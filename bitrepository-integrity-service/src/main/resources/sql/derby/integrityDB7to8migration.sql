@@ -0,0 +1,98 @@
+---
+-- #%L
+-- Bitrepository Integrity Client
+-- %%
+-- Copyright (C) 2010 - 2012 The State and University Library, The Royal Library and The State Archives, Denmark
+-- %%
+-- This program is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU Lesser General Public License as 
+-- published by the Free Software Foundation, either version 2.1 of the 
+-- License, or (at your option) any later version.
+-- 
+-- This program is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Lesser Public License for more details.
+-- 
+-- You should have received a copy of the GNU General Lesser Public 
+-- License along with this program.  If not, see
+-- <http://www.gnu.org/licenses/lgpl-2.1.html>.
+-- #L%
+---
+
+connect 'jdbc:derby:integritydb';
+
+-- Update table versions.
+UPDATE tableversions SET version = 7 WHERE tablename = 'fileinfo';
+UPDATE tableversions SET version = 3 WHERE tablename = 'files';
+UPDATE tableversions SET version = 4 WHERE tablename = 'pillar';
+UPDATE tableversions SET version = 3 WHERE tablename = 'collections';
+UPDATE tableversions SET version = 8 WHERE tablename = 'integritydb';
+
+
+-- Give the collections and pillars compact keys.
+CREATE TABLE collectionkeys (
+    collection_key INT NOT NULL GENERATED ALWAYS AS IDENTITY,
+    collectionID VARCHAR(255) NOT NULL
+);
+INSERT INTO collectionkeys (collectionID) (SELECT collectionID FROM collections);
+ALTER TABLE collections ADD COLUMN collection_key INT;
+UPDATE collections SET collection_key = (SELECT collection_key FROM collectionkeys 
+    WHERE collectionkeys.collectionID = collections.collectionID);
+ALTER TABLE collections ALTER COLUMN collection_key NOT NULL;
+ALTER TABLE collections ADD UNIQUE (collection_key);
+DROP TABLE collectionkeys;
+
+CREATE TABLE pillarkeys (
+    pillar_key INT NOT NULL GENERATED ALWAYS AS IDENTITY,
+    pillarID VARCHAR(100) NOT NULL
+);
+INSERT INTO pillarkeys (pillarID) (SELECT pillarID FROM pillar);
+ALTER TABLE pillar ADD COLUMN pillar_key INT;
+UPDATE pillar SET pillar_key = (SELECT pillar_key FROM pillarkeys WHERE pillarkeys.pillarID = pillar.pillarID);
+ALTER TABLE pillar ALTER COLUMN pillar_key NOT NULL;
+ALTER TABLE pillar ADD UNIQUE (pillar_key);
+DROP TABLE pillarkeys;
+
+
+-- Create the files dictionary.
+CREATE TABLE files (
+    file_key BIGINT NOT NULL GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    collection_key INT NOT NULL,
+    fileID VARCHAR(255) NOT NULL,
+
+    UNIQUE (collection_key, fileID),
+    FOREIGN KEY (collection_key) REFERENCES collections(collection_key)
+);
+INSERT INTO files (collection_key, fileID) 
+    (SELECT DISTINCT collections.collection_key, fileinfo.fileID FROM fileinfo 
+    JOIN collections ON fileinfo.collectionID = collections.collectionID);
+
+
+-- Migrate fileinfo table to the compact keys.
+CREATE TABLE fileinfo2 (
+    file_key BIGINT NOT NULL,
+    pillar_key INT NOT NULL,
+    collection_key INT NOT NULL,
+    filesize BIGINT,
+    checksum VARCHAR(100),
+    file_timestamp BIGINT,
+    checksum_timestamp BIGINT,
+    last_seen_getfileids BIGINT,
+    last_seen_getchecksums BIGINT,
+
+    PRIMARY KEY (file_key, pillar_key)
+);
+INSERT INTO fileinfo2 (file_key, pillar_key, collection_key, filesize, checksum, file_timestamp, checksum_timestamp, last_seen_getfileids, last_seen_getchecksums) 
+    (SELECT files.file_key, pillar.pillar_key, collections.collection_key, filesize, checksum, file_timestamp, checksum_timestamp, last_seen_getfileids, last_seen_getchecksums FROM fileinfo 
+    JOIN collections ON fileinfo.collectionID = collections.collectionID
+    JOIN files ON files.collection_key = collections.collection_key AND files.fileID = fileinfo.fileID
+    JOIN pillar ON fileinfo.pillarID = pillar.pillarID);
+
+DROP TABLE fileinfo;
+RENAME TABLE fileinfo2 TO fileinfo;
+
+ALTER TABLE fileinfo ADD FOREIGN KEY (file_key) REFERENCES files(file_key);
+ALTER TABLE fileinfo ADD FOREIGN KEY (pillar_key) REFERENCES pillar(pillar_key);
+ALTER TABLE fileinfo ADD FOREIGN KEY (collection_key) REFERENCES collections(collection_key);
+CREATE INDEX collectionpillaridx ON fileinfo(collection_key, pillar_key);
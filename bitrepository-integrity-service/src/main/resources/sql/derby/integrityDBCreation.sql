@@ -37,11 +37,11 @@ CREATE TABLE tableversions (
     version INT NOT NULL             -- version of table
 );
 
-INSERT INTO tableversions (tablename, version) VALUES ('fileinfo', 6);
-INSERT INTO tableversions (tablename, version) VALUES ('files', 2);
-INSERT INTO tableversions (tablename, version) VALUES ('pillar', 3);
-INSERT INTO tableversions (tablename, version) VALUES ('collections', 2);
-INSERT INTO tableversions (tablename, version) VALUES ('integritydb', 7);
+INSERT INTO tableversions (tablename, version) VALUES ('fileinfo', 7);
+INSERT INTO tableversions (tablename, version) VALUES ('files', 3);
+INSERT INTO tableversions (tablename, version) VALUES ('pillar', 4);
+INSERT INTO tableversions (tablename, version) VALUES ('collections', 3);
+INSERT INTO tableversions (tablename, version) VALUES ('integritydb', 8);
 INSERT INTO tableversions (tablename, version) VALUES ('stats', 3);
 INSERT INTO tableversions (tablename, version) VALUES ('collectionstats', 3);
 INSERT INTO tableversions (tablename, version) VALUES ('pillarstats', 2);
@@ -54,7 +54,8 @@ INSERT INTO tableversions (tablename, version) VALUES ('collection_progress', 2)
 -- Expected entry count: Few
 --*************************************************************************--
 CREATE TABLE collections (
-    collectionID VARCHAR(255) PRIMARY KEY  -- The id for the collection.
+    collectionID VARCHAR(255) PRIMARY KEY, -- The id for the collection.
+    collection_key INT NOT NULL UNIQUE     -- The compact key for the collection, used in the fileinfo and files tables.
 );
 
 --*************************************************************************--
@@ -64,7 +65,25 @@ CREATE TABLE collections (
 -- Expected entry count: Few
 --*************************************************************************--
 CREATE TABLE pillar (
-    pillarID VARCHAR(100) PRIMARY KEY   -- The id of the pillar.
+    pillarID VARCHAR(100) PRIMARY KEY,  -- The id of the pillar.
+    pillar_key INT NOT NULL UNIQUE      -- The compact key for the pillar, used in the fileinfo table.
+);
+
+--*************************************************************************--
+-- Name:     files
+-- Descr.:   The dictionary of the files in the collections.
+-- Purpose:  Maps the id of a file in a collection to the compact key used 
+--           for the file in the fileinfo table.
+-- Expected entry count: Very many.
+--*************************************************************************--
+CREATE TABLE files (
+    file_key BIGINT NOT NULL GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+                                            -- The compact key for the file.
+    collection_key INT NOT NULL,            -- The key of the collection of the file
+    fileID VARCHAR(255) NOT NULL,           -- The file ID
+
+    UNIQUE (collection_key, fileID),
+    FOREIGN KEY (collection_key) REFERENCES collections(collection_key)
 );
 
 --*************************************************************************--
@@ -76,9 +95,9 @@ CREATE TABLE pillar (
 -- Expected entry count: Very, very many.
 --*************************************************************************--
 CREATE TABLE fileinfo (
-    fileID VARCHAR(255) NOT NULL,           -- The file ID 
-    collectionID VARCHAR(255) NOT NULL,     -- The collection ID
-    pillarID VARCHAR(100) NOT NULL,         -- The pillar ID
+    file_key BIGINT NOT NULL,               -- The key of the file in the files table
+    pillar_key INT NOT NULL,                -- The key of the pillar
+    collection_key INT NOT NULL,            -- The key of the collection of the file
     filesize BIGINT,                        -- Size of the file
     checksum VARCHAR(100),                  -- The checksum of the file
     file_timestamp BIGINT,                  -- The last modified time (millis since epoch) on the pillar
@@ -86,12 +105,13 @@ CREATE TABLE fileinfo (
     last_seen_getfileids BIGINT,            -- The last time (millis since epoch) the file was seen on a list of fileIDs for the pillar
     last_seen_getchecksums BIGINT,          -- The last time (millis since epoch) the files was seen on a list of checksums for the pillar
 
-    PRIMARY KEY (collectionID, pillarID, fileID),
-    FOREIGN KEY (collectionID) REFERENCES collections(collectionID),
-    FOREIGN KEY (pillarID) REFERENCES pillar(pillarID)
+    PRIMARY KEY (file_key, pillar_key),
+    FOREIGN KEY (file_key) REFERENCES files(file_key),
+    FOREIGN KEY (pillar_key) REFERENCES pillar(pillar_key),
+    FOREIGN KEY (collection_key) REFERENCES collections(collection_key)
 );
 
-CREATE INDEX collectionfileidx ON fileinfo(collectionid, fileid);
+CREATE INDEX collectionpillaridx ON fileinfo(collection_key, pillar_key);
 
 --*************************************************************************--
 -- Name:     collection_progress
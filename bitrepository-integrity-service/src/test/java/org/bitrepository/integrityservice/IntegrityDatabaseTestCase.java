@@ -59,6 +59,7 @@ public abstract class IntegrityDatabaseTestCase extends ExtendedTestCase {
     public void clearDatabase() throws Exception {
         DBConnector connector = new DBConnector(settings.getReferenceSettings().getIntegrityServiceSettings().getIntegrityDatabase());
         DatabaseUtils.executeStatement(connector, "DELETE FROM fileinfo", new Object[0]);
+        DatabaseUtils.executeStatement(connector, "DELETE FROM files", new Object[0]);
         DatabaseUtils.executeStatement(connector, "DELETE FROM collection_progress", new Object[0]);
         DatabaseUtils.executeStatement(connector, "DELETE FROM pillarstats", new Object[0]);
         DatabaseUtils.executeStatement(connector, "DELETE FROM collectionstats", new Object[0]);
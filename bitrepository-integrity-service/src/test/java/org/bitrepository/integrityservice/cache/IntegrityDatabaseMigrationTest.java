@@ -0,0 +1,193 @@
+/*
+ * #%L
+ * Bitrepository Integrity Service
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.integrityservice.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.Collection;
+
+import org.bitrepository.common.settings.Settings;
+import org.bitrepository.common.settings.TestSettingsProvider;
+import org.bitrepository.common.utils.SettingsUtils;
+import org.bitrepository.integrityservice.cache.database.IntegrityDatabaseCreator;
+import org.bitrepository.service.database.DBConnector;
+import org.bitrepository.service.database.DatabaseUtils;
+import org.bitrepository.service.database.DerbyDatabaseDestroyer;
+import org.bitrepository.settings.referencesettings.DatabaseSpecifics;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the migration of a version 7 integrity database, where the fileinfo table is keyed by the fileID, 
+ * collectionID and pillarID, to the current version, where the files are kept in the files dictionary.
+ */
+public class IntegrityDatabaseMigrationTest extends ExtendedTestCase {
+    protected Settings settings;
+    
+    static final String PATH_TO_DATABASE = "target/test/integrityservice/integritydb-v7";
+    static final String DATABASE_V7_SCRIPT = "integrityDBv7Creation.sql";
+    
+    static final String PILLAR_1 = "migration-pillar-1";
+    static final String PILLAR_2 = "migration-pillar-2";
+    static final String OTHER_COLLECTION = "migration-other-collection";
+    static final String FILE_1 = "migration-file-1";
+    static final String FILE_2 = "migration-file-2";
+    
+    String TEST_COLLECTION;
+    DBConnector connector;
+    
+    static final String EXTRACT_VERSION_SQL = "SELECT version FROM tableversions WHERE tablename = ?";
+    static final String INSERT_FILEINFO_V7_SQL = "INSERT INTO fileinfo (fileID, collectionID, pillarID, filesize,"
+            + " checksum, file_timestamp, checksum_timestamp, last_seen_getfileids, last_seen_getchecksums)"
+            + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    static final String FILE_KEY_SQL = "SELECT file_key FROM files WHERE fileID = ? AND collection_key = ("
+            + " SELECT collection_key FROM collections WHERE collectionID = ?)";
+    static final String FILEINFO_WHERE = " FROM fileinfo WHERE file_key = (" + FILE_KEY_SQL + ")"
+            + " AND pillar_key = (SELECT pillar_key FROM pillar WHERE pillarID = ?)";
+
+    @BeforeMethod (alwaysRun = true)
+    public void setup() throws Exception {
+        settings = TestSettingsProvider.reloadSettings("IntegrityCheckingUnderTest");
+        org.bitrepository.settings.repositorysettings.Collection c0 = 
+                settings.getRepositorySettings().getCollections().getCollection().get(0);
+        c0.getPillarIDs().getPillarID().clear();
+        c0.getPillarIDs().getPillarID().add(PILLAR_1);
+        c0.getPillarIDs().getPillarID().add(PILLAR_2);
+        settings.getRepositorySettings().getCollections().getCollection().clear();
+        settings.getRepositorySettings().getCollections().getCollection().add(c0);
+        TEST_COLLECTION = c0.getID();
+        SettingsUtils.initialize(settings);
+        
+        DatabaseSpecifics integrityDB = settings.getReferenceSettings().getIntegrityServiceSettings()
+                .getIntegrityDatabase();
+        integrityDB.setDatabaseURL("jdbc:derby:" + PATH_TO_DATABASE);
+        DerbyDatabaseDestroyer.deleteDatabase(integrityDB);
+        
+        IntegrityDatabaseCreator integrityDatabaseCreator = new IntegrityDatabaseCreator();
+        integrityDatabaseCreator.createIntegrityDatabase(settings, DATABASE_V7_SCRIPT);
+        connector = new DBConnector(integrityDB);
+    }
+    
+    @AfterMethod (alwaysRun = true)
+    public void cleanup() throws Exception {
+        if(connector != null) {
+            connector.destroy();
+        }
+        DerbyDatabaseDestroyer.deleteDatabase(
+                settings.getReferenceSettings().getIntegrityServiceSettings().getIntegrityDatabase());
+    }
+    
+    @Test( groups = {"regressiontest", "databasetest", "integritytest"})
+    public void testMigratingIntegrityDatabaseFromVersion7() {
+        addDescription("Tests that a version 7 integrity database is migrated to the files dictionary, with the "
+                + "fileinfo keyed by the file key and pillar key, and that no data is lost.");
+        addStep("Validate setup", "The database has version 7 and the fileinfo table version 6");
+        assertEquals(DatabaseUtils.selectIntValue(connector, EXTRACT_VERSION_SQL, "integritydb"), 
+                Integer.valueOf(7));
+        assertEquals(DatabaseUtils.selectIntValue(connector, EXTRACT_VERSION_SQL, "fileinfo"), Integer.valueOf(6));
+        
+        addStep("Populate the version 7 database", "The same fileID is used in two collections");
+        DatabaseUtils.executeStatement(connector, "INSERT INTO collections (collectionID) VALUES (?)", 
+                TEST_COLLECTION);
+        DatabaseUtils.executeStatement(connector, "INSERT INTO collections (collectionID) VALUES (?)", 
+                OTHER_COLLECTION);
+        DatabaseUtils.executeStatement(connector, "INSERT INTO pillar (pillarID) VALUES (?)", PILLAR_1);
+        DatabaseUtils.executeStatement(connector, "INSERT INTO pillar (pillarID) VALUES (?)", PILLAR_2);
+        DatabaseUtils.executeStatement(connector, INSERT_FILEINFO_V7_SQL, FILE_1, TEST_COLLECTION, PILLAR_1, 
+                100L, "abcd", 1000L, 2000L, 3000L, 4000L);
+        DatabaseUtils.executeStatement(connector, INSERT_FILEINFO_V7_SQL, FILE_1, TEST_COLLECTION, PILLAR_2, 
+                100L, "abcd", 1001L, 2001L, 3001L, 4001L);
+        DatabaseUtils.executeStatement(connector, INSERT_FILEINFO_V7_SQL, FILE_1, OTHER_COLLECTION, PILLAR_1, 
+                300L, "ffff", 1002L, 2002L, 3002L, 4002L);
+        DatabaseUtils.executeStatement(connector, "INSERT INTO fileinfo (fileID, collectionID, pillarID,"
+                + " file_timestamp, last_seen_getfileids) VALUES (?, ?, ?, ?, ?)", 
+                FILE_2, TEST_COLLECTION, PILLAR_1, 1003L, 3003L);
+        
+        addStep("Perform migration", "The database has version 8 and the tables have their new versions");
+        IntegrityDatabaseMigrator migrator = new IntegrityDatabaseMigrator(connector);
+        migrator.migrate();
+        assertEquals(DatabaseUtils.selectIntValue(connector, EXTRACT_VERSION_SQL, "integritydb"), 
+                Integer.valueOf(8));
+        assertEquals(DatabaseUtils.selectIntValue(connector, EXTRACT_VERSION_SQL, "fileinfo"), Integer.valueOf(7));
+        assertEquals(DatabaseUtils.selectIntValue(connector, EXTRACT_VERSION_SQL, "files"), Integer.valueOf(3));
+        assertEquals(DatabaseUtils.selectIntValue(connector, EXTRACT_VERSION_SQL, "pillar"), Integer.valueOf(4));
+        assertEquals(DatabaseUtils.selectIntValue(connector, EXTRACT_VERSION_SQL, "collections"), 
+                Integer.valueOf(3));
+        
+        addStep("Validate the keys of the collections and pillars", "Each has its own key");
+        String collectionKeySql = "SELECT collection_key FROM collections WHERE collectionID = ?";
+        Integer testCollectionKey = DatabaseUtils.selectIntValue(connector, collectionKeySql, TEST_COLLECTION);
+        Integer otherCollectionKey = DatabaseUtils.selectIntValue(connector, collectionKeySql, OTHER_COLLECTION);
+        assertNotEquals(testCollectionKey, otherCollectionKey);
+        String pillarKeySql = "SELECT pillar_key FROM pillar WHERE pillarID = ?";
+        assertNotEquals(DatabaseUtils.selectIntValue(connector, pillarKeySql, PILLAR_1), 
+                DatabaseUtils.selectIntValue(connector, pillarKeySql, PILLAR_2));
+        
+        addStep("Validate the files dictionary", "A file per fileID in each collection");
+        assertEquals(DatabaseUtils.selectLongValue(connector, "SELECT COUNT(*) FROM files", new Object[0]), 
+                Long.valueOf(3));
+        assertEquals(DatabaseUtils.selectLongValue(connector, "SELECT COUNT(*) FROM files WHERE collection_key = ?", 
+                testCollectionKey), Long.valueOf(2));
+        assertNotEquals(DatabaseUtils.selectLongValue(connector, FILE_KEY_SQL, FILE_1, TEST_COLLECTION), 
+                DatabaseUtils.selectLongValue(connector, FILE_KEY_SQL, FILE_1, OTHER_COLLECTION));
+        
+        addStep("Validate the migrated fileinfo", "Every entry is kept, keyed by its file key and pillar key");
+        assertEquals(DatabaseUtils.selectLongValue(connector, "SELECT COUNT(*) FROM fileinfo", new Object[0]), 
+                Long.valueOf(4));
+        assertEquals(DatabaseUtils.selectLongValue(connector, "SELECT filesize" + FILEINFO_WHERE, 
+                FILE_1, TEST_COLLECTION, PILLAR_2), Long.valueOf(100));
+        assertEquals(DatabaseUtils.selectStringValue(connector, "SELECT checksum" + FILEINFO_WHERE, 
+                FILE_1, TEST_COLLECTION, PILLAR_2), "abcd");
+        assertEquals(DatabaseUtils.selectLongValue(connector, "SELECT file_timestamp" + FILEINFO_WHERE, 
+                FILE_1, TEST_COLLECTION, PILLAR_2), Long.valueOf(1001));
+        assertEquals(DatabaseUtils.selectLongValue(connector, "SELECT checksum_timestamp" + FILEINFO_WHERE, 
+                FILE_1, TEST_COLLECTION, PILLAR_2), Long.valueOf(2001));
+        assertEquals(DatabaseUtils.selectLongValue(connector, "SELECT last_seen_getfileids" + FILEINFO_WHERE, 
+                FILE_1, TEST_COLLECTION, PILLAR_2), Long.valueOf(3001));
+        assertEquals(DatabaseUtils.selectLongValue(connector, "SELECT last_seen_getchecksums" + FILEINFO_WHERE, 
+                FILE_1, TEST_COLLECTION, PILLAR_2), Long.valueOf(4001));
+        assertEquals(DatabaseUtils.selectIntValue(connector, "SELECT collection_key" + FILEINFO_WHERE, 
+                FILE_1, OTHER_COLLECTION, PILLAR_1), otherCollectionKey);
+        assertEquals(DatabaseUtils.selectLongValue(connector, "SELECT filesize" + FILEINFO_WHERE, 
+                FILE_1, OTHER_COLLECTION, PILLAR_1), Long.valueOf(300));
+        assertNull(DatabaseUtils.selectStringValue(connector, "SELECT checksum" + FILEINFO_WHERE, 
+                FILE_2, TEST_COLLECTION, PILLAR_1));
+        
+        addStep("Open the migrated database with the integrity model", "The migrated files can be extracted");
+        connector.destroy();
+        connector = null;
+        IntegrityDatabase model = new IntegrityDatabase(settings);
+        Collection<FileInfo> fileInfos = model.getFileInfos(FILE_1, TEST_COLLECTION);
+        assertEquals(fileInfos.size(), 2);
+        for(FileInfo fi : fileInfos) {
+            assertEquals(fi.getFileSize(), Long.valueOf(100));
+            assertEquals(fi.getChecksum(), "abcd");
+        }
+        assertEquals(model.getFileInfos(FILE_1, OTHER_COLLECTION).size(), 1);
+        assertEquals(model.getNumberOfFilesInCollection(TEST_COLLECTION), 2L);
+        assertEquals(model.getCollectionFileSize(TEST_COLLECTION), Long.valueOf(100));
+    }
+}
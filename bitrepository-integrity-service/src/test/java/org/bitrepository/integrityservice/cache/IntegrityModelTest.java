@@ -0,0 +1,797 @@
+/*
+ * #%L
+ * Bitrepository Integrity Service
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.integrityservice.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.bind.JAXBContext;
+
+import org.bitrepository.bitrepositorydata.GetFileIDsResults;
+import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.FileIDsData;
+import org.bitrepository.bitrepositoryelements.FileIDsData.FileIDsDataItems;
+import org.bitrepository.bitrepositoryelements.FileIDsDataItem;
+import org.bitrepository.common.settings.Settings;
+import org.bitrepository.common.settings.TestSettingsProvider;
+import org.bitrepository.common.utils.Base16Utils;
+import org.bitrepository.common.utils.CalendarUtils;
+import org.bitrepository.common.utils.SettingsUtils;
+import org.bitrepository.integrityservice.cache.database.IntegrityIssueIterator;
+import org.bitrepository.integrityservice.collector.GetFileIDsResultsReader;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * The scenarios every {@link IntegrityModel} implementation must fulfill.
+ * The subclasses create the model on top of their store, and delete the store again.
+ */
+public abstract class IntegrityModelTest extends ExtendedTestCase {
+    protected String TEST_PILLAR_1 = "MY-TEST-PILLAR-1";
+    protected String TEST_PILLAR_2 = "MY-TEST-PILLAR-2";
+    protected String EXTRA_PILLAR = "MY-EXTRA-PILLAR";
+
+    protected String TEST_FILE_ID = "TEST-FILE-ID";
+    protected String TEST_CHECKSUM = "1234cccc4321";
+
+    protected String TEST_COLLECTIONID;
+    public static final String EXTRA_COLLECTION = "extra-collection";
+
+    protected Settings settings;
+    protected IntegrityModel model;
+
+    @BeforeMethod (alwaysRun = true)
+    public void setup() throws Exception {
+        settings = TestSettingsProvider.reloadSettings("IntegrityCheckingUnderTest");
+        customizeSettings();
+        SettingsUtils.initialize(settings);
+        TEST_COLLECTIONID = settings.getRepositorySettings().getCollections().getCollection().get(0).getID();
+        model = createModel();
+    }
+
+    @AfterMethod (alwaysRun = true)
+    public void tearDown() throws Exception {
+        if(model != null) {
+            model.close();
+        }
+        deleteModel();
+    }
+
+    /**
+     * Creates the model under test on an empty store. The settings have been initialized.
+     * @return The model.
+     */
+    protected abstract IntegrityModel createModel() throws Exception;
+
+    /**
+     * Deletes the store of the model, after the model has been closed.
+     */
+    protected abstract void deleteModel() throws Exception;
+
+    /**
+     * Uses the first collection with two test pillars, and an extra collection sharing the first pillar.
+     */
+    protected void customizeSettings() {
+        org.bitrepository.settings.repositorysettings.Collection c0 =
+                settings.getRepositorySettings().getCollections().getCollection().get(0);
+        c0.getPillarIDs().getPillarID().clear();
+        c0.getPillarIDs().getPillarID().add(TEST_PILLAR_1);
+        c0.getPillarIDs().getPillarID().add(TEST_PILLAR_2);
+        settings.getRepositorySettings().getCollections().getCollection().clear();
+        settings.getRepositorySettings().getCollections().getCollection().add(c0);
+
+        org.bitrepository.settings.repositorysettings.Collection extraCollection =
+                new org.bitrepository.settings.repositorysettings.Collection();
+        extraCollection.setID(EXTRA_COLLECTION);
+        org.bitrepository.settings.repositorysettings.PillarIDs pids
+            = new org.bitrepository.settings.repositorysettings.PillarIDs();
+        pids.getPillarID().add(TEST_PILLAR_1);
+        pids.getPillarID().add(EXTRA_PILLAR);
+        extraCollection.setPillarIDs(pids);
+        settings.getRepositorySettings().getCollections().getCollection().add(extraCollection);
+    }
+
+    @Test(groups = {"regressiontest", "databasetest", "integritytest"})
+    public void testCorrectDateHandling() throws ParseException  {
+        addDescription("Testing the correct ingest and extraction of file and checksum dates");
+
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
+        Date summertimeTS = sdf.parse("2015-10-25T02:59:54.000+02:00");
+        Date summertimeUnix = new Date(1445734794000L);
+        Assert.assertEquals(summertimeTS, summertimeUnix);
+
+        Date wintertimeTS = sdf.parse("2015-10-25T02:59:54.000+01:00");
+        Date wintertimeUnix = new Date(1445738394000L);
+        Assert.assertEquals(wintertimeTS, wintertimeUnix);
+
+        FileIDsData summertimeData = getFileIDsData("summertime");
+        summertimeData.getFileIDsDataItems().getFileIDsDataItem().get(0)
+            .setLastModificationTime(CalendarUtils.getXmlGregorianCalendar(summertimeTS));
+        FileIDsData wintertimeData = getFileIDsData("wintertime");
+        wintertimeData.getFileIDsDataItems().getFileIDsDataItem().get(0)
+            .setLastModificationTime(CalendarUtils.getXmlGregorianCalendar(wintertimeTS));
+        model.addFileIDs(summertimeData, TEST_PILLAR_1, TEST_COLLECTIONID);
+        model.addFileIDs(wintertimeData, TEST_PILLAR_1, TEST_COLLECTIONID);
+
+        List<ChecksumDataForChecksumSpecTYPE> summertimeCsData = getChecksumResults("summertime", TEST_CHECKSUM);
+        summertimeCsData.get(0).setCalculationTimestamp(CalendarUtils.getXmlGregorianCalendar(summertimeTS));
+        List<ChecksumDataForChecksumSpecTYPE> wintertimeCsData = getChecksumResults("wintertime", TEST_CHECKSUM);
+        wintertimeCsData.get(0).setCalculationTimestamp(CalendarUtils.getXmlGregorianCalendar(wintertimeTS));
+        model.addChecksums(summertimeCsData, TEST_PILLAR_1, TEST_COLLECTIONID);
+        model.addChecksums(wintertimeCsData, TEST_PILLAR_1, TEST_COLLECTIONID);
+
+        List<FileInfo> fis = getFileInfos("summertime", TEST_COLLECTIONID);
+        Assert.assertEquals(fis.size(), 1, fis.toString());
+        Assert.assertEquals(CalendarUtils.convertFromXMLGregorianCalendar(
+                fis.get(0).getDateForLastChecksumCheck()), summertimeUnix);
+
+        fis = getFileInfos("wintertime", TEST_COLLECTIONID);
+        Assert.assertEquals(fis.size(), 1, fis.toString());
+        Assert.assertEquals(CalendarUtils.convertFromXMLGregorianCalendar(
+                fis.get(0).getDateForLastChecksumCheck()), wintertimeUnix);
+    }
+
+    @Test(groups = {"regressiontest", "databasetest", "integritytest"})
+    public void testIngestOfFileIDsData() throws Exception {
+        addDescription("Tests the ingesting of file ids data");
+        Assert.assertEquals(model.getNumberOfFilesInCollection(TEST_COLLECTIONID), 0L);
+        Assert.assertEquals(model.getNumberOfFilesInCollection(EXTRA_COLLECTION), 0L);
+
+        addStep("Create data", "Should be ingested into the store");
+        FileIDsData data1 = getFileIDsData(TEST_FILE_ID);
+        model.addFileIDs(data1, TEST_PILLAR_1, TEST_COLLECTIONID);
+        model.addFileIDs(data1, TEST_PILLAR_2, TEST_COLLECTIONID);
+
+        addStep("Extract the data", "Should be identical to the ingested data");
+        Collection<FileInfo> fileinfos = model.getFileInfos(TEST_FILE_ID, TEST_COLLECTIONID);
+        Assert.assertNotNull(fileinfos);
+        Assert.assertEquals(fileinfos.size(), 2);
+        FileIDsDataItem item = data1.getFileIDsDataItems().getFileIDsDataItem().get(0);
+        for(FileInfo fi : fileinfos) {
+            Assert.assertEquals(fi.getFileId(), TEST_FILE_ID);
+            Assert.assertNull(fi.getChecksum());
+            Assert.assertEquals(fi.getDateForLastChecksumCheck(), CalendarUtils.getEpoch());
+            Assert.assertEquals(fi.getDateForLastFileIDCheck(), item.getLastModificationTime());
+            Assert.assertEquals(fi.getFileSize(), Long.valueOf(item.getFileSize().longValue()));
+        }
+
+        addStep("Check that the extra collection is untouched by the ingest",
+                "should deliver an empty collection and no errors");
+        Assert.assertEquals(model.getNumberOfFilesInCollection(TEST_COLLECTIONID), 1L);
+        Assert.assertEquals(model.getNumberOfFilesInCollection(EXTRA_COLLECTION), 0L);
+    }
+
+    @Test(groups = {"regressiontest", "databasetest", "integritytest"})
+    public void testStreamedIngestOfFileIDsResults() throws Exception {
+        addDescription("Tests the ingesting of file ids streamed from a GetFileIDs result file");
+
+        addStep("Create a result file with three files", "");
+        FileIDsData data = getFileIDsData(TEST_FILE_ID, TEST_FILE_ID + "-2", TEST_FILE_ID + "-3");
+        GetFileIDsResults result = new GetFileIDsResults();
+        result.setCollectionID(TEST_COLLECTIONID);
+        result.setPillarID(TEST_PILLAR_1);
+        result.setFileIDsData(data);
+        ByteArrayOutputStream resultFile = new ByteArrayOutputStream();
+        JAXBContext.newInstance(GetFileIDsResults.class).createMarshaller().marshal(result, resultFile);
+
+        addStep("Stream the result file into the store", "All the files should be ingested with their sizes");
+        try (GetFileIDsResultsReader reader = new GetFileIDsResultsReader(
+                new ByteArrayInputStream(resultFile.toByteArray()))) {
+            model.addFileIDs(reader, TEST_PILLAR_1, TEST_COLLECTIONID);
+        }
+        Assert.assertEquals(model.getNumberOfFilesInCollection(TEST_COLLECTIONID), 3L);
+        Assert.assertEquals(model.getCollectionFileSize(TEST_COLLECTIONID), Long.valueOf(1L + 2L + 3L));
+        Assert.assertEquals(getIssuesFromIterator(model.getFilesOnPillar(TEST_PILLAR_1, 0L, Long.MAX_VALUE,
+                TEST_COLLECTIONID)), Arrays.asList(TEST_FILE_ID, TEST_FILE_ID + "-2", TEST_FILE_ID + "-3"));
+        Assert.assertNotNull(model.getDateForNewestFileEntryForPillar(TEST_PILLAR_1, TEST_COLLECTIONID));
+    }
+
+    @Test(groups = {"regressiontest", "databasetest", "integritytest"})
+    public void testIngestOfChecksumsData() throws Exception {
+        addDescription("Tests the ingesting of checksums data");
+        Assert.assertEquals(model.getNumberOfFilesInCollection(TEST_COLLECTIONID), 0L);
+        Assert.assertEquals(model.getNumberOfFilesInCollection(EXTRA_COLLECTION), 0L);
+
+        addStep("Create data", "Should be ingested into the store");
+        List<ChecksumDataForChecksumSpecTYPE> csData = getChecksumResults(TEST_FILE_ID, TEST_CHECKSUM);
+        model.addChecksums(csData, TEST_PILLAR_1, TEST_COLLECTIONID);
+        model.addChecksums(csData, TEST_PILLAR_2, TEST_COLLECTIONID);
+
+        addStep("Extract the data", "Should be identical to the ingested data");
+        Collection<FileInfo> fileinfos = model.getFileInfos(TEST_FILE_ID, TEST_COLLECTIONID);
+        Assert.assertNotNull(fileinfos);
+        Assert.assertEquals(fileinfos.size(), 2);
+        for(FileInfo fi : fileinfos) {
+            Assert.assertEquals(fi.getFileId(), TEST_FILE_ID);
+            Assert.assertEquals(fi.getChecksum(), TEST_CHECKSUM);
+            Assert.assertEquals(fi.getDateForLastChecksumCheck(), csData.get(0).getCalculationTimestamp());
+        }
+
+        addStep("Check that the extra collection is untouched by the ingest",
+                "should deliver an empty collection and no errors");
+        Assert.assertEquals(model.getNumberOfFilesInCollection(TEST_COLLECTIONID), 1L);
+        Assert.assertEquals(model.getNumberOfFilesInCollection(EXTRA_COLLECTION), 0L);
+    }
+
+    @Test(groups = {"regressiontest", "databasetest", "integritytest"})
+    public void testDeletingEntry() throws Exception {
+        addDescription("Tests the deletion of an FileID entry from a collection. " +
+                "Checks that it does not effect another collection with a fileID equal to the deleted");
+        Collection<FileInfo> fileinfos = model.getFileInfos(TEST_FILE_ID, TEST_COLLECTIONID);
+        Assert.assertNotNull(fileinfos);
+        Assert.assertEquals(fileinfos.size(), 0);
+
+        addStep("Create data", "Should be ingested into the store");
+        FileIDsData data1 = getFileIDsData(TEST_FILE_ID);
+        model.addFileIDs(data1, TEST_PILLAR_1, TEST_COLLECTIONID);
+        model.addFileIDs(data1, TEST_PILLAR_2, TEST_COLLECTIONID);
+
+        model.addFileIDs(data1, TEST_PILLAR_1, EXTRA_COLLECTION);
+        model.addFileIDs(data1, EXTRA_PILLAR, EXTRA_COLLECTION);
+
+        addStep("Ensure that the data is present", "the data is present");
+        Assert.assertEquals(model.getFileInfos(TEST_FILE_ID, TEST_COLLECTIONID).size(), 2);
+        Assert.assertEquals(model.getFileInfos(TEST_FILE_ID, EXTRA_COLLECTION).size(), 2);
+
+        addStep("Delete the entry for the first pillar",
+                "No fileinfos should be extracted from the pillar in the collection.");
+        model.deleteFileIdEntry(TEST_COLLECTIONID, TEST_PILLAR_1, TEST_FILE_ID);
+        List<FileInfo> fis = getFileInfos(TEST_FILE_ID, TEST_COLLECTIONID);
+        Assert.assertEquals(fis.size(), 1);
+        Assert.assertEquals(fis.get(0).getPillarId(), TEST_PILLAR_2);
+
+        addStep("Delete the entry for the second pillar", "No fileinfos should be extracted from the collection.");
+        model.deleteFileIdEntry(TEST_COLLECTIONID, TEST_PILLAR_2, TEST_FILE_ID);
+        Assert.assertEquals(model.getFileInfos(TEST_FILE_ID, TEST_COLLECTIONID).size(), 0);
+
+        addStep("Check that the data in the extra collection is still present", "the data is present");
+        Assert.assertEquals(model.getFileInfos(TEST_FILE_ID, EXTRA_COLLECTION).size(), 2);
+    }
+
+    @Test(groups = {"regressiontest", "databasetest", "integritytest"})
+    public void testDeletingNonExistingEntry() throws Exception {
+        addDescription("Tests the deletion of an nonexisting FileID entry.");
+        String nonexistingFileEntry = "NON-EXISTING-FILE-ENTRY" + new Date().getTime();
+
+        addStep("Create data", "Should be ingested into the store");
+        FileIDsData data1 = getFileIDsData(TEST_FILE_ID);
+        model.addFileIDs(data1, TEST_PILLAR_1, TEST_COLLECTIONID);
+        model.addFileIDs(data1, TEST_PILLAR_2, TEST_COLLECTIONID);
+
+        Assert.assertEquals(model.getFileInfos(nonexistingFileEntry, TEST_COLLECTIONID).size(), 0);
+        Assert.assertEquals(model.getFileInfos(TEST_FILE_ID, TEST_COLLECTIONID).size(), 2);
+
+        addStep("Delete a nonexisting entry", "Should not change the state of the store.");
+        model.deleteFileIdEntry(TEST_COLLECTIONID, TEST_PILLAR_1, nonexistingFileEntry);
+        model.deleteFileIdEntry(TEST_COLLECTIONID, TEST_PILLAR_2, nonexistingFileEntry);
+        Assert.assertEquals(model.getFileInfos(TEST_FILE_ID, TEST_COLLECTIONID).size(), 2);
+        Assert.assertEquals(model.getNumberOfFilesInCollection(TEST_COLLECTIONID), 1L);
+    }
+
+    @Test(groups = {"regressiontest", "databasetest", "integritytest"})
+    public void testFindOrphanFiles() throws Exception {
+        addDescription("Tests the ability to find orphan files.");
+
+        addStep("Create data", "Should be ingested into the store");
+        String orphanFile = "orphan";
+        String existingFile = "existing";
+        FileIDsData data1 = getFileIDsData(existingFile);
+        FileIDsData data3 = getFileIDsData(orphanFile);
+        model.addFileIDs(data1, TEST_PILLAR_1, TEST_COLLECTIONID);
+        model.addFileIDs(data1, TEST_PILLAR_2, TEST_COLLECTIONID);
+        model.addFileIDs(data3, TEST_PILLAR_1, TEST_COLLECTIONID);
+        model.addFileIDs(data3, TEST_PILLAR_2, TEST_COLLECTIONID);
+        Assert.assertEquals(model.getNumberOfFilesInCollection(TEST_COLLECTIONID), 2L);
+        Assert.assertEquals(model.getNumberOfFilesInCollection(EXTRA_COLLECTION), 0L);
+        Thread.sleep(100);
+        Date updateTime = new Date();
+        model.addFileIDs(data1, TEST_PILLAR_1, TEST_COLLECTIONID);
+        model.addFileIDs(data1, TEST_PILLAR_2, TEST_COLLECTIONID);
+        model.addFileIDs(data3, TEST_PILLAR_1, TEST_COLLECTIONID);
+
+        Assert.assertEquals(getIssuesFromIterator(model.findOrphanFiles(TEST_COLLECTIONID, TEST_PILLAR_1,
+                updateTime)), Arrays.asList());
+        Assert.assertEquals(getIssuesFromIterator(model.findOrphanFiles(TEST_COLLECTIONID, TEST_PILLAR_2,
+                updateTime)), Arrays.asList(orphanFile));
+    }
+
+    @Test(groups = {"regressiontest", "databasetest", "integritytest"})
+    public void testFindInconsistentChecksum() throws Exception {
+        addDescription("Testing the localization of inconsistent checksums");
+        String BAD_FILE_ID_1 = "BAD-FILE-1";
+        String BAD_FILE_ID_2 = "BAD-FILE-2";
+        String GOOD_FILE_ID = "GOOD-FILE";
+
+        addStep("Update the store with 2 inconsistent files and one consistent file.",
+                "Ingesting the data into the store");
+        model.addChecksums(getChecksumResults(BAD_FILE_ID_1, "11"), TEST_PILLAR_1, TEST_COLLECTIONID);
+        model.addChecksums(getChecksumResults(BAD_FILE_ID_2, "12"), TEST_PILLAR_1, TEST_COLLECTIONID);
+        model.addChecksums(getChecksumResults(GOOD_FILE_ID, "33"), TEST_PILLAR_1, TEST_COLLECTIONID);
+        model.addChecksums(getChecksumResults(BAD_FILE_ID_1, "21"), TEST_PILLAR_2, TEST_COLLECTIONID);
+        model.addChecksums(getChecksumResults(BAD_FILE_ID_2, "22"), TEST_PILLAR_2, TEST_COLLECTIONID);
+        model.addChecksums(getChecksumResults(GOOD_FILE_ID, "33"), TEST_PILLAR_2, TEST_COLLECTIONID);
+
+        addStep("Find the files with inconsistent checksums", "Bad file 1 and 2");
+        Assert.assertEquals(getIssuesFromIterator(model.getFilesWithInconsistentChecksums(TEST_COLLECTIONID)),
+                Arrays.asList(BAD_FILE_ID_1, BAD_FILE_ID_2));
+    }
+
+    @Test(groups = {"regressiontest", "databasetest", "integritytest"})
+    public void testNoChecksums() throws Exception {
+        addDescription("Testing the checksum validation, when no checksums exists.");
+
+        addStep("Update the store with a file on both pillars, without checksums.",
+                "Ingesting the data into the store");
+        FileIDsData data1 = getFileIDsData(TEST_FILE_ID);
+        model.addFileIDs(data1, TEST_PILLAR_1, TEST_COLLECTIONID);
+        model.addFileIDs(data1, TEST_PILLAR_2, TEST_COLLECTIONID);
+
+        addStep("Finding the files with inconsistent checksums", "No checksum thus no errors");
+        Assert.assertEquals(getIssuesFromIterator(model.getFilesWithInconsistentChecksums(TEST_COLLECTIONID)),
+                Arrays.asList());
+    }
+
+    @Test(groups = {"regressiontest", "databasetest", "integritytest"})
+    public void testMissingChecksums() throws Exception {
+        addDescription("Testing the checksum validation, when only one pillar has a checksum for a file.");
+        Date testStart = new Date();
+        addStep("Update the store with 1 file, missing its checksum on one pillar.",
+                "Ingesting the data into the store");
+        model.addFileIDs(getFileIDsData(TEST_FILE_ID), TEST_PILLAR_1, TEST_COLLECTIONID);
+        model.addFileIDs(getFileIDsData(TEST_FILE_ID), TEST_PILLAR_2, TEST_COLLECTIONID);
+        model.addChecksums(getChecksumResults(TEST_FILE_ID, TEST_CHECKSUM), TEST_PILLAR_1, TEST_COLLECTIONID);
+
+        addStep("Finding the files with inconsistent checksums", "No checksum thus no errors");
+        Assert.assertEquals(getIssuesFromIterator(model.getFilesWithInconsistentChecksums(TEST_COLLECTIONID)),
+                Arrays.asList());
+
+        Assert.assertEquals(getIssuesFromIterator(model.findFilesWithMissingChecksum(TEST_COLLECTIONID,
+                TEST_PILLAR_1, testStart)), Arrays.asList());
+        Assert.assertEquals(getIssuesFromIterator(model.findFilesWithMissingChecksum(TEST_COLLECTIONID,
+                TEST_PILLAR_2, testStart)), Arrays.asList(TEST_FILE_ID));
+    }
+
+    @Test(groups = {"regressiontest", "databasetest", "integritytest"})
+    public void testMissingChecksumsChecksumNotUpdated() throws Exception {
+        addDescription("Testing the checksum validation, when only one pillar has a checksum for a file.");
+        Date testStart = new Date();
+        addStep("Update the store with 1 file, no missing checksums.", "Ingesting the data into the store");
+        model.addFileIDs(getFileIDsData(TEST_FILE_ID), TEST_PILLAR_1, TEST_COLLECTIONID);
+        model.addFileIDs(getFileIDsData(TEST_FILE_ID), TEST_PILLAR_2, TEST_COLLECTIONID);
+        model.addChecksums(getChecksumResults(TEST_FILE_ID, TEST_CHECKSUM), TEST_PILLAR_1, TEST_COLLECTIONID);
+        model.addChecksums(getChecksumResults(TEST_FILE_ID, TEST_CHECKSUM), TEST_PILLAR_2, TEST_COLLECTIONID);
+
+        addStep("Finding the files with inconsistent or missing checksums", "No errors");
+        Assert.assertEquals(getIssuesFromIterator(model.getFilesWithInconsistentChecksums(TEST_COLLECTIONID)),
+                Arrays.asList());
+        Assert.assertEquals(getIssuesFromIterator(model.findFilesWithMissingChecksum(TEST_COLLECTIONID,
+                TEST_PILLAR_1, testStart)), Arrays.asList());
+        Assert.assertEquals(getIssuesFromIterator(model.findFilesWithMissingChecksum(TEST_COLLECTIONID,
+                TEST_PILLAR_2, testStart)), Arrays.asList());
+
+        addStep("Updating the checksum for one pillar, and checking that the other pillars checksum is now missing",
+                "The second pillar is reported to be missing the checksum for the file");
+        Date secondUpdate = new Date();
+        Thread.sleep(1000);
+        model.addChecksums(getChecksumResults(TEST_FILE_ID, TEST_CHECKSUM), TEST_PILLAR_1, TEST_COLLECTIONID);
+        Assert.assertEquals(getIssuesFromIterator(model.getFilesWithInconsistentChecksums(TEST_COLLECTIONID)),
+                Arrays.asList());
+        Assert.assertEquals(getIssuesFromIterator(model.findFilesWithMissingChecksum(TEST_COLLECTIONID,
+                TEST_PILLAR_1, secondUpdate)), Arrays.asList());
+        Assert.assertEquals(getIssuesFromIterator(model.findFilesWithMissingChecksum(TEST_COLLECTIONID,
+                TEST_PILLAR_2, secondUpdate)), Arrays.asList(TEST_FILE_ID));
+    }
+
+    @Test(groups = {"regressiontest", "databasetest", "integritytest"})
+    public void testOutdatedChecksums() throws Exception {
+        addDescription("Testing the checksum validation, when one pillar has an outdated checksum for a file.");
+        Date maxDate = new Date(System.currentTimeMillis() - 10000);
+
+        addStep("Update the store with one file, one pillar having an outdated checksum.",
+                "Ingesting the data into the store");
+        model.addFileIDs(getFileIDsData(TEST_FILE_ID), TEST_PILLAR_1, TEST_COLLECTIONID);
+        model.addFileIDs(getFileIDsData(TEST_FILE_ID), TEST_PILLAR_2, TEST_COLLECTIONID);
+        model.addChecksums(getChecksumResults(TEST_FILE_ID, TEST_CHECKSUM), TEST_PILLAR_1, TEST_COLLECTIONID);
+
+        List<ChecksumDataForChecksumSpecTYPE> checksumData = getChecksumResults(TEST_FILE_ID, TEST_CHECKSUM);
+        checksumData.get(0).setCalculationTimestamp(CalendarUtils.getEpoch());
+        model.addChecksums(checksumData, TEST_PILLAR_2, TEST_COLLECTIONID);
+
+        addStep("Finding the files with inconsistent checksums", "No errors");
+        Assert.assertEquals(getIssuesFromIterator(model.getFilesWithInconsistentChecksums(TEST_COLLECTIONID)),
+                Arrays.asList());
+
+        addStep("Finding the files with outdated checksums", "Only the second pillar has an outdated checksum");
+        Assert.assertEquals(getIssuesFromIterator(model.findChecksumsOlderThan(maxDate, TEST_PILLAR_1,
+                TEST_COLLECTIONID)), Arrays.asList());
+        Assert.assertEquals(getIssuesFromIterator(model.findChecksumsOlderThan(maxDate, TEST_PILLAR_2,
+                TEST_COLLECTIONID)), Arrays.asList(TEST_FILE_ID));
+    }
+
+    @Test(groups = {"regressiontest", "databasetest", "integritytest"})
+    public void testExtractingAllKnownFilesForPillars() throws Exception {
+        addDescription("Tests that known files can be extracted for specific pillars.");
+        String file2 = TEST_FILE_ID + "-2";
+        String file3 = TEST_FILE_ID + "-3";
+
+        addStep("Insert two files into the store for a pillar", "Ingesting the data into the store");
+        model.addFileIDs(getFileIDsData(TEST_FILE_ID, file2), TEST_PILLAR_1, TEST_COLLECTIONID);
+        addStep("Insert a file to the extra collection for the common pillar", "Data is ingested into the store");
+        model.addFileIDs(getFileIDsData(file3), TEST_PILLAR_1, EXTRA_COLLECTION);
+
+        addStep("Extract all the existing file ids for the pillar for collection '" + TEST_COLLECTIONID + "'",
+                "Both file ids is found.");
+        Collection<String> fileIDs = getIssuesFromIterator(model.getFilesOnPillar(TEST_PILLAR_1, 0L,
+                Long.MAX_VALUE, TEST_COLLECTIONID));
+        Assert.assertEquals(fileIDs, Arrays.asList(TEST_FILE_ID, file2));
+
+        addStep("Extract the single fileID for the extra collection", "Only the one file id exists");
+        fileIDs = getIssuesFromIterator(model.getFilesOnPillar(TEST_PILLAR_1, 0L, Long.MAX_VALUE,
+                EXTRA_COLLECTION));
+        Assert.assertEquals(fileIDs, Arrays.asList(file3));
+
+        addStep("Extract all the existing file ids for another pillar", "No files are found.");
+        fileIDs = getIssuesFromIterator(model.getFilesOnPillar(TEST_PILLAR_2, 0L, Long.MAX_VALUE,
+                TEST_COLLECTIONID));
+        Assert.assertTrue(fileIDs.isEmpty());
+    }
+
+    @Test(groups = {"regressiontest", "databasetest", "integritytest"})
+    public void testExtractingAllKnownFilesForPillarsLimits() throws Exception {
+        addDescription("Tests the limits for extracting files for specific pillars.");
+        String file2 = TEST_FILE_ID + "-2";
+
+        addStep("Insert two files into the store for a pillar", "Ingesting the data into the store");
+        model.addFileIDs(getFileIDsData(TEST_FILE_ID, file2), TEST_PILLAR_1, TEST_COLLECTIONID);
+
+        addStep("Extract with a maximum of 1", "The first file.");
+        Assert.assertEquals(getIssuesFromIterator(model.getFilesOnPillar(TEST_PILLAR_1, 0L, 1L,
+                TEST_COLLECTIONID)), Arrays.asList(TEST_FILE_ID));
+
+        addStep("Extract with a minimum of 1 and maximum of infinite", "The last file.");
+        Assert.assertEquals(getIssuesFromIterator(model.getFilesOnPillar(TEST_PILLAR_1, 1L, Long.MAX_VALUE,
+                TEST_COLLECTIONID)), Arrays.asList(file2));
+    }
+
+    @Test(groups = {"regressiontest", "databasetest", "integritytest"})
+    public void testExtractingAllMissingFiles() throws Exception {
+        addDescription("Tests that missing files can be extracted.");
+        String file2 = TEST_FILE_ID + "-2";
+
+        addStep("Insert two files into the store for a pillar, and one of them for the other pillar",
+                "Ingesting the data into the store");
+        model.addFileIDs(getFileIDsData(TEST_FILE_ID, file2), TEST_PILLAR_1, TEST_COLLECTIONID);
+        model.addFileIDs(getFileIDsData(TEST_FILE_ID), TEST_PILLAR_2, TEST_COLLECTIONID);
+
+        addStep("Check the number of files in collection and on pillars",
+                "The collection should have two files, the first pillar two, the second one");
+        Assert.assertEquals(model.getNumberOfFilesInCollection(TEST_COLLECTIONID), 2L);
+        Map<String, PillarCollectionMetric> metrics = model.getPillarCollectionMetrics(TEST_COLLECTIONID);
+        Assert.assertEquals(metrics.get(TEST_PILLAR_1).getPillarFileCount(), 2);
+        Assert.assertEquals(metrics.get(TEST_PILLAR_2).getPillarFileCount(), 1);
+
+        addStep("Extract missing files", "one file should be missing");
+        Assert.assertEquals(getIssuesFromIterator(model.findFilesWithMissingCopies(TEST_COLLECTIONID, 2, 0L, 10L)),
+                Arrays.asList(file2));
+    }
+
+    @Test(groups = {"regressiontest", "databasetest", "integritytest"})
+    public void testExtractingAllMissingFilesForPillarsLimits() throws Exception {
+        addDescription("Tests the limits for extracting missing files for specific pillars.");
+        String file2 = TEST_FILE_ID + "-2";
+        String file3 = TEST_FILE_ID + "-3";
+
+        addStep("Insert three files into the store for a pillar, and one of them for the other pillar",
+                "Ingesting the data into the store");
+        model.addFileIDs(getFileIDsData(TEST_FILE_ID, file2, file3), TEST_PILLAR_1, TEST_COLLECTIONID);
+        model.addFileIDs(getFileIDsData(TEST_FILE_ID), TEST_PILLAR_2, TEST_COLLECTIONID);
+
+        addStep("Extract with a maximum of 1", "The first file.");
+        Assert.assertEquals(getIssuesFromIterator(model.findFilesWithMissingCopies(TEST_COLLECTIONID, 2, 0L, 1L)),
+                Arrays.asList(file2));
+
+        addStep("Extract with a minimum of 1 and maximum of infinite", "The last file.");
+        Assert.assertEquals(getIssuesFromIterator(model.findFilesWithMissingCopies(TEST_COLLECTIONID, 2, 1L,
+                Long.MAX_VALUE)), Arrays.asList(file3));
+    }
+
+    @Test(groups = {"regressiontest", "databasetest", "integritytest"})
+    public void testGetLatestFileDateEntryForCollection() throws Exception {
+        addDescription("Tests that file date entries can be retrieved and manipulated.");
+        Assert.assertNull(model.getDateForNewestFileEntryForPillar(TEST_PILLAR_1, TEST_COLLECTIONID));
+        Assert.assertNull(model.getDateForNewestFileEntryForPillar(TEST_PILLAR_2, TEST_COLLECTIONID));
+
+        addStep("Create data with a later file date on the second pillar", "Should be ingested into the store");
+        FileIDsData fidsPillar1 = getFileIDsData(TEST_FILE_ID);
+        Date expectedLatestFileDatePillar1 = CalendarUtils.convertFromXMLGregorianCalendar(
+                fidsPillar1.getFileIDsDataItems().getFileIDsDataItem().get(0).getLastModificationTime());
+        model.addFileIDs(fidsPillar1, TEST_PILLAR_1, TEST_COLLECTIONID);
+
+        FileIDsData fidsPillar2 = getFileIDsData(TEST_FILE_ID);
+        Date expectedLatestFileDatePillar2 = new Date(expectedLatestFileDatePillar1.getTime() + 100);
+        fidsPillar2.getFileIDsDataItems().getFileIDsDataItem().get(0)
+            .setLastModificationTime(CalendarUtils.getXmlGregorianCalendar(expectedLatestFileDatePillar2));
+        model.addFileIDs(fidsPillar2, TEST_PILLAR_2, TEST_COLLECTIONID);
+
+        Assert.assertEquals(model.getDateForNewestFileEntryForPillar(TEST_PILLAR_1, TEST_COLLECTIONID),
+                expectedLatestFileDatePillar1);
+        Assert.assertEquals(model.getDateForNewestFileEntryForPillar(TEST_PILLAR_2, TEST_COLLECTIONID),
+                expectedLatestFileDatePillar2);
+        Assert.assertEquals(model.getDateForNewestFileEntryForCollection(TEST_COLLECTIONID),
+                expectedLatestFileDatePillar2);
+
+        addStep("Reset the file collection progress", "No file dates are known");
+        model.resetFileCollectionProgress(TEST_COLLECTIONID);
+        Assert.assertNull(model.getDateForNewestFileEntryForPillar(TEST_PILLAR_1, TEST_COLLECTIONID));
+        Assert.assertNull(model.getDateForNewestFileEntryForPillar(TEST_PILLAR_2, TEST_COLLECTIONID));
+    }
+
+    @Test(groups = {"regressiontest", "databasetest", "integritytest"})
+    public void testGetLatestChecksumDateEntryForCollection() throws Exception {
+        addDescription("Tests that checksum date entries can be retrieved and manipulated.");
+        Assert.assertNull(model.getDateForNewestChecksumEntryForPillar(TEST_PILLAR_1, TEST_COLLECTIONID));
+        Assert.assertNull(model.getDateForNewestChecksumEntryForPillar(TEST_PILLAR_2, TEST_COLLECTIONID));
+
+        addStep("Create data", "Should be ingested into the store");
+        List<ChecksumDataForChecksumSpecTYPE> csData = getChecksumResults(TEST_FILE_ID, TEST_CHECKSUM);
+        model.addChecksums(csData, TEST_PILLAR_1, TEST_COLLECTIONID);
+        model.addChecksums(csData, TEST_PILLAR_2, TEST_COLLECTIONID);
+        Date expectedLatestChecksum
+            = CalendarUtils.convertFromXMLGregorianCalendar(csData.get(0).getCalculationTimestamp());
+        Assert.assertEquals(model.getDateForNewestChecksumEntryForPillar(TEST_PILLAR_1, TEST_COLLECTIONID),
+                expectedLatestChecksum);
+        Assert.assertEquals(model.getDateForNewestChecksumEntryForPillar(TEST_PILLAR_2, TEST_COLLECTIONID),
+                expectedLatestChecksum);
+
+        addStep("Reset the checksum collection progress", "No checksum dates are known");
+        model.resetChecksumCollectionProgress(TEST_COLLECTIONID);
+        Assert.assertNull(model.getDateForNewestChecksumEntryForPillar(TEST_PILLAR_1, TEST_COLLECTIONID));
+        Assert.assertNull(model.getDateForNewestChecksumEntryForPillar(TEST_PILLAR_2, TEST_COLLECTIONID));
+    }
+
+    @Test(groups = {"regressiontest", "databasetest", "integritytest"})
+    public void testCollectionProgressOfSinglePillar() throws Exception {
+        addDescription("Tests that the collection progress of a single pillar can be held back, moved and reset.");
+        FileIDsData fileIDsData = getFileIDsData(TEST_FILE_ID);
+        Date fileDate = CalendarUtils.convertFromXMLGregorianCalendar(
+                fileIDsData.getFileIDsDataItems().getFileIDsDataItem().get(0).getLastModificationTime());
+        List<ChecksumDataForChecksumSpecTYPE> csData = getChecksumResults(TEST_FILE_ID, TEST_CHECKSUM);
+        Date checksumDate = CalendarUtils.convertFromXMLGregorianCalendar(csData.get(0).getCalculationTimestamp());
+
+        addStep("Add data to both pillars without moving the progress", "The data is stored, but no dates are known");
+        for(String pillar : Arrays.asList(TEST_PILLAR_1, TEST_PILLAR_2)) {
+            model.addFileIDsWithoutProgress(fileIDsData.getFileIDsDataItems().getFileIDsDataItem().iterator(),
+                    pillar, TEST_COLLECTIONID);
+            model.addChecksumsWithoutProgress(csData, pillar, TEST_COLLECTIONID);
+        }
+        Assert.assertEquals(model.getFileInfos(TEST_FILE_ID, TEST_COLLECTIONID).size(), 2);
+        for(String pillar : Arrays.asList(TEST_PILLAR_1, TEST_PILLAR_2)) {
+            Assert.assertNull(model.getDateForNewestFileEntryForPillar(pillar, TEST_COLLECTIONID));
+            Assert.assertNull(model.getDateForNewestChecksumEntryForPillar(pillar, TEST_COLLECTIONID));
+        }
+
+        addStep("Move the progress of both pillars", "The dates are known");
+        for(String pillar : Arrays.asList(TEST_PILLAR_1, TEST_PILLAR_2)) {
+            model.advanceFileCollectionProgress(pillar, TEST_COLLECTIONID, fileDate);
+            model.advanceChecksumCollectionProgress(pillar, TEST_COLLECTIONID, checksumDate);
+            Assert.assertEquals(model.getDateForNewestFileEntryForPillar(pillar, TEST_COLLECTIONID), fileDate);
+            Assert.assertEquals(model.getDateForNewestChecksumEntryForPillar(pillar, TEST_COLLECTIONID),
+                    checksumDate);
+        }
+
+        addStep("Move the progress back in time", "The progress is unchanged");
+        model.advanceFileCollectionProgress(TEST_PILLAR_1, TEST_COLLECTIONID, new Date(fileDate.getTime() - 1));
+        model.advanceChecksumCollectionProgress(TEST_PILLAR_1, TEST_COLLECTIONID,
+                new Date(checksumDate.getTime() - 1));
+        Assert.assertEquals(model.getDateForNewestFileEntryForPillar(TEST_PILLAR_1, TEST_COLLECTIONID), fileDate);
+        Assert.assertEquals(model.getDateForNewestChecksumEntryForPillar(TEST_PILLAR_1, TEST_COLLECTIONID),
+                checksumDate);
+
+        addStep("Reset the progress of the first pillar", "Only the dates of the second pillar are known");
+        model.resetFileCollectionProgress(TEST_PILLAR_1, TEST_COLLECTIONID);
+        model.resetChecksumCollectionProgress(TEST_PILLAR_1, TEST_COLLECTIONID);
+        Assert.assertNull(model.getDateForNewestFileEntryForPillar(TEST_PILLAR_1, TEST_COLLECTIONID));
+        Assert.assertNull(model.getDateForNewestChecksumEntryForPillar(TEST_PILLAR_1, TEST_COLLECTIONID));
+        Assert.assertEquals(model.getDateForNewestFileEntryForPillar(TEST_PILLAR_2, TEST_COLLECTIONID), fileDate);
+        Assert.assertEquals(model.getDateForNewestChecksumEntryForPillar(TEST_PILLAR_2, TEST_COLLECTIONID),
+                checksumDate);
+    }
+
+    @Test(groups = {"regressiontest", "databasetest", "integritytest"})
+    public void testExtractCollectionFileSize() throws Exception {
+        addDescription("Tests that the accumulated size of the collection can be extracted");
+
+        addStep("Insert test data into the store", "Data is ingested");
+        String file2 = TEST_FILE_ID + "-2";
+        String file3 = TEST_FILE_ID + "-3";
+        Long size1 = new Long(100);
+        Long size2 = new Long(200);
+        Long size3 = new Long(300);
+        FileIDsData data1 = makeFileIDsDataWithGivenFileSize(TEST_FILE_ID, size1);
+        FileIDsData data2 = makeFileIDsDataWithGivenFileSize(file2, size2);
+        FileIDsData data3 = makeFileIDsDataWithGivenFileSize(file3, size3);
+        model.addFileIDs(data1, TEST_PILLAR_1, TEST_COLLECTIONID);
+        model.addFileIDs(data2, TEST_PILLAR_1, TEST_COLLECTIONID);
+        model.addFileIDs(data2, TEST_PILLAR_2, TEST_COLLECTIONID);
+        model.addFileIDs(data3, TEST_PILLAR_2, TEST_COLLECTIONID);
+
+        Map<String, PillarCollectionMetric> metrics = model.getPillarCollectionMetrics(TEST_COLLECTIONID);
+        addStep("Check the reported size of the first pillar in the collection",
+                "The reported size matches the precalculated");
+        Assert.assertEquals(metrics.get(TEST_PILLAR_1).getPillarCollectionSize(), size1 + size2);
+        addStep("Check the reported size of the second pillar in the collection",
+                "The reported size matches the precalculated");
+        Assert.assertEquals(metrics.get(TEST_PILLAR_2).getPillarCollectionSize(), size2 + size3);
+        addStep("Check the reported size of the whole collection", "The reported size matches the precalculated");
+        Assert.assertEquals(model.getCollectionFileSize(TEST_COLLECTIONID), Long.valueOf(size1 + size2 + size3));
+    }
+
+    @Test(groups = {"regressiontest", "databasetest", "integritytest"})
+    public void testCollectionMetricsMatchReconciliation() throws Exception {
+        addDescription("Tests that the collection metrics maintained as files are added and removed, are the same "
+                + "as the metrics recalculated from the store.");
+        String file2 = TEST_FILE_ID + "-2";
+        String file3 = TEST_FILE_ID + "-3";
+        Long size1 = new Long(100);
+        Long size2 = new Long(200);
+        assertMetricsMatchReconciliation(0L, 0L);
+
+        addStep("Insert two files on the first pillar, and one of them on the second pillar",
+                "The metrics include the new files");
+        model.addFileIDs(makeFileIDsDataWithGivenFileSize(TEST_FILE_ID, size1), TEST_PILLAR_1, TEST_COLLECTIONID);
+        model.addFileIDs(makeFileIDsDataWithGivenFileSize(file2, size2), TEST_PILLAR_1, TEST_COLLECTIONID);
+        model.addFileIDs(makeFileIDsDataWithGivenFileSize(file2, size2), TEST_PILLAR_2, TEST_COLLECTIONID);
+        assertMetricsMatchReconciliation(2L, size1 + size2);
+
+        addStep("Insert a checksum for a new file on the second pillar", "The file is counted without a size");
+        model.addChecksums(getChecksumResults(file3, TEST_CHECKSUM), TEST_PILLAR_2, TEST_COLLECTIONID);
+        assertMetricsMatchReconciliation(3L, size1 + size2);
+
+        addStep("Remove the copies of the second file one at a time",
+                "The file is only removed from the collection metrics with the last copy");
+        model.deleteFileIdEntry(TEST_COLLECTIONID, TEST_PILLAR_1, file2);
+        assertMetricsMatchReconciliation(3L, size1 + size2);
+        model.deleteFileIdEntry(TEST_COLLECTIONID, TEST_PILLAR_2, file2);
+        assertMetricsMatchReconciliation(2L, size1);
+    }
+
+    /**
+     * Asserts the metrics of the test collection, and that they are unchanged when they are recalculated from the
+     * store.
+     */
+    private void assertMetricsMatchReconciliation(long expectedFileCount, long expectedSize) {
+        long fileCount = model.getNumberOfFilesInCollection(TEST_COLLECTIONID);
+        Long size = model.getCollectionFileSize(TEST_COLLECTIONID);
+        Map<String, PillarCollectionMetric> metrics = model.getPillarCollectionMetrics(TEST_COLLECTIONID);
+        Assert.assertEquals(fileCount, expectedFileCount);
+        Assert.assertEquals(size, Long.valueOf(expectedSize));
+
+        model.reconcileCollectionMetrics(TEST_COLLECTIONID);
+        Assert.assertEquals(model.getNumberOfFilesInCollection(TEST_COLLECTIONID), fileCount);
+        Assert.assertEquals(model.getCollectionFileSize(TEST_COLLECTIONID), size);
+        Map<String, PillarCollectionMetric> reconciledMetrics
+            = model.getPillarCollectionMetrics(TEST_COLLECTIONID);
+        Assert.assertEquals(metrics.keySet(), reconciledMetrics.keySet());
+        for(String pillarID : metrics.keySet()) {
+            Assert.assertEquals(metrics.get(pillarID).getPillarFileCount(),
+                    reconciledMetrics.get(pillarID).getPillarFileCount());
+            Assert.assertEquals(metrics.get(pillarID).getPillarCollectionSize(),
+                    reconciledMetrics.get(pillarID).getPillarCollectionSize());
+        }
+    }
+
+    @Test(groups = {"regressiontest", "databasetest", "integritytest"})
+    public void testGetFileIDAtIndex() throws Exception {
+        addDescription("Tests that a fileID at a given index can be extracted.");
+
+        addStep("Extract a fileID from the empty store", "Returns a null");
+        Assert.assertNull(model.getFileIDAtPosition(TEST_COLLECTIONID, 0L));
+
+        addStep("Insert test data into the store", "Data is ingested");
+        FileIDsData data = makeFileIDsDataWithGivenFileSize(TEST_FILE_ID, 100L);
+        model.addFileIDs(data, TEST_PILLAR_1, TEST_COLLECTIONID);
+        model.addFileIDs(data, TEST_PILLAR_2, TEST_COLLECTIONID);
+
+        addStep("Extract the first fileID", "The inserted fileID");
+        Assert.assertEquals(model.getFileIDAtPosition(TEST_COLLECTIONID, 0L), TEST_FILE_ID);
+
+        addStep("Extract a fileID at an incomprehendable index from the store", "Returns a null");
+        Assert.assertNull(model.getFileIDAtPosition(TEST_COLLECTIONID, Long.MAX_VALUE));
+    }
+
+    protected FileIDsData makeFileIDsDataWithGivenFileSize(String fileID, Long size) {
+        FileIDsData res = new FileIDsData();
+        FileIDsDataItems items = new FileIDsDataItems();
+        FileIDsDataItem dataItem = new FileIDsDataItem();
+        dataItem.setFileID(fileID);
+        dataItem.setFileSize(BigInteger.valueOf(size));
+        dataItem.setLastModificationTime(CalendarUtils.getNow());
+        items.getFileIDsDataItem().add(dataItem);
+        res.setFileIDsDataItems(items);
+        return res;
+    }
+
+    protected List<ChecksumDataForChecksumSpecTYPE> getChecksumResults(String fileID, String checksum) {
+        List<ChecksumDataForChecksumSpecTYPE> res = new ArrayList<ChecksumDataForChecksumSpecTYPE>();
+
+        ChecksumDataForChecksumSpecTYPE csData = new ChecksumDataForChecksumSpecTYPE();
+        csData.setChecksumValue(Base16Utils.encodeBase16(checksum));
+        csData.setCalculationTimestamp(CalendarUtils.getNow());
+        csData.setFileID(fileID);
+        res.add(csData);
+        return res;
+    }
+
+    protected FileIDsData getFileIDsDataWithoutSizes(String... fileIDs) {
+        FileIDsData res = getFileIDsData(fileIDs);
+        for(FileIDsDataItem dataItem : res.getFileIDsDataItems().getFileIDsDataItem()) {
+            dataItem.setFileSize(null);
+        }
+        return res;
+    }
+
+    protected FileIDsData getFileIDsData(String... fileIDs) {
+        FileIDsData res = new FileIDsData();
+        FileIDsDataItems items = new FileIDsDataItems();
+
+        for(String fileID : fileIDs) {
+            FileIDsDataItem dataItem = new FileIDsDataItem();
+            dataItem.setFileID(fileID);
+            dataItem.setFileSize(BigInteger.valueOf(items.getFileIDsDataItem().size() + 1));
+            dataItem.setLastModificationTime(CalendarUtils.getNow());
+            items.getFileIDsDataItem().add(dataItem);
+        }
+
+        res.setFileIDsDataItems(items);
+        return res;
+    }
+
+    private List<FileInfo> getFileInfos(String fileID, String collectionID) {
+        return new ArrayList<FileInfo>(model.getFileInfos(fileID, collectionID));
+    }
+
+    /**
+     * This is not the way to handle the iterators, as the lists might grow really long.
+     * It's here to make the tests simple, and can be done as there's only small amounts of test data in the tests.
+     */
+    protected List<String> getIssuesFromIterator(IntegrityIssueIterator it) {
+        List<String> issues = new ArrayList<String>();
+        String issue = null;
+        while((issue = it.getNextIntegrityIssue()) != null) {
+            issues.add(issue);
+        }
+
+        return issues;
+    }
+}
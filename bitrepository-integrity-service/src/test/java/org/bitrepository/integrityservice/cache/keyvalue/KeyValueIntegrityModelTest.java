@@ -0,0 +1,148 @@
+/*
+ * #%L
+ * Bitrepository Integrity Service
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.integrityservice.cache.keyvalue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+import org.bitrepository.integrityservice.cache.FileInfo;
+import org.bitrepository.integrityservice.cache.IntegrityModel;
+import org.bitrepository.integrityservice.cache.IntegrityModelTest;
+import org.bitrepository.integrityservice.cache.PillarCollectionMetric;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Runs the {@link IntegrityModelTest} scenarios against the {@link KeyValueIntegrityModel}, and tests the parts
+ * specific to the key-value store.
+ */
+public class KeyValueIntegrityModelTest extends IntegrityModelTest {
+    private File storeFile;
+
+    @Override
+    protected IntegrityModel createModel() throws Exception {
+        storeFile = File.createTempFile("integrity", ".db");
+        storeFile.delete();
+        return new KeyValueIntegrityModel(storeFile);
+    }
+
+    @Override
+    protected void deleteModel() {
+        for(File file : storeFile.getParentFile().listFiles()) {
+            if(file.getName().startsWith(storeFile.getName())) {
+                file.delete();
+            }
+        }
+    }
+
+    @Test(groups = {"regressiontest", "integritytest"})
+    public void ingestFileIDsTest() {
+        addDescription("Tests the ingest of fileIDs in the key-value store.");
+        addStep("Add two files to the first pillar and one to the second", "The files are found on the pillars");
+        model.addFileIDs(getFileIDsData(TEST_FILE_ID, TEST_FILE_ID + "-2"), TEST_PILLAR_1, TEST_COLLECTIONID);
+        model.addFileIDs(getFileIDsData(TEST_FILE_ID), TEST_PILLAR_2, TEST_COLLECTIONID);
+
+        Collection<FileInfo> infos = model.getFileInfos(TEST_FILE_ID, TEST_COLLECTIONID);
+        Assert.assertEquals(infos.size(), 2);
+        for(FileInfo info : infos) {
+            Assert.assertEquals(info.getFileId(), TEST_FILE_ID);
+            Assert.assertEquals(info.getFileSize(), Long.valueOf(1));
+            Assert.assertNull(info.getChecksum());
+        }
+        Assert.assertEquals(getIssuesFromIterator(model.getFilesOnPillar(TEST_PILLAR_1, 0, 10,
+                TEST_COLLECTIONID)), Arrays.asList(TEST_FILE_ID, TEST_FILE_ID + "-2"));
+        Assert.assertEquals(getIssuesFromIterator(model.getFilesOnPillar(TEST_PILLAR_1, 1, 10,
+                TEST_COLLECTIONID)), Arrays.asList(TEST_FILE_ID + "-2"));
+        Assert.assertNotNull(model.getDateForNewestFileEntryForPillar(TEST_PILLAR_1, TEST_COLLECTIONID));
+
+        addStep("Check the collection metrics", "Both files are counted once in the collection");
+        Assert.assertEquals(model.getNumberOfFilesInCollection(TEST_COLLECTIONID), 2);
+        Assert.assertEquals(model.getCollectionFileSize(TEST_COLLECTIONID), Long.valueOf(3));
+        Map<String, PillarCollectionMetric> metrics = model.getPillarCollectionMetrics(TEST_COLLECTIONID);
+        Assert.assertEquals(metrics.get(TEST_PILLAR_1).getPillarFileCount(), 2);
+        Assert.assertEquals(metrics.get(TEST_PILLAR_2).getPillarFileCount(), 1);
+        Assert.assertEquals(model.getFileIDAtPosition(TEST_COLLECTIONID, 1L), TEST_FILE_ID + "-2");
+
+        addStep("Find the files with missing copies", "The file only found on the first pillar");
+        Assert.assertEquals(getIssuesFromIterator(model.findFilesWithMissingCopies(TEST_COLLECTIONID, 2, 0L,
+                10L)), Arrays.asList(TEST_FILE_ID + "-2"));
+
+        addStep("Delete the file from the first pillar", "The file is no longer counted for the pillar");
+        model.deleteFileIdEntry(TEST_COLLECTIONID, TEST_PILLAR_1, TEST_FILE_ID + "-2");
+        Assert.assertEquals(model.getNumberOfFilesInCollection(TEST_COLLECTIONID), 1);
+        Assert.assertEquals(model.getPillarCollectionMetrics(TEST_COLLECTIONID).get(TEST_PILLAR_1)
+                .getPillarFileCount(), 1);
+    }
+
+    @Test(groups = {"regressiontest", "integritytest"})
+    public void ingestForUnknownPillarTest() {
+        addDescription("Tests that updates for pillars outside the collection are ignored.");
+        model.addFileIDs(getFileIDsData(TEST_FILE_ID), "UNKNOWN-PILLAR", TEST_COLLECTIONID);
+        Assert.assertTrue(model.getFileInfos(TEST_FILE_ID, TEST_COLLECTIONID).isEmpty());
+        Assert.assertEquals(model.getNumberOfFilesInCollection(TEST_COLLECTIONID), 0);
+    }
+
+    @Test(groups = {"regressiontest", "integritytest"})
+    public void checksumTest() {
+        addDescription("Tests the ingest and checks of checksums in the key-value store.");
+        addStep("Add the file to both pillars, and a checksum only for the first pillar",
+                "The checksum is missing on the second pillar");
+        model.addFileIDs(getFileIDsData(TEST_FILE_ID), TEST_PILLAR_1, TEST_COLLECTIONID);
+        model.addFileIDs(getFileIDsData(TEST_FILE_ID), TEST_PILLAR_2, TEST_COLLECTIONID);
+        model.addChecksums(getChecksumResults(TEST_FILE_ID, TEST_CHECKSUM), TEST_PILLAR_1, TEST_COLLECTIONID);
+        Assert.assertTrue(getIssuesFromIterator(model.findFilesWithMissingChecksum(TEST_COLLECTIONID,
+                TEST_PILLAR_1, new Date(0))).isEmpty());
+        Assert.assertEquals(getIssuesFromIterator(model.findFilesWithMissingChecksum(TEST_COLLECTIONID,
+                TEST_PILLAR_2, new Date(0))), Arrays.asList(TEST_FILE_ID));
+        Assert.assertEquals(getIssuesFromIterator(model.findChecksumsOlderThan(
+                new Date(System.currentTimeMillis() + 10000), TEST_PILLAR_1, TEST_COLLECTIONID)),
+                Arrays.asList(TEST_FILE_ID));
+
+        addStep("Add another checksum for the second pillar", "The checksums of the file are inconsistent");
+        model.addChecksums(getChecksumResults(TEST_FILE_ID, "abcdef"), TEST_PILLAR_2, TEST_COLLECTIONID);
+        Assert.assertEquals(getIssuesFromIterator(model.getFilesWithInconsistentChecksums(TEST_COLLECTIONID)),
+                Arrays.asList(TEST_FILE_ID));
+
+        addStep("Add the same checksum for the second pillar", "The checksums of the file are consistent");
+        model.addChecksums(getChecksumResults(TEST_FILE_ID, TEST_CHECKSUM), TEST_PILLAR_2, TEST_COLLECTIONID);
+        Assert.assertTrue(getIssuesFromIterator(model.getFilesWithInconsistentChecksums(TEST_COLLECTIONID))
+                .isEmpty());
+        for(FileInfo info : model.getFileInfos(TEST_FILE_ID, TEST_COLLECTIONID)) {
+            Assert.assertEquals(info.getChecksum(), TEST_CHECKSUM);
+        }
+    }
+
+    @Test(groups = {"regressiontest", "integritytest"})
+    public void persistenceTest() {
+        addDescription("Tests that the integrity information is kept when the store is reopened.");
+        model.addFileIDs(getFileIDsData(TEST_FILE_ID), TEST_PILLAR_1, TEST_COLLECTIONID);
+        model.close();
+
+        model = new KeyValueIntegrityModel(storeFile);
+        Assert.assertEquals(model.getFileInfos(TEST_FILE_ID, TEST_COLLECTIONID).size(), 1);
+        Assert.assertEquals(model.getNumberOfFilesInCollection(TEST_COLLECTIONID), 1);
+        Assert.assertNotNull(model.getDateForNewestFileEntryForCollection(TEST_COLLECTIONID));
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * #%L
+ * Bitrepository Integrity Service
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.integrityservice.cache.keyvalue;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.FileIDsData;
+import org.bitrepository.bitrepositoryelements.FileIDsData.FileIDsDataItems;
+import org.bitrepository.bitrepositoryelements.FileIDsDataItem;
+import org.bitrepository.common.utils.Base16Utils;
+import org.bitrepository.common.utils.CalendarUtils;
+import org.bitrepository.integrityservice.IntegrityDatabaseTestCase;
+import org.bitrepository.integrityservice.cache.CollectionStat;
+import org.bitrepository.integrityservice.cache.FileInfo;
+import org.bitrepository.integrityservice.cache.IntegrityDatabase;
+import org.bitrepository.integrityservice.cache.IntegrityModel;
+import org.bitrepository.integrityservice.cache.PillarCollectionMetric;
+import org.bitrepository.integrityservice.cache.PillarCollectionStat;
+import org.bitrepository.integrityservice.cache.database.IntegrityIssueIterator;
+import org.bitrepository.integrityservice.statistics.StatisticsCollector;
+import org.bitrepository.service.database.DBConnector;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class KeyValueStoreMigratorTest extends IntegrityDatabaseTestCase {
+    private static final String TEST_PILLAR_1 = "MY-TEST-PILLAR-1";
+    private static final String TEST_PILLAR_2 = "MY-TEST-PILLAR-2";
+    private static final String FILE_1 = "TEST-FILE-1";
+    private static final String FILE_2 = "TEST-FILE-2";
+    private static final String FILE_3 = "TEST-FILE-3";
+
+    private String collectionID;
+    private File storeFile;
+    private KeyValueIntegrityModel store;
+
+    @BeforeMethod (alwaysRun = true)
+    @Override
+    public void setup() throws Exception {
+        super.setup();
+        collectionID = settings.getRepositorySettings().getCollections().getCollection().get(0).getID();
+        storeFile = File.createTempFile("integrity", ".db");
+        storeFile.delete();
+    }
+
+    @AfterMethod (alwaysRun = true)
+    public void deleteStore() {
+        if(store != null) {
+            store.close();
+        }
+        for(File file : storeFile.getParentFile().listFiles()) {
+            if(file.getName().startsWith(storeFile.getName())) {
+                file.delete();
+            }
+        }
+    }
+
+    @Override
+    protected void customizeSettings() {
+        org.bitrepository.settings.repositorysettings.Collection c0 =
+                settings.getRepositorySettings().getCollections().getCollection().get(0);
+        c0.getPillarIDs().getPillarID().clear();
+        c0.getPillarIDs().getPillarID().add(TEST_PILLAR_1);
+        c0.getPillarIDs().getPillarID().add(TEST_PILLAR_2);
+    }
+
+    @Test(groups = {"regressiontest", "databasetest", "integritytest"})
+    public void migrateTest() {
+        addDescription("Tests that the content of an integrity database is the same, when it has been migrated "
+                + "into a key-value store.");
+        addStep("Add files, checksums and statistics to the integrity database",
+                "The third file is only known from a checksum, and the checksums of the first file differ");
+        IntegrityModel database = new IntegrityDatabase(settings);
+        database.addFileIDs(getFileIDsData(FILE_1, FILE_2), TEST_PILLAR_1, collectionID);
+        database.addFileIDs(getFileIDsData(FILE_1), TEST_PILLAR_2, collectionID);
+        database.addChecksums(getChecksumResults(FILE_1, "1111"), TEST_PILLAR_1, collectionID);
+        database.addChecksums(getChecksumResults(FILE_1, "2222"), TEST_PILLAR_2, collectionID);
+        database.addChecksums(getChecksumResults(FILE_3, "3333"), TEST_PILLAR_2, collectionID);
+        database.createStatistics(collectionID, createStatistics(3L, 3L));
+        database.createStatistics(collectionID, createStatistics(4L, 5L));
+
+        addStep("Migrate the database into a new key-value store", "All the file entries are migrated");
+        store = new KeyValueIntegrityModel(storeFile);
+        DBConnector connector = new DBConnector(
+                settings.getReferenceSettings().getIntegrityServiceSettings().getIntegrityDatabase());
+        try {
+            Assert.assertEquals(new KeyValueStoreMigrator(connector, store).migrate(), 5L);
+        } finally {
+            connector.destroy();
+        }
+
+        addStep("Reopen the store", "The store has the same file information as the database");
+        store.close();
+        store = new KeyValueIntegrityModel(storeFile);
+        for(String fileID : Arrays.asList(FILE_1, FILE_2, FILE_3)) {
+            assertSameFileInfos(database.getFileInfos(fileID, collectionID), store.getFileInfos(fileID, collectionID));
+        }
+        Assert.assertEquals(getIssues(store.findFilesWithMissingCopies(collectionID, 2, 0L, Long.MAX_VALUE)),
+                getIssues(database.findFilesWithMissingCopies(collectionID, 2, 0L, Long.MAX_VALUE)));
+        Assert.assertEquals(getIssues(store.getFilesWithInconsistentChecksums(collectionID)),
+                Arrays.asList(FILE_1));
+
+        addStep("Compare the collection metrics", "The metrics of the store are the same as of the database");
+        database.reconcileCollectionMetrics(collectionID);
+        Assert.assertEquals(store.getNumberOfFilesInCollection(collectionID), 3L);
+        Assert.assertEquals(store.getNumberOfFilesInCollection(collectionID),
+                database.getNumberOfFilesInCollection(collectionID));
+        Assert.assertEquals(store.getCollectionFileSize(collectionID), database.getCollectionFileSize(collectionID));
+        Map<String, PillarCollectionMetric> metrics = store.getPillarCollectionMetrics(collectionID);
+        Map<String, PillarCollectionMetric> databaseMetrics = database.getPillarCollectionMetrics(collectionID);
+        Assert.assertEquals(metrics.keySet(), databaseMetrics.keySet());
+        for(String pillarID : metrics.keySet()) {
+            Assert.assertEquals(metrics.get(pillarID).getPillarFileCount(),
+                    databaseMetrics.get(pillarID).getPillarFileCount());
+            Assert.assertEquals(metrics.get(pillarID).getPillarCollectionSize(),
+                    databaseMetrics.get(pillarID).getPillarCollectionSize());
+        }
+
+        addStep("Compare the collection progress", "The latest file and checksum dates are the same");
+        for(String pillarID : Arrays.asList(TEST_PILLAR_1, TEST_PILLAR_2)) {
+            Assert.assertEquals(store.getDateForNewestFileEntryForPillar(pillarID, collectionID),
+                    database.getDateForNewestFileEntryForPillar(pillarID, collectionID));
+            Assert.assertEquals(store.getDateForNewestChecksumEntryForPillar(pillarID, collectionID),
+                    database.getDateForNewestChecksumEntryForPillar(pillarID, collectionID));
+        }
+
+        addStep("Compare the statistics", "The statistics are the same, and in the same order");
+        List<CollectionStat> collectionStats = store.getLatestCollectionStat(collectionID, 10);
+        List<CollectionStat> databaseCollectionStats = database.getLatestCollectionStat(collectionID, 10);
+        Assert.assertEquals(collectionStats.size(), 2);
+        Assert.assertEquals(collectionStats.size(), databaseCollectionStats.size());
+        for(int i = 0; i < collectionStats.size(); i++) {
+            Assert.assertEquals(collectionStats.get(i).getFileCount(), databaseCollectionStats.get(i).getFileCount());
+            Assert.assertEquals(collectionStats.get(i).getDataSize(), databaseCollectionStats.get(i).getDataSize());
+            Assert.assertEquals(collectionStats.get(i).getLatestFileTime(),
+                    databaseCollectionStats.get(i).getLatestFileTime());
+            Assert.assertEquals(collectionStats.get(i).getStatsTime(), databaseCollectionStats.get(i).getStatsTime());
+        }
+        Map<String, PillarCollectionStat> pillarStats = new HashMap<>();
+        for(PillarCollectionStat stat : store.getLatestPillarStats(collectionID)) {
+            pillarStats.put(stat.getPillarID(), stat);
+        }
+        List<PillarCollectionStat> databasePillarStats = database.getLatestPillarStats(collectionID);
+        Assert.assertEquals(pillarStats.size(), 2);
+        Assert.assertEquals(pillarStats.size(), databasePillarStats.size());
+        for(PillarCollectionStat databaseStat : databasePillarStats) {
+            PillarCollectionStat stat = pillarStats.get(databaseStat.getPillarID());
+            Assert.assertEquals(stat.getFileCount(), databaseStat.getFileCount());
+            Assert.assertEquals(stat.getDataSize(), databaseStat.getDataSize());
+            Assert.assertEquals(stat.getMissingFiles(), databaseStat.getMissingFiles());
+            Assert.assertEquals(stat.getChecksumErrors(), databaseStat.getChecksumErrors());
+            Assert.assertEquals(stat.getMissingChecksums(), databaseStat.getMissingChecksums());
+            Assert.assertEquals(stat.getObsoleteChecksums(), databaseStat.getObsoleteChecksums());
+        }
+    }
+
+    private void assertSameFileInfos(Collection<FileInfo> expected, Collection<FileInfo> actual) {
+        Map<String, FileInfo> infos = new HashMap<>();
+        for(FileInfo info : actual) {
+            infos.put(info.getPillarId(), info);
+        }
+        Assert.assertEquals(infos.size(), expected.size());
+        for(FileInfo expectedInfo : expected) {
+            FileInfo info = infos.get(expectedInfo.getPillarId());
+            Assert.assertNotNull(info, "No file info for " + expectedInfo);
+            Assert.assertEquals(info.getFileId(), expectedInfo.getFileId());
+            Assert.assertEquals(info.getFileSize(), expectedInfo.getFileSize());
+            Assert.assertEquals(info.getChecksum(), expectedInfo.getChecksum());
+            Assert.assertEquals(info.getDateForLastFileIDCheck(), expectedInfo.getDateForLastFileIDCheck());
+            Assert.assertEquals(info.getDateForLastChecksumCheck(), expectedInfo.getDateForLastChecksumCheck());
+            Assert.assertEquals(info.getLastSeenGetFileIDs(), expectedInfo.getLastSeenGetFileIDs());
+            Assert.assertEquals(info.getLastSeenGetChecksums(), expectedInfo.getLastSeenGetChecksums());
+        }
+    }
+
+    private StatisticsCollector createStatistics(long fileCount, long dataSize) {
+        StatisticsCollector statistics = new StatisticsCollector(collectionID);
+        CollectionStat collectionStat = statistics.getCollectionStat();
+        collectionStat.setFileCount(fileCount);
+        collectionStat.setDataSize(dataSize);
+        collectionStat.setChecksumErrors(1L);
+        collectionStat.setLatestFileTime(new Date(fileCount * 1000));
+        collectionStat.setStatsTime(new Date(dataSize * 1000));
+        statistics.getPillarCollectionStat(TEST_PILLAR_1).setFileCount(fileCount);
+        statistics.getPillarCollectionStat(TEST_PILLAR_1).setDataSize(dataSize);
+        statistics.getPillarCollectionStat(TEST_PILLAR_2).setFileCount(fileCount - 1);
+        statistics.getPillarCollectionStat(TEST_PILLAR_2).setMissingFiles(1L);
+        statistics.getPillarCollectionStat(TEST_PILLAR_2).setChecksumErrors(1L);
+        return statistics;
+    }
+
+    private FileIDsData getFileIDsData(String... fileIDs) {
+        FileIDsData res = new FileIDsData();
+        FileIDsDataItems items = new FileIDsDataItems();
+        for(String fileID : fileIDs) {
+            FileIDsDataItem dataItem = new FileIDsDataItem();
+            dataItem.setFileID(fileID);
+            dataItem.setFileSize(BigInteger.valueOf(items.getFileIDsDataItem().size() + 1));
+            dataItem.setLastModificationTime(CalendarUtils.getNow());
+            items.getFileIDsDataItem().add(dataItem);
+        }
+        res.setFileIDsDataItems(items);
+        return res;
+    }
+
+    private List<ChecksumDataForChecksumSpecTYPE> getChecksumResults(String fileID, String checksum) {
+        ChecksumDataForChecksumSpecTYPE csData = new ChecksumDataForChecksumSpecTYPE();
+        csData.setChecksumValue(Base16Utils.encodeBase16(checksum));
+        csData.setCalculationTimestamp(CalendarUtils.getNow());
+        csData.setFileID(fileID);
+        return Arrays.asList(csData);
+    }
+
+    private List<String> getIssues(IntegrityIssueIterator it) {
+        List<String> issues = new ArrayList<String>();
+        String issue = null;
+        while((issue = it.getNextIntegrityIssue()) != null) {
+            issues.add(issue);
+        }
+        return issues;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * #%L
+ * Bitrepository Integrity Service
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.integrityservice.collector;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.xml.bind.JAXBContext;
+
+import org.bitrepository.access.getfileids.conversation.FileIDsCompletePillarEvent;
+import org.bitrepository.bitrepositorydata.GetFileIDsResults;
+import org.bitrepository.bitrepositoryelements.FileIDsData;
+import org.bitrepository.bitrepositoryelements.FileIDsData.FileIDsDataItems;
+import org.bitrepository.bitrepositoryelements.FileIDsDataItem;
+import org.bitrepository.bitrepositoryelements.ResultingFileIDs;
+import org.bitrepository.common.utils.CalendarUtils;
+import org.bitrepository.integrityservice.cache.IntegrityModel;
+import org.bitrepository.integrityservice.workflow.IntegrityContributors;
+import org.bitrepository.protocol.FileExchange;
+import org.jaccept.structure.ExtendedTestCase;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class IntegrityCollectorEventHandlerTest extends ExtendedTestCase {
+    private static final String TEST_PILLAR = "test-pillar";
+    private static final String TEST_COLLECTION = "test-collection";
+    private static final String RESULT_ADDRESS = "file:/fileexchange/GetFileIDs-result-" + TEST_PILLAR;
+
+    private IntegrityModel model;
+    private FileExchange fileExchange;
+    private IntegrityContributors contributors;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setup() {
+        model = mock(IntegrityModel.class);
+        fileExchange = mock(FileExchange.class);
+        contributors = new IntegrityContributors(Arrays.asList(TEST_PILLAR), 1);
+    }
+
+    @Test(groups = {"regressiontest", "integritytest"})
+    public void testFileIDsFromResultFile() throws Exception {
+        addDescription("Tests that file ids delivered as a result file are streamed into the model, and that the "
+                + "result file is deleted from the file exchange afterwards.");
+        addStep("Place a result file with two files on the file exchange", "");
+        when(fileExchange.getFile(new URL(RESULT_ADDRESS))).thenReturn(
+                new ByteArrayInputStream(createResultFile("file-1", "file-2")));
+        final List<String> ingested = new ArrayList<String>();
+        doAnswer(new Answer<Void>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Void answer(InvocationOnMock invocation) {
+                Iterator<FileIDsDataItem> items = (Iterator<FileIDsDataItem>) invocation.getArguments()[0];
+                while(items.hasNext()) {
+                    ingested.add(items.next().getFileID());
+                }
+                return null;
+            }
+        }).when(model).addFileIDs(any(Iterator.class), eq(TEST_PILLAR), eq(TEST_COLLECTION));
+
+        addStep("Deliver the result address of the pillar",
+                "The file ids are ingested, the result file deleted, and the pillar finished.");
+        IntegrityCollectorEventHandler eventHandler = new IntegrityCollectorEventHandler(model, 1000L,
+                contributors, fileExchange);
+        eventHandler.handleEvent(new FileIDsCompletePillarEvent(TEST_PILLAR, TEST_COLLECTION,
+                createResultAddress(), false));
+        Assert.assertEquals(ingested, Arrays.asList("file-1", "file-2"));
+        verify(fileExchange).deleteFile(new URL(RESULT_ADDRESS));
+        Assert.assertTrue(contributors.getFinishedContributors().contains(TEST_PILLAR));
+    }
+
+    @Test(groups = {"regressiontest", "integritytest"})
+    public void testUnreadableResultFile() throws Exception {
+        addDescription("Tests that a pillar fails, when its result file cannot be retrieved, and that the result "
+                + "file is still deleted from the file exchange.");
+        when(fileExchange.getFile(new URL(RESULT_ADDRESS))).thenThrow(new IOException("No such file"));
+
+        IntegrityCollectorEventHandler eventHandler = new IntegrityCollectorEventHandler(model, 1000L,
+                contributors, fileExchange);
+        eventHandler.handleEvent(new FileIDsCompletePillarEvent(TEST_PILLAR, TEST_COLLECTION,
+                createResultAddress(), false));
+        verify(model, never()).addFileIDs(any(Iterator.class), eq(TEST_PILLAR), eq(TEST_COLLECTION));
+        verify(fileExchange).deleteFile(new URL(RESULT_ADDRESS));
+        Assert.assertTrue(contributors.getFailedContributors().contains(TEST_PILLAR));
+    }
+
+    private ResultingFileIDs createResultAddress() {
+        ResultingFileIDs result = new ResultingFileIDs();
+        result.setResultAddress(RESULT_ADDRESS);
+        return result;
+    }
+
+    private byte[] createResultFile(String... fileIDs) throws Exception {
+        FileIDsDataItems items = new FileIDsDataItems();
+        for(String fileID : fileIDs) {
+            FileIDsDataItem item = new FileIDsDataItem();
+            item.setFileID(fileID);
+            item.setFileSize(BigInteger.ONE);
+            item.setLastModificationTime(CalendarUtils.getNow());
+            items.getFileIDsDataItem().add(item);
+        }
+        FileIDsData data = new FileIDsData();
+        data.setFileIDsDataItems(items);
+        GetFileIDsResults result = new GetFileIDsResults();
+        result.setCollectionID(TEST_COLLECTION);
+        result.setPillarID(TEST_PILLAR);
+        result.setFileIDsData(data);
+        ByteArrayOutputStream resultFile = new ByteArrayOutputStream();
+        JAXBContext.newInstance(GetFileIDsResults.class).createMarshaller().marshal(result, resultFile);
+        return resultFile.toByteArray();
+    }
+}
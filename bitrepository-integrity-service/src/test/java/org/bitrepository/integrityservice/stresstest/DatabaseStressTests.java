@@ -100,6 +100,7 @@ public class DatabaseStressTests extends ExtendedTestCase {
     public void clearDatabase() throws Exception {
         DBConnector connector = new DBConnector(settings.getReferenceSettings().getIntegrityServiceSettings().getIntegrityDatabase());
         DatabaseUtils.executeStatement(connector, "DELETE FROM fileinfo", new Object[0]);
+        DatabaseUtils.executeStatement(connector, "DELETE FROM files", new Object[0]);
         DatabaseUtils.executeStatement(connector, "DELETE FROM pillar", new Object[0]);
     }
     
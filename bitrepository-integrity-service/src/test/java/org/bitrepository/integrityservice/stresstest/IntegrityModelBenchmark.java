@@ -0,0 +1,228 @@
+/*
+ * #%L
+ * Bitrepository Integrity Service
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.integrityservice.stresstest;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.FileIDsDataItem;
+import org.bitrepository.common.settings.Settings;
+import org.bitrepository.common.settings.TestSettingsProvider;
+import org.bitrepository.common.utils.Base16Utils;
+import org.bitrepository.common.utils.CalendarUtils;
+import org.bitrepository.common.utils.SettingsUtils;
+import org.bitrepository.common.utils.TimeUtils;
+import org.bitrepository.integrityservice.cache.IntegrityDatabase;
+import org.bitrepository.integrityservice.cache.IntegrityModel;
+import org.bitrepository.integrityservice.cache.database.IntegrityDatabaseCreator;
+import org.bitrepository.integrityservice.cache.database.IntegrityIssueIterator;
+import org.bitrepository.integrityservice.cache.keyvalue.KeyValueIntegrityModel;
+import org.bitrepository.service.database.DerbyDatabaseDestroyer;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Side-by-side benchmark of a complete integrity check against the integrity database and the key-value store.
+ * The number of files in the synthetic collection is given by the system property
+ * 'integrity.benchmark.files', and defaults to 10 million files on each of four pillars.
+ */
+public class IntegrityModelBenchmark extends ExtendedTestCase {
+    private static final String[] PILLARS = {"pillar1", "pillar2", "pillar3", "pillar4"};
+    private static final int NUMBER_OF_FILES = Integer.getInteger("integrity.benchmark.files", 10000000);
+    private static final int BATCH_SIZE = KeyValueIntegrityModel.MAX_BATCH_SIZE;
+
+    protected Settings settings;
+    private String collectionID;
+
+    @BeforeMethod (alwaysRun = true)
+    public void setup() throws Exception {
+        settings = TestSettingsProvider.reloadSettings("IntegrityCheckingUnderTest");
+        List<String> pillars = settings.getRepositorySettings().getCollections().getCollection().get(0)
+                .getPillarIDs().getPillarID();
+        pillars.clear();
+        for(String pillar : PILLARS) {
+            pillars.add(pillar);
+        }
+        SettingsUtils.initialize(settings);
+        collectionID = settings.getRepositorySettings().getCollections().getCollection().get(0).getID();
+    }
+
+    @Test(groups = {"stresstest", "integritytest"})
+    public void benchmarkIntegrityDatabase() throws Exception {
+        addDescription("Runs a complete integrity check of " + NUMBER_OF_FILES + " files against the integrity "
+                + "database.");
+        DerbyDatabaseDestroyer.deleteDatabase(
+                settings.getReferenceSettings().getIntegrityServiceSettings().getIntegrityDatabase());
+        new IntegrityDatabaseCreator().createIntegrityDatabase(settings, null);
+        IntegrityModel model = new IntegrityDatabase(settings);
+        try {
+            runIntegrityCheck("integrity database", model);
+        } finally {
+            model.close();
+        }
+    }
+
+    @Test(groups = {"stresstest", "integritytest"})
+    public void benchmarkKeyValueStore() throws Exception {
+        addDescription("Runs a complete integrity check of " + NUMBER_OF_FILES + " files against the key-value "
+                + "store.");
+        File storeFile = File.createTempFile("integrity-benchmark", ".db");
+        storeFile.delete();
+        IntegrityModel model = new KeyValueIntegrityModel(storeFile);
+        try {
+            runIntegrityCheck("key-value store", model);
+        } finally {
+            model.close();
+            for(File file : storeFile.getParentFile().listFiles()) {
+                if(file.getName().startsWith(storeFile.getName())) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the model calls of a complete integrity check: the collection of fileIDs and checksums from all
+     * pillars, followed by the checks and the metrics for the collection.
+     * The last file is missing on the last pillar, and has an inconsistent checksum on the first pillar.
+     */
+    private void runIntegrityCheck(String name, IntegrityModel model) {
+        long startTime = System.currentTimeMillis();
+        for(int i = 0; i < PILLARS.length; i++) {
+            int files = (i == PILLARS.length - 1 ? NUMBER_OF_FILES - 1 : NUMBER_OF_FILES);
+            model.addFileIDs(new FileIDsDataItemGenerator(files), PILLARS[i], collectionID);
+        }
+        report(name, "ingest fileIDs", startTime);
+
+        startTime = System.currentTimeMillis();
+        for(int i = 0; i < PILLARS.length; i++) {
+            int files = (i == PILLARS.length - 1 ? NUMBER_OF_FILES - 1 : NUMBER_OF_FILES);
+            for(int first = 0; first < files; first += BATCH_SIZE) {
+                model.addChecksums(getChecksums(first, Math.min(files, first + BATCH_SIZE), i == 0), PILLARS[i],
+                        collectionID);
+            }
+        }
+        report(name, "ingest checksums", startTime);
+
+        startTime = System.currentTimeMillis();
+        model.reconcileCollectionMetrics(collectionID);
+        Assert.assertEquals(model.getNumberOfFilesInCollection(collectionID), NUMBER_OF_FILES);
+        model.getCollectionFileSize(collectionID);
+        model.getPillarCollectionMetrics(collectionID);
+        report(name, "find collection metrics", startTime);
+
+        startTime = System.currentTimeMillis();
+        Assert.assertEquals(count(model.findFilesWithMissingCopies(collectionID, PILLARS.length, 0L, Long.MAX_VALUE)),
+                1);
+        report(name, "find missing copies", startTime);
+
+        startTime = System.currentTimeMillis();
+        Date cutoff = new Date(0);
+        for(String pillar : PILLARS) {
+            count(model.findFilesWithMissingChecksum(collectionID, pillar, cutoff));
+            count(model.findChecksumsOlderThan(cutoff, pillar, collectionID));
+            count(model.findOrphanFiles(collectionID, pillar, cutoff));
+        }
+        report(name, "find missing checksums, obsolete checksums and orphans", startTime);
+
+        startTime = System.currentTimeMillis();
+        Assert.assertEquals(count(model.getFilesWithInconsistentChecksums(collectionID)), 1);
+        report(name, "find inconsistent checksums", startTime);
+    }
+
+    private void report(String name, String step, long startTime) {
+        System.err.println("Time for " + name + " to " + step + " for '" + NUMBER_OF_FILES + "' files: "
+                + TimeUtils.millisecondsToHuman(System.currentTimeMillis() - startTime));
+    }
+
+    private long count(IntegrityIssueIterator it) {
+        long count = 0;
+        while(it.getNextIntegrityIssue() != null) {
+            count++;
+        }
+        return count;
+    }
+
+    private List<ChecksumDataForChecksumSpecTYPE> getChecksums(int first, int end, boolean inconsistentLast) {
+        List<ChecksumDataForChecksumSpecTYPE> checksums = new ArrayList<>();
+        XMLGregorianCalendar now = CalendarUtils.getNow();
+        for(int i = first; i < end; i++) {
+            ChecksumDataForChecksumSpecTYPE csData = new ChecksumDataForChecksumSpecTYPE();
+            String checksum = (inconsistentLast && i == NUMBER_OF_FILES - 1 ? "ffff" : String.format("%08x", i));
+            csData.setChecksumValue(Base16Utils.encodeBase16(checksum));
+            csData.setCalculationTimestamp(now);
+            csData.setFileID(fileID(i));
+            checksums.add(csData);
+        }
+        return checksums;
+    }
+
+    private static String fileID(int i) {
+        return String.format("fileid-%08d", i);
+    }
+
+    /**
+     * Generates the fileIDs of a synthetic collection as they are requested, as a pillar would deliver them.
+     */
+    private static class FileIDsDataItemGenerator implements Iterator<FileIDsDataItem> {
+        private final int numberOfFiles;
+        private final XMLGregorianCalendar lastModificationTime = CalendarUtils.getNow();
+        private int next = 0;
+
+        FileIDsDataItemGenerator(int numberOfFiles) {
+            this.numberOfFiles = numberOfFiles;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < numberOfFiles;
+        }
+
+        @Override
+        public FileIDsDataItem next() {
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            FileIDsDataItem item = new FileIDsDataItem();
+            item.setFileID(fileID(next));
+            item.setFileSize(BigInteger.valueOf(next));
+            item.setLastModificationTime(lastModificationTime);
+            next++;
+            return item;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -24,7 +24,9 @@ package org.bitrepository.integrityservice.workflow.step;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -33,9 +35,12 @@ import static org.mockito.Mockito.when;
 import java.math.BigInteger;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
 
 import org.bitrepository.access.ContributorQuery;
+import org.bitrepository.access.TimestampWindow;
 import org.bitrepository.access.getfileids.conversation.FileIDsCompletePillarEvent;
 import org.bitrepository.bitrepositoryelements.FileIDsData;
 import org.bitrepository.bitrepositoryelements.FileIDsData.FileIDsDataItems;
@@ -49,6 +54,7 @@ import org.bitrepository.client.eventhandler.IdentificationCompleteEvent;
 import org.bitrepository.client.eventhandler.OperationFailedEvent;
 import org.bitrepository.common.utils.CalendarUtils;
 import org.bitrepository.service.exception.WorkflowAbortedException;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Matchers;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
@@ -270,6 +276,152 @@ public class UpdateFileIDsStepTest extends WorkflowstepTest {
                 any(EventHandler.class));
     }
 
+    @Test(groups = {"regressiontest"})
+    public void testCollectionInTimestampWindows() throws WorkflowAbortedException {
+        addDescription("Test that the remaining fileIDs are collected in concurrent timestamp windows, when the "
+                + "first page reaches far back in time.");
+        final ResultingFileIDs firstPage = createResultingFileIDs(TEST_FILE_1);
+        Date yesterday = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1));
+        firstPage.getFileIDsData().getFileIDsDataItems().getFileIDsDataItem().get(0).setLastModificationTime(
+                CalendarUtils.getXmlGregorianCalendar(yesterday));
+        final ResultingFileIDs emptyPage = createResultingFileIDs();
+
+        addStep("Setup the collector mock to deliver a partial first page with a file from yesterday, and "
+                + "complete pages afterwards",
+                "The collectors getFileIDs should be called once for the first page, and once for each window");
+        Answer callbackAnswer = new Answer() {
+            boolean first = true;
+            public Void answer(InvocationOnMock invocation) {
+                EventHandler eventHandler = (EventHandler) invocation.getArguments()[4];
+                boolean isFirstPage;
+                synchronized(this) {
+                    isFirstPage = first;
+                    first = false;
+                }
+                eventHandler.handleEvent(new IdentificationCompleteEvent(TEST_COLLECTION, Arrays.asList(TEST_PILLAR_1)));
+                eventHandler.handleEvent(new FileIDsCompletePillarEvent(TEST_PILLAR_1, TEST_COLLECTION,
+                        (isFirstPage ? firstPage : emptyPage), isFirstPage));
+                eventHandler.handleEvent(new CompleteEvent(TEST_COLLECTION, null));
+                return null;
+            }
+        };
+        doAnswer(callbackAnswer).when(collector).getFileIDs(
+                eq(TEST_COLLECTION), Matchers.<Collection<String>>any(), anyString(), any(ContributorQuery[].class),
+                any(EventHandler.class));
+
+        when(integrityContributors.getActiveContributors())
+            .thenReturn(new HashSet<>(Arrays.asList(TEST_PILLAR_1)))
+            .thenReturn(new HashSet<>(Arrays.asList(TEST_PILLAR_1)))
+            .thenReturn(new HashSet<>());
+        when(integrityContributors.getMaxContributorFailures()).thenReturn(1);
+
+        UpdateFileIDsStep step = new FullUpdateFileIDsStep(collector, model, alerter, settings, TEST_COLLECTION,
+                integrityContributors);
+        step.performStep();
+
+        verify(collector, times(1 + TimestampWindow.DEFAULT_NUMBER_OF_WINDOWS)).getFileIDs(
+                eq(TEST_COLLECTION), Matchers.<Collection<String>>any(), anyString(), any(ContributorQuery[].class),
+                any(EventHandler.class));
+        verify(integrityContributors).finishContributor(eq(TEST_PILLAR_1));
+        verify(model).advanceFileCollectionProgress(TEST_PILLAR_1, TEST_COLLECTION, yesterday);
+        verify(model, never()).resetFileCollectionProgress(anyString(), anyString());
+        verifyNoMoreInteractions(alerter);
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void testFailedMiddleTimestampWindow() throws WorkflowAbortedException {
+        addDescription("Test that the collection progress of a contributor, which fails in a middle timestamp "
+                + "window, is moved to its latest result in that window, and that the next collection continues "
+                + "from there instead of from the beginning.");
+        final long yesterday = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1);
+        final long windowLength = TimeUnit.DAYS.toMillis(1) / TimestampWindow.DEFAULT_NUMBER_OF_WINDOWS;
+        final Date latestInFailedWindow = new Date(yesterday + windowLength + TimeUnit.HOURS.toMillis(1));
+
+        addStep("Setup the collector mock to deliver a partial first page with a file from yesterday. The first "
+                + "window is completed, the second window delivers a partial page and then fails, and the later "
+                + "windows are completed with later files",
+                "The contributor should be failed, and its progress moved to its latest file in the second window");
+        Answer callbackAnswer = new Answer() {
+            public Void answer(InvocationOnMock invocation) {
+                ContributorQuery query = ((ContributorQuery[]) invocation.getArguments()[3])[0];
+                EventHandler eventHandler = (EventHandler) invocation.getArguments()[4];
+                Date min = query.getMinTimestamp();
+                if(min != null && min.getTime() >= latestInFailedWindow.getTime()
+                        && min.getTime() < yesterday + 2 * windowLength) {
+                    eventHandler.handleEvent(new ContributorFailedEvent(TEST_PILLAR_1, TEST_COLLECTION, 
+                            ResponseCode.FAILURE));
+                    eventHandler.handleEvent(new OperationFailedEvent(TEST_COLLECTION, "Operation failed", null));
+                    return null;
+                }
+                ResultingFileIDs page;
+                boolean partial;
+                if(min == null) {
+                    page = createResultingFileIDs(new Date(yesterday), TEST_FILE_1);
+                    partial = true;
+                } else if(min.getTime() < yesterday + windowLength) {
+                    page = createResultingFileIDs(new Date(yesterday + TimeUnit.HOURS.toMillis(1)), "file-2");
+                    partial = false;
+                } else if(min.getTime() < latestInFailedWindow.getTime()) {
+                    page = createResultingFileIDs(latestInFailedWindow, "file-3");
+                    partial = true;
+                } else {
+                    page = createResultingFileIDs(new Date(min.getTime() + TimeUnit.HOURS.toMillis(1)), 
+                            "file-" + min.getTime());
+                    partial = false;
+                }
+                eventHandler.handleEvent(new IdentificationCompleteEvent(TEST_COLLECTION, 
+                        Arrays.asList(TEST_PILLAR_1)));
+                eventHandler.handleEvent(new FileIDsCompletePillarEvent(TEST_PILLAR_1, TEST_COLLECTION, page,
+                        partial));
+                eventHandler.handleEvent(new CompleteEvent(TEST_COLLECTION, null));
+                return null;
+            }
+        };
+        doAnswer(callbackAnswer).when(collector).getFileIDs(
+                eq(TEST_COLLECTION), Matchers.<Collection<String>>any(), anyString(), any(ContributorQuery[].class),
+                any(EventHandler.class));
+
+        when(integrityContributors.getActiveContributors())
+            .thenReturn(new HashSet<>(Arrays.asList(TEST_PILLAR_1)))
+            .thenReturn(new HashSet<>(Arrays.asList(TEST_PILLAR_1)))
+            .thenReturn(new HashSet<>());
+        when(integrityContributors.getMaxContributorFailures()).thenReturn(1);
+
+        settings.getReferenceSettings().getIntegrityServiceSettings().setAbortOnFailedContributor(false);
+        UpdateFileIDsStep step = new IncrementalUpdateFileIDsStep(collector, model, alerter, settings, 
+                TEST_COLLECTION, integrityContributors);
+        step.performStep();
+
+        verify(integrityContributors).failContributorWithoutRetries(eq(TEST_PILLAR_1));
+        verify(integrityContributors, never()).finishContributor(anyString());
+        verify(model).advanceFileCollectionProgress(TEST_PILLAR_1, TEST_COLLECTION, latestInFailedWindow);
+        verify(model, never()).resetFileCollectionProgress(anyString());
+        verify(model, never()).resetFileCollectionProgress(anyString(), anyString());
+        verify(alerter).integrityFailed(anyString(), anyString());
+
+        addStep("Run the collection again with the moved progress", 
+                "The first page is requested from the latest file in the failed window");
+        when(model.getDateForNewestFileEntryForPillar(TEST_PILLAR_1, TEST_COLLECTION))
+            .thenReturn(latestInFailedWindow);
+        when(integrityContributors.getActiveContributors())
+            .thenReturn(new HashSet<>(Arrays.asList(TEST_PILLAR_1)))
+            .thenReturn(new HashSet<>());
+        ArgumentCaptor<ContributorQuery[]> queries = ArgumentCaptor.forClass(ContributorQuery[].class);
+        new IncrementalUpdateFileIDsStep(collector, model, alerter, settings, TEST_COLLECTION, 
+                integrityContributors).performStep();
+        verify(collector, atLeastOnce()).getFileIDs(
+                eq(TEST_COLLECTION), Matchers.<Collection<String>>any(), anyString(), queries.capture(),
+                any(EventHandler.class));
+        Assert.assertEquals(queries.getValue()[0].getMinTimestamp(), latestInFailedWindow);
+    }
+
+    private ResultingFileIDs createResultingFileIDs(Date lastModified, String fileID) {
+        ResultingFileIDs res = createResultingFileIDs(fileID);
+        res.getFileIDsData().getFileIDsDataItems().getFileIDsDataItem().get(0).setLastModificationTime(
+                CalendarUtils.getXmlGregorianCalendar(lastModified));
+        return res;
+    }
+
     private ResultingFileIDs createResultingFileIDs(String ... fileIDs) {
         ResultingFileIDs res = new ResultingFileIDs();
         res.setFileIDsData(getFileIDsData(fileIDs));
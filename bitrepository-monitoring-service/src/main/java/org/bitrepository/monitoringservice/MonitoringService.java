@@ -33,6 +33,7 @@ import org.bitrepository.monitoringservice.alarm.MonitorAlerter;
 import org.bitrepository.monitoringservice.collector.StatusCollector;
 import org.bitrepository.monitoringservice.status.ComponentStatus;
 import org.bitrepository.monitoringservice.status.ComponentStatusStore;
+import org.bitrepository.monitoringservice.status.StatusSnapshot;
 import org.bitrepository.monitoringservice.status.StatusStore;
 import org.bitrepository.protocol.messagebus.MessageBus;
 import org.bitrepository.protocol.messagebus.MessageBusManager;
@@ -82,6 +83,24 @@ public class MonitoringService implements LifeCycledService {
         return statusStore.getStatusMap();
     }
     
+    /**
+     * @return The current snapshot of the status for the components.
+     */
+    public StatusSnapshot getStatusSnapshot() {
+        return statusStore.getSnapshot();
+    }
+    
+    /**
+     * Waits until the status of a component changes after the given version.
+     * @param version The version known by the caller.
+     * @param timeout The maximum time to wait in milliseconds.
+     * @return The current snapshot of the status for the components.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public StatusSnapshot awaitStatusChange(long version, long timeout) throws InterruptedException {
+        return statusStore.awaitChange(version, timeout);
+    }
+    
     @Override
     public void start() {}
     
@@ -64,10 +64,8 @@ public class BasicMonitoringServiceAlerter extends AlarmDispatcher implements Mo
         for(String ID : statusMap.keySet()) {
             ComponentStatus componentStatus = statusMap.get(ID);
             if(componentStatus.getNumberOfMissingReplies() >= maxRetries.intValue()) {
-                componentStatus.markAsUnresponsive();
-                if(!componentStatus.hasAlarmed()) {
+                if(statusStore.markAsUnresponsive(ID)) {
                 	nonRespondingComponents.add(ID);
-                	componentStatus.alarmed();
                 }
             }
         }
@@ -52,6 +52,18 @@ public class ComponentStatus {
         alarmed = false;
     }
     
+    /**
+     * Copy constructor.
+     * @param other The status to copy.
+     */
+    public ComponentStatus(ComponentStatus other) {
+        numberOfMissingReplies = other.numberOfMissingReplies;
+        status = other.status;
+        lastReply = other.lastReply;
+        info = other.info;
+        alarmed = other.alarmed;
+    }
+    
     /**
      * Update the status of a component with the given results.
      * @param resultingStatus FIXME
@@ -106,6 +118,17 @@ public class ComponentStatus {
         return info;
     }    
     
+    /**
+     * @param other The status to compare with.
+     * @return Whether the status code, the date of the latest reply and the status message are the same as for the
+     * other status.
+     */
+    boolean hasSameStatus(ComponentStatus other) {
+        return status == other.status
+                && (lastReply == null ? other.lastReply == null : lastReply.equals(other.lastReply))
+                && (info == null ? other.info == null : info.equals(other.info));
+    }
+    
     public Boolean hasAlarmed() {
     	return alarmed;
     }
@@ -21,10 +21,13 @@
  */
 package org.bitrepository.monitoringservice.status;
 
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.bitrepository.bitrepositoryelements.ResultingStatus;
 import org.slf4j.Logger;
@@ -32,42 +35,148 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Storage for the status of the different components.
+ * <p/>
+ * The statuses are kept in an immutable {@link StatusSnapshot}, which is replaced atomically by every update, so
+ * readers never block and never see a partial update. The version of the snapshot is only increased, when the
+ * status of a component changes in a way which is visible to the users, so clients polling for the status can be
+ * told that nothing has changed. The versions start from the creation time of the store, so the versions known
+ * by clients from before a restart are older than any current version.
  */
 public class ComponentStatusStore implements StatusStore {
     /** The log.*/
     private Logger log = LoggerFactory.getLogger(getClass());
-    /** The mapping between components and their respective status.*/
-    private final ConcurrentMap<String, ComponentStatus> statusMap;
+    /** The current snapshot of the statuses.*/
+    private final AtomicReference<StatusSnapshot> snapshot;
+    /** The latch released at the next change of the version, for the callers waiting for a change.*/
+    private final AtomicReference<CountDownLatch> nextChange =
+            new AtomicReference<CountDownLatch>(new CountDownLatch(1));
     
     /**
      * Constructor.
      * @param components The components whose status are to be stored in this store.
      */
     public ComponentStatusStore(Set<String> components) {
-        statusMap = new ConcurrentHashMap<String, ComponentStatus>();
+        long version = System.currentTimeMillis();
+        Map<String, ComponentStatus> statusMap = new LinkedHashMap<String, ComponentStatus>();
+        Map<String, Long> componentVersions = new HashMap<String, Long>();
         for(String component : components) {
             statusMap.put(component, new ComponentStatus());
+            componentVersions.put(component, version);
         }
+        snapshot = new AtomicReference<StatusSnapshot>(new StatusSnapshot(version, statusMap, componentVersions));
     }
     
     @Override
-    public synchronized void updateStatus(String componentID, ResultingStatus status) {
-        if(statusMap.containsKey(componentID)) {
-            statusMap.get(componentID).updateStatus(status);
-        } else {
+    public void updateStatus(String componentID, final ResultingStatus status) {
+        if(!snapshot.get().getStatusMap().containsKey(componentID)) {
             log.warn("Got status from an unexpected component: " + componentID);
+            return;
         }
+        update(componentID, new StatusUpdate() {
+            @Override
+            public void apply(ComponentStatus componentStatus) {
+                componentStatus.updateStatus(status);
+            }
+        });
     }
     
     @Override
-    public synchronized void updateReplyCounts() {
-        for(String ID : statusMap.keySet()) {
-            statusMap.get(ID).updateReplys();
+    public void updateReplyCounts() {
+        for(String ID : snapshot.get().getStatusMap().keySet()) {
+            update(ID, new StatusUpdate() {
+                @Override
+                public void apply(ComponentStatus componentStatus) {
+                    componentStatus.updateReplys();
+                }
+            });
         }
     }
     
     @Override
-    public synchronized Map<String, ComponentStatus> getStatusMap() {
-        return statusMap;
+    public boolean markAsUnresponsive(String componentID) {
+        final boolean[] alarmed = new boolean[1];
+        update(componentID, new StatusUpdate() {
+            @Override
+            public void apply(ComponentStatus componentStatus) {
+                alarmed[0] = componentStatus.hasAlarmed();
+                componentStatus.markAsUnresponsive();
+                componentStatus.alarmed();
+            }
+        });
+        return !alarmed[0];
+    }
+    
+    @Override
+    public Map<String, ComponentStatus> getStatusMap() {
+        return snapshot.get().getStatusMap();
+    }
+    
+    @Override
+    public StatusSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+    
+    @Override
+    public StatusSnapshot awaitChange(long version, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while(true) {
+            // The latch must be found before the snapshot, so a change in between releases the latch.
+            CountDownLatch latch = nextChange.get();
+            StatusSnapshot current = snapshot.get();
+            long remaining = deadline - System.currentTimeMillis();
+            if(current.getVersion() > version || remaining <= 0) {
+                return current;
+            }
+            latch.await(remaining, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    /**
+     * Applies an update to a copy of the status of a component, and replaces the snapshot with one containing the
+     * updated status. The update is applied again, if the snapshot was replaced concurrently.
+     * The version is increased if the status visibly changed.
+     * @param componentID The id of the component.
+     * @param statusUpdate The update.
+     */
+    private void update(String componentID, StatusUpdate statusUpdate) {
+        while(true) {
+            StatusSnapshot current = snapshot.get();
+            ComponentStatus oldStatus = current.getStatusMap().get(componentID);
+            if(oldStatus == null) {
+                return;
+            }
+            ComponentStatus newStatus = new ComponentStatus(oldStatus);
+            statusUpdate.apply(newStatus);
+            boolean changed = !newStatus.hasSameStatus(oldStatus);
+            long version = (changed ? current.getVersion() + 1 : current.getVersion());
+            
+            Map<String, ComponentStatus> statusMap = new LinkedHashMap<String, ComponentStatus>(
+                    current.getStatusMap());
+            statusMap.put(componentID, newStatus);
+            Map<String, Long> componentVersions = new HashMap<String, Long>();
+            for(String ID : statusMap.keySet()) {
+                componentVersions.put(ID, current.getComponentVersion(ID));
+            }
+            if(changed) {
+                componentVersions.put(componentID, version);
+            }
+            
+            if(snapshot.compareAndSet(current, new StatusSnapshot(version, statusMap, componentVersions))) {
+                if(changed) {
+                    nextChange.getAndSet(new CountDownLatch(1)).countDown();
+                }
+                return;
+            }
+        }
+    }
+    
+    /**
+     * An update of the status of a component.
+     */
+    private interface StatusUpdate {
+        /**
+         * @param componentStatus The copy of the status to update.
+         */
+        void apply(ComponentStatus componentStatus);
     }
 }
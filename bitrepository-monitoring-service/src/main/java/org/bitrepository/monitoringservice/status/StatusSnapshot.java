@@ -0,0 +1,101 @@
+/*
+ * #%L
+ * Bitrepository Monitoring Service
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.monitoringservice.status;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of the status of the components.
+ * <p/>
+ * The snapshot has a version, which is increased every time the status of a component visibly changes. Each
+ * component also has the version of its latest change, so a client knowing an earlier version can be given only
+ * the statuses changed since then.
+ */
+public class StatusSnapshot {
+    /** The version of the snapshot.*/
+    private final long version;
+    /** The mapping between components and their status.*/
+    private final Map<String, ComponentStatus> statusMap;
+    /** The mapping between components and the version of their latest change.*/
+    private final Map<String, Long> componentVersions;
+
+    /**
+     * @param version The version of the snapshot.
+     * @param statusMap The mapping between components and their status. Must not be changed afterwards.
+     * @param componentVersions The mapping between components and the version of their latest change. Must not be
+     * changed afterwards.
+     */
+    StatusSnapshot(long version, Map<String, ComponentStatus> statusMap, Map<String, Long> componentVersions) {
+        this.version = version;
+        this.statusMap = Collections.unmodifiableMap(statusMap);
+        this.componentVersions = componentVersions;
+    }
+
+    /**
+     * Creates a snapshot of the given statuses, without versions.
+     * @param statusMap The mapping between components and their status.
+     */
+    public StatusSnapshot(Map<String, ComponentStatus> statusMap) {
+        this(0, new LinkedHashMap<String, ComponentStatus>(statusMap), new HashMap<String, Long>());
+    }
+
+    /**
+     * @return The version of the snapshot.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return The mapping between components and their status. The statuses must not be changed.
+     */
+    public Map<String, ComponentStatus> getStatusMap() {
+        return statusMap;
+    }
+
+    /**
+     * @param version The version known by the client.
+     * @return The mapping between components and their status, for the components which have changed since the
+     * given version.
+     */
+    public Map<String, ComponentStatus> getChangesSince(long version) {
+        Map<String, ComponentStatus> res = new LinkedHashMap<String, ComponentStatus>();
+        for(Map.Entry<String, ComponentStatus> entry : statusMap.entrySet()) {
+            Long componentVersion = componentVersions.get(entry.getKey());
+            if(componentVersion == null || componentVersion > version) {
+                res.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @param componentID The id of the component.
+     * @return The version of the latest change of the component, or null if the component is unknown.
+     */
+    Long getComponentVersion(String componentID) {
+        return componentVersions.get(componentID);
+    }
+}
@@ -43,8 +43,29 @@ public interface StatusStore {
      */
     void updateReplyCounts();
     
+    /**
+     * Marks a component as unresponsive, and registers that an alarm has been sent for it.
+     * @param componentID The id of the component.
+     * @return Whether the component had not already been alarmed.
+     */
+    boolean markAsUnresponsive(String componentID);
+    
     /**
      * @return The mapping between components and their status.
      */
     Map<String, ComponentStatus> getStatusMap();
+    
+    /**
+     * @return The current snapshot of the status of the components.
+     */
+    StatusSnapshot getSnapshot();
+    
+    /**
+     * Waits until the status of a component changes after a given version.
+     * @param version The version known by the caller.
+     * @param timeout The maximum time to wait in milliseconds.
+     * @return The current snapshot, which is later than the given version unless the timeout was reached.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    StatusSnapshot awaitChange(long version, long timeout) throws InterruptedException;
 }
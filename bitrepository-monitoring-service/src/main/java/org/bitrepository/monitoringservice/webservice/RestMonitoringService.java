@@ -25,17 +25,32 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+
 import org.bitrepository.common.utils.TimeUtils;
 import org.bitrepository.monitoringservice.MonitoringService;
 import org.bitrepository.monitoringservice.MonitoringServiceFactory;
 import org.bitrepository.monitoringservice.status.ComponentStatus;
+import org.bitrepository.monitoringservice.status.StatusSnapshot;
 
 @Path("/MonitoringService")
 public class RestMonitoringService {
     
+    /** The maximum time to wait for status changes in milliseconds.*/
+    private static final long MAX_LONG_POLL_TIMEOUT = 60000;
+    
     private MonitoringService service;
     
     public RestMonitoringService() {
@@ -54,17 +69,56 @@ public class RestMonitoringService {
         return options;
     }
     
+    /**
+     * Delivers the status of all components. The response is tagged with the version of the status, and when the
+     * request has the current version in an If-None-Match header, only 'Not modified' is answered.
+     * @param request The request.
+     * @return The response with the status of the components.
+     */
     @GET
     @Path("/getComponentStatus/")
     @Produces("application/json")
-    public List<WebStatus> getComponentStatus() {
-        Map<String, ComponentStatus> statusMap = service.getStatus();
+    public Response getComponentStatus(@Context Request request) {
+        StatusSnapshot snapshot = service.getStatusSnapshot();
+        EntityTag tag = new EntityTag(Long.toString(snapshot.getVersion()));
+        ResponseBuilder builder = request.evaluatePreconditions(tag);
+        if(builder == null) {
+            builder = Response.ok(toWebStatuses(snapshot.getStatusMap()));
+        }
+        return builder.tag(tag).build();
+    }
+    
+    /**
+     * Delivers the status of the components which have changed since the given version. If none have changed, the
+     * request waits for a change until the timeout. The response is tagged with the version of the delivered status,
+     * which should be used for the next request.
+     * @param version The version known by the client, from the tag of a previous response.
+     * @param timeout The maximum time to wait for a change in milliseconds.
+     * @return The response with the status of the changed components.
+     */
+    @GET
+    @Path("/getComponentStatusChanges/")
+    @Produces("application/json")
+    public Response getComponentStatusChanges(@QueryParam("version") @DefaultValue("0") long version,
+            @QueryParam("timeout") @DefaultValue("30000") long timeout) {
+        StatusSnapshot snapshot;
+        try {
+            snapshot = service.awaitStatusChange(version, Math.min(timeout, MAX_LONG_POLL_TIMEOUT));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebApplicationException(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .entity("Interrupted while waiting for status changes").type(MediaType.TEXT_PLAIN).build());
+        }
+        return Response.ok(toWebStatuses(snapshot.getChangesSince(version)))
+                .tag(new EntityTag(Long.toString(snapshot.getVersion()))).build();
+    }
+    
+    private GenericEntity<List<WebStatus>> toWebStatuses(Map<String, ComponentStatus> statusMap) {
         List<WebStatus> statuses = new ArrayList<>();
-        
-        for(String component : statusMap.keySet()) {
-            statuses.add(new WebStatus(component, statusMap.get(component)));
+        for(Map.Entry<String, ComponentStatus> entry : statusMap.entrySet()) {
+            statuses.add(new WebStatus(entry.getKey(), entry.getValue()));
         }
-        return statuses;
+        return new GenericEntity<List<WebStatus>>(statuses) {};
     }
     
 }
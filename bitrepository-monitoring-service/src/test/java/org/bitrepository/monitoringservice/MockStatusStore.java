@@ -26,6 +26,7 @@ import java.util.Map;
 
 import org.bitrepository.bitrepositoryelements.ResultingStatus;
 import org.bitrepository.monitoringservice.status.ComponentStatus;
+import org.bitrepository.monitoringservice.status.StatusSnapshot;
 import org.bitrepository.monitoringservice.status.StatusStore;
 
 public class MockStatusStore implements StatusStore {
@@ -48,6 +49,16 @@ public class MockStatusStore implements StatusStore {
         return callsForUpdateReplayCounts;
     }
 
+    private int callsForMarkAsUnresponsive = 0;
+    @Override
+    public boolean markAsUnresponsive(String componentID) {
+        callsForMarkAsUnresponsive++;
+        return false;
+    }
+    public int getCallsForMarkAsUnresponsive() {
+        return callsForMarkAsUnresponsive;
+    }
+
     private int callsForGetStatusMap = 0;
     @Override
     public Map<String, ComponentStatus> getStatusMap() {
@@ -57,5 +68,15 @@ public class MockStatusStore implements StatusStore {
     public int getCallsForGetStatusMap() {
         return callsForGetStatusMap;
     }
+
+    @Override
+    public StatusSnapshot getSnapshot() {
+        return new StatusSnapshot(getStatusMap());
+    }
+
+    @Override
+    public StatusSnapshot awaitChange(long version, long timeout) {
+        return getSnapshot();
+    }
     
 }
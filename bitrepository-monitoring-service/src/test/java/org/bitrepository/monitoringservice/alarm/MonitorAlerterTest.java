@@ -100,5 +100,14 @@ public class MonitorAlerterTest extends IntegrationTest {
             super.getStatusMap();
             return statuses;
         }
+        @Override
+        public boolean markAsUnresponsive(String componentID) {
+            super.markAsUnresponsive(componentID);
+            ComponentStatus status = statuses.get(componentID);
+            boolean alarmed = status.hasAlarmed();
+            status.markAsUnresponsive();
+            status.alarmed();
+            return !alarmed;
+        }
     }
 }
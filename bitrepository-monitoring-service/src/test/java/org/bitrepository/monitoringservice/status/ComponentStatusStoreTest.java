@@ -21,6 +21,7 @@
  */
 package org.bitrepository.monitoringservice.status;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -96,6 +97,73 @@ public class ComponentStatusStoreTest extends ExtendedTestCase {
         Assert.assertEquals(statuses.get(componentId).getStatus().value(), resStatus.getStatusInfo().getStatusCode().name());
     }
     
+    @Test(groups = {"regressiontest"})
+    public void testVersioning() throws Exception {
+        addDescription("Tests that the version of the status is only increased by visible changes.");
+        String componentId = "componentId";
+        String otherComponentId = "otherComponentId";
+        ComponentStatusStore store = new ComponentStatusStore(
+                new HashSet<String>(Arrays.asList(componentId, otherComponentId)));
+        StatusSnapshot initial = store.getSnapshot();
+        Assert.assertTrue(initial.getChangesSince(initial.getVersion()).isEmpty());
+
+        addStep("Update the reply counts", "The version is unchanged, but the snapshot has the new counts");
+        store.updateReplyCounts();
+        Assert.assertEquals(store.getSnapshot().getVersion(), initial.getVersion());
+        Assert.assertEquals(store.getStatusMap().get(componentId).getNumberOfMissingReplies(), 1);
+        Assert.assertEquals(initial.getStatusMap().get(componentId).getNumberOfMissingReplies(), 0);
+
+        addStep("Give a status for one of the components", "The version is increased, and only the component has "
+                + "changed since the initial version");
+        ResultingStatus resStatus = createPositiveStatus();
+        store.updateStatus(componentId, resStatus);
+        StatusSnapshot updated = store.getSnapshot();
+        Assert.assertEquals(updated.getVersion(), initial.getVersion() + 1);
+        Assert.assertEquals(updated.getChangesSince(initial.getVersion()).keySet(),
+                new HashSet<String>(Arrays.asList(componentId)));
+        Assert.assertEquals(initial.getStatusMap().get(componentId).getStatus(), ComponentStatusCode.UNKNOWN);
+
+        addStep("Give the same status again", "The version is unchanged");
+        store.updateStatus(componentId, resStatus);
+        Assert.assertEquals(store.getSnapshot().getVersion(), updated.getVersion());
+
+        addStep("Mark the other component as unresponsive twice", "The version is increased once, and only the "
+                + "first marking asks for an alarm");
+        Assert.assertTrue(store.markAsUnresponsive(otherComponentId));
+        Assert.assertFalse(store.markAsUnresponsive(otherComponentId));
+        Assert.assertEquals(store.getSnapshot().getVersion(), updated.getVersion() + 1);
+        Assert.assertEquals(store.getStatusMap().get(otherComponentId).getStatus(), ComponentStatusCode.UNRESPONSIVE);
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void testAwaitChange() throws Exception {
+        addDescription("Tests waiting for a change of the status.");
+        final String componentId = "componentId";
+        final ComponentStatusStore store = new ComponentStatusStore(new HashSet<String>(Arrays.asList(componentId)));
+        long version = store.getSnapshot().getVersion();
+
+        addStep("Wait for a change, when nothing changes", "The current snapshot is returned after the timeout");
+        Assert.assertEquals(store.awaitChange(version, 10).getVersion(), version);
+
+        addStep("Wait for a change, while the status is updated", "The updated snapshot is returned");
+        Thread updater = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                store.updateStatus(componentId, createPositiveStatus());
+            }
+        };
+        updater.start();
+        StatusSnapshot changed = store.awaitChange(version, 10000);
+        Assert.assertEquals(changed.getVersion(), version + 1);
+        Assert.assertEquals(changed.getStatusMap().get(componentId).getStatus(), ComponentStatusCode.OK);
+        updater.join();
+    }
+    
     private ResultingStatus createPositiveStatus() {
         ResultingStatus res = new ResultingStatus();
         StatusInfo si = new StatusInfo();
@@ -21,6 +21,8 @@
  */
 package org.bitrepository.pillar;
 
+import java.util.List;
+
 import javax.jms.JMSException;
 
 import org.bitrepository.common.ArgumentValidator;
@@ -61,7 +63,10 @@ public class Pillar {
     private final JobScheduler scheduler;
     /** The default time for running the recalculation workflow, when the settings is not set.
      * The default is every hour. */
-    private static final Long DEFAULT_RECALCULATION_WORKFLOW_TIME = 3600000L;
+    private static final Long DEFAULT_RECALCULATION_WORKFLOW_TIME = RecalculateChecksumJob.DEFAULT_INTERVAL;
+    /** The fraction of the recalculation interval the workflows may spread their recalculations over.
+     * The workflows share the scheduler, so the fraction is divided between the collections. */
+    private static final double RECALCULATION_PACING_FRACTION = 0.5;
 
     /**
      * Constructor.
@@ -100,9 +105,12 @@ public class Pillar {
             interval = settings.getReferenceSettings().getPillarSettings()
                     .getRecalculateOldChecksumsInterval().longValue();
         }
-        for(String collectionID : SettingsUtils.getCollectionIDsForPillar(
-                settings.getReferenceSettings().getPillarSettings().getPillarID())) {
-            SchedulableJob workflow = new RecalculateChecksumJob(collectionID, pillarModel);
+        List<String> collectionIDs = SettingsUtils.getCollectionIDsForPillar(
+                settings.getReferenceSettings().getPillarSettings().getPillarID());
+        long pacingWindow = (long) (interval * RECALCULATION_PACING_FRACTION / Math.max(1, collectionIDs.size()));
+        for(String collectionID : collectionIDs) {
+            SchedulableJob workflow = new RecalculateChecksumJob(collectionID, pillarModel, interval, pacingWindow, 
+                    mediator::getNumberOfActiveRequests);
             scheduler.schedule(workflow, interval);
         }
     }
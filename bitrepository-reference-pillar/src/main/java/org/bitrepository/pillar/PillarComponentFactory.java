@@ -38,6 +38,7 @@ import org.bitrepository.pillar.store.StorageModel;
 import org.bitrepository.pillar.store.checksumdatabase.ChecksumDAO;
 import org.bitrepository.pillar.store.checksumdatabase.ChecksumDatabaseManager;
 import org.bitrepository.pillar.store.checksumdatabase.ChecksumStore;
+import org.bitrepository.pillar.store.checksumdatabase.MemoryCachedChecksumStore;
 import org.bitrepository.pillar.store.filearchive.CollectionArchiveManager;
 import org.bitrepository.protocol.CoordinationLayerException;
 import org.bitrepository.protocol.ProtocolComponentFactory;
@@ -56,6 +57,7 @@ import org.bitrepository.service.audit.AuditTrailContributerDAOFactory;
 import org.bitrepository.service.audit.AuditTrailManager;
 import org.bitrepository.service.contributor.ResponseDispatcher;
 import org.bitrepository.service.database.DatabaseManager;
+import org.bitrepository.settings.referencesettings.PillarSettings;
 import org.bitrepository.settings.referencesettings.PillarType;
 
 /**
@@ -127,12 +129,21 @@ public final class PillarComponentFactory {
     
     /**
      * Instantiates the ChecksumStore.
+     * The checksums are kept in memory in front of the database, if it is a ChecksumPillar with the
+     * CacheChecksumsInMemory setting.
      * @param settings The settings.
      * @return The ChecksumStore.
      */
     private ChecksumStore getChecksumStore(Settings settings) {
         DatabaseManager checksumDatabaseManager = new ChecksumDatabaseManager(settings);
-        return new ChecksumDAO(checksumDatabaseManager);
+        ChecksumStore store = new ChecksumDAO(checksumDatabaseManager);
+        PillarSettings pillarSettings = settings.getReferenceSettings().getPillarSettings();
+        if(pillarSettings.getPillarType() == PillarType.CHECKSUM && pillarSettings.isSetCacheChecksumsInMemory()
+                && pillarSettings.isCacheChecksumsInMemory()) {
+            return new MemoryCachedChecksumStore(store,
+                    SettingsHelper.getPillarCollections(settings.getComponentID(), settings.getCollections()));
+        }
+        return store;
     }
     
     /**
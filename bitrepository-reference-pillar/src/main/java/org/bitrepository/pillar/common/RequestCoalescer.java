@@ -0,0 +1,186 @@
+/*
+ * #%L
+ * Bitrepository Reference Pillar
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.pillar.common;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Performs identical requests only once while they are in flight.
+ * <p/>
+ * A request arriving while an identical request, with the same key, is being performed waits for the result of
+ * that request instead of performing it again. A request arriving after the result has been produced is performed
+ * anew, so the results are never older than the request.
+ * <p/>
+ * The result is shared between the requests, which must therefore not modify it, and must release it when they
+ * are done with it. When the last request has released the result, it is handed to the {@link ResultReleaser},
+ * e.g. for deleting a shared result file.
+ * @param <K> The type of the key identifying identical requests.
+ * @param <V> The type of the result of the requests.
+ */
+public class RequestCoalescer<K, V> {
+    /** The requests being performed, mapped from their key.*/
+    private final Map<K, InFlightRequest> inFlightRequests = new HashMap<K, InFlightRequest>();
+    private final ResultReleaser<V> releaser;
+
+    /**
+     * @param releaser Receives the results when they have been released by all the requests sharing them.
+     * May be null.
+     */
+    public RequestCoalescer(ResultReleaser<V> releaser) {
+        this.releaser = releaser;
+    }
+
+    /**
+     * Performs the operation for a request, unless an identical request is being performed, in which case its
+     * result is awaited.
+     * @param key The key identifying identical requests.
+     * @param operation The operation producing the result of the request.
+     * @return The result, which must be released when the request is done with it.
+     * @throws Exception The exception thrown by the operation, for both this and the identical requests.
+     */
+    public SharedResult perform(K key, Callable<V> operation) throws Exception {
+        InFlightRequest request;
+        boolean performer = false;
+        synchronized (inFlightRequests) {
+            request = inFlightRequests.get(key);
+            if (request == null) {
+                request = new InFlightRequest(operation);
+                inFlightRequests.put(key, request);
+                performer = true;
+            } else {
+                request.participants++;
+            }
+        }
+
+        if (performer) {
+            try {
+                request.task.run();
+            } finally {
+                synchronized (inFlightRequests) {
+                    inFlightRequests.remove(key);
+                }
+            }
+        }
+
+        try {
+            return new SharedResult(request, request.task.get());
+        } catch (ExecutionException e) {
+            release(request, null);
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            release(request, null);
+            throw e;
+        }
+    }
+
+    /**
+     * @return The number of distinct requests currently being performed.
+     */
+    public int getNumberOfInFlightRequests() {
+        synchronized (inFlightRequests) {
+            return inFlightRequests.size();
+        }
+    }
+
+    /**
+     * @param key The key identifying identical requests.
+     * @return The number of requests performing or waiting for the request in flight with the key.
+     */
+    int getNumberOfParticipants(K key) {
+        synchronized (inFlightRequests) {
+            InFlightRequest request = inFlightRequests.get(key);
+            return request == null ? 0 : request.participants;
+        }
+    }
+
+    private void release(InFlightRequest request, V result) {
+        boolean last;
+        synchronized (inFlightRequests) {
+            last = (--request.participants == 0);
+        }
+        if (last && result != null && releaser != null) {
+            releaser.release(result);
+        }
+    }
+
+    /**
+     * The result of a request, shared with the identical requests.
+     */
+    public class SharedResult {
+        private final InFlightRequest request;
+        private final V result;
+        private boolean released = false;
+
+        SharedResult(InFlightRequest request, V result) {
+            this.request = request;
+            this.result = result;
+        }
+
+        /**
+         * @return The result. Must not be modified.
+         */
+        public V get() {
+            return result;
+        }
+
+        /**
+         * Releases the result for this request.
+         */
+        public void release() {
+            if (!released) {
+                released = true;
+                RequestCoalescer.this.release(request, result);
+            }
+        }
+    }
+
+    /**
+     * Receives the shared results, when they have been released by all the requests sharing them.
+     * @param <V> The type of the results.
+     */
+    public interface ResultReleaser<V> {
+        /**
+         * @param result The result which is no longer used.
+         */
+        void release(V result);
+    }
+
+    /**
+     * A request being performed, and the number of requests waiting for or using its result.
+     */
+    private class InFlightRequest {
+        private final FutureTask<V> task;
+        /** Guarded by the map of the in flight requests.*/
+        private int participants = 1;
+
+        InFlightRequest(Callable<V> operation) {
+            this.task = new FutureTask<V>(operation);
+        }
+    }
+}
@@ -33,13 +33,17 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 import javax.xml.bind.JAXBException;
 
 import org.apache.activemq.util.ByteArrayInputStream;
 import org.bitrepository.bitrepositorydata.GetChecksumsResults;
 import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
 import org.bitrepository.bitrepositoryelements.ResponseCode;
 import org.bitrepository.bitrepositoryelements.ResponseInfo;
 import org.bitrepository.bitrepositoryelements.ResultingChecksums;
@@ -48,7 +52,9 @@ import org.bitrepository.bitrepositorymessages.GetChecksumsProgressResponse;
 import org.bitrepository.bitrepositorymessages.GetChecksumsRequest;
 import org.bitrepository.bitrepositorymessages.MessageResponse;
 import org.bitrepository.common.JaxbHelper;
+import org.bitrepository.common.utils.Base16Utils;
 import org.bitrepository.pillar.common.MessageHandlerContext;
+import org.bitrepository.pillar.common.RequestCoalescer;
 import org.bitrepository.pillar.store.StorageModel;
 import org.bitrepository.pillar.store.checksumdatabase.ExtractedChecksumResultSet;
 import org.bitrepository.protocol.MessageContext;
@@ -61,10 +67,24 @@ import org.xml.sax.SAXException;
 
 /**
  * Class for performing the GetChecksums operation for this pillar.
+ * <p/>
+ * Identical requests arriving while a request is being performed share its extraction of the checksums and its
+ * result file, which is then uploaded to the result address of each request.
  */
 public class GetChecksumsRequestHandler extends PerformRequestHandler<GetChecksumsRequest> {
     /** The log.*/
     private Logger log = LoggerFactory.getLogger(getClass());
+    /** Coalesces the identical requests in flight. The shared result files are deleted when all have uploaded.*/
+    private final RequestCoalescer<List<Object>, ChecksumResults> coalescer = 
+            new RequestCoalescer<List<Object>, ChecksumResults>(
+                    new RequestCoalescer.ResultReleaser<ChecksumResults>() {
+                        @Override
+                        public void release(ChecksumResults results) {
+                            if(results.resultFile != null && !results.resultFile.delete()) {
+                                log.debug("Could not delete the result file '" + results.resultFile + "'");
+                            }
+                        }
+                    });
 
     /**
      * @param context The context for the message handling.
@@ -116,14 +136,69 @@ public class GetChecksumsRequestHandler extends PerformRequestHandler<GetChecksu
             throws RequestHandlerException {
         log.debug(MessageUtils.createMessageIdentifier(request) + " Performing GetChecksums for file(s) " 
                 + request.getFileIDs() + " on collection " + request.getCollectionID());
-        ExtractedChecksumResultSet extractedChecksums = extractChecksumResults(request);
-        ResultingChecksums checksumResults;
-        if(request.getResultAddress() == null) {
-            checksumResults = compileResultsForMessage(extractedChecksums);
-        } else {
-            checksumResults = createAndUploadResults(request, extractedChecksums);
+        RequestCoalescer<List<Object>, ChecksumResults>.SharedResult results = getSharedResults(request);
+        try {
+            ExtractedChecksumResultSet extractedChecksums = results.get().checksumResultSet;
+            ResultingChecksums checksumResults;
+            if(request.getResultAddress() == null) {
+                checksumResults = compileResultsForMessage(extractedChecksums);
+            } else {
+                checksumResults = uploadResults(request, results.get().resultFile);
+            }
+            sendFinalResponse(request, checksumResults, extractedChecksums.hasMoreEntries());
+        } finally {
+            results.release();
+        }
+    }
+
+    /**
+     * Extracts the checksum results for the request, and creates the result file if the results should be
+     * uploaded. An identical request in flight is waited for instead.
+     * @param request The message with the checksum request.
+     * @return The results, which must be released after use.
+     * @throws RequestHandlerException If the checksums could not be extracted, or the result file not created.
+     */
+    private RequestCoalescer<List<Object>, ChecksumResults>.SharedResult getSharedResults(
+            final GetChecksumsRequest request) throws RequestHandlerException {
+        try {
+            return coalescer.perform(getRequestKey(request), new Callable<ChecksumResults>() {
+                @Override
+                public ChecksumResults call() throws Exception {
+                    ExtractedChecksumResultSet checksumResultSet = extractChecksumResults(request);
+                    File resultFile = null;
+                    if(request.getResultAddress() != null) {
+                        try {
+                            resultFile = makeTemporaryChecksumFile(request, checksumResultSet);
+                        } catch (IOException | JAXBException | SAXException e) {
+                            throw new InvalidMessageException(ResponseCode.FILE_TRANSFER_FAILURE, "Could not handle "
+                                    + "the creation of the results due to: " + e.getMessage(), e);
+                        }
+                    }
+                    return new ChecksumResults(checksumResultSet, resultFile);
+                }
+            });
+        } catch (RequestHandlerException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not extract the checksums for "
+                    + MessageUtils.createMessageIdentifier(request), e);
         }
-        sendFinalResponse(request, checksumResults, extractedChecksums.hasMoreEntries());
+    }
+
+    /**
+     * @param request The checksum request.
+     * @return The key identifying the requests with identical results: the collection, the checksum
+     * specification, the requested files, the time window, the page size and whether a result file is needed.
+     */
+    private List<Object> getRequestKey(GetChecksumsRequest request) {
+        ChecksumSpecTYPE checksumSpec = request.getChecksumRequestForExistingFile();
+        String salt = null;
+        if(checksumSpec.getChecksumSalt() != null) {
+            salt = Base16Utils.decodeBase16(checksumSpec.getChecksumSalt());
+        }
+        return Arrays.<Object>asList(request.getCollectionID(), checksumSpec.getChecksumType(), salt, 
+                request.getFileIDs().getFileID(), request.getMinTimestamp(), request.getMaxTimestamp(), 
+                request.getMaxNumberOfResults(), request.getResultAddress() != null);
     }
 
     /**
@@ -151,24 +226,23 @@ public class GetChecksumsRequestHandler extends PerformRequestHandler<GetChecksu
     }
 
     /**
-     * Uploads the extracted checksum results to the given URL, and creates the ResultingChecksums object for 
+     * Uploads the file with the checksum results to the given URL, and creates the ResultingChecksums object for 
      * the final response message.
      * 
      * @param request The message requesting the calculation of the checksums.
-     * @param checksumResultSet List containing the requested checksums.
+     * @param resultFile The file with the requested checksums.
      * @return The ResultingChecksums containing the URL.
      */
-    private ResultingChecksums createAndUploadResults(GetChecksumsRequest request, 
-            ExtractedChecksumResultSet checksumResultSet) throws RequestHandlerException {
+    private ResultingChecksums uploadResults(GetChecksumsRequest request, File resultFile) 
+            throws RequestHandlerException {
         ResultingChecksums res = new ResultingChecksums();
 
         String url = request.getResultAddress();
         try {
-            File fileToUpload = makeTemporaryChecksumFile(request, checksumResultSet);
-            uploadFile(fileToUpload, url);
+            uploadFile(resultFile, url);
         } catch (Exception e) {
-            throw new InvalidMessageException(ResponseCode.FILE_TRANSFER_FAILURE, "Could not handle the creation "
-                    + "and upload of the results due to: " + e.getMessage(), e);
+            throw new InvalidMessageException(ResponseCode.FILE_TRANSFER_FAILURE, "Could not handle the "
+                    + "upload of the results due to: " + e.getMessage(), e);
         }
 
         res.setResultAddress(url);
@@ -305,4 +379,19 @@ public class GetChecksumsRequestHandler extends PerformRequestHandler<GetChecksu
 
         return res;
     }
+
+    /**
+     * The results of a checksum request, shared by the identical requests.
+     */
+    private static class ChecksumResults {
+        /** The extracted checksums.*/
+        private final ExtractedChecksumResultSet checksumResultSet;
+        /** The file with the checksums for upload, or null if the results are delivered in the message.*/
+        private final File resultFile;
+
+        ChecksumResults(ExtractedChecksumResultSet checksumResultSet, File resultFile) {
+            this.checksumResultSet = checksumResultSet;
+            this.resultFile = resultFile;
+        }
+    }
 }
@@ -33,7 +33,10 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 import javax.xml.bind.JAXBException;
 
@@ -49,6 +52,7 @@ import org.bitrepository.bitrepositorymessages.GetFileIDsRequest;
 import org.bitrepository.bitrepositorymessages.MessageResponse;
 import org.bitrepository.common.JaxbHelper;
 import org.bitrepository.pillar.common.MessageHandlerContext;
+import org.bitrepository.pillar.common.RequestCoalescer;
 import org.bitrepository.pillar.store.StorageModel;
 import org.bitrepository.pillar.store.checksumdatabase.ExtractedFileIDsResultSet;
 import org.bitrepository.protocol.MessageContext;
@@ -61,10 +65,24 @@ import org.xml.sax.SAXException;
 
 /**
  * Class for handling requests for the GetFileIDs operation.
+ * <p/>
+ * Identical requests arriving while a request is being performed share its extraction of the file ids and its
+ * result file, which is then uploaded to the result address of each request.
  */
 public class GetFileIDsRequestHandler extends PerformRequestHandler<GetFileIDsRequest> {
     /** The log.*/
     private Logger log = LoggerFactory.getLogger(getClass());
+    /** Coalesces the identical requests in flight. The shared result files are deleted when all have uploaded.*/
+    private final RequestCoalescer<List<Object>, FileIDsResults> coalescer = 
+            new RequestCoalescer<List<Object>, FileIDsResults>(
+                    new RequestCoalescer.ResultReleaser<FileIDsResults>() {
+                        @Override
+                        public void release(FileIDsResults results) {
+                            if(results.resultFile != null && !results.resultFile.delete()) {
+                                log.debug("Could not delete the result file '" + results.resultFile + "'");
+                            }
+                        }
+                    });
 
     /**
      * @param context The context for the message handling.
@@ -114,15 +132,65 @@ public class GetFileIDsRequestHandler extends PerformRequestHandler<GetFileIDsRe
             throws RequestHandlerException {
         log.debug(MessageUtils.createMessageIdentifier(request) + " Performing GetFileIDs for file(s) " 
                 + request.getFileIDs() + " on collection " + request.getCollectionID());
-        ExtractedFileIDsResultSet extractedFileIDs = retrieveFileIDsData(request);
-        ResultingFileIDs results = new ResultingFileIDs();
-        if(request.getResultAddress() == null) {
-            results.setFileIDsData(extractedFileIDs.getEntries());
-        } else {
-            uploadResults(request, extractedFileIDs);
-            results.setResultAddress(request.getResultAddress());
+        RequestCoalescer<List<Object>, FileIDsResults>.SharedResult sharedResults = getSharedResults(request);
+        try {
+            ExtractedFileIDsResultSet extractedFileIDs = sharedResults.get().fileIDsResultSet;
+            ResultingFileIDs results = new ResultingFileIDs();
+            if(request.getResultAddress() == null) {
+                results.setFileIDsData(extractedFileIDs.getEntries());
+            } else {
+                uploadResults(request, sharedResults.get().resultFile);
+                results.setResultAddress(request.getResultAddress());
+            }
+            sendFinalResponse(request, results, extractedFileIDs);
+        } finally {
+            sharedResults.release();
         }
-        sendFinalResponse(request, results, extractedFileIDs);
+    }
+
+    /**
+     * Extracts the file ids for the request, and creates the result file if the results should be uploaded.
+     * An identical request in flight is waited for instead.
+     * @param request The request for the file ids.
+     * @return The results, which must be released after use.
+     * @throws RequestHandlerException If the result file could not be created.
+     */
+    private RequestCoalescer<List<Object>, FileIDsResults>.SharedResult getSharedResults(
+            final GetFileIDsRequest request) throws RequestHandlerException {
+        try {
+            return coalescer.perform(getRequestKey(request), new Callable<FileIDsResults>() {
+                @Override
+                public FileIDsResults call() throws Exception {
+                    ExtractedFileIDsResultSet fileIDsResultSet = retrieveFileIDsData(request);
+                    File resultFile = null;
+                    if(request.getResultAddress() != null) {
+                        try {
+                            resultFile = makeTemporaryResultFile(request, fileIDsResultSet.getEntries());
+                        } catch (IOException | JAXBException e) {
+                            throw new InvalidMessageException(ResponseCode.FILE_TRANSFER_FAILURE, 
+                                    "Could not deliver results.", e);
+                        }
+                    }
+                    return new FileIDsResults(fileIDsResultSet, resultFile);
+                }
+            });
+        } catch (RequestHandlerException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not extract the file ids for "
+                    + MessageUtils.createMessageIdentifier(request), e);
+        }
+    }
+
+    /**
+     * @param request The request for the file ids.
+     * @return The key identifying the requests with identical results: the collection, the requested files, the
+     * time window, the page size and whether a result file is needed.
+     */
+    private List<Object> getRequestKey(GetFileIDsRequest request) {
+        return Arrays.<Object>asList(request.getCollectionID(), request.getFileIDs().getFileID(), 
+                request.getMinTimestamp(), request.getMaxTimestamp(), request.getMaxNumberOfResults(), 
+                request.getResultAddress() != null);
     }
     
     /**
@@ -144,15 +212,13 @@ public class GetFileIDsRequestHandler extends PerformRequestHandler<GetFileIDsRe
      * Uploads the results to the URL in the request.
      *  
      * @param request The request.
-     * @param extractedFileIDs The extracted file ids.
-     * @throws RequestHandlerException If the file with the resutls could not be created, or could not be uploaded.
+     * @param resultFile The file with the extracted file ids.
+     * @throws RequestHandlerException If the file with the results could not be uploaded.
      */
-    private void uploadResults(GetFileIDsRequest request,  ExtractedFileIDsResultSet extractedFileIDs) 
-            throws RequestHandlerException {
+    private void uploadResults(GetFileIDsRequest request, File resultFile) throws RequestHandlerException {
         String resultingAddress = request.getResultAddress();
         try {
-            File outputFile = makeTemporaryResultFile(request, extractedFileIDs.getEntries());
-            uploadFile(outputFile, resultingAddress);
+            uploadFile(resultFile, resultingAddress);
         } catch (Exception e) {
             throw new InvalidMessageException(ResponseCode.FILE_TRANSFER_FAILURE, "Could not deliver results.", e);
         }
@@ -276,4 +342,19 @@ public class GetFileIDsRequestHandler extends PerformRequestHandler<GetFileIDsRe
 
         return res;
     }
+
+    /**
+     * The results of a file ids request, shared by the identical requests.
+     */
+    private static class FileIDsResults {
+        /** The extracted file ids.*/
+        private final ExtractedFileIDsResultSet fileIDsResultSet;
+        /** The file with the file ids for upload, or null if the results are delivered in the message.*/
+        private final File resultFile;
+
+        FileIDsResults(ExtractedFileIDsResultSet fileIDsResultSet, File resultFile) {
+            this.fileIDsResultSet = fileIDsResultSet;
+            this.resultFile = resultFile;
+        }
+    }
 }
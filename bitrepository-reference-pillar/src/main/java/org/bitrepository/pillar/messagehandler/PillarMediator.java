@@ -26,6 +26,7 @@ package org.bitrepository.pillar.messagehandler;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.bitrepository.bitrepositoryelements.ResponseCode;
 import org.bitrepository.bitrepositoryelements.ResponseInfo;
@@ -36,6 +37,7 @@ import org.bitrepository.pillar.common.PillarAlarmDispatcher;
 import org.bitrepository.pillar.store.StorageModel;
 import org.bitrepository.protocol.MessageContext;
 import org.bitrepository.protocol.messagebus.MessageBus;
+import org.bitrepository.protocol.utils.MessageUtils;
 import org.bitrepository.service.contributor.AbstractContributorMediator;
 import org.bitrepository.service.contributor.ContributorContext;
 import org.bitrepository.service.contributor.handler.GetAuditTrailsRequestHandler;
@@ -58,6 +60,9 @@ public class PillarMediator extends AbstractContributorMediator {
     protected final MessageHandlerContext context;
 
     protected final StorageModel pillarModel;
+    
+    /** The number of operation requests currently being handled, i.e. not counting identify requests.*/
+    private final AtomicInteger activeRequests = new AtomicInteger();
 
     /**
      * Constructor.
@@ -76,6 +81,10 @@ public class PillarMediator extends AbstractContributorMediator {
     @SuppressWarnings({ "unchecked", "rawtypes" })
     @Override
     protected void handleRequest(MessageRequest request, MessageContext messageContext, RequestHandler handler) {
+        boolean isOperation = !MessageUtils.isIdentifyRequest(request);
+        if(isOperation) {
+            activeRequests.incrementAndGet();
+        }
         try {
             handler.processRequest(request, messageContext);
         } catch (IllegalArgumentException e) {
@@ -97,9 +106,21 @@ public class PillarMediator extends AbstractContributorMediator {
             
             dispatchNegativeResponse(request, handler, responseInfo);
             getAlarmDispatcher().handleRuntimeExceptions(e);
+        } finally {
+            if(isOperation) {
+                activeRequests.decrementAndGet();
+            }
         }
     }
     
+    /**
+     * @return The number of operation requests currently being handled by the pillar. Identify requests are not 
+     * counted.
+     */
+    public int getNumberOfActiveRequests() {
+        return activeRequests.get();
+    }
+    
     @SuppressWarnings("rawtypes")
     @Override
     protected RequestHandler[] createListOfHandlers() {
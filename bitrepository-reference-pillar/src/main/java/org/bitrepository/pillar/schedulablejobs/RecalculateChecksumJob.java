@@ -21,6 +21,11 @@
  */
 package org.bitrepository.pillar.schedulablejobs;
 
+import java.util.Date;
+import java.util.List;
+import java.util.function.IntSupplier;
+
+import org.bitrepository.common.utils.TimeUtils;
 import org.bitrepository.pillar.store.StorageModel;
 import org.bitrepository.service.workflow.JobID;
 import org.bitrepository.service.workflow.SchedulableJob;
@@ -31,27 +36,68 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Workflow for recalculating the checksums of the files of a given collection.
+ * 
+ * The checksums are recalculated in ascending order of their age. Each run recalculates all the checksums older 
+ * than the maximum age, and enough of the oldest checksums for every file in the collection to be recalculated
+ * once within the maximum age, when the job is run at the given interval. 
+ * The recalculations are spread evenly over the pacing window, and are held back while the pillar is handling 
+ * requests, as long as the remaining recalculations can still be finished within the window.
  */
 public class RecalculateChecksumJob implements SchedulableJob {
     /** The log.*/
     private Logger log = LoggerFactory.getLogger(getClass());
+    /** The default interval between the runs of the job.*/
+    public static final long DEFAULT_INTERVAL = TimeUtils.MS_PER_HOUR;
+    /** The number of milliseconds to hold back a recalculation at a time, while the pillar is handling requests.*/
+    private static final long LOAD_BACKOFF_TIME = 100L;
     /** The id of the collection to recalculate the checksum for.*/
     private final String collectionID;
     /** The manager of the checksum and reference archive.*/
     private final StorageModel model;
+    /** The number of milliseconds between the runs of the job.*/
+    private final long interval;
+    /** The number of milliseconds a run may spread its recalculations over.*/
+    private final long pacingWindow;
+    /** Delivers the number of requests currently being handled by the pillar.*/
+    private final IntSupplier requestLoad;
     
     /** The state of this workflow. */
-    private WorkflowState state = WorkflowState.NOT_RUNNING;
+    private volatile WorkflowState state = WorkflowState.NOT_RUNNING;
     private final JobID id;
+    /** The fraction of a file carried over to the next run, when the collection is too small to recalculate a 
+     * whole file every run.*/
+    private double recalculationCarry = 0;
+    /** The number of checksums to recalculate in the current run.*/
+    private volatile int filesToRecalculate = 0;
+    /** The number of checksums recalculated in the current run.*/
+    private volatile int recalculatedFiles = 0;
+    /** The time the recalculations of the current run started.*/
+    private volatile long recalculationStart = 0;
     
     /**
-     * Constructor.
+     * Constructor for a job, which recalculates the checksums without pacing.
      * @param collectionID The id of the collection to recalculate checksum for.
      * @param model The storage model for the pillar.
      */
     public RecalculateChecksumJob(String collectionID, StorageModel model) {
+        this(collectionID, model, DEFAULT_INTERVAL, 0L, null);
+    }
+    
+    /**
+     * Constructor.
+     * @param collectionID The id of the collection to recalculate checksum for.
+     * @param model The storage model for the pillar.
+     * @param interval The number of milliseconds between the runs of the job.
+     * @param pacingWindow The number of milliseconds a run may spread its recalculations over. 
+     * @param requestLoad Delivers the number of requests currently being handled by the pillar. May be null.
+     */
+    public RecalculateChecksumJob(String collectionID, StorageModel model, long interval, long pacingWindow, 
+            IntSupplier requestLoad) {
         this.collectionID = collectionID;
         this.model = model;
+        this.interval = interval;
+        this.pacingWindow = pacingWindow;
+        this.requestLoad = requestLoad;
         id = new JobID(getClass().getSimpleName(), collectionID);
     }
     
@@ -60,11 +106,111 @@ public class RecalculateChecksumJob implements SchedulableJob {
         log.info("Recalculating old checksums for collection '" + collectionID + "'.");
         try {
             state = WorkflowState.RUNNING;
-            model.verifyFileToCacheConsistencyOfAllData(collectionID);
+            model.verifyFileToCacheConsistencyOfAllFileIDs(collectionID);
+            recalculateChecksums();
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while recalculating the checksums for collection '" + collectionID + "'.", e);
+            Thread.currentThread().interrupt();
         } finally {
             state = WorkflowState.NOT_RUNNING;
         }
     }
+    
+    /**
+     * Recalculates the checksums for this run, with the oldest checksums first.
+     * Stops if the job is aborted.
+     */
+    private void recalculateChecksums() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + pacingWindow;
+        long minimumNumberOfFiles = getMinimumNumberOfFiles(model.getNumberOfChecksums(collectionID));
+        List<String> fileIDs = model.getFileIDsForChecksumRecalculation(collectionID, minimumNumberOfFiles);
+        filesToRecalculate = fileIDs.size();
+        recalculatedFiles = 0;
+        recalculationStart = System.currentTimeMillis();
+        log.debug("Recalculating " + filesToRecalculate + " checksums for collection '" + collectionID + "'.");
+        
+        for(String fileID : fileIDs) {
+            if(state != WorkflowState.RUNNING) {
+                log.info("Stopped recalculating checksums for collection '" + collectionID + "' after " 
+                        + recalculatedFiles + " of " + filesToRecalculate + " files.");
+                return;
+            }
+            try {
+                model.recalculateChecksum(fileID, collectionID);
+            } catch (RuntimeException e) {
+                log.warn("Could not recalculate the checksum of file '" + fileID + "' in collection '" 
+                        + collectionID + "'.", e);
+            }
+            recalculatedFiles++;
+            pace(filesToRecalculate - recalculatedFiles, deadline);
+        }
+    }
+    
+    /**
+     * Calculates how many checksums to recalculate in a run, for all the checksums to be recalculated once within 
+     * the maximum age for checksums.
+     * @param numberOfFiles The number of files in the collection.
+     * @return The minimum number of files to recalculate the checksum for in this run.
+     */
+    private long getMinimumNumberOfFiles(int numberOfFiles) {
+        long maxAge = model.getMaxAgeForChecksums();
+        if(maxAge <= 0) {
+            return numberOfFiles;
+        }
+        recalculationCarry += (double) numberOfFiles * interval / maxAge;
+        long numberOfFilesForRun = (long) recalculationCarry;
+        recalculationCarry -= numberOfFilesForRun;
+        return numberOfFilesForRun;
+    }
+    
+    /**
+     * Waits before the next recalculation, so the remaining recalculations are spread evenly until the deadline.
+     * Keeps waiting while the pillar is handling requests, as long as the remaining recalculations can still be 
+     * spread over the time left.
+     * @param remainingFiles The number of files remaining.
+     * @param deadline The time the recalculations should be finished.
+     */
+    private void pace(int remainingFiles, long deadline) throws InterruptedException {
+        if(remainingFiles <= 0) {
+            return;
+        }
+        long delay = (deadline - System.currentTimeMillis()) / (remainingFiles + 1);
+        if(delay > 0) {
+            Thread.sleep(delay);
+        }
+        while(requestLoad != null && requestLoad.getAsInt() > 0 
+                && (deadline - System.currentTimeMillis()) / (remainingFiles + 1) > LOAD_BACKOFF_TIME) {
+            Thread.sleep(LOAD_BACKOFF_TIME);
+        }
+    }
+    
+    /**
+     * @return The number of checksums to recalculate in the current or latest run.
+     */
+    public int getNumberOfFilesToRecalculate() {
+        return filesToRecalculate;
+    }
+    
+    /**
+     * @return The number of checksums recalculated in the current or latest run.
+     */
+    public int getNumberOfRecalculatedFiles() {
+        return recalculatedFiles;
+    }
+    
+    /**
+     * Estimates when the current run will be finished, based on the rate of the recalculations so far.
+     * @return The estimated time of completion, or null if the job is not recalculating checksums.
+     */
+    public Date getEstimatedCompletionTime() {
+        int done = recalculatedFiles;
+        int total = filesToRecalculate;
+        if(state != WorkflowState.RUNNING || done == 0 || total == 0) {
+            return null;
+        }
+        long elapsed = System.currentTimeMillis() - recalculationStart;
+        return new Date(recalculationStart + elapsed * total / done);
+    }
 
     @Override
     public WorkflowState currentState() {
@@ -93,6 +239,11 @@ public class RecalculateChecksumJob implements SchedulableJob {
 
     @Override
     public String getHumanReadableState() {
-       return state.name();
+        Date estimatedCompletion = getEstimatedCompletionTime();
+        if(estimatedCompletion == null) {
+            return state.name();
+        }
+        return state.name() + " (recalculated " + recalculatedFiles + " of " + filesToRecalculate 
+                + " checksums, expected to finish at " + estimatedCompletion + ")";
     }
 }
@@ -124,8 +124,9 @@ public class ChecksumStorageModel extends StorageModel {
     }
 
     @Override
-    protected ExtractedChecksumResultSet getNonDefaultChecksumResultSet(Long maxResults, String collectionID, 
-            ChecksumSpecTYPE csSpec) throws RequestHandlerException {
+    protected ExtractedChecksumResultSet getNonDefaultChecksumResultSet(XMLGregorianCalendar minTimestamp,
+            XMLGregorianCalendar maxTimestamp, Long maxResults, String collectionID, ChecksumSpecTYPE csSpec)
+                    throws RequestHandlerException {
         throw new InvalidMessageException(ResponseCode.REQUEST_NOT_SUPPORTED, "This is a checksum pillar and it does "
                 + "not have the actual file. Only it's checksum.");
     }
@@ -255,4 +256,14 @@ public class ChecksumStorageModel extends StorageModel {
     public void verifyFileToCacheConsistencyOfAllData(String collectionID) {
         log.warn("Should not make a call to verify all data on a ChecksumPillar.");
     }
+
+    @Override
+    public void verifyFileToCacheConsistencyOfAllFileIDs(String collectionID) {
+        log.warn("Should not make a call to verify all data on a ChecksumPillar.");
+    }
+
+    @Override
+    public void recalculateChecksum(String fileID, String collectionID) {
+        log.warn("Should not make a call to recalculate checksums on a ChecksumPillar.");
+    }
 }
@@ -24,7 +24,9 @@
  */
 package org.bitrepository.pillar.store;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.util.Date;
 import java.util.Map;
@@ -43,7 +45,7 @@ import org.bitrepository.common.settings.Settings;
 import org.bitrepository.common.utils.Base16Utils;
 import org.bitrepository.common.utils.CalendarUtils;
 import org.bitrepository.common.utils.ChecksumUtils;
-import org.bitrepository.pillar.store.checksumdatabase.ChecksumEntry;
+import org.bitrepository.common.utils.FileUtils;
 import org.bitrepository.pillar.store.checksumdatabase.ChecksumStore;
 import org.bitrepository.pillar.store.checksumdatabase.ExtractedChecksumResultSet;
 import org.bitrepository.pillar.store.checksumdatabase.ExtractedFileIDsResultSet;
@@ -53,6 +55,8 @@ import org.bitrepository.service.exception.IdentifyContributorException;
 import org.bitrepository.service.exception.IllegalOperationException;
 import org.bitrepository.service.exception.InvalidMessageException;
 import org.bitrepository.service.exception.RequestHandlerException;
+import org.bitrepository.settings.referencesettings.FileExchangeSettings;
+import org.bitrepository.settings.referencesettings.ProtocolType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,6 +65,8 @@ import org.slf4j.LoggerFactory;
  */
 public class FileStorageModel extends StorageModel {
     private Logger log = LoggerFactory.getLogger(getClass());
+    /** The calculator of checksums with non-default checksum specifications.*/
+    private final NonDefaultChecksumCalculator nonDefaultChecksumCalculator;
 
     /**
      * @param archives        The file archives.
@@ -72,6 +78,7 @@ public class FileStorageModel extends StorageModel {
     public FileStorageModel(FileStore archives, ChecksumStore cache, AlarmDispatcher alarmDispatcher,
             Settings settings, FileExchange fileExchange) {
         super(archives, cache, alarmDispatcher, settings, fileExchange);
+        nonDefaultChecksumCalculator = new NonDefaultChecksumCalculator(archives, cache);
         log.info("Instantiating the FileStorageModel: " + getPillarID());
     }
 
@@ -94,8 +101,7 @@ public class FileStorageModel extends StorageModel {
 
     @Override
     protected String getNonDefaultChecksum(String fileID, String collectionID, ChecksumSpecTYPE csType) {
-        FileInfo fi = fileArchive.getFileInfo(fileID, collectionID);
-        return ChecksumUtils.generateChecksum(fi, csType);
+        return nonDefaultChecksumCalculator.getChecksum(fileID, collectionID, csType);
     }
 
     @Override
@@ -142,22 +148,17 @@ public class FileStorageModel extends StorageModel {
     }
 
     @Override
-    protected ExtractedChecksumResultSet getNonDefaultChecksumResultSet(
-            Long maxResults, String collectionID, ChecksumSpecTYPE csSpec) {
-        ExtractedChecksumResultSet res = new ExtractedChecksumResultSet();
-
-        long i = 0;
-        for(String fileID : cache.getAllFileIDs(collectionID)) {
-            if(maxResults != null && i > maxResults) {
-                break;
-            }
-            i++;
+    protected ExtractedChecksumResultSet getNonDefaultChecksumResultSet(XMLGregorianCalendar minTimestamp,
+            XMLGregorianCalendar maxTimestamp, Long maxResults, String collectionID, ChecksumSpecTYPE csSpec)
+                    throws RequestHandlerException {
+        return nonDefaultChecksumCalculator.getChecksumResultSet(minTimestamp, maxTimestamp, maxResults,
+                collectionID, csSpec);
+    }
 
-            String checksum = getNonDefaultChecksum(fileID, collectionID, csSpec);
-            ChecksumEntry entry = new ChecksumEntry(fileID, checksum, new Date());
-            res.insertChecksumEntry(entry);
-        }
-        return res;
+    @Override
+    public void close() {
+        nonDefaultChecksumCalculator.close();
+        super.close();
     }
 
     @Override
@@ -194,12 +195,8 @@ public class FileStorageModel extends StorageModel {
         recalculateChecksum(fileID, collectionID);
     }
 
-    /**
-     * Recalculates the checksum of a given file based on the default checksum specification.
-     * @param fileID The id of the file to recalculate its default checksum for.
-     * @param collectionID The id of the collection of the file.
-     */
-    protected void recalculateChecksum(String fileID, String collectionID) {
+    @Override
+    public void recalculateChecksum(String fileID, String collectionID) {
         log.info("Recalculating the checksum of file '" + fileID + "'.");
         FileInfo fi = fileArchive.getFileInfo(fileID, collectionID);
         String checksum = ChecksumUtils.generateChecksum(fi, defaultChecksumSpec);
@@ -257,6 +254,17 @@ public class FileStorageModel extends StorageModel {
 
     @Override
     public void verifyFileToCacheConsistencyOfAllData(String collectionID) {
+        verifyFileToCacheConsistencyOfAllFileIDs(collectionID);
+
+        Date checksumDate = new Date(System.currentTimeMillis() - getMaxAgeForChecksums());
+        for(String fileID : cache.getFileIDsWithOldChecksums(checksumDate, collectionID)) {
+            recalculateChecksum(fileID, collectionID);
+        }
+        // TODO: validate the 'last modified' timestamp ? 
+    }
+
+    @Override
+    public void verifyFileToCacheConsistencyOfAllFileIDs(String collectionID) {
         for(String fileID : cache.getAllFileIDs(collectionID)) {
             verifyCacheToArchiveConsistencyForFile(fileID, collectionID);
         }
@@ -264,14 +272,6 @@ public class FileStorageModel extends StorageModel {
         for(String fileID : fileArchive.getAllFileIds(collectionID)) {
             verifyArchiveToCacheConsistencyForFile(fileID, collectionID);
         }
-
-        Long maxAgeForChecksums = settings.getReferenceSettings().getPillarSettings()
-                .getMaxAgeForChecksums().longValue();
-        Date checksumDate = new Date(System.currentTimeMillis() - maxAgeForChecksums);
-        for(String fileID : cache.getFileIDsWithOldChecksums(checksumDate, collectionID)) {
-            recalculateChecksum(fileID, collectionID);
-        }
-        // TODO: validate the 'last modified' timestamp ? 
     }
 
     /**
@@ -321,8 +321,15 @@ public class FileStorageModel extends StorageModel {
         log.debug("Retrieving the data to be stored from URL: '" + fileAddress + "'");
 
         try {
-            fileArchive.downloadFileForValidation(fileID, collectionID,
-                    fileExchange.getFile(new URL(fileAddress)));
+            URL url = new URL(fileAddress);
+            File localFile = useHardLinks() ? FileUtils.getLocalFile(url) : null;
+            if(localFile != null) {
+                fileArchive.downloadFileForValidation(fileID, collectionID, localFile);
+            } else {
+                try (InputStream in = fileExchange.getFile(url)) {
+                    fileArchive.downloadFileForValidation(fileID, collectionID, in);
+                }
+            }
         } catch (IOException e) {
             String errMsg = "Could not retrieve the file from '" + fileAddress + "'";
             log.error(errMsg, e);
@@ -330,6 +337,16 @@ public class FileStorageModel extends StorageModel {
         }        
     }
 
+    /**
+     * @return Whether files on the local file system should be linked into the archive instead of copied, according 
+     * to the file exchange settings.
+     */
+    private boolean useHardLinks() {
+        FileExchangeSettings fileExchangeSettings = settings.getReferenceSettings().getFileExchangeSettings();
+        return fileExchangeSettings != null && fileExchangeSettings.getProtocolType() == ProtocolType.FILE
+                && fileExchangeSettings.isSetUseHardLinks() && fileExchangeSettings.isUseHardLinks();
+    }
+
     /**
      * Verifies that a file in temporary area has the expected checksum.
      * 
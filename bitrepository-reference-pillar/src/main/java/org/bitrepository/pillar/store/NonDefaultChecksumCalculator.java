@@ -0,0 +1,569 @@
+/*
+ * #%L
+ * Bitrepository Reference Pillar
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.pillar.store;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.ResponseCode;
+import org.bitrepository.common.DefaultThreadFactory;
+import org.bitrepository.common.filestore.FileInfo;
+import org.bitrepository.common.filestore.FileStore;
+import org.bitrepository.common.utils.Base16Utils;
+import org.bitrepository.common.utils.CalendarUtils;
+import org.bitrepository.common.utils.ChecksumUtils;
+import org.bitrepository.pillar.store.checksumdatabase.ChecksumEntry;
+import org.bitrepository.pillar.store.checksumdatabase.ChecksumStore;
+import org.bitrepository.pillar.store.checksumdatabase.ExtractedChecksumResultSet;
+import org.bitrepository.service.exception.InvalidMessageException;
+import org.bitrepository.service.exception.RequestHandlerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Calculates the checksums of the files with non-default checksum specifications, i.e. other algorithms or salts
+ * than the checksums in the checksum store.
+ * <p/>
+ * Requests for the checksums of a whole collection are delivered in pages. The files of the collection are listed
+ * once, and each checksum is delivered with the time it was actually calculated. The listing delivers the
+ * checksums in the order of their calculation timestamps: first the cached checksums, which were calculated
+ * before the listing was made, and then the checksums calculated for the listing, one page at a time. A cached
+ * checksum older than the checksums already delivered from the listing is calculated again instead.
+ * <p/>
+ * The position in the listing is the stable key of the paging. The calculation timestamp of the last checksum
+ * in a page is mapped to the position following the page, so a request with that timestamp as minimum
+ * continues the listing exactly where the page ended, also when several checksums were calculated in the same
+ * millisecond. Any other minimum timestamp continues from the first checksum calculated at that time or later.
+ * A page holds at most {@link #DEFAULT_MAX_PAGE_SIZE} checksums, also when the request has no maximum number of
+ * results, so the calculations handed to the workers are bounded.
+ * <p/>
+ * If the checksum of a file in a page cannot be calculated, the request fails.
+ * <p/>
+ * The checksums are calculated by a bounded pool of workers, and are kept in a bounded cache, so a page requested
+ * again, or a single file requested again, does not need to be recalculated unless the file has changed.
+ */
+class NonDefaultChecksumCalculator {
+    /** The default number of workers calculating checksums.*/
+    static final int DEFAULT_NUMBER_OF_WORKERS = 4;
+    /** The default maximum number of cached checksums.*/
+    static final int DEFAULT_CACHE_SIZE = 100000;
+    /** The default maximum number of checksums in a page.*/
+    static final int DEFAULT_MAX_PAGE_SIZE = 10000;
+    /** The period a listing is reused for requests from the start of the collection.*/
+    static final long LISTING_REUSE_PERIOD = TimeUnit.MINUTES.toMillis(10);
+    /** The period a listing is kept after its last use.*/
+    static final long LISTING_IDLE_TIMEOUT = TimeUnit.HOURS.toMillis(1);
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final FileStore fileArchive;
+    private final ChecksumStore checksumStore;
+    private final ExecutorService workers;
+    /** The maximum number of checksums in a page.*/
+    private final int maxPageSize;
+    /** The calculated checksums, evicting the least recently used. Guarded by itself.*/
+    private final Map<String, CachedChecksum> cache;
+    /** The checksums being calculated, mapped from their cache key.*/
+    private final ConcurrentMap<String, FutureTask<CachedChecksum>> calculations =
+            new ConcurrentHashMap<String, FutureTask<CachedChecksum>>();
+    /** The listings of the collections, mapped from the collection and checksum specification. Guarded by itself.*/
+    private final Map<String, List<Listing>> listings = new HashMap<String, List<Listing>>();
+
+    /**
+     * The files of a collection, and the checksums delivered from them in the order of their calculation
+     * timestamps. The files and checksums are guarded by the listing.
+     */
+    private static class Listing {
+        /** The files with a cached checksum when the listing was made, oldest checksum first.*/
+        private final Deque<String> cachedFileIDs;
+        /** The files whose checksums must be calculated for the listing.*/
+        private final Deque<String> uncalculatedFileIDs;
+        /** The checksums of the listing, in the order of their calculation timestamps.*/
+        private final List<ChecksumEntry> entries = new ArrayList<ChecksumEntry>();
+        /** The position following each delivered page, mapped from the timestamp of the last checksum in it.*/
+        private final Map<Long, Integer> continuations = new ConcurrentHashMap<Long, Integer>();
+        /** The time the listing was made.*/
+        private final long created;
+        /** The calculation timestamp of the first checksum. Null until a checksum is in the listing.*/
+        private volatile Long firstTimestamp;
+        /** The calculation timestamp of the last checksum. Null until a checksum is in the listing.*/
+        private volatile Long lastTimestamp;
+        /** The time the listing was last requested. Guarded by the listings.*/
+        private long lastUsed;
+
+        Listing(Deque<String> cachedFileIDs, Deque<String> uncalculatedFileIDs, long created) {
+            this.cachedFileIDs = cachedFileIDs;
+            this.uncalculatedFileIDs = uncalculatedFileIDs;
+            this.created = created;
+        }
+
+        /**
+         * @return Whether some of the files have no checksum in the listing yet.
+         */
+        boolean hasUnresolvedFiles() {
+            return !cachedFileIDs.isEmpty() || !uncalculatedFileIDs.isEmpty();
+        }
+
+        /**
+         * @param timestamp A minimum timestamp of a request.
+         * @return Whether the request continues this listing.
+         */
+        boolean continues(long timestamp) {
+            Long first = firstTimestamp;
+            Long last = lastTimestamp;
+            return continuations.containsKey(timestamp) || (first != null && first <= timestamp && timestamp <= last);
+        }
+
+        /**
+         * @param minTime The minimum timestamp of a request, or null.
+         * @return The position the request starts from. The position following the page ending at the timestamp,
+         * otherwise the position of the first checksum calculated at the timestamp or later.
+         */
+        int getStart(Long minTime) {
+            if (minTime == null) {
+                return 0;
+            }
+            Integer continuation = continuations.get(minTime);
+            if (continuation != null) {
+                return continuation;
+            }
+            int low = 0;
+            int high = entries.size();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (entries.get(middle).getCalculationDate().getTime() < minTime) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Adds checksums to the end of the listing, in the order of their calculation timestamps. The files of
+         * the checksums older than the end of the listing are left to be calculated again.
+         * @param newEntries The checksums to add.
+         */
+        void append(List<ChecksumEntry> newEntries) {
+            Collections.sort(newEntries, new Comparator<ChecksumEntry>() {
+                @Override
+                public int compare(ChecksumEntry e1, ChecksumEntry e2) {
+                    return e1.getCalculationDate().compareTo(e2.getCalculationDate());
+                }
+            });
+            for (ChecksumEntry entry : newEntries) {
+                long timestamp = entry.getCalculationDate().getTime();
+                if (lastTimestamp != null && timestamp < lastTimestamp) {
+                    uncalculatedFileIDs.addLast(entry.getFileId());
+                    continue;
+                }
+                entries.add(entry);
+                if (firstTimestamp == null) {
+                    firstTimestamp = timestamp;
+                }
+                lastTimestamp = timestamp;
+            }
+        }
+    }
+
+    /**
+     * A calculated checksum, the time it was calculated, and the state of the file when it was calculated.
+     */
+    private static class CachedChecksum {
+        private final String checksum;
+        private final long calculated;
+        private final Long lastModified;
+        private final long size;
+
+        CachedChecksum(String checksum, long calculated, FileInfo fileInfo) {
+            this.checksum = checksum;
+            this.calculated = calculated;
+            this.lastModified = fileInfo.getLastModifiedDate();
+            this.size = fileInfo.getSize();
+        }
+
+        /**
+         * @param fileInfo The current state of the file.
+         * @return Whether the file is unchanged since the checksum was calculated.
+         */
+        boolean isValidFor(FileInfo fileInfo) {
+            return size == fileInfo.getSize() && lastModified != null
+                    && lastModified.equals(fileInfo.getLastModifiedDate());
+        }
+    }
+
+    /**
+     * @param fileArchive The archive with the files.
+     * @param checksumStore The checksum store, listing the files of the collections.
+     */
+    NonDefaultChecksumCalculator(FileStore fileArchive, ChecksumStore checksumStore) {
+        this(fileArchive, checksumStore, DEFAULT_NUMBER_OF_WORKERS, DEFAULT_CACHE_SIZE, DEFAULT_MAX_PAGE_SIZE);
+    }
+
+    /**
+     * @param fileArchive The archive with the files.
+     * @param checksumStore The checksum store, listing the files of the collections.
+     * @param numberOfWorkers The number of workers calculating checksums.
+     * @param cacheSize The maximum number of cached checksums.
+     * @param maxPageSize The maximum number of checksums in a page.
+     */
+    NonDefaultChecksumCalculator(FileStore fileArchive, ChecksumStore checksumStore, int numberOfWorkers,
+            final int cacheSize, int maxPageSize) {
+        this.fileArchive = fileArchive;
+        this.checksumStore = checksumStore;
+        this.maxPageSize = maxPageSize;
+        this.workers = Executors.newFixedThreadPool(numberOfWorkers,
+                new DefaultThreadFactory("NonDefaultChecksumCalculator-", Thread.NORM_PRIORITY, true));
+        this.cache = new LinkedHashMap<String, CachedChecksum>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedChecksum> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Calculates the checksum of a single file, unless it is cached and the file has not changed since.
+     * @param fileID The id of the file.
+     * @param collectionID The id of the collection.
+     * @param csSpec The checksum specification.
+     * @return The checksum of the file.
+     */
+    String getChecksum(String fileID, String collectionID, ChecksumSpecTYPE csSpec) {
+        CachedChecksum cached = getValidCachedChecksum(fileID, collectionID, csSpec);
+        if (cached == null) {
+            cached = calculateChecksum(fileID, collectionID, csSpec);
+        }
+        return cached.checksum;
+    }
+
+    /**
+     * Delivers a page of the checksums of a collection.
+     * @param minTimestamp The minimum calculation timestamp, continuing a previous page. Null from the start.
+     * @param maxTimestamp The maximum calculation timestamp. Null for no limit.
+     * @param maxResults The maximum number of results. Null for a page of the maximum size.
+     * @param collectionID The id of the collection.
+     * @param csSpec The checksum specification.
+     * @return The checksums of the page. More entries are reported if the page is not the last.
+     * @throws RequestHandlerException If the calculation is interrupted, or the checksum of a file in the page
+     * cannot be calculated.
+     */
+    ExtractedChecksumResultSet getChecksumResultSet(XMLGregorianCalendar minTimestamp,
+            XMLGregorianCalendar maxTimestamp, Long maxResults, String collectionID, ChecksumSpecTYPE csSpec)
+                    throws RequestHandlerException {
+        Long minTime = (minTimestamp == null ? null
+                : CalendarUtils.convertFromXMLGregorianCalendar(minTimestamp).getTime());
+        Long maxTime = (maxTimestamp == null ? null
+                : CalendarUtils.convertFromXMLGregorianCalendar(maxTimestamp).getTime());
+        int pageSize = (int) (maxResults == null ? maxPageSize : Math.min(maxResults, maxPageSize));
+        Listing listing = getListing(collectionID, csSpec, minTime);
+
+        ExtractedChecksumResultSet res = new ExtractedChecksumResultSet();
+        synchronized (listing) {
+            int start = listing.getStart(minTime);
+            while (listing.entries.size() - start < pageSize && listing.hasUnresolvedFiles()
+                    && (maxTime == null || listing.lastTimestamp == null || listing.lastTimestamp <= maxTime)) {
+                resolve(listing, pageSize, collectionID, csSpec);
+                start = listing.getStart(minTime);
+            }
+
+            int end = start;
+            while (end < listing.entries.size() && end - start < pageSize
+                    && isWithin(listing.entries.get(end), maxTime)) {
+                res.insertChecksumEntry(listing.entries.get(end));
+                end++;
+            }
+            if (end > start) {
+                listing.continuations.put(listing.entries.get(end - 1).getCalculationDate().getTime(), end);
+            }
+
+            boolean moreEntries;
+            if (end < listing.entries.size()) {
+                moreEntries = isWithin(listing.entries.get(end), maxTime);
+            } else {
+                moreEntries = listing.hasUnresolvedFiles() && (maxTime == null || listing.lastTimestamp == null
+                        || listing.lastTimestamp <= maxTime);
+            }
+            if (moreEntries) {
+                res.reportMoreEntriesFound();
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Stops the workers.
+     */
+    void close() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Adds the checksums of the next files to the listing. The cached checksums are added, as long as any remain
+     * from when the listing was made. The files whose cached checksum is no longer valid are left to be
+     * calculated after them. Afterwards the checksums of the next files are calculated by the workers.
+     * @param listing The listing.
+     * @param numberOfFiles The maximum number of files to resolve.
+     * @param collectionID The id of the collection.
+     * @param csSpec The checksum specification.
+     * @throws RequestHandlerException If the calculation is interrupted, or the checksum of a file cannot be
+     * calculated. The files are then left unresolved.
+     */
+    private void resolve(Listing listing, int numberOfFiles, String collectionID, ChecksumSpecTYPE csSpec)
+            throws RequestHandlerException {
+        List<ChecksumEntry> newEntries = new ArrayList<ChecksumEntry>();
+        if (!listing.cachedFileIDs.isEmpty()) {
+            for (int i = 0; i < numberOfFiles && !listing.cachedFileIDs.isEmpty(); i++) {
+                String fileID = listing.cachedFileIDs.pollFirst();
+                CachedChecksum cached;
+                try {
+                    cached = getValidCachedChecksum(fileID, collectionID, csSpec);
+                } catch (RuntimeException e) {
+                    log.debug("Could not validate the cached checksum of the file '" + fileID + "'. It will be "
+                            + "calculated.", e);
+                    cached = null;
+                }
+                if (cached == null) {
+                    listing.uncalculatedFileIDs.addLast(fileID);
+                } else {
+                    newEntries.add(new ChecksumEntry(fileID, cached.checksum, new Date(cached.calculated)));
+                }
+            }
+            listing.append(newEntries);
+            return;
+        }
+
+        List<String> fileIDs = new ArrayList<String>();
+        while (fileIDs.size() < numberOfFiles && !listing.uncalculatedFileIDs.isEmpty()) {
+            fileIDs.add(listing.uncalculatedFileIDs.pollFirst());
+        }
+        List<FutureTask<CachedChecksum>> tasks = calculate(fileIDs, collectionID, csSpec);
+        for (int i = 0; i < fileIDs.size(); i++) {
+            String fileID = fileIDs.get(i);
+            try {
+                CachedChecksum calculated = tasks.get(i).get();
+                newEntries.add(new ChecksumEntry(fileID, calculated.checksum, new Date(calculated.calculated)));
+            } catch (ExecutionException e) {
+                returnUnresolvedFiles(listing, fileIDs);
+                log.warn("Could not calculate the checksum of the file '" + fileID + "' in collection '"
+                        + collectionID + "'.", e.getCause());
+                throw new InvalidMessageException(ResponseCode.FAILURE, "Could not calculate the checksum of the "
+                        + "file '" + fileID + "': " + e.getCause().getMessage(), e);
+            } catch (InterruptedException e) {
+                returnUnresolvedFiles(listing, fileIDs);
+                Thread.currentThread().interrupt();
+                throw new InvalidMessageException(ResponseCode.FAILURE, "Interrupted while calculating the "
+                        + "checksums", e);
+            }
+        }
+        listing.append(newEntries);
+    }
+
+    /**
+     * Places files back at the front of the files to calculate, after their calculation failed.
+     */
+    private void returnUnresolvedFiles(Listing listing, List<String> fileIDs) {
+        for (int i = fileIDs.size() - 1; i >= 0; i--) {
+            listing.uncalculatedFileIDs.addFirst(fileIDs.get(i));
+        }
+    }
+
+    /**
+     * Hands the calculation of the checksums of files to the workers. The files already being calculated are not
+     * calculated again.
+     * @return The calculations of the checksums, in the order of the files.
+     */
+    private List<FutureTask<CachedChecksum>> calculate(List<String> fileIDs, final String collectionID,
+            final ChecksumSpecTYPE csSpec) {
+        List<FutureTask<CachedChecksum>> tasks = new ArrayList<FutureTask<CachedChecksum>>(fileIDs.size());
+        for (final String fileID : fileIDs) {
+            final String key = getCacheKey(fileID, collectionID, csSpec);
+            FutureTask<CachedChecksum> task = calculations.get(key);
+            if (task == null) {
+                FutureTask<CachedChecksum> newTask = new FutureTask<CachedChecksum>(new Callable<CachedChecksum>() {
+                    @Override
+                    public CachedChecksum call() throws Exception {
+                        try {
+                            return calculateChecksum(fileID, collectionID, csSpec);
+                        } finally {
+                            calculations.remove(key);
+                        }
+                    }
+                });
+                task = calculations.putIfAbsent(key, newTask);
+                if (task == null) {
+                    task = newTask;
+                    workers.execute(newTask);
+                }
+            }
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    /**
+     * Calculates the checksum of a file, and caches it with the time of the calculation.
+     * @return The calculated checksum.
+     */
+    private CachedChecksum calculateChecksum(String fileID, String collectionID, ChecksumSpecTYPE csSpec) {
+        FileInfo fileInfo = fileArchive.getFileInfo(fileID, collectionID);
+        String checksum = ChecksumUtils.generateChecksum(fileInfo, csSpec);
+        CachedChecksum calculated = new CachedChecksum(checksum, System.currentTimeMillis(), fileInfo);
+        synchronized (cache) {
+            cache.put(getCacheKey(fileID, collectionID, csSpec), calculated);
+        }
+        return calculated;
+    }
+
+    /**
+     * @return The cached checksum of a file, or null if it is not cached or the file has changed since.
+     */
+    private CachedChecksum getValidCachedChecksum(String fileID, String collectionID, ChecksumSpecTYPE csSpec) {
+        CachedChecksum cached;
+        synchronized (cache) {
+            cached = cache.get(getCacheKey(fileID, collectionID, csSpec));
+        }
+        if (cached != null && cached.isValidFor(fileArchive.getFileInfo(fileID, collectionID))) {
+            return cached;
+        }
+        return null;
+    }
+
+    /**
+     * Finds the listing a request belongs to. A request with a minimum timestamp continues the latest listing
+     * it belongs to. A request from the start of the collection reuses the latest listing, if it is recent.
+     * Otherwise a new listing of the collection is made, with the files having cached checksums first.
+     * @param collectionID The id of the collection.
+     * @param csSpec The checksum specification.
+     * @param minTime The minimum timestamp of the request, or null.
+     * @return The listing.
+     */
+    private Listing getListing(String collectionID, ChecksumSpecTYPE csSpec, Long minTime) {
+        long now = System.currentTimeMillis();
+        String key = collectionID + "#" + getSpecKey(csSpec);
+        synchronized (listings) {
+            List<Listing> collectionListings = listings.get(key);
+            if (collectionListings == null) {
+                collectionListings = new ArrayList<Listing>();
+                listings.put(key, collectionListings);
+            }
+            Iterator<Listing> it = collectionListings.iterator();
+            while (it.hasNext()) {
+                if (it.next().lastUsed < now - LISTING_IDLE_TIMEOUT) {
+                    it.remove();
+                }
+            }
+
+            Listing listing = null;
+            if (minTime == null) {
+                Listing latest = collectionListings.isEmpty() ? null
+                        : collectionListings.get(collectionListings.size() - 1);
+                if (latest != null && latest.created >= now - LISTING_REUSE_PERIOD) {
+                    listing = latest;
+                }
+            } else {
+                for (Listing candidate : collectionListings) {
+                    if (candidate.continues(minTime)) {
+                        listing = candidate;
+                    }
+                }
+            }
+
+            if (listing == null) {
+                listing = createListing(collectionID, csSpec, now);
+                collectionListings.add(listing);
+            }
+            listing.lastUsed = now;
+            return listing;
+        }
+    }
+
+    /**
+     * Lists the files of a collection. The files with cached checksums are placed first, in the order of the
+     * calculation timestamps of their checksums, followed by the files without cached checksums.
+     */
+    private Listing createListing(String collectionID, ChecksumSpecTYPE csSpec, long now) {
+        final Map<String, Long> cachedTimestamps = new HashMap<String, Long>();
+        List<String> cachedFileIDs = new ArrayList<String>();
+        Deque<String> uncalculatedFileIDs = new ArrayDeque<String>();
+        for (String fileID : checksumStore.getAllFileIDs(collectionID)) {
+            CachedChecksum cached;
+            synchronized (cache) {
+                cached = cache.get(getCacheKey(fileID, collectionID, csSpec));
+            }
+            if (cached == null) {
+                uncalculatedFileIDs.add(fileID);
+            } else {
+                cachedTimestamps.put(fileID, cached.calculated);
+                cachedFileIDs.add(fileID);
+            }
+        }
+        Collections.sort(cachedFileIDs, new Comparator<String>() {
+            @Override
+            public int compare(String fileID1, String fileID2) {
+                return cachedTimestamps.get(fileID1).compareTo(cachedTimestamps.get(fileID2));
+            }
+        });
+        log.info("Listed " + (cachedFileIDs.size() + uncalculatedFileIDs.size()) + " files of collection '"
+                + collectionID + "' for the calculation of checksums with the specification " + csSpec + ", of "
+                + "which " + cachedFileIDs.size() + " have cached checksums.");
+        return new Listing(new ArrayDeque<String>(cachedFileIDs), uncalculatedFileIDs, now);
+    }
+
+    private static boolean isWithin(ChecksumEntry entry, Long maxTime) {
+        return maxTime == null || entry.getCalculationDate().getTime() <= maxTime;
+    }
+
+    private static String getCacheKey(String fileID, String collectionID, ChecksumSpecTYPE csSpec) {
+        return collectionID + "#" + getSpecKey(csSpec) + "#" + fileID;
+    }
+
+    private static String getSpecKey(ChecksumSpecTYPE csSpec) {
+        String salt = "";
+        if (csSpec.getChecksumSalt() != null) {
+            salt = Base16Utils.decodeBase16(csSpec.getChecksumSalt());
+        }
+        return csSpec.getChecksumType() + ":" + salt;
+    }
+}
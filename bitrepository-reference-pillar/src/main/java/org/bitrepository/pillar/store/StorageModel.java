@@ -25,10 +25,13 @@
 package org.bitrepository.pillar.store;
 
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 import javax.xml.datatype.XMLGregorianCalendar;
 
+import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
 import org.bitrepository.bitrepositoryelements.ChecksumDataForFileTYPE;
 import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
 import org.bitrepository.bitrepositoryelements.ResponseCode;
@@ -202,8 +205,7 @@ public abstract class StorageModel {
         } else {
             log.info("Bulk-extraction of non-default checksums for spec: " + csSpec 
                     + ", on collection " + collectionID + ", with maximum " + maxResults + " results.");
-            // We ignore minTimestamp and maxTimestamp when dealing with non-default checksums.
-            return getNonDefaultChecksumResultSet(maxResults, collectionID, csSpec);
+            return getNonDefaultChecksumResultSet(minTimestamp, maxTimestamp, maxResults, collectionID, csSpec);
         }
     }
     
@@ -247,6 +249,42 @@ public abstract class StorageModel {
         cache.deleteEntry(fileID, collectionID);
     }
     
+    /**
+     * @return The number of milliseconds a checksum can be before it has to be recalculated.
+     */
+    public long getMaxAgeForChecksums() {
+        return settings.getReferenceSettings().getPillarSettings().getMaxAgeForChecksums().longValue();
+    }
+    
+    /**
+     * @param collectionID The id of the collection.
+     * @return The number of files with a checksum in the cache for the collection.
+     */
+    public int getNumberOfChecksums(String collectionID) {
+        return cache.getNumberOfFiles(collectionID);
+    }
+    
+    /**
+     * Retrieves the ids of the files, whose checksum should be recalculated, ordered by the age of their checksum.
+     * This is all the files with a checksum older than the maximum age, and at least the given number of files 
+     * with the oldest checksums. 
+     * @param collectionID The id of the collection.
+     * @param minimumNumberOfFiles The minimum number of files to retrieve, if the collection has that many files.
+     * @return The ids of the files, with the oldest checksum first.
+     */
+    public List<String> getFileIDsForChecksumRecalculation(String collectionID, long minimumNumberOfFiles) {
+        Date checksumDate = new Date(System.currentTimeMillis() - getMaxAgeForChecksums());
+        List<String> fileIDs = cache.getFileIDsWithOldChecksums(checksumDate, collectionID);
+        if(fileIDs.size() < minimumNumberOfFiles) {
+            fileIDs = new ArrayList<String>();
+            for(ChecksumDataForChecksumSpecTYPE entry : cache.getChecksumResults(null, null, minimumNumberOfFiles, 
+                    collectionID).getEntries()) {
+                fileIDs.add(entry.getFileID());
+            }
+        }
+        return fileIDs;
+    }
+    
     /**
      * Ensuring that the file is not in tmpDir is only relevant, if the file-archives exists.
      * @param fileID The id of the file to ensure not exist in tmpDir.
@@ -366,6 +404,21 @@ public abstract class StorageModel {
      */
     public abstract void verifyFileToCacheConsistencyOfAllData(String collectionID);
 
+    /**
+     * Validates that all files in the cache is also in the archive, and that all files in the archive
+     * is also in the cache, without recalculating the old checksums.
+     * @param collectionID The id of the collection where the data should be ensured.
+     */
+    public abstract void verifyFileToCacheConsistencyOfAllFileIDs(String collectionID);
+
+    /**
+     * Recalculates the checksum of a given file based on the default checksum specification.
+     * This will not be performed by ChecksumPillars, since they do not have the actual files.
+     * @param fileID The id of the file to recalculate its default checksum for.
+     * @param collectionID The id of the collection of the file.
+     */
+    public abstract void recalculateChecksum(String fileID, String collectionID);
+
     /**
      * Retrieves the non-default checksum for a file, thus calculating the checksum of the file with the new 
      * checksum specification.
@@ -405,6 +458,9 @@ public abstract class StorageModel {
     
     /**
      * Retrieves the checksums with a non-default checksum specification for some files.
+     * The checksums are delivered in pages, where the timestamps of the checksums continue the previous page.
+     * @param minTimestamp The minimum timestamp, continuing from a previous page.
+     * @param maxTimestamp The maximum timestamp.
      * @param maxResults The maximum number of results.
      * @param collectionID The id of the collection.
      * @param csSpec The checksum specification.
@@ -412,8 +468,9 @@ public abstract class StorageModel {
      * @throws RequestHandlerException If the non-default checksum specification is not supported, e.g. if it is a
      * ChecksumPillar.
      */
-    protected abstract ExtractedChecksumResultSet getNonDefaultChecksumResultSet(Long maxResults, String collectionID, 
-            ChecksumSpecTYPE csSpec) throws RequestHandlerException;
+    protected abstract ExtractedChecksumResultSet getNonDefaultChecksumResultSet(XMLGregorianCalendar minTimestamp,
+            XMLGregorianCalendar maxTimestamp, Long maxResults, String collectionID, ChecksumSpecTYPE csSpec)
+                    throws RequestHandlerException;
 
     /**
      * Throws an exception unless the actual file exists and is available.
@@ -139,6 +139,12 @@ public class ChecksumDAO implements ChecksumStore {
         return extractor.extractAllFileIDs(collectionID);
     }
 
+    @Override
+    public int getNumberOfFiles(String collectionID) {
+        ArgumentValidator.checkNotNull(collectionID, "String collectionID");
+        return extractor.extractNumberOfFiles(collectionID);
+    }
+
     @Override
     public void close() {
         connector.destroy();
@@ -256,6 +256,18 @@ public class ChecksumExtractor {
         return DatabaseUtils.selectStringList(connector, sql, collectionID);
     }
     
+    /**
+     * Counts the file ids for a given collection id within the database.
+     * @param collectionID The collection id for the extraction.
+     * @return The number of file ids in the database for the collection.
+     */
+    public int extractNumberOfFiles(String collectionID) {
+        String sql = "SELECT COUNT(*) FROM " + CHECKSUM_TABLE 
+                + " WHERE " + CS_COLLECTION_ID + " = ?";
+        Long count = DatabaseUtils.selectLongValue(connector, sql, collectionID);
+        return (count == null ? 0 : count.intValue());
+    }
+    
     /**
      * Extracts the checksum entries within the given optional limitations.
      * 
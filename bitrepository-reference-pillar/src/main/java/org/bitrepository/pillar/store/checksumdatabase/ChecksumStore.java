@@ -104,6 +104,13 @@ public interface ChecksumStore {
      */
     Collection<String> getAllFileIDs(String collectionID);
     
+    /**
+     * Retrieval of the number of files in the store.
+     * @param collectionID The id of the collection for the files.
+     * @return The number of files with a checksum in the store.
+     */
+    int getNumberOfFiles(String collectionID);
+    
     /**
      * Retrieval of the ids for the files where the checksum was calculated earlier than a certain date.
      * @param checksumDate The max calculation date for the checksums to retrieve.
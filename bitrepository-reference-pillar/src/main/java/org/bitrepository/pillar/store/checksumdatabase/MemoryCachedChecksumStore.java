@@ -0,0 +1,256 @@
+/*
+ * #%L
+ * Bitrepository Reference Pillar
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.pillar.store.checksumdatabase;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
+import org.bitrepository.common.ArgumentValidator;
+import org.bitrepository.common.utils.Base16Utils;
+import org.bitrepository.common.utils.CalendarUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checksum store keeping the checksum entries of the given collections in memory, in front of another checksum store.
+ * <p/>
+ * The entries are loaded from the underlying store at instantiation, and every insertion or deletion is written
+ * through to the underlying store before the memory is updated. Lookups of single files are thereby answered from
+ * memory, whereas the paged extractions and the extractions based on the calculation date are delegated to the
+ * underlying store, which has the indexes for them.
+ * Collections which have not been loaded are delegated to the underlying store.
+ */
+public class MemoryCachedChecksumStore implements ChecksumStore {
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    /** The store with the persisted checksums.*/
+    private final ChecksumStore store;
+    /** The checksum entries, mapped by collection and file id.*/
+    private final Map<String, Map<String, ChecksumEntry>> entries =
+            new ConcurrentHashMap<String, Map<String, ChecksumEntry>>();
+
+    /**
+     * Constructor. Loads the checksum entries of the collections from the underlying store.
+     * @param store The store with the persisted checksums.
+     * @param collectionIDs The ids of the collections to keep in memory.
+     */
+    public MemoryCachedChecksumStore(ChecksumStore store, Collection<String> collectionIDs) {
+        ArgumentValidator.checkNotNull(store, "ChecksumStore store");
+        ArgumentValidator.checkNotNull(collectionIDs, "Collection<String> collectionIDs");
+        this.store = store;
+        for(String collectionID : collectionIDs) {
+            entries.put(collectionID, loadCollection(collectionID));
+        }
+    }
+
+    /**
+     * @param collectionID The id of the collection to load.
+     * @return The checksum entries of the collection, mapped by file id.
+     */
+    private Map<String, ChecksumEntry> loadCollection(String collectionID) {
+        long startTime = System.currentTimeMillis();
+        Map<String, ChecksumEntry> collectionEntries = new ConcurrentHashMap<String, ChecksumEntry>();
+        for(ChecksumDataForChecksumSpecTYPE data : store.getChecksumResults(null, null, null, collectionID)
+                .getEntries()) {
+            String checksum = data.getChecksumValue() == null ? null
+                    : Base16Utils.decodeBase16(data.getChecksumValue());
+            Date calculationDate = CalendarUtils.convertFromXMLGregorianCalendar(data.getCalculationTimestamp());
+            collectionEntries.put(data.getFileID(), new ChecksumEntry(data.getFileID(), checksum, calculationDate));
+        }
+        log.info("Loaded " + collectionEntries.size() + " checksum entries for collection '" + collectionID
+                + "' in " + (System.currentTimeMillis() - startTime) + " ms.");
+        return collectionEntries;
+    }
+
+    /**
+     * @param fileID The id of the file.
+     * @param collectionEntries The entries of the collection.
+     * @return The entry for the file.
+     * @throws IllegalStateException If no entry exists for the file.
+     */
+    private ChecksumEntry getExistingEntry(String fileID, Map<String, ChecksumEntry> collectionEntries) {
+        ChecksumEntry entry = collectionEntries.get(fileID);
+        if(entry == null) {
+            throw new IllegalStateException("No entry for the file '" + fileID + "'.");
+        }
+        return entry;
+    }
+
+    @Override
+    public Date getCalculationDate(String fileID, String collectionID) {
+        ArgumentValidator.checkNotNull(fileID, "String fileID");
+        ArgumentValidator.checkNotNull(collectionID, "String collectionID");
+        Map<String, ChecksumEntry> collectionEntries = entries.get(collectionID);
+        if(collectionEntries == null) {
+            return store.getCalculationDate(fileID, collectionID);
+        }
+        return getExistingEntry(fileID, collectionEntries).getCalculationDate();
+    }
+
+    @Override
+    public String getChecksum(String fileID, String collectionID) {
+        ArgumentValidator.checkNotNull(fileID, "String fileID");
+        ArgumentValidator.checkNotNull(collectionID, "String collectionID");
+        Map<String, ChecksumEntry> collectionEntries = entries.get(collectionID);
+        if(collectionEntries == null) {
+            return store.getChecksum(fileID, collectionID);
+        }
+        String res = getExistingEntry(fileID, collectionEntries).getChecksum();
+        if(res == null) {
+            throw new IllegalStateException("No checksum for file '" + fileID + "'.");
+        }
+        return res;
+    }
+
+    @Override
+    public ChecksumEntry getEntry(String fileID, String collectionID) {
+        ArgumentValidator.checkNotNull(fileID, "String fileID");
+        ArgumentValidator.checkNotNull(collectionID, "String collectionID");
+        Map<String, ChecksumEntry> collectionEntries = entries.get(collectionID);
+        if(collectionEntries == null) {
+            return store.getEntry(fileID, collectionID);
+        }
+        return getExistingEntry(fileID, collectionEntries);
+    }
+
+    @Override
+    public ExtractedChecksumResultSet getChecksumResults(XMLGregorianCalendar minTimeStamp,
+            XMLGregorianCalendar maxTimeStamp, Long maxNumberOfResults, String collectionID) {
+        return store.getChecksumResults(minTimeStamp, maxTimeStamp, maxNumberOfResults, collectionID);
+    }
+
+    @Override
+    public ExtractedChecksumResultSet getChecksumResult(XMLGregorianCalendar minTimeStamp,
+            XMLGregorianCalendar maxTimeStamp, String fileID, String collectionID) {
+        Map<String, ChecksumEntry> collectionEntries = entries.get(collectionID);
+        if(collectionEntries == null) {
+            return store.getChecksumResult(minTimeStamp, maxTimeStamp, fileID, collectionID);
+        }
+        ExtractedChecksumResultSet res = new ExtractedChecksumResultSet();
+        ChecksumEntry entry = collectionEntries.get(fileID);
+        if(entry != null && isWithinInterval(entry.getCalculationDate(), minTimeStamp, maxTimeStamp)) {
+            res.insertChecksumEntry(entry);
+        }
+        return res;
+    }
+
+    /**
+     * Uses the same interval as the database extraction of a single entry: exclusive minimum, inclusive maximum.
+     * @param date The date to validate.
+     * @param minTimeStamp The minimum timestamp. May be null.
+     * @param maxTimeStamp The maximum timestamp. May be null.
+     * @return Whether the date is within the interval.
+     */
+    private boolean isWithinInterval(Date date, XMLGregorianCalendar minTimeStamp,
+            XMLGregorianCalendar maxTimeStamp) {
+        if(minTimeStamp != null
+                && date.getTime() <= CalendarUtils.convertFromXMLGregorianCalendar(minTimeStamp).getTime()) {
+            return false;
+        }
+        if(maxTimeStamp != null
+                && date.getTime() > CalendarUtils.convertFromXMLGregorianCalendar(maxTimeStamp).getTime()) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void insertChecksumCalculation(String fileID, String collectionID, String checksum,
+            Date calculationDate) {
+        Map<String, ChecksumEntry> collectionEntries = entries.get(collectionID);
+        if(collectionEntries == null) {
+            store.insertChecksumCalculation(fileID, collectionID, checksum, calculationDate);
+            return;
+        }
+        synchronized(collectionEntries) {
+            store.insertChecksumCalculation(fileID, collectionID, checksum, calculationDate);
+            collectionEntries.put(fileID, new ChecksumEntry(fileID, checksum, calculationDate));
+        }
+    }
+
+    @Override
+    public ExtractedFileIDsResultSet getFileIDs(XMLGregorianCalendar minTimeStamp, XMLGregorianCalendar maxTimeStamp,
+            Long maxNumberOfResults, String fileID, String collectionID) {
+        return store.getFileIDs(minTimeStamp, maxTimeStamp, maxNumberOfResults, fileID, collectionID);
+    }
+
+    @Override
+    public Collection<String> getAllFileIDs(String collectionID) {
+        ArgumentValidator.checkNotNull(collectionID, "String collectionID");
+        Map<String, ChecksumEntry> collectionEntries = entries.get(collectionID);
+        if(collectionEntries == null) {
+            return store.getAllFileIDs(collectionID);
+        }
+        return new ArrayList<String>(collectionEntries.keySet());
+    }
+
+    @Override
+    public int getNumberOfFiles(String collectionID) {
+        ArgumentValidator.checkNotNull(collectionID, "String collectionID");
+        Map<String, ChecksumEntry> collectionEntries = entries.get(collectionID);
+        if(collectionEntries == null) {
+            return store.getNumberOfFiles(collectionID);
+        }
+        return collectionEntries.size();
+    }
+
+    @Override
+    public List<String> getFileIDsWithOldChecksums(Date checksumDate, String collectionID) {
+        return store.getFileIDsWithOldChecksums(checksumDate, collectionID);
+    }
+
+    @Override
+    public void deleteEntry(String fileID, String collectionID) {
+        Map<String, ChecksumEntry> collectionEntries = entries.get(collectionID);
+        if(collectionEntries == null) {
+            store.deleteEntry(fileID, collectionID);
+            return;
+        }
+        synchronized(collectionEntries) {
+            store.deleteEntry(fileID, collectionID);
+            collectionEntries.remove(fileID);
+        }
+    }
+
+    @Override
+    public boolean hasFile(String fileID, String collectionID) {
+        ArgumentValidator.checkNotNull(fileID, "String fileID");
+        ArgumentValidator.checkNotNull(collectionID, "String collectionID");
+        Map<String, ChecksumEntry> collectionEntries = entries.get(collectionID);
+        if(collectionEntries == null) {
+            return store.hasFile(fileID, collectionID);
+        }
+        return collectionEntries.containsKey(fileID);
+    }
+
+    @Override
+    public void close() {
+        entries.clear();
+        store.close();
+    }
+}
@@ -22,9 +22,11 @@
 package org.bitrepository.pillar.store.filearchive;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.bitrepository.common.ArgumentValidator;
 import org.bitrepository.common.utils.FileUtils;
@@ -46,6 +48,8 @@ public class ArchiveDirectory {
     public static final String RETAIN_DIR = "retainDir";
     /** The constant for the folder directory name.*/
     public static final String FOLDER_DIR = "folderDir";
+    /** The number of milliseconds the free space of the base directory is cached, before it is read again.*/
+    public static final long FREE_SPACE_CACHE_TIME = 10000L;
     
     /** The directory for the files. Contains three sub directories: tempDir, fileDir and retainDir.*/
     private File baseDepositDir;
@@ -58,6 +62,13 @@ public class ArchiveDirectory {
     private final File retainDir;
     /** The directory where the files where the file-id contains a directory-path are stored.*/
     private final File folderDir;
+    
+    /** The cached number of bytes left for the base directory.*/
+    private long bytesLeft;
+    /** The time when the number of bytes left was read from the base directory.*/
+    private long bytesLeftTime = 0L;
+    /** The number of files currently being written to the temporary directory.*/
+    private final AtomicInteger activeWrites = new AtomicInteger();
 
     /** 
      * Constructor. Initialises the file directory. 
@@ -130,10 +141,43 @@ public class ArchiveDirectory {
     }
     
     /**
+     * The free space is read from the base directory at most every {@link #FREE_SPACE_CACHE_TIME} milliseconds, 
+     * and is reduced by the files written in between.
      * @return The number of bytes left for the base directory.
      */
-    public Long getBytesLeft() {
-        return baseDepositDir.getFreeSpace();
+    public synchronized Long getBytesLeft() {
+        long now = System.currentTimeMillis();
+        if(now - bytesLeftTime > FREE_SPACE_CACHE_TIME) {
+            bytesLeft = baseDepositDir.getFreeSpace();
+            bytesLeftTime = now;
+        }
+        return bytesLeft;
+    }
+    
+    /**
+     * Registers that a file is being written to the temporary directory.
+     * Must be followed by a call to {@link #finishWrite(long)}.
+     */
+    public void startWrite() {
+        activeWrites.incrementAndGet();
+    }
+    
+    /**
+     * Registers that a file has been written to the temporary directory.
+     * @param bytesWritten The number of bytes written.
+     */
+    public void finishWrite(long bytesWritten) {
+        activeWrites.decrementAndGet();
+        synchronized(this) {
+            bytesLeft -= bytesWritten;
+        }
+    }
+    
+    /**
+     * @return The number of files currently being written to the temporary directory.
+     */
+    public int getNumberOfActiveWrites() {
+        return activeWrites.get();
     }
     
     /**
@@ -165,6 +209,45 @@ public class ArchiveDirectory {
         return res;
     }
     
+    /**
+     * Creates a new empty file in the temporary directory. The parent directories are created along with the file, 
+     * so they are not cleaned up before the file has been written.
+     * @param fileID The id of the file.
+     * @return The new file in the temporary directory.
+     * @throws IOException If the file could not be created.
+     */
+    public File createNewFileInTempDir(String fileID) throws IOException {
+        File res = new File(tmpDir, fileID);
+        synchronized(tmpDir) {
+            if(!res.getParentFile().isDirectory()) {
+                FileUtils.retrieveDirectory(res.getParent());
+            }
+            if(!res.createNewFile()) {
+                throw new IllegalStateException("Cannot create a new file in the temporary directory.");
+            }
+        }
+        return res;
+    }
+    
+    /**
+     * Creates a new file in the temporary directory as a hard link to an existing file, or as a copy of the file
+     * if it cannot be linked, e.g. if the files are on different file systems.
+     * The new file is found with {@link #getFileInTempDir(String)}. The parent directories are created along with 
+     * the file, so they are not cleaned up before the file has been linked or copied.
+     * @param fileID The id of the file.
+     * @param existingFile The file to link to.
+     * @return Whether the file was linked, and thus uses no additional space.
+     */
+    public boolean linkOrCopyNewFileInTempDir(String fileID, File existingFile) {
+        File res = new File(tmpDir, fileID);
+        synchronized(tmpDir) {
+            if(!res.getParentFile().isDirectory()) {
+                FileUtils.retrieveDirectory(res.getParent());
+            }
+            return FileUtils.linkOrCopyFile(existingFile, res);
+        }
+    }
+    
     /**
      * @param fileID The id of the file.
      * @return Whether a given file exist in the temporary directory.
@@ -121,6 +121,12 @@ public class CollectionArchiveManager implements FileStore {
         return new DefaultFileInfo(getArchive(collectionID).downloadFileForValidation(fileID, inputStream));
     }
 
+    @Override
+    public FileInfo downloadFileForValidation(String fileID, String collectionID, File localFile) 
+            throws IOException {
+        return new DefaultFileInfo(getArchive(collectionID).downloadFileForValidation(fileID, localFile));
+    }
+
     @Override
     public void moveToArchive(String fileID, String collectionID) {
         getArchive(collectionID).moveToArchive(fileID);
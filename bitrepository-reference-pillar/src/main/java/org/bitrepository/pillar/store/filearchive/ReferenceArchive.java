@@ -40,6 +40,11 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Class for managing the files for the reference pillar. This supports a single CollectionID.
+ * 
+ * New files are placed in the directory with the most space left per file currently being written to it, so 
+ * concurrent writes are spread across the directories. 
+ * The operations on a file are synchronized on the file id, so operations on different files are not blocking 
+ * each other.
  */
 public class ReferenceArchive {
     private Logger log = LoggerFactory.getLogger(getClass());
@@ -48,6 +53,12 @@ public class ReferenceArchive {
 
     /** The list of directories to manage.*/
     private final List<ArchiveDirectory> directories = new ArrayList<ArchiveDirectory>();
+    /** The number of locks the file ids are distributed over.*/
+    private static final int NUMBER_OF_FILE_LOCKS = 256;
+    /** The locks for the file ids. A file id always maps to the same lock.*/
+    private final Object[] fileLocks = new Object[NUMBER_OF_FILE_LOCKS];
+    /** The lock for choosing the directory for a new file.*/
+    private final Object placementLock = new Object();
     
     /** 
      * Constructor. Initializes the file directory. 
@@ -60,6 +71,9 @@ public class ReferenceArchive {
         for(String dir : dirPaths) {
             directories.add(new ArchiveDirectory(dir));
         }
+        for(int i = 0; i < fileLocks.length; i++) {
+            fileLocks[i] = new Object();
+        }
     }
 
     /**
@@ -128,23 +142,64 @@ public class ReferenceArchive {
         ArgumentValidator.checkNotNullOrEmpty(fileID, "String fileID");
         ArgumentValidator.checkNotNull(inputStream, "inputStream");
 
-        ArchiveDirectory dir = getDirWithMostSpace();
-        File downloadedFile = null;
-        synchronized(dir) {
-            downloadedFile = dir.getNewFileInTempDir(fileID);
-            log.debug("Downloading the file '" + fileID + "' for validation.");
-            
-            // Save InputStream to the file.
-            try (BufferedOutputStream bufferedOutputstream 
-                    = new BufferedOutputStream(new FileOutputStream(downloadedFile))){
-                byte[] buffer = new byte[MAX_BUFFER_SIZE];
-                int bytesRead = 0;
-                while ((bytesRead = inputStream.read(buffer)) != -1) {
-                    bufferedOutputstream.write(buffer, 0, bytesRead);
-                }
-            } 
+        synchronized(getFileLock(fileID)) {
+            ArchiveDirectory dir = startWriteToDirForNewFile();
+            File downloadedFile = null;
+            try {
+                downloadedFile = dir.createNewFileInTempDir(fileID);
+                log.debug("Downloading the file '" + fileID + "' for validation.");
+                writeToFile(inputStream, downloadedFile);
+            } finally {
+                dir.finishWrite(downloadedFile == null ? 0L : downloadedFile.length());
+            }
+            return downloadedFile;
+        }
+    }
+    
+    /**
+     * Creates a file from a local file, by hard linking it into the temporary directory. If the local file cannot
+     * be linked, e.g. if it is on another file system, then it is copied instead.
+     * The file requires validation before it can be moved to the file archive.
+     * 
+     * @param fileID    The id of the file to create.
+     * @param localFile The local file with the content of the file. It must not be modified afterwards, since the 
+     * archived file might share its content.
+     * @return The file, which should be validated.
+     * @throws IOException If it fails to link or copy the file.
+     */
+    public File downloadFileForValidation(String fileID, File localFile) throws IOException {
+        ArgumentValidator.checkNotNullOrEmpty(fileID, "String fileID");
+        ArgumentValidator.checkNotNull(localFile, "File localFile");
+
+        synchronized(getFileLock(fileID)) {
+            ArchiveDirectory dir = startWriteToDirForNewFile();
+            long bytesWritten = 0L;
+            try {
+                log.debug("Linking the local file '" + localFile + "' for validation of the file '" + fileID + "'.");
+                boolean linked = dir.linkOrCopyNewFileInTempDir(fileID, localFile);
+                File downloadedFile = dir.getFileInTempDir(fileID);
+                bytesWritten = (linked ? 0L : downloadedFile.length());
+                return downloadedFile;
+            } finally {
+                dir.finishWrite(bytesWritten);
+            }
+        }
+    }
+    
+    /**
+     * Writes the content of an inputstream to a file.
+     * @param inputStream The inputstream with the content.
+     * @param file The file to write to.
+     * @throws IOException If it fails to write the file.
+     */
+    private void writeToFile(InputStream inputStream, File file) throws IOException {
+        try (BufferedOutputStream bufferedOutputstream = new BufferedOutputStream(new FileOutputStream(file))) {
+            byte[] buffer = new byte[MAX_BUFFER_SIZE];
+            int bytesRead = 0;
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                bufferedOutputstream.write(buffer, 0, bytesRead);
+            }
         }
-        return downloadedFile;
     }
     
     /**
@@ -155,9 +210,8 @@ public class ReferenceArchive {
         ArgumentValidator.checkNotNullOrEmpty(fileID, "String fileID");
         log.info("Moving the file '" + fileID + "' to archive.");
 
-        ArchiveDirectory dir = getDirWithTmpFile(fileID);
-        synchronized(dir) {
-            dir.moveFromTmpToArchive(fileID);
+        synchronized(getFileLock(fileID)) {
+            getDirWithTmpFile(fileID).moveFromTmpToArchive(fileID);
         }
     }
 
@@ -168,9 +222,8 @@ public class ReferenceArchive {
     public void deleteFile(String fileID) {
         ArgumentValidator.checkNotNullOrEmpty(fileID, "String fileID");
 
-        ArchiveDirectory dir = getDirWithFile(fileID);
-        synchronized(dir) {
-            dir.removeFileFromArchive(fileID);
+        synchronized(getFileLock(fileID)) {
+            getDirWithFile(fileID).removeFileFromArchive(fileID);
         }
     }
     
@@ -180,12 +233,11 @@ public class ReferenceArchive {
      * 
      * @param fileID The id of the file to perform the replace function upon.
      */
-    public synchronized void replaceFile(String fileID) {
+    public void replaceFile(String fileID) {
         ArgumentValidator.checkNotNullOrEmpty(fileID, "String fileID");
         
-        ArchiveDirectory tmpDir = getDirWithTmpFile(fileID);
-        
-        synchronized(tmpDir) {
+        synchronized(getFileLock(fileID)) {
+            ArchiveDirectory tmpDir = getDirWithTmpFile(fileID);
             ArchiveDirectory fileDir = getDirWithFile(fileID);
             fileDir.removeFileFromArchive(fileID);
             tmpDir.moveFromTmpToArchive(fileID);
@@ -215,11 +267,44 @@ public class ReferenceArchive {
      * @param fileID The id of the file to clean up after.
      */
     public void ensureFileNotInTmpDir(String fileID) {
-        for(ArchiveDirectory dir : directories) {
-            if(dir.hasFileInTempDir(fileID)) {
-                log.info("Removing tmp file '" + fileID + "' from tmp dir '" + dir + "'.");
-                dir.removeFileFromTmp(fileID);
+        synchronized(getFileLock(fileID)) {
+            for(ArchiveDirectory dir : directories) {
+                if(dir.hasFileInTempDir(fileID)) {
+                    log.info("Removing tmp file '" + fileID + "' from tmp dir '" + dir + "'.");
+                    dir.removeFileFromTmp(fileID);
+                }
+            }
+        }
+    }
+    
+    /**
+     * @param fileID The id of the file.
+     * @return The lock for the operations on the file.
+     */
+    private Object getFileLock(String fileID) {
+        return fileLocks[(fileID.hashCode() & Integer.MAX_VALUE) % fileLocks.length];
+    }
+    
+    /**
+     * Finds the directory for a new file, and registers the write of the file with it.
+     * The directory with the most space left per active write is chosen, so the concurrent writes are balanced 
+     * between the directories relative to their free space. 
+     * {@link ArchiveDirectory#finishWrite(long)} must be called, when the file has been written.
+     * @return The archive directory to write the new file to.
+     */
+    private ArchiveDirectory startWriteToDirForNewFile() {
+        synchronized(placementLock) {
+            ArchiveDirectory res = null;
+            double largestShare = -1;
+            for(ArchiveDirectory dir : directories) {
+                double share = (double) dir.getBytesLeft() / (dir.getNumberOfActiveWrites() + 1);
+                if(largestShare < share) {
+                    largestShare = share;
+                    res = dir;
+                }
             }
+            res.startWrite();
+            return res;
         }
     }
     
@@ -0,0 +1,134 @@
+/*
+ * #%L
+ * Bitrepository Reference Pillar
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.pillar.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class RequestCoalescerTest extends ExtendedTestCase {
+    private static final String KEY = "key";
+
+    private final List<String> releasedResults = new ArrayList<String>();
+    private RequestCoalescer<String, String> coalescer;
+    private ExecutorService executor;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setup() {
+        releasedResults.clear();
+        coalescer = new RequestCoalescer<String, String>(new RequestCoalescer.ResultReleaser<String>() {
+            @Override
+            public void release(String result) {
+                releasedResults.add(result);
+            }
+        });
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void identicalRequestsInFlightTest() throws Exception {
+        addDescription("Tests that identical requests in flight are performed once and share the result.");
+        addStep("Start a request, which blocks until released, and an identical request",
+                "The operation is only performed once, and both requests get the result");
+        final AtomicInteger performed = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        Callable<String> operation = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                started.countDown();
+                proceed.await();
+                return "result" + performed.incrementAndGet();
+            }
+        };
+        Future<RequestCoalescer<String, String>.SharedResult> first = executor.submit(perform(KEY, operation));
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        Future<RequestCoalescer<String, String>.SharedResult> second = executor.submit(perform(KEY, operation));
+        while(coalescer.getNumberOfParticipants(KEY) < 2) {
+            Thread.sleep(10);
+        }
+        proceed.countDown();
+        RequestCoalescer<String, String>.SharedResult firstResult = first.get(10, TimeUnit.SECONDS);
+        RequestCoalescer<String, String>.SharedResult secondResult = second.get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(performed.get(), 1);
+        Assert.assertEquals(firstResult.get(), "result1");
+        Assert.assertEquals(secondResult.get(), "result1");
+        Assert.assertEquals(coalescer.getNumberOfInFlightRequests(), 0);
+
+        addStep("Release the result for both requests", "The result is only handed to the releaser at the end");
+        firstResult.release();
+        firstResult.release();
+        Assert.assertTrue(releasedResults.isEmpty());
+        secondResult.release();
+        Assert.assertEquals(releasedResults.size(), 1);
+
+        addStep("Perform the request again", "The operation is performed anew");
+        RequestCoalescer<String, String>.SharedResult thirdResult = coalescer.perform(KEY, operation);
+        Assert.assertEquals(thirdResult.get(), "result2");
+        thirdResult.release();
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void failedRequestTest() throws Exception {
+        addDescription("Tests that the exception from a failed operation is thrown for the request.");
+        try {
+            coalescer.perform(KEY, new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    throw new IllegalStateException("failed");
+                }
+            });
+            Assert.fail("Should throw an IllegalStateException");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(e.getMessage(), "failed");
+        }
+        Assert.assertEquals(coalescer.getNumberOfInFlightRequests(), 0);
+        Assert.assertTrue(releasedResults.isEmpty());
+    }
+
+    private Callable<RequestCoalescer<String, String>.SharedResult> perform(final String key,
+            final Callable<String> operation) {
+        return new Callable<RequestCoalescer<String, String>.SharedResult>() {
+            @Override
+            public RequestCoalescer<String, String>.SharedResult call() throws Exception {
+                return coalescer.perform(key, operation);
+            }
+        };
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * #%L
+ * Bitrepository Reference Pillar
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.pillar.schedulablejobs;
+
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+import org.bitrepository.common.utils.TimeUtils;
+import org.bitrepository.pillar.store.StorageModel;
+import org.bitrepository.service.workflow.WorkflowState;
+import org.jaccept.structure.ExtendedTestCase;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class RecalculateChecksumJobTest extends ExtendedTestCase {
+    private static final String COLLECTION_ID = "collection";
+    private static final List<String> FILE_IDS = Arrays.asList("oldest-file", "older-file", "old-file");
+
+    private StorageModel model;
+
+    @BeforeMethod (alwaysRun = true)
+    public void setup() throws Exception {
+        model = mock(StorageModel.class);
+        when(model.getMaxAgeForChecksums()).thenReturn(10 * TimeUtils.MS_PER_HOUR);
+        when(model.getNumberOfChecksums(COLLECTION_ID)).thenReturn(100);
+        when(model.getFileIDsForChecksumRecalculation(eq(COLLECTION_ID), anyLong())).thenReturn(FILE_IDS);
+    }
+
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testRecalculationOrder() throws Exception {
+        addDescription("Tests that the checksums are recalculated in the order delivered by the storage model, "
+                + "which is the oldest checksums first.");
+        RecalculateChecksumJob job = new RecalculateChecksumJob(COLLECTION_ID, model);
+
+        addStep("Run the job", "The file to cache consistency is verified before the checksums are recalculated "
+                + "with the oldest first");
+        job.start();
+        InOrder order = inOrder(model);
+        order.verify(model).verifyFileToCacheConsistencyOfAllFileIDs(COLLECTION_ID);
+        for(String fileID : FILE_IDS) {
+            order.verify(model).recalculateChecksum(fileID, COLLECTION_ID);
+        }
+        Assert.assertEquals(job.getNumberOfFilesToRecalculate(), FILE_IDS.size());
+        Assert.assertEquals(job.getNumberOfRecalculatedFiles(), FILE_IDS.size());
+        Assert.assertEquals(job.currentState(), WorkflowState.NOT_RUNNING);
+    }
+
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testFailedRecalculationDoesNotStopRun() throws Exception {
+        addDescription("Tests that a file, whose checksum could not be recalculated, does not stop the run.");
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                throw new IllegalStateException("Could not read the file");
+            }
+        }).when(model).recalculateChecksum(FILE_IDS.get(0), COLLECTION_ID);
+        RecalculateChecksumJob job = new RecalculateChecksumJob(COLLECTION_ID, model);
+
+        addStep("Run the job", "The checksums of the remaining files are recalculated");
+        job.start();
+        verify(model).recalculateChecksum(FILE_IDS.get(1), COLLECTION_ID);
+        verify(model).recalculateChecksum(FILE_IDS.get(2), COLLECTION_ID);
+        Assert.assertEquals(job.getNumberOfRecalculatedFiles(), FILE_IDS.size());
+    }
+
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testNumberOfFilesForEachRun() throws Exception {
+        addDescription("Tests that each run recalculates enough checksums for all files to be recalculated within "
+                + "the maximum age, when the job is run at its interval.");
+        RecalculateChecksumJob job = new RecalculateChecksumJob(COLLECTION_ID, model, TimeUtils.MS_PER_HOUR, 0L, 
+                null);
+
+        addStep("Run the job for 100 files, a maximum age of 10 hours and an interval of 1 hour", 
+                "At least 10 files are recalculated");
+        job.start();
+        verify(model).getFileIDsForChecksumRecalculation(COLLECTION_ID, 10L);
+
+        addStep("Run the job four times for 3 files", 
+                "The fractions of files are carried over, so a file is recalculated in the fourth run");
+        when(model.getNumberOfChecksums(COLLECTION_ID)).thenReturn(3);
+        job = new RecalculateChecksumJob(COLLECTION_ID, model, TimeUtils.MS_PER_HOUR, 0L, null);
+        for(int i = 0; i < 3; i++) {
+            job.start();
+        }
+        verify(model, times(3)).getFileIDsForChecksumRecalculation(COLLECTION_ID, 0L);
+        job.start();
+        verify(model).getFileIDsForChecksumRecalculation(COLLECTION_ID, 1L);
+    }
+
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testPacing() throws Exception {
+        addDescription("Tests that the recalculations are spread evenly over the pacing window.");
+        long pacingWindow = 600L;
+        final List<Long> recalculationTimes = new ArrayList<>();
+        recordRecalculationTimes(recalculationTimes);
+        RecalculateChecksumJob job = new RecalculateChecksumJob(COLLECTION_ID, model, TimeUtils.MS_PER_HOUR, 
+                pacingWindow, null);
+
+        addStep("Run the job with three files and a pacing window of 600 ms", 
+                "The recalculations are about 200 ms apart, and are finished within the window");
+        long start = System.currentTimeMillis();
+        job.start();
+        Assert.assertEquals(recalculationTimes.size(), FILE_IDS.size());
+        for(int i = 1; i < recalculationTimes.size(); i++) {
+            long gap = recalculationTimes.get(i) - recalculationTimes.get(i - 1);
+            Assert.assertTrue(gap >= 150L, "Gap between recalculations was " + gap + " ms");
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < pacingWindow + 200L);
+    }
+
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testLoadBackoff() throws Exception {
+        addDescription("Tests that the recalculations are held back while the pillar is handling requests, "
+                + "as long as the remaining recalculations can be finished within the pacing window.");
+        long pacingWindow = 1000L;
+        final AtomicInteger loadQueries = new AtomicInteger();
+        IntSupplier busyPillar = new IntSupplier() {
+            @Override
+            public int getAsInt() {
+                loadQueries.incrementAndGet();
+                return 1;
+            }
+        };
+        final List<Long> recalculationTimes = new ArrayList<>();
+        recordRecalculationTimes(recalculationTimes);
+        when(model.getFileIDsForChecksumRecalculation(eq(COLLECTION_ID), anyLong()))
+            .thenReturn(FILE_IDS.subList(0, 2));
+        RecalculateChecksumJob job = new RecalculateChecksumJob(COLLECTION_ID, model, TimeUtils.MS_PER_HOUR, 
+                pacingWindow, busyPillar);
+
+        addStep("Run the job with two files and a pacing window of 1000 ms, while the pillar is busy", 
+                "The second recalculation is held back beyond its paced time of 500 ms, but is still performed "
+                + "within the window");
+        long start = System.currentTimeMillis();
+        job.start();
+        Assert.assertTrue(loadQueries.get() > 1);
+        Assert.assertEquals(recalculationTimes.size(), 2);
+        long secondRecalculation = recalculationTimes.get(1) - start;
+        Assert.assertTrue(secondRecalculation >= 700L, "Second recalculation after " + secondRecalculation + " ms");
+        Assert.assertTrue(secondRecalculation < pacingWindow, 
+                "Second recalculation after " + secondRecalculation + " ms");
+    }
+
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testEstimatedCompletionTime() throws Exception {
+        addDescription("Tests the estimated completion time of a run, based on the rate of the recalculations.");
+        long pacingWindow = 600L;
+        final List<Date> estimates = new ArrayList<>();
+        final List<String> states = new ArrayList<>();
+        final RecalculateChecksumJob job = new RecalculateChecksumJob(COLLECTION_ID, model, TimeUtils.MS_PER_HOUR, 
+                pacingWindow, null);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                estimates.add(job.getEstimatedCompletionTime());
+                states.add(job.getHumanReadableState());
+                return null;
+            }
+        }).when(model).recalculateChecksum(anyString(), eq(COLLECTION_ID));
+
+        addStep("Check the estimate before the job is run", "There is no estimate");
+        Assert.assertNull(job.getEstimatedCompletionTime());
+        Assert.assertEquals(job.getHumanReadableState(), WorkflowState.NOT_RUNNING.name());
+
+        addStep("Run the job with three files and a pacing window of 600 ms", 
+                "There is no estimate before the first file is recalculated, and afterwards the estimate is "
+                + "around the end of the pacing window");
+        long start = System.currentTimeMillis();
+        job.start();
+        Assert.assertNull(estimates.get(0));
+        for(int i = 1; i < estimates.size(); i++) {
+            long estimatedDuration = estimates.get(i).getTime() - start;
+            Assert.assertTrue(estimatedDuration >= 400L && estimatedDuration <= 1000L, 
+                    "Estimated duration was " + estimatedDuration + " ms");
+            Assert.assertTrue(states.get(i).contains("recalculated " + i + " of " + FILE_IDS.size()), states.get(i));
+        }
+
+        addStep("Check the estimate after the run", "There is no estimate");
+        Assert.assertNull(job.getEstimatedCompletionTime());
+    }
+
+    /**
+     * Records the times the checksums are recalculated by the mocked storage model.
+     * @param recalculationTimes The list to add the times to.
+     */
+    private void recordRecalculationTimes(final List<Long> recalculationTimes) {
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                recalculationTimes.add(System.currentTimeMillis());
+                return null;
+            }
+        }).when(model).recalculateChecksum(anyString(), eq(COLLECTION_ID));
+    }
+}
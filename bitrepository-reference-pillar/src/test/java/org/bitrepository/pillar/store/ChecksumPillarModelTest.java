@@ -172,7 +172,7 @@ public class ChecksumPillarModelTest extends DefaultFixturePillarTest {
 
         addStep("Check retrieval of non-default checksum result set", "");
         try {
-            pillarModel.getNonDefaultChecksumResultSet(null, collectionID, defaultCsType);
+            pillarModel.getNonDefaultChecksumResultSet(null, null, null, collectionID, defaultCsType);
             fail("Must throw an exception here");
         } catch (Exception e) {
             // expected
@@ -29,15 +29,25 @@ import static org.testng.Assert.fail;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
 import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
 import org.bitrepository.bitrepositoryelements.ChecksumType;
 import org.bitrepository.common.filestore.FileInfo;
 import org.bitrepository.common.filestore.FileStore;
+import org.bitrepository.common.utils.Base16Utils;
 import org.bitrepository.common.utils.ChecksumUtils;
 import org.bitrepository.pillar.DefaultFixturePillarTest;
 import org.bitrepository.pillar.store.checksumcache.MemoryCacheMock;
 import org.bitrepository.pillar.store.checksumdatabase.ChecksumStore;
+import org.bitrepository.pillar.store.checksumdatabase.ExtractedChecksumResultSet;
 import org.bitrepository.pillar.store.filearchive.CollectionArchiveManager;
 import org.bitrepository.protocol.LocalFileExchange;
 import org.bitrepository.service.AlarmDispatcher;
@@ -54,6 +64,7 @@ public class FullPillarModelTest extends DefaultFixturePillarTest {
     
     protected static final String EMPTY_HMAC_SHA385_CHECKSUM = "3e7012b39d4f6c503b2a4846fff3f4d0d61fb1a58b81035765f283cfa5f1b93e57ded9e0a946447ff24e5c9be39c8573";
     protected static final String EMPTY_MD5_CHECKSUM = "d41d8cd98f00b204e9800998ecf8427e";
+    protected static final String NON_DEFAULT_FILE_ID = "NonDefaultChecksumFile";
 
     @Override
     protected void initializeCUT() {
@@ -144,6 +155,44 @@ public class FullPillarModelTest extends DefaultFixturePillarTest {
 //        pillarModel.
     }
     
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testNonDefaultChecksumResultSetInPages() throws Exception {
+        addDescription("Test that the checksums with a non-default checksum specification are delivered in pages, "
+                + "continued by the timestamp of the last checksum in the previous page.");
+        addStep("Setup", "Place three empty files in the archive, and nothing else.");
+        for(String fileID : new ArrayList<String>(cache.getAllFileIDs(collectionID))) {
+            cache.deleteEntry(fileID, collectionID);
+        }
+        List<String> fileIDs = Arrays.asList(NON_DEFAULT_FILE_ID + "-1", NON_DEFAULT_FILE_ID + "-2",
+                NON_DEFAULT_FILE_ID + "-3");
+        for(String fileID : fileIDs) {
+            initializeWithFile(fileID);
+        }
+
+        addStep("Request the checksums two at a time", "A page of two with more entries, and a last page with one.");
+        Set<String> delivered = new HashSet<String>();
+        XMLGregorianCalendar minTimestamp = null;
+        ExtractedChecksumResultSet res = pillarModel.getChecksumResultSet(null, null, 2L, collectionID,
+                nonDefaultCsType);
+        assertEquals(res.getEntries().size(), 2);
+        assertTrue(res.hasMoreEntries());
+        for(ChecksumDataForChecksumSpecTYPE entry : res.getEntries()) {
+            assertEquals(Base16Utils.decodeBase16(entry.getChecksumValue()), EMPTY_HMAC_SHA385_CHECKSUM);
+            assertTrue(delivered.add(entry.getFileID()));
+            minTimestamp = entry.getCalculationTimestamp();
+        }
+        res = pillarModel.getChecksumResultSet(minTimestamp, null, 2L, collectionID, nonDefaultCsType);
+        assertEquals(res.getEntries().size(), 1);
+        assertFalse(res.hasMoreEntries());
+        assertTrue(delivered.add(res.getEntries().get(0).getFileID()));
+        assertEquals(delivered, new HashSet<String>(fileIDs));
+
+        addStep("Request all the checksums from the start", "All three checksums, without more entries.");
+        res = pillarModel.getChecksumResultSet(null, null, null, collectionID, nonDefaultCsType);
+        assertEquals(res.getEntries().size(), 3);
+        assertFalse(res.hasMoreEntries());
+    }
+
     private void emptyArchive() throws IOException {
         if(archives.hasFile(DEFAULT_FILE_ID, collectionID)) {
             archives.deleteFile(DEFAULT_FILE_ID, collectionID);
@@ -153,9 +202,16 @@ public class FullPillarModelTest extends DefaultFixturePillarTest {
     
     private void initializeWithDefaultFile() throws IOException {
         emptyArchive();
-        
-        archives.downloadFileForValidation(DEFAULT_FILE_ID, collectionID, new ByteArrayInputStream(new byte[0]));
-        archives.moveToArchive(DEFAULT_FILE_ID, collectionID);
-        pillarModel.recalculateChecksum(DEFAULT_FILE_ID, collectionID);
+        initializeWithFile(DEFAULT_FILE_ID);
+    }
+
+    private void initializeWithFile(String fileID) throws IOException {
+        if(archives.hasFile(fileID, collectionID)) {
+            archives.deleteFile(fileID, collectionID);
+        }
+        archives.ensureFileNotInTmpDir(fileID, collectionID);
+        archives.downloadFileForValidation(fileID, collectionID, new ByteArrayInputStream(new byte[0]));
+        archives.moveToArchive(fileID, collectionID);
+        pillarModel.recalculateChecksum(fileID, collectionID);
     }
 }
@@ -0,0 +1,216 @@
+/*
+ * #%L
+ * Bitrepository Reference Pillar
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.pillar.store;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.ChecksumType;
+import org.bitrepository.bitrepositoryelements.ResponseCode;
+import org.bitrepository.common.filestore.FileInfo;
+import org.bitrepository.common.filestore.FileStore;
+import org.bitrepository.common.utils.Base16Utils;
+import org.bitrepository.common.utils.CalendarUtils;
+import org.bitrepository.pillar.store.checksumdatabase.ChecksumStore;
+import org.bitrepository.pillar.store.checksumdatabase.ExtractedChecksumResultSet;
+import org.bitrepository.service.exception.RequestHandlerException;
+import org.jaccept.structure.ExtendedTestCase;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class NonDefaultChecksumCalculatorTest extends ExtendedTestCase {
+    private static final String COLLECTION_ID = "collection";
+    private static final String EMPTY_MD5_CHECKSUM = "d41d8cd98f00b204e9800998ecf8427e";
+    private static final int MAX_PAGE_SIZE = 2;
+
+    private FileStore fileStore;
+    private ChecksumStore checksumStore;
+    private ChecksumSpecTYPE csSpec;
+    private NonDefaultChecksumCalculator calculator;
+
+    @BeforeMethod (alwaysRun = true)
+    public void setup() {
+        fileStore = mock(FileStore.class);
+        checksumStore = mock(ChecksumStore.class);
+        csSpec = new ChecksumSpecTYPE();
+        csSpec.setChecksumType(ChecksumType.MD5);
+        calculator = new NonDefaultChecksumCalculator(fileStore, checksumStore, 2, 100, MAX_PAGE_SIZE);
+    }
+
+    @AfterMethod (alwaysRun = true)
+    public void tearDown() {
+        calculator.close();
+    }
+
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testPagesAreBoundedWithoutMaxResults() throws Exception {
+        addDescription("Test that the checksums of a collection are delivered in pages of the maximum page size, "
+                + "when the request does not limit the number of results.");
+        addStep("Setup", "Five empty files in the collection.");
+        List<String> fileIDs = Arrays.asList("file-1", "file-2", "file-3", "file-4", "file-5");
+        for(String fileID : fileIDs) {
+            addEmptyFile(fileID);
+        }
+        when(checksumStore.getAllFileIDs(COLLECTION_ID)).thenReturn(fileIDs);
+
+        addStep("Request the checksums without a maximum number of results, continuing from the last timestamp",
+                "Two pages with two checksums and more entries, and a last page with one checksum.");
+        List<String> delivered = new ArrayList<String>();
+        XMLGregorianCalendar minTimestamp = null;
+        for(int page = 0; page < 3; page++) {
+            ExtractedChecksumResultSet res = calculator.getChecksumResultSet(minTimestamp, null, null,
+                    COLLECTION_ID, csSpec);
+            assertEquals(res.getEntries().size(), (page < 2 ? MAX_PAGE_SIZE : 1));
+            assertEquals(res.hasMoreEntries(), page < 2);
+            for(ChecksumDataForChecksumSpecTYPE entry : res.getEntries()) {
+                assertEquals(Base16Utils.decodeBase16(entry.getChecksumValue()), EMPTY_MD5_CHECKSUM);
+                delivered.add(entry.getFileID());
+                minTimestamp = entry.getCalculationTimestamp();
+            }
+        }
+        assertEquals(new HashSet<String>(delivered), new HashSet<String>(fileIDs));
+        assertEquals(delivered.size(), fileIDs.size());
+
+        addStep("Request more results than the maximum page size", "Only a page of the maximum size.");
+        ExtractedChecksumResultSet res = calculator.getChecksumResultSet(null, null, 10L, COLLECTION_ID, csSpec);
+        assertEquals(res.getEntries().size(), MAX_PAGE_SIZE);
+        assertTrue(res.hasMoreEntries());
+    }
+
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testUncalculableChecksumFailsRequest() throws Exception {
+        addDescription("Test that a request fails, when the checksum of a file in the page cannot be calculated, "
+                + "instead of leaving the file out of the results.");
+        addStep("Setup", "An empty file, and a file which cannot be read.");
+        addEmptyFile("file-1");
+        FileInfo unreadable = mock(FileInfo.class);
+        when(unreadable.getFileID()).thenReturn("file-2");
+        when(unreadable.getInputstream()).thenThrow(new IOException("Could not read the file"));
+        when(fileStore.getFileInfo("file-2", COLLECTION_ID)).thenReturn(unreadable);
+        when(checksumStore.getAllFileIDs(COLLECTION_ID)).thenReturn(Arrays.asList("file-1", "file-2"));
+
+        addStep("Request the checksums", "The request fails");
+        try {
+            calculator.getChecksumResultSet(null, null, null, COLLECTION_ID, csSpec);
+            fail("Must throw an exception here!");
+        } catch (RequestHandlerException e) {
+            assertEquals(e.getResponseInfo().getResponseCode(), ResponseCode.FAILURE);
+            assertTrue(e.getResponseInfo().getResponseText().contains("file-2"), e.getResponseInfo().toString());
+        }
+
+        addStep("Request the checksum of the readable file", "It is calculated");
+        assertFalse(calculator.getChecksumResultSet(null, null, 1L, COLLECTION_ID, csSpec).getEntries().isEmpty());
+    }
+
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testChecksumsHaveTheirCalculationTimestamps() throws Exception {
+        addDescription("Test that the checksums are delivered with the time they were calculated, also when they "
+                + "are cached, and that pages continue by the timestamp of the last checksum in the previous page.");
+        addStep("Setup", "Three empty files in the collection.");
+        List<String> fileIDs = Arrays.asList("file-1", "file-2", "file-3");
+        for(String fileID : fileIDs) {
+            addEmptyFile(fileID);
+        }
+        when(checksumStore.getAllFileIDs(COLLECTION_ID)).thenReturn(fileIDs);
+
+        addStep("Request the checksum of the first file", "It is calculated and cached.");
+        long beforeFirst = System.currentTimeMillis();
+        assertEquals(calculator.getChecksum("file-1", COLLECTION_ID, csSpec), EMPTY_MD5_CHECKSUM);
+        long afterFirst = System.currentTimeMillis();
+        Thread.sleep(10);
+
+        addStep("Request the checksums one at a time, continuing from the timestamp of the last checksum",
+                "The cached checksum first with the time it was calculated, followed by the other checksums with "
+                + "the time they were calculated, none of them in the future.");
+        long beforeOthers = System.currentTimeMillis();
+        List<String> delivered = new ArrayList<String>();
+        List<Long> timestamps = new ArrayList<Long>();
+        XMLGregorianCalendar minTimestamp = null;
+        boolean moreEntries = true;
+        while(moreEntries) {
+            ExtractedChecksumResultSet res = calculator.getChecksumResultSet(minTimestamp, null, 1L,
+                    COLLECTION_ID, csSpec);
+            assertEquals(res.getEntries().size(), 1);
+            ChecksumDataForChecksumSpecTYPE entry = res.getEntries().get(0);
+            delivered.add(entry.getFileID());
+            timestamps.add(CalendarUtils.convertFromXMLGregorianCalendar(entry.getCalculationTimestamp()).getTime());
+            minTimestamp = entry.getCalculationTimestamp();
+            moreEntries = res.hasMoreEntries();
+        }
+        long afterOthers = System.currentTimeMillis();
+        assertEquals(delivered, fileIDs);
+        assertTrue(beforeFirst <= timestamps.get(0) && timestamps.get(0) <= afterFirst, timestamps.toString());
+        for(Long timestamp : timestamps.subList(1, timestamps.size())) {
+            assertTrue(beforeOthers <= timestamp && timestamp <= afterOthers, timestamps.toString());
+        }
+
+        addStep("Request the checksums from before the first calculation, which no listing contains",
+                "A new listing with the cached checksums, delivered with the time they were calculated.");
+        List<Long> repeatedTimestamps = new ArrayList<Long>();
+        minTimestamp = CalendarUtils.getFromMillis(beforeFirst - 1000);
+        moreEntries = true;
+        while(moreEntries) {
+            ExtractedChecksumResultSet res = calculator.getChecksumResultSet(minTimestamp, null, null,
+                    COLLECTION_ID, csSpec);
+            for(ChecksumDataForChecksumSpecTYPE entry : res.getEntries()) {
+                repeatedTimestamps.add(
+                        CalendarUtils.convertFromXMLGregorianCalendar(entry.getCalculationTimestamp()).getTime());
+                minTimestamp = entry.getCalculationTimestamp();
+            }
+            moreEntries = res.hasMoreEntries();
+        }
+        assertEquals(repeatedTimestamps, timestamps);
+    }
+
+    private void addEmptyFile(String fileID) throws IOException {
+        FileInfo fileInfo = mock(FileInfo.class);
+        when(fileInfo.getFileID()).thenReturn(fileID);
+        when(fileInfo.getSize()).thenReturn(0L);
+        when(fileInfo.getLastModifiedDate()).thenReturn(1L);
+        when(fileInfo.getInputstream()).thenAnswer(new Answer<InputStream>() {
+            @Override
+            public InputStream answer(InvocationOnMock invocation) {
+                return new ByteArrayInputStream(new byte[0]);
+            }
+        });
+        when(fileStore.getFileInfo(fileID, COLLECTION_ID)).thenReturn(fileInfo);
+    }
+}
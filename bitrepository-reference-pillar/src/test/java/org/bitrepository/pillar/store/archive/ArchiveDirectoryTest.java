@@ -361,6 +361,22 @@ public class ArchiveDirectoryTest extends ExtendedTestCase {
         Assert.assertEquals(retainFiles.size(), 3);
     }
 
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testArchiveDirectoryLinkFileIntoTempDir() throws Exception {
+        addDescription("Testing the ArchiveDirectory linking of a local file into the tmp dir.");
+        addStep("Setup", "A local file on the same file system as the directory.");
+        ArchiveDirectory directory = new ArchiveDirectory(DIR_NAME);
+        File localFile = new File(DIR_NAME, "local-file");
+        FileWriter fw = new FileWriter(localFile, false);
+        fw.write("test-data\n");
+        fw.close();
+        
+        addStep("Link the local file into the tmp dir", "Should be linked, and have the content of the local file.");
+        Assert.assertTrue(directory.linkOrCopyNewFileInTempDir(FILE_ID, localFile));
+        Assert.assertTrue(directory.hasFileInTempDir(FILE_ID));
+        Assert.assertEquals(directory.getFileInTempDir(FILE_ID).length(), localFile.length());
+    }
+
     private void createExistingFile() throws Exception {
         FileWriter fw = new FileWriter(new File(FILE_DIR_NAME, FILE_ID), false);
         fw.write("test-data\n");
@@ -24,9 +24,13 @@
  */
 package org.bitrepository.pillar.store.archive;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
 
 import org.bitrepository.common.utils.FileUtils;
 import org.bitrepository.pillar.DefaultPillarTest;
@@ -45,6 +49,7 @@ public class ReferenceArchiveTest extends DefaultPillarTest {
     
     private static String DIR_NAME = "archive-directory";
     private static String FILE_DIR_NAME = DIR_NAME + "/fileDir";
+    private static String SECOND_DIR_NAME = "second-archive-directory";
     
     private static String EXISTING_FILE = "file1";
     private static String MISSING_FILE = "Missing-filE";
@@ -55,6 +60,10 @@ public class ReferenceArchiveTest extends DefaultPillarTest {
         if (archiveDirectory.exists()) {
             FileUtils.delete(new File(DIR_NAME));
         }
+        File secondArchiveDirectory = new File(SECOND_DIR_NAME);
+        if (secondArchiveDirectory.exists()) {
+            FileUtils.delete(secondArchiveDirectory);
+        }
         super.shutdownCUT();
     }
     
@@ -132,6 +141,91 @@ public class ReferenceArchiveTest extends DefaultPillarTest {
         archive.close();
     }
     
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testDownloadLocalFileForValidation() throws Exception {
+        addDescription("Test the download of a file from the local file system.");
+        addStep("Setup", "Should be OK.");
+        ReferenceArchive archive = new ReferenceArchive(Arrays.asList(DIR_NAME));
+        createExistingFile();
+        File localFile = new File(DIR_NAME, "local-file");
+        FileUtils.copyFile(new File(FILE_DIR_NAME, EXISTING_FILE), localFile);
+        
+        addStep("Download the local file for validation", "Should be placed in the tmpDir with the same content, "
+                + "and not remove the local file.");
+        File downloadedFile = archive.downloadFileForValidation(MISSING_FILE, localFile);
+        Assert.assertEquals(downloadedFile, archive.getFileInTmpDir(MISSING_FILE));
+        Assert.assertEquals(downloadedFile.length(), localFile.length());
+        Assert.assertTrue(localFile.isFile());
+        
+        addStep("Move the file to the archive and remove the local file", "The archived file should remain.");
+        archive.moveToArchive(MISSING_FILE);
+        FileUtils.delete(localFile);
+        Assert.assertTrue(archive.hasFile(MISSING_FILE));
+        Assert.assertEquals(archive.getFile(MISSING_FILE).length(), new File(FILE_DIR_NAME, EXISTING_FILE).length());
+        
+        archive.close();
+    }
+    
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testConcurrentDownloadsAreSpreadOverDirectories() throws Exception {
+        addDescription("Tests that a download is placed in another directory than a download in progress, "
+                + "when the directories have the same space left.");
+        addStep("Setup an archive with two directories on the same file system", "Should be OK.");
+        final ReferenceArchive archive = new ReferenceArchive(Arrays.asList(DIR_NAME, SECOND_DIR_NAME));
+        final String blockedFileID = "blocked-file";
+        final CountDownLatch release = new CountDownLatch(1);
+        final InputStream blockingStream = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return -1;
+            }
+        };
+        
+        addStep("Start a download, which does not finish until released", "The file should be created in the "
+                + "tmpDir of one of the directories.");
+        final File[] blockedFile = new File[1];
+        Thread downloader = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    blockedFile[0] = archive.downloadFileForValidation(blockedFileID, blockingStream);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        downloader.start();
+        long timeout = System.currentTimeMillis() + 10000L;
+        while(!new File(DIR_NAME + "/tmpDir/" + blockedFileID).exists() 
+                && !new File(SECOND_DIR_NAME + "/tmpDir/" + blockedFileID).exists()) {
+            Assert.assertTrue(System.currentTimeMillis() < timeout, "The download should have started");
+            Thread.sleep(10);
+        }
+        
+        addStep("Download another file, while the first download is in progress", "Should not be blocked by the "
+                + "first download, and should be placed in the other directory.");
+        File downloadedFile = archive.downloadFileForValidation(EXISTING_FILE, 
+                new ByteArrayInputStream("test-data\n".getBytes()));
+        File blockedTmpFile = new File(DIR_NAME + "/tmpDir/" + blockedFileID).exists() 
+                ? new File(DIR_NAME + "/tmpDir/" + blockedFileID) 
+                : new File(SECOND_DIR_NAME + "/tmpDir/" + blockedFileID);
+        Assert.assertNotEquals(downloadedFile.getAbsoluteFile().getParentFile(), 
+                blockedTmpFile.getAbsoluteFile().getParentFile());
+        
+        addStep("Release the first download", "Both files should be in the tmpDirs.");
+        release.countDown();
+        downloader.join(10000L);
+        Assert.assertEquals(blockedFile[0], archive.getFileInTmpDir(blockedFileID));
+        Assert.assertEquals(downloadedFile, archive.getFileInTmpDir(EXISTING_FILE));
+        
+        archive.close();
+    }
+    
     private void createExistingFile() throws Exception {
         FileWriter fw = new FileWriter(new File(FILE_DIR_NAME, EXISTING_FILE), false);
         fw.write("test-data\n");
@@ -101,6 +101,7 @@ public class ChecksumDatabaseTest extends ExtendedTestCase {
 
         addStep("Check whether the default entry exists.", "It does!");
         Assert.assertTrue(cache.hasFile(DEFAULT_FILE_ID, collectionID));
+        Assert.assertEquals(cache.getNumberOfFiles(collectionID), 1);
         ExtractedFileIDsResultSet res = cache.getFileIDs(null, null, null, null, collectionID);
         Assert.assertEquals(res.getEntries().getFileIDsDataItems().getFileIDsDataItem().size(), 1);
         Assert.assertEquals(res.getEntries().getFileIDsDataItems().getFileIDsDataItem().get(0).getFileID(),
@@ -109,6 +110,7 @@ public class ChecksumDatabaseTest extends ExtendedTestCase {
         addStep("Remove the default entry", "Should no longer exist");
         cache.deleteEntry(DEFAULT_FILE_ID, collectionID);
         Assert.assertFalse(cache.hasFile(DEFAULT_FILE_ID, collectionID));
+        Assert.assertEquals(cache.getNumberOfFiles(collectionID), 0);
         res = cache.getFileIDs(null, null, null, null, collectionID);
         Assert.assertEquals(res.getEntries().getFileIDsDataItems().getFileIDsDataItem().size(), 0);
     }
@@ -121,6 +121,11 @@ public class MemoryCacheMock implements ChecksumStore {
         return checksumMap.keySet();
     }
 
+    @Override
+    public int getNumberOfFiles(String collectionID) {
+        return checksumMap.size();
+    }
+
     @Override
     public ExtractedChecksumResultSet getChecksumResult(XMLGregorianCalendar minTimeStamp,
             XMLGregorianCalendar maxTimeStamp, String fileID, String collectionID) {
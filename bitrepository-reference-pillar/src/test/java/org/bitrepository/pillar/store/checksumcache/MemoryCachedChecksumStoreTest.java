@@ -0,0 +1,128 @@
+/*
+ * #%L
+ * Bitrepository Reference Pillar
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.pillar.store.checksumcache;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import org.bitrepository.common.utils.CalendarUtils;
+import org.bitrepository.pillar.store.checksumdatabase.MemoryCachedChecksumStore;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class MemoryCachedChecksumStoreTest extends ExtendedTestCase {
+    private static final String COLLECTION_ID = "collection";
+    private static final String OTHER_COLLECTION_ID = "other-collection";
+    private static final String DEFAULT_FILE_ID = "TEST-FILE";
+    private static final String DEFAULT_CHECKSUM = "abcdef0110fedcba";
+    private static final Date DEFAULT_DATE = new Date(1000000L);
+
+    private MemoryCacheMock store;
+
+    @BeforeMethod (alwaysRun = true)
+    public void setup() throws Exception {
+        store = new MemoryCacheMock();
+        store.insertChecksumCalculation(DEFAULT_FILE_ID, COLLECTION_ID, DEFAULT_CHECKSUM, DEFAULT_DATE);
+    }
+
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testLoadingAtStartup() {
+        addDescription("Tests that the entries of the underlying store are loaded at instantiation.");
+        MemoryCachedChecksumStore cache = new MemoryCachedChecksumStore(store, Arrays.asList(COLLECTION_ID));
+
+        addStep("Remove the entry from the underlying store without using the cache",
+                "The cache should still deliver the entry from memory");
+        store.deleteEntry(DEFAULT_FILE_ID, COLLECTION_ID);
+        Assert.assertTrue(cache.hasFile(DEFAULT_FILE_ID, COLLECTION_ID));
+        Assert.assertEquals(cache.getChecksum(DEFAULT_FILE_ID, COLLECTION_ID), DEFAULT_CHECKSUM);
+        Assert.assertEquals(cache.getCalculationDate(DEFAULT_FILE_ID, COLLECTION_ID), DEFAULT_DATE);
+        Assert.assertEquals(cache.getEntry(DEFAULT_FILE_ID, COLLECTION_ID).getChecksum(), DEFAULT_CHECKSUM);
+        Assert.assertEquals(cache.getAllFileIDs(COLLECTION_ID), Arrays.asList(DEFAULT_FILE_ID));
+        Assert.assertEquals(cache.getNumberOfFiles(COLLECTION_ID), 1);
+    }
+
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testWriteThrough() {
+        addDescription("Tests that insertions and deletions are performed on both the cache and the underlying store.");
+        MemoryCachedChecksumStore cache = new MemoryCachedChecksumStore(store, Arrays.asList(COLLECTION_ID));
+        String newChecksum = "fedcba1001abcdef";
+        Date newDate = new Date(2000000L);
+
+        addStep("Replace the checksum of the file", "Both the cache and the underlying store should be updated");
+        cache.insertChecksumCalculation(DEFAULT_FILE_ID, COLLECTION_ID, newChecksum, newDate);
+        Assert.assertEquals(cache.getChecksum(DEFAULT_FILE_ID, COLLECTION_ID), newChecksum);
+        Assert.assertEquals(cache.getCalculationDate(DEFAULT_FILE_ID, COLLECTION_ID), newDate);
+        Assert.assertEquals(store.getChecksum(DEFAULT_FILE_ID, COLLECTION_ID), newChecksum);
+
+        addStep("Delete the file", "Should be removed from both the cache and the underlying store");
+        cache.deleteEntry(DEFAULT_FILE_ID, COLLECTION_ID);
+        Assert.assertFalse(cache.hasFile(DEFAULT_FILE_ID, COLLECTION_ID));
+        Assert.assertFalse(store.hasFile(DEFAULT_FILE_ID, COLLECTION_ID));
+        Assert.assertTrue(cache.getAllFileIDs(COLLECTION_ID).isEmpty());
+        Assert.assertEquals(cache.getNumberOfFiles(COLLECTION_ID), 0);
+    }
+
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testMissingEntry() {
+        addDescription("Tests that requests for missing files are handled like the database does.");
+        MemoryCachedChecksumStore cache = new MemoryCachedChecksumStore(store, Arrays.asList(COLLECTION_ID));
+        Assert.assertFalse(cache.hasFile("MISSING-FILE", COLLECTION_ID));
+        Assert.assertTrue(cache.getChecksumResult(null, null, "MISSING-FILE", COLLECTION_ID).getEntries().isEmpty());
+        try {
+            cache.getChecksum("MISSING-FILE", COLLECTION_ID);
+            Assert.fail("Should throw an exception");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            cache.getEntry("MISSING-FILE", COLLECTION_ID);
+            Assert.fail("Should throw an exception");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testChecksumResultWithTimestamps() {
+        addDescription("Tests that the restrictions on the calculation date are applied to the cached entries, with "
+                + "an exclusive minimum and an inclusive maximum.");
+        MemoryCachedChecksumStore cache = new MemoryCachedChecksumStore(store, Arrays.asList(COLLECTION_ID));
+        Assert.assertEquals(cache.getChecksumResult(null, CalendarUtils.getXmlGregorianCalendar(DEFAULT_DATE),
+                DEFAULT_FILE_ID, COLLECTION_ID).getEntries().size(), 1);
+        Assert.assertEquals(cache.getChecksumResult(CalendarUtils.getXmlGregorianCalendar(DEFAULT_DATE), null,
+                DEFAULT_FILE_ID, COLLECTION_ID).getEntries().size(), 0);
+        Assert.assertEquals(cache.getChecksumResult(CalendarUtils.getXmlGregorianCalendar(new Date(0)),
+                CalendarUtils.getXmlGregorianCalendar(new Date(999999L)), DEFAULT_FILE_ID, COLLECTION_ID)
+                .getEntries().size(), 0);
+    }
+
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testCollectionNotCached() {
+        addDescription("Tests that collections which are not cached are delegated to the underlying store.");
+        MemoryCachedChecksumStore cache = new MemoryCachedChecksumStore(store, Arrays.asList(OTHER_COLLECTION_ID));
+        store.insertChecksumCalculation("NEW-FILE", COLLECTION_ID, DEFAULT_CHECKSUM, DEFAULT_DATE);
+        Assert.assertTrue(cache.hasFile("NEW-FILE", COLLECTION_ID));
+        Assert.assertEquals(cache.getNumberOfFiles(COLLECTION_ID), store.getNumberOfFiles(COLLECTION_ID));
+    }
+}
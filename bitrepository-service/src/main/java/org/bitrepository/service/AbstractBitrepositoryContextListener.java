@@ -25,16 +25,23 @@ import org.bitrepository.protocol.utils.LogbackConfigLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
+import javax.servlet.ServletRegistration;
 
 /**
  * The Listener has two intentions
  * 1) Acquire necessary information at startup to locate configuration files and create the first instance 
  *      of the basic client, so everything is setup before the first users start using the webservice. 
  * 2) In time shut the service down in a proper manner, so no threads will be orphaned.   
+ *
+ * If the context parameter 'metricsPath' is set, the runtime metrics of the service are further delivered as
+ * plain text at this path in the context, e.g. '/metrics'.
  */
 public abstract class AbstractBitrepositoryContextListener implements ServletContextListener {
+    /** The context parameter for the path to deliver the metrics at.*/
+    public static final String METRICS_PATH_PARAMETER = "metricsPath";
     /** The log.*/
     private final Logger log = LoggerFactory.getLogger(getClass());
         
@@ -82,9 +89,28 @@ public abstract class AbstractBitrepositoryContextListener implements ServletCon
             log.error("Caught runtime exception:", e);
             throw e;
         }
+        registerMetricsServlet(sce.getServletContext());
         log.debug("Servlet context initialized");
         
     }
+
+    /**
+     * Adds the servlet delivering the metrics, if a path for the metrics is given in the context.
+     * @param context The servlet context.
+     */
+    private void registerMetricsServlet(ServletContext context) {
+        String metricsPath = context.getInitParameter(METRICS_PATH_PARAMETER);
+        if(metricsPath == null || metricsPath.isEmpty()) {
+            return;
+        }
+        try {
+            ServletRegistration.Dynamic registration = context.addServlet("metrics", MetricsServlet.class);
+            registration.addMapping(metricsPath);
+            log.info("Delivering the metrics at '" + context.getContextPath() + metricsPath + "'");
+        } catch (RuntimeException e) {
+            log.warn("Could not deliver the metrics at '" + metricsPath + "'", e);
+        }
+    }
     
     /**
      * Method called at servlet shutdown.
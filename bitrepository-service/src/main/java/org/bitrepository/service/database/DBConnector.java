@@ -25,14 +25,20 @@ import com.mchange.v2.c3p0.ComboPooledDataSource;
 import com.mchange.v2.c3p0.DataSources;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 import org.bitrepository.common.ArgumentValidator;
+import org.bitrepository.common.metrics.Gauge;
+import org.bitrepository.common.metrics.LatencyHistogram;
+import org.bitrepository.common.metrics.MetricsRegistry;
 import org.bitrepository.settings.referencesettings.DatabaseSpecifics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * The connector to a database.
+ * The usage of the connection pool is exported through the {@link MetricsRegistry}, labelled with the database URL.
  */
 public class DBConnector {
     /** The log.*/
@@ -41,6 +47,10 @@ public class DBConnector {
     private final DatabaseSpecifics databaseSpecifics;
     /** The pool with data sources for the database connections.*/
     private ComboPooledDataSource connectionPool;
+    /** The time it takes to check out connections from the pool.*/
+    private final LatencyHistogram connectionWaitTime;
+    /** The gauges of the pool usage, mapped from the metric name.*/
+    private final Map<String, Gauge> poolGauges = new HashMap<String, Gauge>();
     
     /**
      * Constructor.
@@ -53,6 +63,10 @@ public class DBConnector {
         this.databaseSpecifics = databaseSpecifics;
         this.connectionPool = new ComboPooledDataSource();
         initialiseConnectionPool();
+        connectionWaitTime = MetricsRegistry.getInstance().histogram("bitrepository_db_connection_wait_seconds",
+                "The time it took to get a connection from the database connection pool.",
+                "database", databaseSpecifics.getDatabaseURL());
+        registerPoolGauges();
     }
     
     /**
@@ -81,6 +95,38 @@ public class DBConnector {
         }
     }
 
+    /**
+     * Exports the number of busy and idle connections in the pool, and the number of threads waiting for a
+     * connection.
+     */
+    private void registerPoolGauges() {
+        registerPoolGauge("bitrepository_db_connections_busy", "The number of connections in use.", new PoolGauge() {
+            @Override
+            int readValue() throws SQLException {
+                return connectionPool.getNumBusyConnectionsDefaultUser();
+            }
+        });
+        registerPoolGauge("bitrepository_db_connections_idle", "The number of idle connections in the pool.",
+                new PoolGauge() {
+                    @Override
+                    int readValue() throws SQLException {
+                        return connectionPool.getNumIdleConnectionsDefaultUser();
+                    }
+                });
+        registerPoolGauge("bitrepository_db_connections_awaited",
+                "The number of threads waiting for a connection from the pool.", new PoolGauge() {
+                    @Override
+                    int readValue() throws SQLException {
+                        return connectionPool.getNumThreadsAwaitingCheckoutDefaultUser();
+                    }
+                });
+    }
+
+    private void registerPoolGauge(String name, String help, Gauge gauge) {
+        poolGauges.put(name, gauge);
+        MetricsRegistry.getInstance().registerGauge(name, help, gauge, "database", databaseSpecifics.getDatabaseURL());
+    }
+
     /**
      * Hack to kill com.mchange.v2 log spamming.
      */
@@ -97,8 +143,11 @@ public class DBConnector {
      * @throws IllegalStateException if the database connection could not be established
      */
     public Connection getConnection() throws IllegalStateException {
+        long startTime = System.nanoTime();
         try {
-            return connectionPool.getConnection();
+            Connection connection = connectionPool.getConnection();
+            connectionWaitTime.recordSince(startTime);
+            return connection;
         } catch (SQLException e) {
             throw new IllegalStateException("Could not establish connection to the database: '" +  DatabaseUtils.getDatabaseSpecificsDump(databaseSpecifics) 
                     + "'", e);
@@ -109,10 +158,30 @@ public class DBConnector {
      * Cleans up after use.
      */
     public void destroy() {
+        for (Map.Entry<String, Gauge> gauge : poolGauges.entrySet()) {
+            MetricsRegistry.getInstance().unregisterGauge(gauge.getKey(), gauge.getValue(), "database",
+                    databaseSpecifics.getDatabaseURL());
+        }
         try {
             DataSources.destroy(connectionPool);
         } catch (SQLException e) {
             log.error("Could not clean up the database '" + DatabaseUtils.getDatabaseSpecificsDump(databaseSpecifics) + "'.", e);
         }
     }
+
+    /**
+     * Gauge reading a value of the connection pool.
+     */
+    private abstract static class PoolGauge implements Gauge {
+        @Override
+        public double getValue() {
+            try {
+                return readValue();
+            } catch (SQLException e) {
+                return Double.NaN;
+            }
+        }
+
+        abstract int readValue() throws SQLException;
+    }
 }